@@ -0,0 +1,731 @@
+package org.healthhub.io;
+
+import org.healthhub.model.Doctor;
+import org.healthhub.model.MedicalRecord;
+import org.healthhub.model.MedicalRecord.RecordStatus;
+import org.healthhub.model.MedicalRecord.RecordType;
+import org.healthhub.model.Patient;
+import org.healthhub.model.Patient.PatientValidator;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Semaphore;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+/**
+ * Streaming import of medical records and patients from CSV or NDJSON, one
+ * row per line. A reader thread cuts the input into batches of lines, parse
+ * workers turn batches into validated records in parallel, a single dedupe
+ * stage maps every patient and doctor id to one instance and drops repeated
+ * record ids, and an index stage hands each batch to
+ * {@link MedicalRecord.MedicalRecordManager#addRecords}.
+ * <p>
+ * Stages are connected by bounded queues and at most {@code window} batches
+ * are in flight, so a slow stage stalls the reader rather than buffering the
+ * file. Record ids are checked against
+ * {@link MedicalRecord.MedicalRecordManager#getRecord}, so the importer only
+ * remembers the ids of batches still in flight; the patient and doctor maps
+ * hold one entry per distinct id, the same instances the manager keeps.
+ * Batches leave the dedupe stage in input order, which keeps "first row wins"
+ * deterministic. Rows that fail to parse or validate are reported with their
+ * line number and skipped; any other failure stops the import, and batches
+ * indexed before it stay in the manager.
+ */
+public class BulkImporter {
+
+    private static final Batch END_OF_BATCHES = new Batch(-1, 0, List.of());
+    private static final List<MedicalRecord> END_OF_RECORDS = new ArrayList<>();
+    
+    private final Format format;
+    private final int parallelism;
+    private final int batchSize;
+    private final int window;
+    private final int errorLimit;
+    private final Consumer<RowError> errorHandler;
+    private final Consumer<Patient> patientHandler;
+    private final List<Patient> knownPatients;
+    private final List<Doctor> knownDoctors;
+    
+    private BulkImporter(Builder builder) {
+        this.format = builder.format;
+        this.parallelism = builder.parallelism;
+        this.batchSize = builder.batchSize;
+        this.window = builder.window > 0 ? builder.window : 2 * builder.parallelism;
+        this.errorLimit = builder.errorLimit;
+        this.errorHandler = builder.errorHandler;
+        this.patientHandler = builder.patientHandler;
+        this.knownPatients = List.copyOf(builder.knownPatients);
+        this.knownDoctors = List.copyOf(builder.knownDoctors);
+    }
+    
+    public static Builder builder(Format format) {
+        return new Builder(format);
+    }
+    
+    public ImportReport importFrom(Path file) throws IOException {
+        try (BufferedReader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            return importFrom(reader);
+        }
+    }
+    
+    public ImportReport importFrom(Reader input) throws IOException {
+        long started = System.nanoTime();
+        BufferedReader reader = input instanceof BufferedReader ? (BufferedReader) input : new BufferedReader(input, 1 << 16);
+        long line = 0;
+        RowParser parser;
+        if (format == Format.CSV) {
+            String header;
+            do {
+                header = reader.readLine();
+                line++;
+            } while (header != null && header.isBlank());
+            if (header == null) {
+                return new ImportReport(0, 0, 0, 0, List.of(), Duration.ofNanos(System.nanoTime() - started));
+            }
+            parser = RowParser.csv(header);
+        } else {
+            parser = RowParser.ndjson();
+        }
+        return new Run(reader, parser, line).execute(started);
+    }
+    
+    public enum Format {
+
+        CSV,
+        NDJSON
+    }
+    
+    public enum Column {
+
+        RECORD_ID("recordId"),
+        RECORD_DATE("recordDate"),
+        TYPE("type"),
+        STATUS("status"),
+        DIAGNOSIS("diagnosis"),
+        SYMPTOMS("symptoms"),
+        TREATMENT("treatment"),
+        TEST_RESULTS("testResults"),
+        PATIENT_ID("patientId"),
+        FIRST_NAME("firstName"),
+        LAST_NAME("lastName"),
+        DATE_OF_BIRTH("dateOfBirth"),
+        EMAIL("email"),
+        PHONE_NUMBER("phoneNumber"),
+        DOCTOR_ID("doctorId"),
+        LICENSE_NUMBER("licenseNumber"),
+        DOCTOR_FIRST_NAME("doctorFirstName"),
+        DOCTOR_LAST_NAME("doctorLastName"),
+        SPECIALIZATION("specialization");
+        
+        private static final Map<String, Column> byKey = new HashMap<>();
+        
+        static {
+            for (Column column : values()) {
+                byKey.put(column.key, column);
+            }
+        }
+        
+        private final String key;
+        
+        Column(String key) {
+            this.key = key;
+        }
+        
+        public String getKey() {
+            return key;
+        }
+        
+        static Column forKey(String key) {
+            return byKey.get(key);
+        }
+    }
+    
+    public static class Builder {
+
+        private final Format format;
+        private int parallelism = Runtime.getRuntime().availableProcessors();
+        private int batchSize = 1024;
+        private int window;
+        private int errorLimit = 100;
+        private Consumer<RowError> errorHandler = error -> { };
+        private Consumer<Patient> patientHandler = patient -> { };
+        private final List<Patient> knownPatients = new ArrayList<>();
+        private final List<Doctor> knownDoctors = new ArrayList<>();
+        
+        private Builder(Format format) {
+            this.format = Objects.requireNonNull(format);
+        }
+        
+        public Builder withParallelism(int parallelism) {
+            if (parallelism < 1) {
+                throw new IllegalArgumentException("Parallelism must be at least 1");
+            }
+            this.parallelism = parallelism;
+            return this;
+        }
+        
+        public Builder withBatchSize(int batchSize) {
+            if (batchSize < 1) {
+                throw new IllegalArgumentException("Batch size must be at least 1");
+            }
+            this.batchSize = batchSize;
+            return this;
+        }
+        
+        public Builder withWindow(int batches) {
+            if (batches < 1) {
+                throw new IllegalArgumentException("Window must be at least 1 batch");
+            }
+            this.window = batches;
+            return this;
+        }
+        
+        public Builder withErrorLimit(int errorLimit) {
+            this.errorLimit = Math.max(0, errorLimit);
+            return this;
+        }
+        
+        public Builder onError(Consumer<RowError> errorHandler) {
+            this.errorHandler = Objects.requireNonNull(errorHandler);
+            return this;
+        }
+        
+        public Builder onPatient(Consumer<Patient> patientHandler) {
+            this.patientHandler = Objects.requireNonNull(patientHandler);
+            return this;
+        }
+        
+        public Builder withPatients(Collection<Patient> patients) {
+            this.knownPatients.addAll(patients);
+            return this;
+        }
+        
+        public Builder withDoctors(Collection<Doctor> doctors) {
+            this.knownDoctors.addAll(doctors);
+            return this;
+        }
+        
+        public BulkImporter build() {
+            return new BulkImporter(this);
+        }
+    }
+    
+    public static class ImportReport {
+
+        private final long rowCount;
+        private final long importedRecordCount;
+        private final long importedPatientCount;
+        private final long rejectedRowCount;
+        private final List<RowError> errors;
+        private final Duration elapsed;
+        
+        ImportReport(long rowCount, long importedRecordCount, long importedPatientCount, long rejectedRowCount,
+                     List<RowError> errors, Duration elapsed) {
+            this.rowCount = rowCount;
+            this.importedRecordCount = importedRecordCount;
+            this.importedPatientCount = importedPatientCount;
+            this.rejectedRowCount = rejectedRowCount;
+            this.errors = List.copyOf(errors);
+            this.elapsed = elapsed;
+        }
+        
+        public long getRowCount() {
+            return rowCount;
+        }
+        
+        public long getImportedRecordCount() {
+            return importedRecordCount;
+        }
+        
+        public long getImportedPatientCount() {
+            return importedPatientCount;
+        }
+        
+        public long getRejectedRowCount() {
+            return rejectedRowCount;
+        }
+        
+        /**
+         * The first rejected rows, up to the builder's error limit. Every
+         * rejection is also passed to the error handler.
+         */
+        public List<RowError> getErrors() {
+            return errors;
+        }
+        
+        public Duration getElapsed() {
+            return elapsed;
+        }
+    }
+    
+    public static class RowError {
+
+        private final long line;
+        private final String message;
+        
+        RowError(long line, String message) {
+            this.line = line;
+            this.message = message;
+        }
+        
+        public long getLine() {
+            return line;
+        }
+        
+        public String getMessage() {
+            return message;
+        }
+        
+        @Override
+        public String toString() {
+            return "line " + line + ": " + message;
+        }
+    }
+    
+    private interface Stage {
+        void run() throws IOException, InterruptedException;
+    }
+    
+    private static class Batch {
+
+        private final long index;
+        private final long firstLine;
+        private List<String> lines;
+        private Row[] rows;
+        
+        Batch(long index, long firstLine, List<String> lines) {
+            this.index = index;
+            this.firstLine = firstLine;
+            this.lines = lines;
+        }
+    }
+    
+    private static class Row {
+
+        private final long line;
+        private final String error;
+        private final Patient patient;
+        private final Doctor doctor;
+        private final MedicalRecord record;
+        
+        Row(long line, String error, Patient patient, Doctor doctor, MedicalRecord record) {
+            this.line = line;
+            this.error = error;
+            this.patient = patient;
+            this.doctor = doctor;
+            this.record = record;
+        }
+    }
+    
+    private class Run {
+
+        private final BufferedReader reader;
+        private final RowParser parser;
+        private final long linesBefore;
+        private final LocalDate today = LocalDate.now();
+        private final Semaphore inFlight = new Semaphore(window);
+        private final BlockingQueue<Batch> parsing = new ArrayBlockingQueue<>(window + parallelism);
+        private final BlockingQueue<Batch> deduping = new ArrayBlockingQueue<>(window + parallelism);
+        private final BlockingQueue<List<MedicalRecord>> indexing = new ArrayBlockingQueue<>(window + 1);
+        private final List<Thread> threads = new ArrayList<>();
+        private final Map<String, Patient> patients = new HashMap<>();
+        private final Map<String, Doctor> doctors = new HashMap<>();
+        private final Set<String> pendingRecordIds = ConcurrentHashMap.newKeySet();
+        private final List<RowError> errors = new ArrayList<>();
+        private long rowCount;
+        private long rejectedRowCount;
+        private long importedPatientCount;
+        private long importedRecordCount;
+        private volatile Throwable failure;
+        
+        Run(BufferedReader reader, RowParser parser, long linesBefore) {
+            this.reader = reader;
+            this.parser = parser;
+            this.linesBefore = linesBefore;
+            knownPatients.forEach(patient -> patients.put(patient.getPatientId(), patient));
+            knownDoctors.forEach(doctor -> doctors.put(doctor.getDoctorId(), doctor));
+        }
+        
+        ImportReport execute(long started) throws IOException {
+            stage("bulk-import-reader", this::read);
+            for (int i = 0; i < parallelism; i++) {
+                stage("bulk-import-parser-" + i, this::parse);
+            }
+            stage("bulk-import-dedupe", this::dedupe);
+            stage("bulk-import-index", this::index);
+            synchronized (this) {
+                threads.forEach(Thread::start);
+            }
+            boolean interrupted = false;
+            for (Thread thread : threads) {
+                while (thread.isAlive()) {
+                    try {
+                        thread.join();
+                    } catch (InterruptedException e) {
+                        interrupted = true;
+                        abort(new InterruptedIOException("Import was interrupted"));
+                    }
+                }
+            }
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+            Throwable cause = failure;
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            }
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            return new ImportReport(rowCount, importedRecordCount, importedPatientCount, rejectedRowCount, errors,
+                    Duration.ofNanos(System.nanoTime() - started));
+        }
+        
+        private void stage(String name, Stage stage) {
+            Thread thread = new Thread(() -> {
+                try {
+                    stage.run();
+                } catch (InterruptedException e) {
+                    abort(new InterruptedIOException(name + " was interrupted"));
+                } catch (Throwable e) {
+                    abort(e);
+                }
+            }, name);
+            thread.setDaemon(true);
+            threads.add(thread);
+        }
+        
+        private synchronized void abort(Throwable cause) {
+            if (failure == null) {
+                failure = cause;
+                threads.forEach(Thread::interrupt);
+            }
+        }
+        
+        private void read() throws IOException, InterruptedException {
+            long index = 0;
+            long line = linesBefore;
+            List<String> lines = new ArrayList<>(batchSize);
+            String text;
+            while ((text = reader.readLine()) != null) {
+                lines.add(text);
+                if (lines.size() == batchSize) {
+                    submit(new Batch(index++, line + 1, lines));
+                    line += lines.size();
+                    lines = new ArrayList<>(batchSize);
+                }
+            }
+            if (!lines.isEmpty()) {
+                submit(new Batch(index, line + 1, lines));
+            }
+            for (int i = 0; i < parallelism; i++) {
+                parsing.put(END_OF_BATCHES);
+            }
+        }
+        
+        private void submit(Batch batch) throws InterruptedException {
+            inFlight.acquire();
+            parsing.put(batch);
+        }
+        
+        private void parse() throws InterruptedException {
+            while (true) {
+                Batch batch = parsing.take();
+                if (batch == END_OF_BATCHES) {
+                    deduping.put(END_OF_BATCHES);
+                    return;
+                }
+                Row[] rows = new Row[batch.lines.size()];
+                for (int i = 0; i < rows.length; i++) {
+                    String text = batch.lines.get(i);
+                    if (!text.isBlank()) {
+                        rows[i] = parseRow(batch.firstLine + i, text);
+                    }
+                }
+                batch.rows = rows;
+                batch.lines = null;
+                deduping.put(batch);
+            }
+        }
+        
+        private Row parseRow(long line, String text) {
+            try {
+                return validate(line, parser.parse(text), today);
+            } catch (IllegalArgumentException e) {
+                return new Row(line, e.getMessage(), null, null, null);
+            }
+        }
+        
+        private void dedupe() throws InterruptedException {
+            Map<Long, Batch> reordered = new HashMap<>();
+            long next = 0;
+            int finishedParsers = 0;
+            while (finishedParsers < parallelism) {
+                Batch batch = deduping.take();
+                if (batch == END_OF_BATCHES) {
+                    finishedParsers++;
+                    continue;
+                }
+                reordered.put(batch.index, batch);
+                for (Batch ready = reordered.remove(next); ready != null; ready = reordered.remove(++next)) {
+                    List<MedicalRecord> records = resolve(ready);
+                    if (!records.isEmpty()) {
+                        indexing.put(records);
+                    }
+                    inFlight.release();
+                }
+            }
+            indexing.put(END_OF_RECORDS);
+        }
+        
+        private List<MedicalRecord> resolve(Batch batch) {
+            List<MedicalRecord> records = new ArrayList<>();
+            for (Row row : batch.rows) {
+                if (row == null) {
+                    continue;
+                }
+                rowCount++;
+                if (row.error != null) {
+                    reject(row.line, row.error);
+                    continue;
+                }
+                Patient patient = patients.get(row.patient.getPatientId());
+                String conflict = patient == null ? null : patientConflict(patient, row.patient);
+                Doctor doctor = row.doctor == null ? null : doctors.get(row.doctor.getDoctorId());
+                if (conflict == null && doctor != null) {
+                    conflict = doctorConflict(doctor, row.doctor);
+                }
+                String recordId = row.record == null ? null : row.record.getRecordId();
+                if (conflict == null && recordId != null) {
+                    if (pendingRecordIds.contains(recordId)) {
+                        conflict = "Record " + recordId + " appears more than once";
+                    } else if (MedicalRecord.MedicalRecordManager.getRecord(recordId) != null) {
+                        conflict = "Record " + recordId + " already exists";
+                    }
+                }
+                if (conflict != null) {
+                    reject(row.line, conflict);
+                    continue;
+                }
+                if (patient == null) {
+                    patient = row.patient;
+                    patients.put(patient.getPatientId(), patient);
+                    importedPatientCount++;
+                    patientHandler.accept(patient);
+                } else {
+                    fillPatient(patient, row.patient);
+                }
+                if (doctor == null && row.doctor != null) {
+                    doctor = row.doctor;
+                    doctors.put(doctor.getDoctorId(), doctor);
+                } else if (doctor != null) {
+                    fillDoctor(doctor, row.doctor);
+                }
+                if (row.record != null) {
+                    if (recordId != null) {
+                        pendingRecordIds.add(recordId);
+                    }
+                    row.record.setPatient(patient);
+                    row.record.setDoctor(doctor);
+                    records.add(row.record);
+                }
+            }
+            return records;
+        }
+        
+        private void reject(long line, String message) {
+            RowError error = new RowError(line, message);
+            rejectedRowCount++;
+            if (errors.size() < errorLimit) {
+                errors.add(error);
+            }
+            errorHandler.accept(error);
+        }
+        
+        private void index() throws InterruptedException {
+            while (true) {
+                List<MedicalRecord> records = indexing.take();
+                if (records == END_OF_RECORDS) {
+                    return;
+                }
+                MedicalRecord.MedicalRecordManager.addRecords(records);
+                records.forEach(record -> pendingRecordIds.remove(record.getRecordId()));
+                importedRecordCount += records.size();
+            }
+        }
+    }
+    
+    private static Row validate(long line, String[] values, LocalDate today) {
+        String patientId = values[Column.PATIENT_ID.ordinal()];
+        if (!PatientValidator.isValidPatientId(patientId)) {
+            throw new IllegalArgumentException("Missing " + Column.PATIENT_ID.getKey());
+        }
+        LocalDate dateOfBirth = parse(values, Column.DATE_OF_BIRTH, LocalDate::parse);
+        if (dateOfBirth != null && dateOfBirth.isAfter(today)) {
+            throw new IllegalArgumentException(Column.DATE_OF_BIRTH.getKey() + " " + dateOfBirth + " is in the future");
+        }
+        String email = values[Column.EMAIL.ordinal()];
+        if (email != null && !PatientValidator.isValidEmail(email)) {
+            throw new IllegalArgumentException("Invalid " + Column.EMAIL.getKey() + " '" + email + "'");
+        }
+        String phoneNumber = values[Column.PHONE_NUMBER.ordinal()];
+        if (phoneNumber != null && !PatientValidator.isValidPhoneNumber(phoneNumber)) {
+            throw new IllegalArgumentException("Invalid " + Column.PHONE_NUMBER.getKey() + " '" + phoneNumber + "'");
+        }
+        Patient patient = new Patient(patientId, values[Column.FIRST_NAME.ordinal()],
+                values[Column.LAST_NAME.ordinal()], dateOfBirth);
+        patient.setEmail(email);
+        patient.setPhoneNumber(phoneNumber);
+        
+        Doctor doctor = null;
+        if (values[Column.DOCTOR_ID.ordinal()] != null) {
+            doctor = new Doctor(values[Column.DOCTOR_ID.ordinal()], values[Column.LICENSE_NUMBER.ordinal()]);
+            doctor.setFirstName(values[Column.DOCTOR_FIRST_NAME.ordinal()]);
+            doctor.setLastName(values[Column.DOCTOR_LAST_NAME.ordinal()]);
+            doctor.setSpecialization(values[Column.SPECIALIZATION.ordinal()]);
+        } else if (anyPresent(values, Column.LICENSE_NUMBER, Column.SPECIALIZATION)) {
+            throw new IllegalArgumentException("Doctor details need a " + Column.DOCTOR_ID.getKey());
+        }
+        
+        MedicalRecord record = null;
+        if (anyPresent(values, Column.RECORD_ID, Column.TEST_RESULTS)) {
+            record = new MedicalRecord();
+            record.setRecordId(values[Column.RECORD_ID.ordinal()]);
+            record.setRecordDate(parse(values, Column.RECORD_DATE, BulkImporter::parseDateTime));
+            record.setType(parse(values, Column.TYPE, value -> parseEnum(RecordType.values(), RecordType::getDisplayName, value)));
+            record.setStatus(parse(values, Column.STATUS, value -> parseEnum(RecordStatus.values(), RecordStatus::getDisplayName, value)));
+            record.setDiagnosis(values[Column.DIAGNOSIS.ordinal()]);
+            record.setSymptoms(values[Column.SYMPTOMS.ordinal()]);
+            record.setTreatment(values[Column.TREATMENT.ordinal()]);
+            String testResults = values[Column.TEST_RESULTS.ordinal()];
+            if (testResults != null) {
+                int start = 0;
+                while (start <= testResults.length()) {
+                    int end = testResults.indexOf(RowParser.LIST_SEPARATOR, start);
+                    end = end < 0 ? testResults.length() : end;
+                    record.addTestResult(testResults.substring(start, end));
+                    start = end + 1;
+                }
+            }
+        }
+        return new Row(line, null, patient, doctor, record);
+    }
+    
+    private static boolean anyPresent(String[] values, Column first, Column last) {
+        for (int i = first.ordinal(); i <= last.ordinal(); i++) {
+            if (values[i] != null) {
+                return true;
+            }
+        }
+        return false;
+    }
+    
+    private static <T> T parse(String[] values, Column column, Function<String, T> parser) {
+        String value = values[column.ordinal()];
+        if (value == null) {
+            return null;
+        }
+        try {
+            return parser.apply(value);
+        } catch (DateTimeParseException | IllegalArgumentException e) {
+            throw new IllegalArgumentException("Invalid " + column.getKey() + " '" + value + "'");
+        }
+    }
+    
+    private static LocalDateTime parseDateTime(String value) {
+        return value.indexOf('T') < 0 ? LocalDate.parse(value).atStartOfDay() : LocalDateTime.parse(value);
+    }
+    
+    private static <E extends Enum<E>> E parseEnum(E[] constants, Function<E, String> displayName, String value) {
+        for (E constant : constants) {
+            if (constant.name().equalsIgnoreCase(value) || displayName.apply(constant).equalsIgnoreCase(value)) {
+                return constant;
+            }
+        }
+        throw new IllegalArgumentException(value);
+    }
+    
+    private static String patientConflict(Patient existing, Patient row) {
+        return conflict("Patient " + existing.getPatientId(),
+                Column.FIRST_NAME, existing.getFirstName(), row.getFirstName(),
+                Column.LAST_NAME, existing.getLastName(), row.getLastName(),
+                Column.DATE_OF_BIRTH, existing.getDateOfBirth(), row.getDateOfBirth(),
+                Column.EMAIL, existing.getEmail(), row.getEmail(),
+                Column.PHONE_NUMBER, existing.getPhoneNumber(), row.getPhoneNumber());
+    }
+    
+    private static String doctorConflict(Doctor existing, Doctor row) {
+        return conflict("Doctor " + existing.getDoctorId(),
+                Column.LICENSE_NUMBER, existing.getLicenseNumber(), row.getLicenseNumber(),
+                Column.DOCTOR_FIRST_NAME, existing.getFirstName(), row.getFirstName(),
+                Column.DOCTOR_LAST_NAME, existing.getLastName(), row.getLastName(),
+                Column.SPECIALIZATION, existing.getSpecialization(), row.getSpecialization());
+    }
+    
+    private static String conflict(String subject, Object... columnsAndValues) {
+        for (int i = 0; i < columnsAndValues.length; i += 3) {
+            Object existing = columnsAndValues[i + 1];
+            Object given = columnsAndValues[i + 2];
+            if (existing != null && given != null && !existing.equals(given)) {
+                return subject + " has " + ((Column) columnsAndValues[i]).getKey() + " '" + existing
+                        + "' from an earlier row but '" + given + "' here";
+            }
+        }
+        return null;
+    }
+    
+    private static void fillPatient(Patient patient, Patient row) {
+        if (patient.getFirstName() == null) {
+            patient.setFirstName(row.getFirstName());
+        }
+        if (patient.getLastName() == null) {
+            patient.setLastName(row.getLastName());
+        }
+        if (patient.getDateOfBirth() == null) {
+            patient.setDateOfBirth(row.getDateOfBirth());
+        }
+        if (patient.getEmail() == null) {
+            patient.setEmail(row.getEmail());
+        }
+        if (patient.getPhoneNumber() == null) {
+            patient.setPhoneNumber(row.getPhoneNumber());
+        }
+    }
+    
+    private static void fillDoctor(Doctor doctor, Doctor row) {
+        if (doctor.getLicenseNumber() == null) {
+            doctor.setLicenseNumber(row.getLicenseNumber());
+        }
+        if (doctor.getFirstName() == null) {
+            doctor.setFirstName(row.getFirstName());
+        }
+        if (doctor.getLastName() == null) {
+            doctor.setLastName(row.getLastName());
+        }
+        if (doctor.getSpecialization() == null) {
+            doctor.setSpecialization(row.getSpecialization());
+        }
+    }
+}
@@ -0,0 +1,733 @@
+package org.healthhub.io;
+
+import org.healthhub.model.Appointment;
+import org.healthhub.model.Doctor;
+import org.healthhub.model.MedicalRecord;
+import org.healthhub.model.Patient;
+import org.healthhub.model.Prescription;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.util.List;
+
+/**
+ * Streams patient charts as JSON straight into one direct buffer that is
+ * drained to a channel whenever it fills up. Text is escaped and UTF-8
+ * encoded character by character and numbers and dates are written digit by
+ * digit, so exporting a chart allocates nothing proportional to its size.
+ * <p>
+ * {@link Format#NDJSON} writes one object per chart and line, with the
+ * patient's fields at the top level and its records, appointments and
+ * prescriptions as nested arrays. Patient and record keys and enum names
+ * match the columns {@link BulkImporter} reads, but a chart line is not an
+ * importable row.
+ * {@link Format#BUNDLE} writes a single FHIR-style collection bundle with a
+ * Patient, Encounter (one per medical record), Appointment and
+ * MedicationRequest (one per prescribed medication) resource per entry.
+ * The exporter is not thread-safe, and closing it closes the channel.
+ */
+public class ChartExporter implements AutoCloseable {
+
+    public static final int DEFAULT_BUFFER_SIZE = 64 * 1024;
+    private static final int MIN_BUFFER_SIZE = 64;
+    private static final String EXTENSION_PREFIX = "urn:healthhub:";
+    
+    private final WritableByteChannel channel;
+    private final Format format;
+    private final ByteBuffer buffer;
+    private boolean needsComma;
+    private boolean started;
+    private boolean closed;
+    private long bytesWritten;
+    private long chartCount;
+    
+    public ChartExporter(WritableByteChannel channel, Format format) {
+        this(channel, format, DEFAULT_BUFFER_SIZE);
+    }
+    
+    public ChartExporter(WritableByteChannel channel, Format format, int bufferSize) {
+        if (bufferSize < MIN_BUFFER_SIZE) {
+            throw new IllegalArgumentException("Buffer size must be at least " + MIN_BUFFER_SIZE + " bytes");
+        }
+        this.channel = channel;
+        this.format = format;
+        this.buffer = ByteBuffer.allocateDirect(bufferSize);
+    }
+    
+    public static ChartExporter open(Path file, Format format) throws IOException {
+        return new ChartExporter(FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING), format);
+    }
+    
+    public void write(PatientChart chart) throws IOException {
+        if (closed) {
+            throw new IllegalStateException("Exporter is closed");
+        }
+        start();
+        if (format == Format.NDJSON) {
+            writeChart(chart);
+            raw('\n');
+        } else {
+            writeBundleEntries(chart);
+        }
+        chartCount++;
+    }
+    
+    public void writeAll(Iterable<PatientChart> charts) throws IOException {
+        for (PatientChart chart : charts) {
+            write(chart);
+        }
+    }
+    
+    /**
+     * Drains buffered output to the channel. Output is also drained whenever
+     * the buffer fills and on close.
+     */
+    public void flush() throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            bytesWritten += channel.write(buffer);
+        }
+        buffer.clear();
+    }
+    
+    @Override
+    public void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        try {
+            start();
+            if (format == Format.BUNDLE) {
+                endArray();
+                endObject();
+                raw('\n');
+            }
+            flush();
+        } finally {
+            channel.close();
+        }
+    }
+    
+    public long getBytesWritten() {
+        return bytesWritten;
+    }
+    
+    public long getChartCount() {
+        return chartCount;
+    }
+    
+    public enum Format {
+
+        NDJSON,
+        BUNDLE
+    }
+    
+    private void start() throws IOException {
+        if (started) {
+            return;
+        }
+        started = true;
+        if (format == Format.BUNDLE) {
+            beginObject();
+            field("resourceType", "Bundle");
+            field("type", "collection");
+            key("entry");
+            beginArray();
+        }
+    }
+    
+    private void writeChart(PatientChart chart) throws IOException {
+        Patient patient = chart.getPatient();
+        beginObject();
+        field("patientId", patient.getPatientId());
+        field("firstName", patient.getFirstName());
+        field("lastName", patient.getLastName());
+        field("dateOfBirth", patient.getDateOfBirth());
+        field("email", patient.getEmail());
+        field("phoneNumber", patient.getPhoneNumber());
+        key("records");
+        beginArray();
+        List<MedicalRecord> records = chart.getRecords();
+        for (int i = 0; i < records.size(); i++) {
+            MedicalRecord record = records.get(i);
+            element();
+            beginObject();
+            field("recordId", record.getRecordId());
+            field("recordDate", record.getRecordDate());
+            nameField("type", record.getType());
+            nameField("status", record.getStatus());
+            field("doctorId", doctorId(record.getDoctor()));
+            field("diagnosis", record.getDiagnosis());
+            field("symptoms", record.getSymptoms());
+            field("treatment", record.getTreatment());
+            stringsField("testResults", record.getTestResults());
+            endObject();
+        }
+        endArray();
+        key("appointments");
+        beginArray();
+        List<Appointment> appointments = chart.getAppointments();
+        for (int i = 0; i < appointments.size(); i++) {
+            Appointment appointment = appointments.get(i);
+            element();
+            beginObject();
+            field("appointmentId", appointment.getAppointmentId());
+            field("doctorId", doctorId(appointment.getDoctor()));
+            field("start", appointment.getAppointmentDateTime());
+            if (appointment.getDuration() != null) {
+                key("durationMinutes");
+                digits(appointment.getDuration().toMinutes());
+            }
+            nameField("status", appointment.getStatus());
+            field("reason", appointment.getReason());
+            field("notes", appointment.getNotes());
+            endObject();
+        }
+        endArray();
+        key("prescriptions");
+        beginArray();
+        List<Prescription> prescriptions = chart.getPrescriptions();
+        for (int i = 0; i < prescriptions.size(); i++) {
+            Prescription prescription = prescriptions.get(i);
+            element();
+            beginObject();
+            field("prescriptionId", prescription.getPrescriptionId());
+            field("doctorId", doctorId(prescription.getDoctor()));
+            field("issueDate", prescription.getIssueDate());
+            field("expiryDate", prescription.getExpiryDate());
+            nameField("status", prescription.getStatus());
+            field("instructions", prescription.getInstructions());
+            key("medications");
+            beginArray();
+            List<Prescription.Medication> medications = medications(prescription);
+            for (int j = 0; j < medications.size(); j++) {
+                Prescription.Medication medication = medications.get(j);
+                element();
+                beginObject();
+                field("name", medication.getName());
+                field("dosage", medication.getDosage());
+                field("frequency", medication.getFrequency());
+                key("quantity");
+                digits(medication.getQuantity());
+                endObject();
+            }
+            endArray();
+            endObject();
+        }
+        endArray();
+        endObject();
+    }
+    
+    private void writeBundleEntries(PatientChart chart) throws IOException {
+        Patient patient = chart.getPatient();
+        beginEntry("Patient", patient.getPatientId());
+        if (patient.getFirstName() != null || patient.getLastName() != null) {
+            key("name");
+            beginArray();
+            element();
+            beginObject();
+            field("family", patient.getLastName());
+            if (patient.getFirstName() != null) {
+                key("given");
+                beginArray();
+                element();
+                string(patient.getFirstName());
+                endArray();
+            }
+            endObject();
+            endArray();
+        }
+        field("birthDate", patient.getDateOfBirth());
+        if (patient.getEmail() != null || patient.getPhoneNumber() != null) {
+            key("telecom");
+            beginArray();
+            contactPoint("email", patient.getEmail());
+            contactPoint("phone", patient.getPhoneNumber());
+            endArray();
+        }
+        endEntry();
+        
+        List<MedicalRecord> records = chart.getRecords();
+        for (int i = 0; i < records.size(); i++) {
+            MedicalRecord record = records.get(i);
+            beginEntry("Encounter", record.getRecordId());
+            enumField("status", record.getStatus());
+            if (record.getType() != null) {
+                key("type");
+                beginArray();
+                element();
+                beginObject();
+                field("text", record.getType().getDisplayName());
+                endObject();
+                endArray();
+            }
+            reference("subject", "Patient/", patient.getPatientId());
+            if (record.getDoctor() != null) {
+                key("participant");
+                beginArray();
+                element();
+                beginObject();
+                reference("individual", "Practitioner/", record.getDoctor().getDoctorId());
+                endObject();
+                endArray();
+            }
+            if (record.getRecordDate() != null) {
+                key("period");
+                beginObject();
+                field("start", record.getRecordDate());
+                endObject();
+            }
+            if (record.getDiagnosis() != null) {
+                key("reasonCode");
+                beginArray();
+                element();
+                beginObject();
+                field("text", record.getDiagnosis());
+                endObject();
+                endArray();
+            }
+            List<String> testResults = record.getTestResults();
+            if (record.getSymptoms() != null || record.getTreatment() != null || testResults != null) {
+                key("extension");
+                beginArray();
+                extension("symptoms", record.getSymptoms());
+                extension("treatment", record.getTreatment());
+                if (testResults != null) {
+                    for (int j = 0; j < testResults.size(); j++) {
+                        extension("testResult", testResults.get(j));
+                    }
+                }
+                endArray();
+            }
+            endEntry();
+        }
+        
+        List<Appointment> appointments = chart.getAppointments();
+        for (int i = 0; i < appointments.size(); i++) {
+            Appointment appointment = appointments.get(i);
+            beginEntry("Appointment", appointment.getAppointmentId());
+            enumField("status", appointment.getStatus());
+            if (appointment.getAppointmentDateTime() != null) {
+                field("start", appointment.getAppointmentDateTime());
+                field("end", appointment.getEndDateTime());
+            }
+            if (appointment.getDuration() != null) {
+                key("minutesDuration");
+                digits(appointment.getDuration().toMinutes());
+            }
+            if (appointment.getReason() != null) {
+                key("reasonCode");
+                beginArray();
+                element();
+                beginObject();
+                field("text", appointment.getReason());
+                endObject();
+                endArray();
+            }
+            field("comment", appointment.getNotes());
+            key("participant");
+            beginArray();
+            element();
+            beginObject();
+            reference("actor", "Patient/", patient.getPatientId());
+            endObject();
+            if (appointment.getDoctor() != null) {
+                element();
+                beginObject();
+                reference("actor", "Practitioner/", appointment.getDoctor().getDoctorId());
+                endObject();
+            }
+            endArray();
+            endEntry();
+        }
+        
+        List<Prescription> prescriptions = chart.getPrescriptions();
+        for (int i = 0; i < prescriptions.size(); i++) {
+            Prescription prescription = prescriptions.get(i);
+            List<Prescription.Medication> medications = medications(prescription);
+            for (int j = 0; j < medications.size(); j++) {
+                Prescription.Medication medication = medications.get(j);
+                element();
+                beginObject();
+                key("resource");
+                beginObject();
+                field("resourceType", "MedicationRequest");
+                key("id");
+                raw('"');
+                stringBody(prescription.getPrescriptionId());
+                raw('-');
+                digits(j + 1);
+                raw('"');
+                key("groupIdentifier");
+                beginObject();
+                field("value", prescription.getPrescriptionId());
+                endObject();
+                enumField("status", prescription.getStatus());
+                field("intent", "order");
+                reference("subject", "Patient/", patient.getPatientId());
+                if (prescription.getDoctor() != null) {
+                    reference("requester", "Practitioner/", prescription.getDoctor().getDoctorId());
+                }
+                field("authoredOn", prescription.getIssueDate());
+                if (medication.getName() != null) {
+                    key("medicationCodeableConcept");
+                    beginObject();
+                    field("text", medication.getName());
+                    endObject();
+                }
+                if (medication.getDosage() != null || medication.getFrequency() != null) {
+                    key("dosageInstruction");
+                    beginArray();
+                    element();
+                    beginObject();
+                    key("text");
+                    raw('"');
+                    stringBody(medication.getDosage());
+                    if (medication.getDosage() != null && medication.getFrequency() != null) {
+                        raw(',');
+                        raw(' ');
+                    }
+                    stringBody(medication.getFrequency());
+                    raw('"');
+                    field("patientInstruction", prescription.getInstructions());
+                    endObject();
+                    endArray();
+                }
+                key("dispenseRequest");
+                beginObject();
+                key("quantity");
+                beginObject();
+                key("value");
+                digits(medication.getQuantity());
+                endObject();
+                if (prescription.getIssueDate() != null || prescription.getExpiryDate() != null) {
+                    key("validityPeriod");
+                    beginObject();
+                    field("start", prescription.getIssueDate());
+                    field("end", prescription.getExpiryDate());
+                    endObject();
+                }
+                endObject();
+                endObject();
+                endObject();
+            }
+        }
+    }
+    
+    private void beginEntry(String resourceType, String id) throws IOException {
+        element();
+        beginObject();
+        key("resource");
+        beginObject();
+        field("resourceType", resourceType);
+        field("id", id);
+    }
+    
+    private void endEntry() throws IOException {
+        endObject();
+        endObject();
+    }
+    
+    private void contactPoint(String system, String value) throws IOException {
+        if (value != null) {
+            element();
+            beginObject();
+            field("system", system);
+            field("value", value);
+            endObject();
+        }
+    }
+    
+    private void extension(String name, String value) throws IOException {
+        if (value != null) {
+            element();
+            beginObject();
+            key("url");
+            raw('"');
+            ascii(EXTENSION_PREFIX);
+            ascii(name);
+            raw('"');
+            field("valueString", value);
+            endObject();
+        }
+    }
+    
+    private void reference(String name, String type, String id) throws IOException {
+        key(name);
+        beginObject();
+        key("reference");
+        raw('"');
+        ascii(type);
+        stringBody(id);
+        raw('"');
+        endObject();
+    }
+    
+    private static String doctorId(Doctor doctor) {
+        return doctor == null ? null : doctor.getDoctorId();
+    }
+    
+    private static List<Prescription.Medication> medications(Prescription prescription) {
+        return prescription.getMedications() == null ? List.of() : prescription.getMedications();
+    }
+    
+    private void field(String key, String value) throws IOException {
+        if (value != null) {
+            key(key);
+            string(value);
+        }
+    }
+    
+    private void field(String key, LocalDate value) throws IOException {
+        if (value != null) {
+            key(key);
+            raw('"');
+            date(value);
+            raw('"');
+        }
+    }
+    
+    private void field(String key, LocalDateTime value) throws IOException {
+        if (value != null) {
+            key(key);
+            raw('"');
+            date(value.toLocalDate());
+            raw('T');
+            time(value.toLocalTime());
+            raw('"');
+        }
+    }
+    
+    private void nameField(String key, Enum<?> value) throws IOException {
+        if (value != null) {
+            field(key, value.name());
+        }
+    }
+    
+    /**
+     * Writes the constant's name in lower case with dashes, e.g.
+     * {@code in-progress}, without building a new string.
+     */
+    private void enumField(String key, Enum<?> value) throws IOException {
+        if (value != null) {
+            key(key);
+            raw('"');
+            String name = value.name();
+            for (int i = 0; i < name.length(); i++) {
+                char c = name.charAt(i);
+                raw(c == '_' ? '-' : Character.toLowerCase(c));
+            }
+            raw('"');
+        }
+    }
+    
+    private void stringsField(String key, List<String> values) throws IOException {
+        if (values != null) {
+            key(key);
+            beginArray();
+            for (int i = 0; i < values.size(); i++) {
+                String value = values.get(i);
+                element();
+                if (value == null) {
+                    ascii("null");
+                } else {
+                    string(value);
+                }
+            }
+            endArray();
+        }
+    }
+    
+    private void beginObject() throws IOException {
+        raw('{');
+        needsComma = false;
+    }
+    
+    private void endObject() throws IOException {
+        raw('}');
+        needsComma = true;
+    }
+    
+    private void beginArray() throws IOException {
+        raw('[');
+        needsComma = false;
+    }
+    
+    private void endArray() throws IOException {
+        raw(']');
+        needsComma = true;
+    }
+    
+    private void element() throws IOException {
+        if (needsComma) {
+            raw(',');
+        }
+        needsComma = true;
+    }
+    
+    private void key(String key) throws IOException {
+        element();
+        raw('"');
+        ascii(key);
+        raw('"');
+        raw(':');
+    }
+    
+    private void string(String value) throws IOException {
+        raw('"');
+        stringBody(value);
+        raw('"');
+    }
+    
+    private void stringBody(String value) throws IOException {
+        if (value == null) {
+            return;
+        }
+        int length = value.length();
+        for (int i = 0; i < length; i++) {
+            if (buffer.remaining() < 6) {
+                flush();
+            }
+            char c = value.charAt(i);
+            if (c >= 0x20 && c < 0x80) {
+                if (c == '"' || c == '\\') {
+                    buffer.put((byte) '\\');
+                }
+                buffer.put((byte) c);
+            } else if (c < 0x20) {
+                escapeControl(c);
+            } else if (c < 0x800) {
+                buffer.put((byte) (0xC0 | (c >> 6)));
+                buffer.put((byte) (0x80 | (c & 0x3F)));
+            } else if (Character.isHighSurrogate(c) && i + 1 < length && Character.isLowSurrogate(value.charAt(i + 1))) {
+                int codePoint = Character.toCodePoint(c, value.charAt(++i));
+                buffer.put((byte) (0xF0 | (codePoint >> 18)));
+                buffer.put((byte) (0x80 | ((codePoint >> 12) & 0x3F)));
+                buffer.put((byte) (0x80 | ((codePoint >> 6) & 0x3F)));
+                buffer.put((byte) (0x80 | (codePoint & 0x3F)));
+            } else if (Character.isSurrogate(c)) {
+                buffer.put((byte) '?');
+            } else {
+                buffer.put((byte) (0xE0 | (c >> 12)));
+                buffer.put((byte) (0x80 | ((c >> 6) & 0x3F)));
+                buffer.put((byte) (0x80 | (c & 0x3F)));
+            }
+        }
+    }
+    
+    private void escapeControl(char c) {
+        buffer.put((byte) '\\');
+        switch (c) {
+            case '\n':
+                buffer.put((byte) 'n');
+                break;
+            case '\r':
+                buffer.put((byte) 'r');
+                break;
+            case '\t':
+                buffer.put((byte) 't');
+                break;
+            case '\b':
+                buffer.put((byte) 'b');
+                break;
+            case '\f':
+                buffer.put((byte) 'f');
+                break;
+            default:
+                buffer.put((byte) 'u').put((byte) '0').put((byte) '0');
+                buffer.put((byte) Character.forDigit(c >> 4, 16)).put((byte) Character.forDigit(c & 0xF, 16));
+        }
+    }
+    
+    private void digits(long value) throws IOException {
+        if (buffer.remaining() < 20) {
+            flush();
+        }
+        if (value < 0) {
+            buffer.put((byte) '-');
+            if (value == Long.MIN_VALUE) {
+                ascii("9223372036854775808");
+                return;
+            }
+            value = -value;
+        }
+        long divisor = 1;
+        while (divisor <= value / 10) {
+            divisor *= 10;
+        }
+        for (; divisor > 0; divisor /= 10) {
+            buffer.put((byte) ('0' + value / divisor % 10));
+        }
+    }
+    
+    private void date(LocalDate date) throws IOException {
+        int year = date.getYear();
+        if (year < 0 || year > 9999) {
+            ascii(date.toString());
+            return;
+        }
+        padded(year, 4);
+        raw('-');
+        padded(date.getMonthValue(), 2);
+        raw('-');
+        padded(date.getDayOfMonth(), 2);
+    }
+    
+    /**
+     * Always writes seconds, and the fraction in groups of three digits like
+     * {@link LocalTime#toString()}, so the value parses back with
+     * {@link LocalDateTime#parse}.
+     */
+    private void time(LocalTime time) throws IOException {
+        padded(time.getHour(), 2);
+        raw(':');
+        padded(time.getMinute(), 2);
+        raw(':');
+        padded(time.getSecond(), 2);
+        int nano = time.getNano();
+        if (nano != 0) {
+            raw('.');
+            if (nano % 1_000_000 == 0) {
+                padded(nano / 1_000_000, 3);
+            } else if (nano % 1_000 == 0) {
+                padded(nano / 1_000, 6);
+            } else {
+                padded(nano, 9);
+            }
+        }
+    }
+    
+    private void padded(int value, int width) throws IOException {
+        if (buffer.remaining() < width) {
+            flush();
+        }
+        int divisor = 1;
+        for (int i = 1; i < width; i++) {
+            divisor *= 10;
+        }
+        for (; divisor > 0; divisor /= 10) {
+            buffer.put((byte) ('0' + value / divisor % 10));
+        }
+    }
+    
+    private void ascii(String value) throws IOException {
+        for (int i = 0; i < value.length(); i++) {
+            raw(value.charAt(i));
+        }
+    }
+    
+    private void raw(char c) throws IOException {
+        if (!buffer.hasRemaining()) {
+            flush();
+        }
+        buffer.put((byte) c);
+    }
+}
@@ -0,0 +1,66 @@
+package org.healthhub.io;
+
+import org.healthhub.model.Appointment;
+import org.healthhub.model.MedicalRecord;
+import org.healthhub.model.Patient;
+import org.healthhub.model.Prescription;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * A patient together with everything exported alongside it. Prescriptions are
+ * not indexed by patient anywhere, so callers pass them in.
+ */
+public class PatientChart {
+
+    private final Patient patient;
+    private final List<MedicalRecord> records;
+    private final List<Appointment> appointments;
+    private final List<Prescription> prescriptions;
+    
+    public PatientChart(Patient patient, Collection<MedicalRecord> records, Collection<Appointment> appointments,
+                        Collection<Prescription> prescriptions) {
+        this.patient = patient;
+        this.records = List.copyOf(records);
+        this.appointments = List.copyOf(appointments);
+        this.prescriptions = List.copyOf(prescriptions);
+    }
+    
+    /**
+     * Collects the patient's own medical records, followed by any other
+     * records the record manager holds for the patient, and the patient's
+     * appointments from the scheduler.
+     */
+    public static PatientChart of(Patient patient, Collection<Prescription> prescriptions) {
+        List<MedicalRecord> records = new ArrayList<>(patient.getMedicalRecords());
+        Set<MedicalRecord> seen = Collections.newSetFromMap(new IdentityHashMap<>());
+        seen.addAll(records);
+        for (MedicalRecord record : MedicalRecord.MedicalRecordManager.getRecordsForPatient(patient)) {
+            if (seen.add(record)) {
+                records.add(record);
+            }
+        }
+        return new PatientChart(patient, records, Appointment.AppointmentScheduler.getAppointmentsForPatient(patient),
+                prescriptions);
+    }
+    
+    public Patient getPatient() {
+        return patient;
+    }
+    
+    public List<MedicalRecord> getRecords() {
+        return records;
+    }
+    
+    public List<Appointment> getAppointments() {
+        return appointments;
+    }
+    
+    public List<Prescription> getPrescriptions() {
+        return prescriptions;
+    }
+}
@@ -0,0 +1,343 @@
+package org.healthhub.io;
+
+import org.healthhub.io.BulkImporter.Column;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Turns one input line into column values. Parsers are stateless after
+ * construction and are shared by all parse workers; a malformed line is
+ * reported with an {@link IllegalArgumentException}.
+ */
+abstract class RowParser {
+
+    static final char LIST_SEPARATOR = '|';
+    
+    abstract String[] parse(String line);
+    
+    static RowParser csv(String header) {
+        return new Csv(header);
+    }
+    
+    static RowParser ndjson() {
+        return new Ndjson();
+    }
+    
+    /**
+     * Comma-separated values with a header line naming the columns. Fields may
+     * be quoted, with {@code ""} for a literal quote; a quoted field cannot span
+     * lines. Columns the importer does not know are ignored, and an empty field
+     * is a missing value.
+     */
+    private static class Csv extends RowParser {
+
+        private final Column[] columns;
+        
+        Csv(String header) {
+            List<String> names = split(header);
+            columns = new Column[names.size()];
+            boolean[] seen = new boolean[Column.values().length];
+            for (int i = 0; i < names.size(); i++) {
+                Column column = Column.forKey(names.get(i).trim());
+                if (column != null) {
+                    if (seen[column.ordinal()]) {
+                        throw new IllegalArgumentException("Column " + column.getKey() + " appears twice in the header");
+                    }
+                    seen[column.ordinal()] = true;
+                }
+                columns[i] = column;
+            }
+            if (!seen[Column.PATIENT_ID.ordinal()]) {
+                throw new IllegalArgumentException("The header has no " + Column.PATIENT_ID.getKey() + " column");
+            }
+        }
+        
+        @Override
+        String[] parse(String line) {
+            List<String> fields = split(line);
+            if (fields.size() != columns.length) {
+                throw new IllegalArgumentException("Expected " + columns.length + " fields but found " + fields.size());
+            }
+            String[] values = new String[Column.values().length];
+            for (int i = 0; i < columns.length; i++) {
+                if (columns[i] != null && !fields.get(i).isEmpty()) {
+                    values[columns[i].ordinal()] = fields.get(i);
+                }
+            }
+            return values;
+        }
+        
+        private static List<String> split(String line) {
+            List<String> fields = new ArrayList<>();
+            StringBuilder field = new StringBuilder();
+            int i = 0;
+            while (true) {
+                if (i < line.length() && line.charAt(i) == '"') {
+                    i++;
+                    while (true) {
+                        if (i == line.length()) {
+                            throw new IllegalArgumentException("Unterminated quoted field");
+                        }
+                        char c = line.charAt(i++);
+                        if (c != '"') {
+                            field.append(c);
+                        } else if (i < line.length() && line.charAt(i) == '"') {
+                            field.append('"');
+                            i++;
+                        } else {
+                            break;
+                        }
+                    }
+                    if (i < line.length() && line.charAt(i) != ',') {
+                        throw new IllegalArgumentException("Unexpected character after quoted field at column " + (i + 1));
+                    }
+                } else {
+                    int end = line.indexOf(',', i);
+                    end = end < 0 ? line.length() : end;
+                    field.append(line, i, end);
+                    i = end;
+                }
+                fields.add(field.toString());
+                field.setLength(0);
+                if (i == line.length()) {
+                    return fields;
+                }
+                i++;
+            }
+        }
+    }
+    
+    /**
+     * One flat JSON object per line, keyed by column name. Values may be
+     * strings, numbers, booleans or null; an array of such values is accepted
+     * for list columns. Keys the importer does not know are skipped, nested
+     * objects are rejected.
+     */
+    private static class Ndjson extends RowParser {
+
+        @Override
+        String[] parse(String line) {
+            return new Cursor(line).object();
+        }
+    }
+    
+    private static class Cursor {
+
+        private final String text;
+        private final StringBuilder scratch = new StringBuilder();
+        private int position;
+        
+        Cursor(String text) {
+            this.text = text;
+        }
+        
+        String[] object() {
+            String[] values = new String[Column.values().length];
+            expect('{');
+            if (peek() == '}') {
+                position++;
+            } else {
+                do {
+                    String key = string();
+                    expect(':');
+                    Column column = Column.forKey(key);
+                    String value = peek() == '[' ? array() : scalar();
+                    if (column != null && value != null) {
+                        values[column.ordinal()] = value;
+                    }
+                } while (next(',', '}') == ',');
+            }
+            if (peek() != 0) {
+                throw error("Unexpected content after the object");
+            }
+            return values;
+        }
+        
+        private String array() {
+            expect('[');
+            if (peek() == ']') {
+                position++;
+                return null;
+            }
+            StringBuilder joined = new StringBuilder();
+            do {
+                String element = scalar();
+                if (element != null) {
+                    if (element.indexOf(LIST_SEPARATOR) >= 0) {
+                        throw error("List values must not contain '" + LIST_SEPARATOR + "'");
+                    }
+                    if (joined.length() > 0) {
+                        joined.append(LIST_SEPARATOR);
+                    }
+                    joined.append(element);
+                }
+            } while (next(',', ']') == ',');
+            return joined.length() == 0 ? null : joined.toString();
+        }
+        
+        private String scalar() {
+            char c = peek();
+            if (c == '"') {
+                return string();
+            }
+            if (c == '{' || c == '[') {
+                throw error("Nested values are not supported");
+            }
+            int start = position;
+            while (position < text.length() && "-+.eE0123456789abcdefghijklmnopqrstuvwxyz".indexOf(text.charAt(position)) >= 0) {
+                position++;
+            }
+            String literal = text.substring(start, position);
+            switch (literal) {
+                case "null":
+                    return null;
+                case "true":
+                case "false":
+                    return literal;
+                default:
+                    if (!isNumber(literal)) {
+                        throw error("Invalid value");
+                    }
+                    return literal;
+            }
+        }
+        
+        /**
+         * A JSON number, checked by hand so that numeric values on the import
+         * path are validated without a regular expression.
+         */
+        private static boolean isNumber(String literal) {
+            int length = literal.length();
+            int i = 0;
+            if (i < length && literal.charAt(i) == '-') {
+                i++;
+            }
+            if (i == length) {
+                return false;
+            }
+            if (literal.charAt(i) == '0') {
+                i++;
+            } else {
+                int start = i;
+                i = skipDigits(literal, i);
+                if (i == start) {
+                    return false;
+                }
+            }
+            if (i < length && literal.charAt(i) == '.') {
+                int start = ++i;
+                i = skipDigits(literal, i);
+                if (i == start) {
+                    return false;
+                }
+            }
+            if (i < length && (literal.charAt(i) == 'e' || literal.charAt(i) == 'E')) {
+                i++;
+                if (i < length && (literal.charAt(i) == '+' || literal.charAt(i) == '-')) {
+                    i++;
+                }
+                int start = i;
+                i = skipDigits(literal, i);
+                if (i == start) {
+                    return false;
+                }
+            }
+            return i == length;
+        }
+        
+        private static int skipDigits(String literal, int from) {
+            int i = from;
+            while (i < literal.length() && literal.charAt(i) >= '0' && literal.charAt(i) <= '9') {
+                i++;
+            }
+            return i;
+        }
+        
+        private String string() {
+            expect('"');
+            scratch.setLength(0);
+            while (true) {
+                if (position == text.length()) {
+                    throw error("Unterminated string");
+                }
+                char c = text.charAt(position++);
+                if (c == '"') {
+                    return scratch.toString();
+                }
+                if (c < 0x20) {
+                    throw error("Control character in string");
+                }
+                if (c != '\\') {
+                    scratch.append(c);
+                    continue;
+                }
+                if (position == text.length()) {
+                    throw error("Unterminated string");
+                }
+                char escaped = text.charAt(position++);
+                switch (escaped) {
+                    case '"':
+                    case '\\':
+                    case '/':
+                        scratch.append(escaped);
+                        break;
+                    case 'b':
+                        scratch.append('\b');
+                        break;
+                    case 'f':
+                        scratch.append('\f');
+                        break;
+                    case 'n':
+                        scratch.append('\n');
+                        break;
+                    case 'r':
+                        scratch.append('\r');
+                        break;
+                    case 't':
+                        scratch.append('\t');
+                        break;
+                    case 'u':
+                        if (position + 4 > text.length()) {
+                            throw error("Truncated unicode escape");
+                        }
+                        try {
+                            scratch.append((char) Integer.parseInt(text.substring(position, position + 4), 16));
+                        } catch (NumberFormatException e) {
+                            throw error("Invalid unicode escape");
+                        }
+                        position += 4;
+                        break;
+                    default:
+                        throw error("Invalid escape \\" + escaped);
+                }
+            }
+        }
+        
+        private char next(char first, char second) {
+            char c = peek();
+            if (c != first && c != second) {
+                throw error("Expected '" + first + "' or '" + second + "'");
+            }
+            position++;
+            return c;
+        }
+        
+        private void expect(char expected) {
+            if (peek() != expected) {
+                throw error("Expected '" + expected + "'");
+            }
+            position++;
+        }
+        
+        private char peek() {
+            while (position < text.length() && Character.isWhitespace(text.charAt(position))) {
+                position++;
+            }
+            return position < text.length() ? text.charAt(position) : 0;
+        }
+        
+        private IllegalArgumentException error(String message) {
+            return new IllegalArgumentException(message + " at column " + (position + 1));
+        }
+    }
+}
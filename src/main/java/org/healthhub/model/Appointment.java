@@ -1,21 +1,53 @@
 package org.healthhub.model;
 
+import org.healthhub.util.IdGenerator;
+import org.healthhub.util.TimeOrderedIdGenerator;
+import org.healthhub.util.TimingWheel;
+import java.time.Duration;
+import java.time.LocalDate;
 import java.time.LocalDateTime;
+import java.time.ZoneOffset;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.Comparator;
+import java.util.EnumMap;
+import java.util.NavigableMap;
+import java.util.NavigableSet;
+import java.util.PriorityQueue;
+import java.util.Queue;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
 
 public class Appointment {
 
+    public static final Duration DEFAULT_DURATION = Duration.ofMinutes(30);
+    
     private String appointmentId;
     private Patient patient;
     private Doctor doctor;
     private LocalDateTime appointmentDateTime;
+    private Duration duration = DEFAULT_DURATION;
     private AppointmentStatus status;
     private String reason;
     private String notes;
-
-
+    private volatile AppointmentScheduler.DoctorSchedule schedule;
+    private TimingWheel.Timer<Appointment> noShowTimer;
     
+
     public String getAppointmentId() {
         return appointmentId;
     }
@@ -29,7 +61,7 @@ public class Appointment {
     }
     
     public void setPatient(Patient patient) {
-        this.patient = patient;
+        AppointmentScheduler.reassignPatient(this, patient);
     }
     
     public Doctor getDoctor() {
@@ -37,7 +69,7 @@ public class Appointment {
     }
     
     public void setDoctor(Doctor doctor) {
-        this.doctor = doctor;
+        AppointmentScheduler.reschedule(this, doctor, appointmentDateTime, duration);
     }
     
     public LocalDateTime getAppointmentDateTime() {
@@ -45,7 +77,26 @@ public class Appointment {
     }
     
     public void setAppointmentDateTime(LocalDateTime appointmentDateTime) {
-        this.appointmentDateTime = appointmentDateTime;
+        AppointmentScheduler.reschedule(this, doctor, appointmentDateTime, duration);
+    }
+    
+    public Duration getDuration() {
+        return duration;
+    }
+    
+    public void setDuration(Duration duration) {
+        requirePositive(duration);
+        AppointmentScheduler.reschedule(this, doctor, appointmentDateTime, duration);
+    }
+    
+    private static void requirePositive(Duration duration) {
+        if (duration == null || duration.isZero() || duration.isNegative()) {
+            throw new IllegalArgumentException("Duration must be positive");
+        }
+    }
+    
+    public LocalDateTime getEndDateTime() {
+        return appointmentDateTime == null ? null : appointmentDateTime.plus(duration);
     }
     
     public AppointmentStatus getStatus() {
@@ -53,7 +104,7 @@ public class Appointment {
     }
     
     public void setStatus(AppointmentStatus status) {
-        this.status = status;
+        AppointmentScheduler.changeStatus(this, status);
     }
     
     public String getReason() {
@@ -73,11 +124,11 @@ public class Appointment {
     }
     
     public void cancel() {
-        this.status = AppointmentStatus.CANCELLED;
+        setStatus(AppointmentStatus.CANCELLED);
     }
     
     public void complete() {
-        this.status = AppointmentStatus.COMPLETED;
+        setStatus(AppointmentStatus.COMPLETED);
     }
     
     public enum AppointmentStatus {
@@ -102,48 +153,932 @@ public class Appointment {
     
     public static class AppointmentScheduler {
 
-        private static List<Appointment> scheduledAppointments = new ArrayList<>();
+        private static final ConcurrentMap<Doctor, DoctorSchedule> doctorSchedules = new ConcurrentHashMap<>();
+        private static final ConcurrentMap<Patient, Queue<Appointment>> patientAppointments = new ConcurrentHashMap<>();
+        private static final int MAX_WAITLIST_WINDOW_DAYS = 31;
+        private static final Map<AppointmentStatus, LongAdder> statusCounts = newStatusCounters();
+        private static volatile IdGenerator idGenerator = TimeOrderedIdGenerator.shared();
+        private static final TimingWheel<Appointment> noShowWheel = new TimingWheel<>(minuteCeil(LocalDateTime.now()));
+        private static volatile Duration noShowGracePeriod = Duration.ofMinutes(15);
+        private static ScheduledExecutorService noShowSweeper;
         
         public static Appointment scheduleAppointment(Patient patient, Doctor doctor, LocalDateTime dateTime) {
-            if (isTimeSlotAvailable(doctor, dateTime)) {
-                String appointmentId = generateAppointmentId();
-                Appointment appointment = new Appointment();
-                appointment.setAppointmentId(appointmentId);
-                appointment.setPatient(patient);
-                appointment.setDoctor(doctor);
-                appointment.setAppointmentDateTime(dateTime);
-                appointment.setStatus(AppointmentStatus.SCHEDULED);
-                scheduledAppointments.add(appointment);
-                return appointment;
+            return scheduleAppointment(patient, doctor, dateTime, DEFAULT_DURATION);
+        }
+        
+        public static Appointment scheduleAppointment(Patient patient, Doctor doctor, LocalDateTime dateTime, Duration duration) {
+            requirePositive(duration);
+            String appointmentId = generateAppointmentId();
+            DoctorSchedule schedule = scheduleFor(doctor);
+            Appointment appointment;
+            synchronized (schedule) {
+                if (!schedule.isFree(dateTime, duration)) {
+                    throw new IllegalStateException("Time slot not available");
+                }
+                appointment = book(schedule, appointmentId, patient, doctor, dateTime, duration);
+            }
+            indexPatient(appointment, patient);
+            return appointment;
+        }
+        
+        public static List<BookingResult> scheduleAppointments(Collection<BookingRequest> requests) {
+            List<BookingRequest> orderedRequests = new ArrayList<>(requests);
+            BookingResult[] results = new BookingResult[orderedRequests.size()];
+            Map<Doctor, List<Integer>> requestsByDoctor = new HashMap<>();
+            for (int i = 0; i < orderedRequests.size(); i++) {
+                BookingRequest request = orderedRequests.get(i);
+                if (request == null || request.getDoctor() == null || request.getDateTime() == null
+                        || request.getDuration() == null || request.getDuration().isZero() || request.getDuration().isNegative()) {
+                    results[i] = BookingResult.rejected(request, RejectionReason.INVALID_REQUEST);
+                } else {
+                    requestsByDoctor.computeIfAbsent(request.getDoctor(), key -> new ArrayList<>()).add(i);
+                }
+            }
+            
+            for (Map.Entry<Doctor, List<Integer>> entry : requestsByDoctor.entrySet()) {
+                DoctorSchedule schedule = scheduleFor(entry.getKey());
+                Set<Appointment> bookedInBatch = new HashSet<>();
+                synchronized (schedule) {
+                    for (int index : entry.getValue()) {
+                        BookingRequest request = orderedRequests.get(index);
+                        List<Appointment> conflicts = schedule.bookedBetween(request.getDateTime(),
+                                request.getDateTime().plus(request.getDuration()));
+                        if (conflicts.isEmpty()) {
+                            Appointment appointment = book(schedule, generateAppointmentId(), request.getPatient(),
+                                    request.getDoctor(), request.getDateTime(), request.getDuration());
+                            bookedInBatch.add(appointment);
+                            results[index] = BookingResult.booked(request, appointment);
+                        } else if (bookedInBatch.containsAll(conflicts)) {
+                            results[index] = BookingResult.rejected(request, RejectionReason.CONFLICTS_WITH_BATCH);
+                        } else {
+                            results[index] = BookingResult.rejected(request, RejectionReason.SLOT_TAKEN);
+                        }
+                    }
+                }
+            }
+            
+            for (BookingResult result : results) {
+                if (result.isBooked()) {
+                    indexPatient(result.getAppointment(), result.getRequest().getPatient());
+                }
             }
-            throw new IllegalStateException("Time slot not available");
+            return List.of(results);
         }
         
         public static boolean isTimeSlotAvailable(Doctor doctor, LocalDateTime dateTime) {
-            return scheduledAppointments.stream()
-                    .noneMatch(apt -> apt.getDoctor().equals(doctor) 
-                            && apt.getAppointmentDateTime().equals(dateTime)
-                            && apt.getStatus() != AppointmentStatus.CANCELLED);
+            return isTimeSlotAvailable(doctor, dateTime, DEFAULT_DURATION);
+        }
+        
+        public static boolean isTimeSlotAvailable(Doctor doctor, LocalDateTime dateTime, Duration duration) {
+            DoctorSchedule schedule = doctorSchedules.get(doctor);
+            if (schedule == null) {
+                return true;
+            }
+            synchronized (schedule) {
+                return schedule.isFree(dateTime, duration);
+            }
+        }
+        
+        public static List<FreeSlot> findEarliestFreeSlots(Collection<Doctor> doctors, Doctor.Specialization specialization,
+                                                           LocalDateTime from, LocalDateTime to, Duration duration, int limit) {
+            long fromGranule = DoctorSchedule.granuleCeil(from);
+            long toGranule = DoctorSchedule.granuleFloor(to);
+            int length = DoctorSchedule.granulesFor(duration);
+            PriorityQueue<FreeSlot> candidates = new PriorityQueue<>((a, b) -> a.getStart().compareTo(b.getStart()));
+            for (Doctor doctor : doctors) {
+                if (specialization == null || specialization.matches(doctor.getSpecialization())) {
+                    FreeSlot slot = nextFreeSlot(doctor, fromGranule, toGranule, length);
+                    if (slot != null) {
+                        candidates.add(slot);
+                    }
+                }
+            }
+            
+            List<FreeSlot> slots = new ArrayList<>();
+            while (slots.size() < limit && !candidates.isEmpty()) {
+                FreeSlot slot = candidates.poll();
+                slots.add(slot);
+                FreeSlot next = nextFreeSlot(slot.getDoctor(), DoctorSchedule.granuleCeil(slot.getEnd()), toGranule, length);
+                if (next != null) {
+                    candidates.add(next);
+                }
+            }
+            return slots;
+        }
+        
+        static FreeSlot nextFreeSlot(Doctor doctor, long fromGranule, long toGranule, int length) {
+            DoctorSchedule schedule = doctorSchedules.get(doctor);
+            long start;
+            if (schedule == null) {
+                start = fromGranule + length <= toGranule ? fromGranule : DoctorSchedule.NO_FREE_RUN;
+            } else {
+                synchronized (schedule) {
+                    start = schedule.nextFreeRun(fromGranule, toGranule, length);
+                }
+            }
+            return start == DoctorSchedule.NO_FREE_RUN ? null : new FreeSlot(doctor, DoctorSchedule.granuleStart(start), DoctorSchedule.granuleStart(start + length));
+        }
+        
+        public static WaitlistEntry joinWaitlist(Patient patient, Doctor doctor, LocalDateTime earliestStart,
+                                                 LocalDateTime latestStart, Duration duration, Urgency urgency) {
+            if (earliestStart.isAfter(latestStart)) {
+                throw new IllegalArgumentException("Earliest start must not be after latest start");
+            }
+            if (Duration.between(earliestStart, latestStart).toDays() > MAX_WAITLIST_WINDOW_DAYS) {
+                throw new IllegalArgumentException("Waitlist window cannot exceed " + MAX_WAITLIST_WINDOW_DAYS + " days");
+            }
+            WaitlistEntry entry = new WaitlistEntry(patient, doctor, earliestStart, latestStart, duration, urgency);
+            DoctorSchedule schedule = scheduleFor(doctor);
+            synchronized (schedule) {
+                schedule.enlist(entry);
+            }
+            return entry;
+        }
+        
+        public static boolean leaveWaitlist(WaitlistEntry entry) {
+            DoctorSchedule schedule = scheduleFor(entry.getDoctor());
+            synchronized (schedule) {
+                return schedule.delist(entry);
+            }
+        }
+        
+        public static List<WaitlistEntry> getWaitlist(Doctor doctor) {
+            DoctorSchedule schedule = doctorSchedules.get(doctor);
+            if (schedule == null) {
+                return List.of();
+            }
+            synchronized (schedule) {
+                return List.copyOf(schedule.waitlist);
+            }
+        }
+        
+        public static List<Appointment> getBookedAppointmentsBetween(Doctor doctor, LocalDateTime from, LocalDateTime to) {
+            DoctorSchedule schedule = doctorSchedules.get(doctor);
+            if (schedule == null) {
+                return List.of();
+            }
+            synchronized (schedule) {
+                return schedule.bookedBetween(from, to);
+            }
         }
         
         public static List<Appointment> getAppointmentsForDoctor(Doctor doctor) {
-            return scheduledAppointments.stream()
-                    .filter(apt -> apt.getDoctor().equals(doctor))
-                    .toList();
+            DoctorSchedule schedule = doctorSchedules.get(doctor);
+            if (schedule == null) {
+                return List.of();
+            }
+            synchronized (schedule) {
+                return List.copyOf(schedule.appointments);
+            }
         }
         
         public static List<Appointment> getAppointmentsForPatient(Patient patient) {
-            return scheduledAppointments.stream()
-                    .filter(apt -> apt.getPatient().equals(patient))
-                    .toList();
+            Queue<Appointment> appointments = patientAppointments.get(patient);
+            return appointments == null ? List.of() : List.copyOf(appointments);
         }
         
         public static void clearAllAppointments() {
-            scheduledAppointments.clear();
+            for (DoctorSchedule schedule : doctorSchedules.values()) {
+                synchronized (schedule) {
+                    schedule.clear();
+                }
+            }
+            doctorSchedules.clear();
+            patientAppointments.clear();
+        }
+        
+        public static long getStatusCount(AppointmentStatus status) {
+            return statusCounts.get(status).sum();
+        }
+        
+        public static long getStatusCount(Doctor doctor, AppointmentStatus status) {
+            DoctorSchedule schedule = doctorSchedules.get(doctor);
+            return schedule == null ? 0 : schedule.statusCounts.get(status).sum();
+        }
+        
+        public static Map<AppointmentStatus, Long> getStatusCounts() {
+            Map<AppointmentStatus, Long> counts = new EnumMap<>(AppointmentStatus.class);
+            statusCounts.forEach((status, count) -> counts.put(status, count.sum()));
+            return counts;
+        }
+        
+        private static Map<AppointmentStatus, LongAdder> newStatusCounters() {
+            Map<AppointmentStatus, LongAdder> counters = new EnumMap<>(AppointmentStatus.class);
+            for (AppointmentStatus status : AppointmentStatus.values()) {
+                counters.put(status, new LongAdder());
+            }
+            return counters;
+        }
+        
+        public static void setIdGenerator(IdGenerator generator) {
+            idGenerator = generator;
+        }
+        
+        public static void setNoShowGracePeriod(Duration gracePeriod) {
+            noShowGracePeriod = gracePeriod;
+        }
+        
+        /**
+         * Marks appointments whose grace period has ended by {@code now} as
+         * no-shows. The wheel only advances to the start of the current
+         * minute, so no timer fires before its deadline; an appointment that
+         * is still within its grace period anyway, because the period was
+         * lengthened, is re-armed rather than dropped.
+         */
+        public static int sweepNoShows(LocalDateTime now) {
+            Map<DoctorSchedule, List<Appointment>> dueBySchedule = new HashMap<>();
+            for (Appointment appointment : noShowWheel.advanceTo(minuteFloor(now))) {
+                DoctorSchedule schedule = appointment.schedule;
+                if (schedule != null) {
+                    dueBySchedule.computeIfAbsent(schedule, key -> new ArrayList<>()).add(appointment);
+                }
+            }
+            int transitioned = 0;
+            for (Map.Entry<DoctorSchedule, List<Appointment>> entry : dueBySchedule.entrySet()) {
+                DoctorSchedule schedule = entry.getKey();
+                synchronized (schedule) {
+                    for (Appointment appointment : entry.getValue()) {
+                        if (appointment.schedule != schedule || !awaitsArrival(appointment.status)) {
+                            continue;
+                        }
+                        if (now.isBefore(appointment.appointmentDateTime.plus(noShowGracePeriod))) {
+                            schedule.trackArrival(appointment);
+                        } else {
+                            schedule.transition(appointment, AppointmentStatus.NO_SHOW);
+                            transitioned++;
+                        }
+                    }
+                }
+            }
+            return transitioned;
+        }
+        
+        public static synchronized void startNoShowSweeper(Duration interval) {
+            if (noShowSweeper != null) {
+                return;
+            }
+            noShowSweeper = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "no-show-sweeper");
+                thread.setDaemon(true);
+                return thread;
+            });
+            noShowSweeper.scheduleAtFixedRate(() -> sweepNoShows(LocalDateTime.now()),
+                    interval.toMillis(), interval.toMillis(), TimeUnit.MILLISECONDS);
+        }
+        
+        public static synchronized void stopNoShowSweeper() {
+            if (noShowSweeper != null) {
+                noShowSweeper.shutdownNow();
+                noShowSweeper = null;
+            }
+        }
+        
+        private static boolean awaitsArrival(AppointmentStatus status) {
+            return status == AppointmentStatus.SCHEDULED || status == AppointmentStatus.CONFIRMED;
+        }
+        
+        private static long minuteFloor(LocalDateTime dateTime) {
+            return Math.floorDiv(dateTime.toEpochSecond(ZoneOffset.UTC), 60);
+        }
+        
+        private static long minuteCeil(LocalDateTime dateTime) {
+            return Math.floorDiv(dateTime.toEpochSecond(ZoneOffset.UTC) + 59, 60);
         }
         
         private static String generateAppointmentId() {
-            return "APT-" + System.currentTimeMillis();
+            return idGenerator.nextId("APT-");
+        }
+        
+        private static boolean occupiesSlot(AppointmentStatus status) {
+            return status != AppointmentStatus.CANCELLED;
+        }
+        
+        static List<Appointment> bookAtomically(List<BookingRequest> requests) {
+            Map<DoctorSchedule, List<BookingRequest>> requestsBySchedule = new HashMap<>();
+            for (BookingRequest request : requests) {
+                requestsBySchedule.computeIfAbsent(scheduleFor(request.getDoctor()), key -> new ArrayList<>()).add(request);
+            }
+            List<DoctorSchedule> schedules = new ArrayList<>(requestsBySchedule.keySet());
+            schedules.sort(Comparator.comparingLong(schedule -> schedule.lockOrder));
+            List<Appointment> appointments = lockAll(schedules, 0, () -> {
+                for (Map.Entry<DoctorSchedule, List<BookingRequest>> entry : requestsBySchedule.entrySet()) {
+                    List<BookingRequest> ordered = new ArrayList<>(entry.getValue());
+                    ordered.sort(Comparator.comparing(BookingRequest::getDateTime));
+                    LocalDateTime previousEnd = null;
+                    for (BookingRequest request : ordered) {
+                        if ((previousEnd != null && previousEnd.isAfter(request.getDateTime()))
+                                || !entry.getKey().isFree(request.getDateTime(), request.getDuration())) {
+                            throw new IllegalStateException("Time slot not available");
+                        }
+                        previousEnd = request.getDateTime().plus(request.getDuration());
+                    }
+                }
+                List<Appointment> booked = new ArrayList<>();
+                for (BookingRequest request : requests) {
+                    booked.add(book(scheduleFor(request.getDoctor()), generateAppointmentId(), request.getPatient(),
+                            request.getDoctor(), request.getDateTime(), request.getDuration()));
+                }
+                return booked;
+            });
+            for (Appointment appointment : appointments) {
+                indexPatient(appointment, appointment.patient);
+            }
+            return appointments;
+        }
+        
+        private static <T> T lockAll(List<DoctorSchedule> schedules, int index, Supplier<T> action) {
+            if (index == schedules.size()) {
+                return action.get();
+            }
+            synchronized (schedules.get(index)) {
+                return lockAll(schedules, index + 1, action);
+            }
+        }
+        
+        private static Appointment book(DoctorSchedule schedule, String appointmentId, Patient patient,
+                                        Doctor doctor, LocalDateTime dateTime, Duration duration) {
+            Appointment appointment = new Appointment();
+            appointment.setAppointmentId(appointmentId);
+            appointment.setPatient(patient);
+            appointment.setDoctor(doctor);
+            appointment.setAppointmentDateTime(dateTime);
+            appointment.setDuration(duration);
+            appointment.setStatus(AppointmentStatus.SCHEDULED);
+            schedule.add(appointment);
+            return appointment;
+        }
+        
+        private static DoctorSchedule scheduleFor(Doctor doctor) {
+            return doctorSchedules.computeIfAbsent(doctor, key -> new DoctorSchedule());
+        }
+        
+        private static void indexPatient(Appointment appointment, Patient patient) {
+            if (patient != null) {
+                patientAppointments.computeIfAbsent(patient, key -> new ConcurrentLinkedQueue<>()).add(appointment);
+            }
+        }
+        
+        static void changeStatus(Appointment appointment, AppointmentStatus status) {
+            while (true) {
+                DoctorSchedule schedule = appointment.schedule;
+                if (schedule == null) {
+                    appointment.status = status;
+                    return;
+                }
+                synchronized (schedule) {
+                    if (appointment.schedule == schedule) {
+                        schedule.transition(appointment, status);
+                        return;
+                    }
+                }
+            }
+        }
+        
+        /**
+         * Moves the appointment under both schedule locks. It points at the
+         * target schedule before it leaves the current one, so a concurrent
+         * writer never sees it unscheduled in the middle of a move.
+         */
+        static void reschedule(Appointment appointment, Doctor doctor, LocalDateTime dateTime, Duration duration) {
+            while (true) {
+                DoctorSchedule current = appointment.schedule;
+                if (current == null) {
+                    appointment.doctor = doctor;
+                    appointment.appointmentDateTime = dateTime;
+                    appointment.duration = duration;
+                    return;
+                }
+                DoctorSchedule target = doctor == null ? null : scheduleFor(doctor);
+                DoctorSchedule first = target == null || current.lockOrder <= target.lockOrder ? current : target;
+                DoctorSchedule second = first == current && target != null ? target : current;
+                synchronized (first) {
+                    synchronized (second) {
+                        if (appointment.schedule != current) {
+                            continue;
+                        }
+                        if (target == current) {
+                            current.move(appointment, dateTime, duration);
+                            return;
+                        }
+                        if (target != null && occupiesSlot(appointment.status) && !target.isFree(dateTime, duration)) {
+                            throw new IllegalStateException("Time slot not available");
+                        }
+                        appointment.schedule = target;
+                        current.remove(appointment);
+                        appointment.doctor = doctor;
+                        appointment.appointmentDateTime = dateTime;
+                        appointment.duration = duration;
+                        if (target != null) {
+                            target.add(appointment);
+                        }
+                        return;
+                    }
+                }
+            }
+        }
+        
+        static void reassignPatient(Appointment appointment, Patient patient) {
+            while (true) {
+                DoctorSchedule schedule = appointment.schedule;
+                if (schedule == null) {
+                    appointment.patient = patient;
+                    return;
+                }
+                synchronized (schedule) {
+                    if (appointment.schedule != schedule) {
+                        continue;
+                    }
+                    Patient previousPatient = appointment.patient;
+                    appointment.patient = patient;
+                    if (previousPatient == patient) {
+                        return;
+                    }
+                    if (previousPatient != null) {
+                        Queue<Appointment> previousAppointments = patientAppointments.get(previousPatient);
+                        if (previousAppointments != null) {
+                            previousAppointments.remove(appointment);
+                        }
+                    }
+                    indexPatient(appointment, patient);
+                    return;
+                }
+            }
+        }
+        
+        static class DoctorSchedule {
+
+            static final long NO_FREE_RUN = Long.MIN_VALUE;
+            
+            private static final int GRANULE_SECONDS = 5 * 60;
+            private static final int GRANULES_PER_DAY = 24 * 60 * 60 / GRANULE_SECONDS;
+            private static final int WORDS_PER_DAY = (GRANULES_PER_DAY + 63) / 64;
+            private static final AtomicLong lockOrders = new AtomicLong();
+            
+            private final long lockOrder = lockOrders.incrementAndGet();
+            private final List<Appointment> appointments = new ArrayList<>();
+            private final NavigableMap<LocalDateTime, Appointment> bookedSlots = new TreeMap<>();
+            private final Map<Long, long[]> dayBitmaps = new HashMap<>();
+            private long bitmapsFromDay = Long.MIN_VALUE;
+            private final NavigableSet<WaitlistEntry> waitlist = new TreeSet<>(WaitlistEntry.PRIORITY_ORDER);
+            private final Map<AppointmentStatus, LongAdder> statusCounts = newStatusCounters();
+            private final Map<Long, NavigableSet<WaitlistEntry>> waitlistByDay = new HashMap<>();
+            
+            boolean isFree(LocalDateTime start, Duration duration) {
+                if (start == null) {
+                    return true;
+                }
+                Map.Entry<LocalDateTime, Appointment> before = bookedSlots.floorEntry(start);
+                if (before != null && before.getValue().getEndDateTime().isAfter(start)) {
+                    return false;
+                }
+                LocalDateTime next = bookedSlots.higherKey(start);
+                return next == null || !next.isBefore(start.plus(duration));
+            }
+            
+            List<Appointment> bookedBetween(LocalDateTime from, LocalDateTime to) {
+                if (!from.isBefore(to)) {
+                    return List.of();
+                }
+                LocalDateTime fromKey = from;
+                Map.Entry<LocalDateTime, Appointment> before = bookedSlots.lowerEntry(from);
+                if (before != null && before.getValue().getEndDateTime().isAfter(from)) {
+                    fromKey = before.getKey();
+                }
+                return new ArrayList<>(bookedSlots.subMap(fromKey, true, to, false).values());
+            }
+            
+            void add(Appointment appointment) {
+                appointments.add(appointment);
+                appointment.schedule = this;
+                count(appointment.status, 1);
+                if (occupiesSlot(appointment.status)) {
+                    occupy(appointment);
+                }
+                trackArrival(appointment);
+            }
+            
+            void remove(Appointment appointment) {
+                release(appointment);
+                appointments.remove(appointment);
+                if (appointment.schedule == this) {
+                    appointment.schedule = null;
+                }
+                count(appointment.status, -1);
+                trackArrival(appointment);
+            }
+            
+            void transition(Appointment appointment, AppointmentStatus status) {
+                boolean wasOccupying = occupiesSlot(appointment.status);
+                boolean isOccupying = occupiesSlot(status);
+                if (!wasOccupying && isOccupying && !isFree(appointment.appointmentDateTime, appointment.duration)) {
+                    throw new IllegalStateException("Time slot not available");
+                }
+                boolean wasAwaitingArrival = awaitsArrival(appointment.status);
+                count(appointment.status, -1);
+                appointment.status = status;
+                count(status, 1);
+                if (wasOccupying && !isOccupying) {
+                    release(appointment);
+                } else if (!wasOccupying && isOccupying) {
+                    occupy(appointment);
+                }
+                if (wasAwaitingArrival != awaitsArrival(status)) {
+                    trackArrival(appointment);
+                }
+                if (status == AppointmentStatus.CANCELLED && wasOccupying && appointment.appointmentDateTime != null) {
+                    backfill(appointment.appointmentDateTime, appointment.getEndDateTime());
+                }
+            }
+            
+            void enlist(WaitlistEntry entry) {
+                waitlist.add(entry);
+                for (long day = entry.getEarliestStart().toLocalDate().toEpochDay();
+                     day <= entry.getLatestStart().toLocalDate().toEpochDay(); day++) {
+                    waitlistByDay.computeIfAbsent(day, key -> new TreeSet<>(WaitlistEntry.PRIORITY_ORDER)).add(entry);
+                }
+            }
+            
+            boolean delist(WaitlistEntry entry) {
+                if (!waitlist.remove(entry)) {
+                    return false;
+                }
+                for (long day = entry.getEarliestStart().toLocalDate().toEpochDay();
+                     day <= entry.getLatestStart().toLocalDate().toEpochDay(); day++) {
+                    NavigableSet<WaitlistEntry> entries = waitlistByDay.get(day);
+                    if (entries != null && entries.remove(entry) && entries.isEmpty()) {
+                        waitlistByDay.remove(day);
+                    }
+                }
+                return true;
+            }
+            
+            private void backfill(LocalDateTime freedStart, LocalDateTime freedEnd) {
+                LocalDateTime gapStart = freedStart;
+                while (gapStart.isBefore(freedEnd)) {
+                    NavigableSet<WaitlistEntry> candidates = waitlistByDay.get(gapStart.toLocalDate().toEpochDay());
+                    if (candidates == null) {
+                        return;
+                    }
+                    WaitlistEntry chosen = null;
+                    LocalDateTime chosenStart = null;
+                    for (WaitlistEntry entry : candidates) {
+                        LocalDateTime start = entry.getEarliestStart().isAfter(gapStart) ? entry.getEarliestStart() : gapStart;
+                        if (start.isBefore(freedEnd) && !start.isAfter(entry.getLatestStart()) && isFree(start, entry.getDuration())) {
+                            chosen = entry;
+                            chosenStart = start;
+                            break;
+                        }
+                    }
+                    if (chosen == null) {
+                        return;
+                    }
+                    delist(chosen);
+                    Appointment appointment = book(this, generateAppointmentId(), chosen.getPatient(),
+                            chosen.getDoctor(), chosenStart, chosen.getDuration());
+                    indexPatient(appointment, chosen.getPatient());
+                    chosen.appointment = appointment;
+                    gapStart = appointment.getEndDateTime();
+                }
+            }
+            
+            void move(Appointment appointment, LocalDateTime dateTime, Duration duration) {
+                if (!occupiesSlot(appointment.status)) {
+                    appointment.appointmentDateTime = dateTime;
+                    appointment.duration = duration;
+                    return;
+                }
+                release(appointment);
+                if (!isFree(dateTime, duration)) {
+                    occupy(appointment);
+                    throw new IllegalStateException("Time slot not available");
+                }
+                appointment.appointmentDateTime = dateTime;
+                appointment.duration = duration;
+                occupy(appointment);
+                trackArrival(appointment);
+            }
+            
+            long nextFreeRun(long fromGranule, long toGranule, int length) {
+                long granule = fromGranule;
+                long runStart = fromGranule;
+                while (granule - runStart < length) {
+                    if (runStart + length > toGranule) {
+                        return NO_FREE_RUN;
+                    }
+                    long day = Math.floorDiv(granule, GRANULES_PER_DAY);
+                    if (day < bitmapsFromDay) {
+                        granule++;
+                        if (!isFree(granuleStart(granule - 1), Duration.ofSeconds(GRANULE_SECONDS))) {
+                            runStart = granule;
+                        }
+                        continue;
+                    }
+                    long[] bitmap = dayBitmaps.get(day);
+                    int bit = Math.floorMod(granule, GRANULES_PER_DAY);
+                    if (bitmap == null) {
+                        granule += GRANULES_PER_DAY - bit;
+                        continue;
+                    }
+                    long word = bitmap[bit >>> 6] >>> (bit & 63);
+                    int remainingInWord = Math.min(64 - (bit & 63), GRANULES_PER_DAY - bit);
+                    if ((word & 1) != 0) {
+                        granule += Math.min(Long.numberOfTrailingZeros(~word), remainingInWord);
+                        runStart = granule;
+                    } else {
+                        granule += Math.min(Long.numberOfTrailingZeros(word), remainingInWord);
+                    }
+                }
+                return runStart;
+            }
+            
+            void clear() {
+                appointments.forEach(appointment -> {
+                    appointment.schedule = null;
+                    count(appointment.status, -1);
+                    trackArrival(appointment);
+                });
+                appointments.clear();
+                bookedSlots.clear();
+                dayBitmaps.clear();
+                waitlist.clear();
+                waitlistByDay.clear();
+            }
+            
+            private void count(AppointmentStatus status, int delta) {
+                if (status != null) {
+                    statusCounts.get(status).add(delta);
+                    AppointmentScheduler.statusCounts.get(status).add(delta);
+                }
+            }
+            
+            private void trackArrival(Appointment appointment) {
+                if (appointment.noShowTimer != null) {
+                    appointment.noShowTimer.cancel();
+                    appointment.noShowTimer = null;
+                }
+                if (appointment.schedule == this && awaitsArrival(appointment.status) && appointment.appointmentDateTime != null) {
+                    long deadline = minuteCeil(appointment.appointmentDateTime.plus(noShowGracePeriod));
+                    appointment.noShowTimer = noShowWheel.schedule(deadline, appointment);
+                }
+            }
+            
+            private void occupy(Appointment appointment) {
+                if (appointment.appointmentDateTime != null) {
+                    pruneBitmaps();
+                    bookedSlots.put(appointment.appointmentDateTime, appointment);
+                    long end = granuleCeil(appointment.getEndDateTime());
+                    long start = granuleFloor(appointment.appointmentDateTime);
+                    if (Math.floorDiv(start, GRANULES_PER_DAY) < bitmapsFromDay) {
+                        start = bitmapsFromDay * GRANULES_PER_DAY;
+                    }
+                    for (long granule = start; granule < end; granule++) {
+                        long[] bitmap = dayBitmaps.computeIfAbsent(Math.floorDiv(granule, GRANULES_PER_DAY), day -> new long[WORDS_PER_DAY]);
+                        int bit = Math.floorMod(granule, GRANULES_PER_DAY);
+                        bitmap[bit >>> 6] |= 1L << bit;
+                    }
+                }
+            }
+            
+            /**
+             * Free-slot bitmaps are only kept from today on. Past days are
+             * dropped once the date moves on; searches that reach back into
+             * them fall back to the booked slots.
+             */
+            private void pruneBitmaps() {
+                long today = LocalDate.now().toEpochDay();
+                if (today > bitmapsFromDay) {
+                    dayBitmaps.keySet().removeIf(day -> day < today);
+                    bitmapsFromDay = today;
+                }
+            }
+            
+            private void release(Appointment appointment) {
+                if (appointment.appointmentDateTime != null && bookedSlots.remove(appointment.appointmentDateTime, appointment)) {
+                    long end = granuleCeil(appointment.getEndDateTime());
+                    for (long granule = granuleFloor(appointment.appointmentDateTime); granule < end; granule++) {
+                        LocalDateTime granuleStart = granuleStart(granule);
+                        long[] bitmap = dayBitmaps.get(Math.floorDiv(granule, GRANULES_PER_DAY));
+                        if (bitmap != null && isFree(granuleStart, Duration.ofSeconds(GRANULE_SECONDS))) {
+                            int bit = Math.floorMod(granule, GRANULES_PER_DAY);
+                            bitmap[bit >>> 6] &= ~(1L << bit);
+                        }
+                    }
+                }
+            }
+            
+            static int granulesFor(Duration duration) {
+                long seconds = duration.getSeconds() + (duration.getNano() > 0 ? 1 : 0);
+                return (int) ((seconds + GRANULE_SECONDS - 1) / GRANULE_SECONDS);
+            }
+            
+            static long granuleFloor(LocalDateTime dateTime) {
+                return Math.floorDiv(dateTime.toEpochSecond(ZoneOffset.UTC), GRANULE_SECONDS);
+            }
+            
+            static long granuleCeil(LocalDateTime dateTime) {
+                long seconds = dateTime.toEpochSecond(ZoneOffset.UTC) + (dateTime.getNano() > 0 ? 1 : 0);
+                return Math.floorDiv(seconds + GRANULE_SECONDS - 1, GRANULE_SECONDS);
+            }
+            
+            static LocalDateTime granuleStart(long granule) {
+                return LocalDateTime.ofEpochSecond(granule * GRANULE_SECONDS, 0, ZoneOffset.UTC);
+            }
+        }
+        
+        public static class WaitlistEntry {
+
+            static final Comparator<WaitlistEntry> PRIORITY_ORDER = Comparator
+                    .comparing(WaitlistEntry::getUrgency)
+                    .thenComparingLong(entry -> entry.sequence);
+            
+            private static final AtomicLong sequences = new AtomicLong();
+            
+            private final long sequence = sequences.incrementAndGet();
+            private final Patient patient;
+            private final Doctor doctor;
+            private final LocalDateTime earliestStart;
+            private final LocalDateTime latestStart;
+            private final Duration duration;
+            private final Urgency urgency;
+            private final LocalDateTime requestedAt = LocalDateTime.now();
+            private volatile Appointment appointment;
+            
+            WaitlistEntry(Patient patient, Doctor doctor, LocalDateTime earliestStart, LocalDateTime latestStart,
+                          Duration duration, Urgency urgency) {
+                this.patient = patient;
+                this.doctor = doctor;
+                this.earliestStart = earliestStart;
+                this.latestStart = latestStart;
+                this.duration = duration;
+                this.urgency = urgency;
+            }
+            
+            public Patient getPatient() {
+                return patient;
+            }
+            
+            public Doctor getDoctor() {
+                return doctor;
+            }
+            
+            public LocalDateTime getEarliestStart() {
+                return earliestStart;
+            }
+            
+            public LocalDateTime getLatestStart() {
+                return latestStart;
+            }
+            
+            public Duration getDuration() {
+                return duration;
+            }
+            
+            public Urgency getUrgency() {
+                return urgency;
+            }
+            
+            public LocalDateTime getRequestedAt() {
+                return requestedAt;
+            }
+            
+            public Appointment getAppointment() {
+                return appointment;
+            }
+            
+            public boolean isFulfilled() {
+                return appointment != null;
+            }
+        }
+        
+        public enum Urgency {
+
+            URGENT("Urgent"),
+            SOON("Soon"),
+            ROUTINE("Routine");
+            
+            private final String displayName;
+            
+            Urgency(String displayName) {
+                this.displayName = displayName;
+            }
+            
+            public String getDisplayName() {
+                return displayName;
+            }
+        }
+        
+        public static class FreeSlot {
+
+            private final Doctor doctor;
+            private final LocalDateTime start;
+            private final LocalDateTime end;
+            
+            FreeSlot(Doctor doctor, LocalDateTime start, LocalDateTime end) {
+                this.doctor = doctor;
+                this.start = start;
+                this.end = end;
+            }
+            
+            public Doctor getDoctor() {
+                return doctor;
+            }
+            
+            public LocalDateTime getStart() {
+                return start;
+            }
+            
+            public LocalDateTime getEnd() {
+                return end;
+            }
+        }
+        
+        public static class BookingRequest {
+
+            private final Patient patient;
+            private final Doctor doctor;
+            private final LocalDateTime dateTime;
+            private final Duration duration;
+            
+            public BookingRequest(Patient patient, Doctor doctor, LocalDateTime dateTime) {
+                this(patient, doctor, dateTime, DEFAULT_DURATION);
+            }
+            
+            public BookingRequest(Patient patient, Doctor doctor, LocalDateTime dateTime, Duration duration) {
+                this.patient = patient;
+                this.doctor = doctor;
+                this.dateTime = dateTime;
+                this.duration = duration;
+            }
+            
+            public Patient getPatient() {
+                return patient;
+            }
+            
+            public Doctor getDoctor() {
+                return doctor;
+            }
+            
+            public LocalDateTime getDateTime() {
+                return dateTime;
+            }
+            
+            public Duration getDuration() {
+                return duration;
+            }
+        }
+        
+        public static class BookingResult {
+
+            private final BookingRequest request;
+            private final Appointment appointment;
+            private final RejectionReason rejectionReason;
+            
+            private BookingResult(BookingRequest request, Appointment appointment, RejectionReason rejectionReason) {
+                this.request = request;
+                this.appointment = appointment;
+                this.rejectionReason = rejectionReason;
+            }
+            
+            static BookingResult booked(BookingRequest request, Appointment appointment) {
+                return new BookingResult(request, appointment, null);
+            }
+            
+            static BookingResult rejected(BookingRequest request, RejectionReason reason) {
+                return new BookingResult(request, null, reason);
+            }
+            
+            public BookingRequest getRequest() {
+                return request;
+            }
+            
+            public Appointment getAppointment() {
+                return appointment;
+            }
+            
+            public RejectionReason getRejectionReason() {
+                return rejectionReason;
+            }
+            
+            public boolean isBooked() {
+                return appointment != null;
+            }
+        }
+        
+        public enum RejectionReason {
+
+            SLOT_TAKEN("Time slot not available"),
+            CONFLICTS_WITH_BATCH("Time slot requested earlier in the same batch"),
+            INVALID_REQUEST("Request is missing a doctor, time or positive duration");
+            
+            private final String displayName;
+            
+            RejectionReason(String displayName) {
+                this.displayName = displayName;
+            }
+            
+            public String getDisplayName() {
+                return displayName;
+            }
         }
         
         public static enum TimeSlot {
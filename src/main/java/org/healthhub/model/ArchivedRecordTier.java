@@ -0,0 +1,87 @@
+package org.healthhub.model;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.function.Consumer;
+
+/**
+ * Cold tier for archived medical records. Each record is kept as its encoded
+ * bytes plus references to its patient and doctor, which are shared with the
+ * hot set anyway. Reads decode detached copies: changing a returned record
+ * does not touch the archive.
+ */
+public class ArchivedRecordTier {
+
+    private final NavigableMap<Long, Entry> entries = new ConcurrentSkipListMap<>();
+    private final Map<Patient, NavigableMap<Long, Entry>> entriesByPatient = new ConcurrentHashMap<>();
+    private volatile long byteSize;
+    
+    void add(MedicalRecord record, byte[] payload) {
+        Entry entry = new Entry(record.getPatient(), record.getDoctor(), payload);
+        entries.put(record.getSequence(), entry);
+        if (record.getPatient() != null) {
+            entriesByPatient.computeIfAbsent(record.getPatient(), key -> new ConcurrentSkipListMap<>())
+                    .put(record.getSequence(), entry);
+        }
+        byteSize += payload.length;
+    }
+    
+    void forEachPayload(Consumer<byte[]> action) {
+        entries.values().forEach(entry -> action.accept(entry.payload));
+    }
+    
+    void clear() {
+        entries.clear();
+        entriesByPatient.clear();
+        byteSize = 0;
+    }
+    
+    public List<MedicalRecord> getRecords() {
+        return decode(entries.values());
+    }
+    
+    public List<MedicalRecord> getRecords(Patient patient) {
+        NavigableMap<Long, Entry> patientEntries = entriesByPatient.get(patient);
+        return patientEntries == null ? List.of() : decode(patientEntries.values());
+    }
+    
+    public int size() {
+        return entries.size();
+    }
+    
+    public long getByteSize() {
+        return byteSize;
+    }
+    
+    private static List<MedicalRecord> decode(Collection<Entry> archived) {
+        BinaryCodec decoder = new BinaryCodec();
+        List<MedicalRecord> records = new ArrayList<>();
+        for (Entry entry : archived) {
+            MedicalRecord record = decoder.fromBytes(ByteBuffer.wrap(entry.payload));
+            record.setSequence(0);
+            record.setPatient(entry.patient);
+            record.setDoctor(entry.doctor);
+            records.add(record);
+        }
+        return records;
+    }
+    
+    private static class Entry {
+
+        private final Patient patient;
+        private final Doctor doctor;
+        private final byte[] payload;
+        
+        Entry(Patient patient, Doctor doctor, byte[] payload) {
+            this.patient = patient;
+            this.doctor = doctor;
+            this.payload = payload;
+        }
+    }
+}
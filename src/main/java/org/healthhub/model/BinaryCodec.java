@@ -0,0 +1,648 @@
+package org.healthhub.model;
+
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Compact binary form of medical records, patients, doctors, appointments and
+ * prescriptions. Every message starts with the format version and an entity
+ * kind. Integers are varints (signed ones zigzag-encoded), absent fields are
+ * left out and flagged in a per-entity bitmask, and enums are written as codes
+ * from fixed tables so reordering an enum does not change the format.
+ * <p>
+ * A codec instance is a session: strings, patients and doctors written once
+ * are referred back to by index in later messages, so the reading side must
+ * decode the same messages in the same order. {@link #reset()} starts a new
+ * session; {@link #toBytes} and {@link #fromBytes} produce and read
+ * self-contained messages. If an encode overflows the target buffer the
+ * session is out of step with any reader and must be reset. Decoded patients
+ * and doctors are shared by id for the lifetime of the codec, so
+ * identity-keyed indexes survive a round trip.
+ */
+public class BinaryCodec {
+
+    public static final byte VERSION = 1;
+    public static final int MAX_REFERENCES = 1 << 16;
+    
+    private static final byte KIND_MEDICAL_RECORD = 1;
+    private static final byte KIND_PATIENT = 2;
+    private static final byte KIND_DOCTOR = 3;
+    private static final byte KIND_APPOINTMENT = 4;
+    private static final byte KIND_PRESCRIPTION = 5;
+    
+    private static final EnumTable<MedicalRecord.RecordType> RECORD_TYPES = new EnumTable<>(MedicalRecord.RecordType.class, List.of(
+            MedicalRecord.RecordType.CONSULTATION, MedicalRecord.RecordType.LAB_RESULT, MedicalRecord.RecordType.IMAGING,
+            MedicalRecord.RecordType.SURGERY, MedicalRecord.RecordType.EMERGENCY, MedicalRecord.RecordType.FOLLOW_UP));
+    private static final EnumTable<MedicalRecord.RecordStatus> RECORD_STATUSES = new EnumTable<>(MedicalRecord.RecordStatus.class, List.of(
+            MedicalRecord.RecordStatus.ACTIVE, MedicalRecord.RecordStatus.ARCHIVED, MedicalRecord.RecordStatus.DELETED));
+    private static final EnumTable<Appointment.AppointmentStatus> APPOINTMENT_STATUSES = new EnumTable<>(Appointment.AppointmentStatus.class, List.of(
+            Appointment.AppointmentStatus.SCHEDULED, Appointment.AppointmentStatus.CONFIRMED, Appointment.AppointmentStatus.IN_PROGRESS,
+            Appointment.AppointmentStatus.COMPLETED, Appointment.AppointmentStatus.CANCELLED, Appointment.AppointmentStatus.NO_SHOW));
+    private static final EnumTable<Prescription.PrescriptionStatus> PRESCRIPTION_STATUSES = new EnumTable<>(Prescription.PrescriptionStatus.class, List.of(
+            Prescription.PrescriptionStatus.ACTIVE, Prescription.PrescriptionStatus.EXPIRED,
+            Prescription.PrescriptionStatus.CANCELLED, Prescription.PrescriptionStatus.FULFILLED));
+    
+    private final Map<String, Integer> writtenStrings = new HashMap<>();
+    private final List<String> readStrings = new ArrayList<>();
+    private final Map<Object, Integer> writtenEntities = new IdentityHashMap<>();
+    private final List<Object> readEntities = new ArrayList<>();
+    private final Map<String, Patient> patients = new HashMap<>();
+    private final Map<String, Doctor> doctors = new HashMap<>();
+    private ByteBuffer scratch = ByteBuffer.allocate(512);
+    private byte[] stringBytes = new byte[64];
+    
+    public BinaryCodec reset() {
+        writtenStrings.clear();
+        readStrings.clear();
+        writtenEntities.clear();
+        readEntities.clear();
+        return this;
+    }
+    
+    public byte[] toBytes(MedicalRecord record) {
+        reset();
+        while (true) {
+            scratch.clear();
+            try {
+                encode(record, scratch);
+                return Arrays.copyOf(scratch.array(), scratch.position());
+            } catch (BufferOverflowException e) {
+                scratch = ByteBuffer.allocate(scratch.capacity() * 2);
+                reset();
+            }
+        }
+    }
+    
+    public MedicalRecord fromBytes(ByteBuffer in) {
+        reset();
+        return decodeMedicalRecord(in);
+    }
+    
+    public void encode(MedicalRecord record, ByteBuffer out) {
+        out.put(VERSION).put(KIND_MEDICAL_RECORD);
+        writeVarLong(out, record.getSequence());
+        int present = mask(record.getRecordId(), record.getPatient(), record.getDoctor(), record.getRecordDate(),
+                record.getDiagnosis(), record.getSymptoms(), record.getTreatment(), record.getTestResults(),
+                record.getType(), record.getStatus());
+        writeVarInt(out, present);
+        if ((present & 1) != 0) {
+            writeString(out, record.getRecordId());
+        }
+        if ((present & 1 << 1) != 0) {
+            writePatient(out, record.getPatient());
+        }
+        if ((present & 1 << 2) != 0) {
+            writeDoctor(out, record.getDoctor());
+        }
+        if ((present & 1 << 3) != 0) {
+            writeDateTime(out, record.getRecordDate());
+        }
+        if ((present & 1 << 4) != 0) {
+            writeString(out, record.getDiagnosis());
+        }
+        if ((present & 1 << 5) != 0) {
+            writeString(out, record.getSymptoms());
+        }
+        if ((present & 1 << 6) != 0) {
+            writeString(out, record.getTreatment());
+        }
+        if ((present & 1 << 7) != 0) {
+            writeVarInt(out, record.getTestResults().size());
+            for (String testResult : record.getTestResults()) {
+                writeString(out, testResult);
+            }
+        }
+        if ((present & 1 << 8) != 0) {
+            writeVarInt(out, RECORD_TYPES.code(record.getType()));
+        }
+        if ((present & 1 << 9) != 0) {
+            writeVarInt(out, RECORD_STATUSES.code(record.getStatus()));
+        }
+    }
+    
+    public MedicalRecord decodeMedicalRecord(ByteBuffer in) {
+        readHeader(in, in.get(), KIND_MEDICAL_RECORD);
+        long sequence = readVarLong(in);
+        int present = readVarInt(in);
+        MedicalRecord record = new MedicalRecord();
+        if ((present & 1) != 0) {
+            record.setRecordId(readString(in));
+        }
+        if ((present & 1 << 1) != 0) {
+            record.setPatient(readPatient(in));
+        }
+        if ((present & 1 << 2) != 0) {
+            record.setDoctor(readDoctor(in));
+        }
+        if ((present & 1 << 3) != 0) {
+            record.setRecordDate(readDateTime(in));
+        }
+        if ((present & 1 << 4) != 0) {
+            record.setDiagnosis(readString(in));
+        }
+        if ((present & 1 << 5) != 0) {
+            record.setSymptoms(readString(in));
+        }
+        if ((present & 1 << 6) != 0) {
+            record.setTreatment(readString(in));
+        }
+        if ((present & 1 << 7) != 0) {
+            int testResults = readVarInt(in);
+            for (int i = 0; i < testResults; i++) {
+                record.addTestResult(readString(in));
+            }
+        }
+        if ((present & 1 << 8) != 0) {
+            record.setType(RECORD_TYPES.value(readVarInt(in)));
+        }
+        if ((present & 1 << 9) != 0) {
+            record.setStatus(RECORD_STATUSES.value(readVarInt(in)));
+        }
+        record.setSequence(sequence);
+        return record;
+    }
+    
+    public void encode(Patient patient, ByteBuffer out) {
+        out.put(VERSION).put(KIND_PATIENT);
+        writePatient(out, patient);
+    }
+    
+    public Patient decodePatient(ByteBuffer in) {
+        readHeader(in, in.get(), KIND_PATIENT);
+        return readPatient(in);
+    }
+    
+    public void encode(Doctor doctor, ByteBuffer out) {
+        out.put(VERSION).put(KIND_DOCTOR);
+        writeDoctor(out, doctor);
+    }
+    
+    public Doctor decodeDoctor(ByteBuffer in) {
+        readHeader(in, in.get(), KIND_DOCTOR);
+        return readDoctor(in);
+    }
+    
+    public void encode(Appointment appointment, ByteBuffer out) {
+        out.put(VERSION).put(KIND_APPOINTMENT);
+        int present = mask(appointment.getAppointmentId(), appointment.getPatient(), appointment.getDoctor(),
+                appointment.getAppointmentDateTime(), appointment.getDuration(), appointment.getStatus(),
+                appointment.getReason(), appointment.getNotes());
+        writeVarInt(out, present);
+        if ((present & 1) != 0) {
+            writeString(out, appointment.getAppointmentId());
+        }
+        if ((present & 1 << 1) != 0) {
+            writePatient(out, appointment.getPatient());
+        }
+        if ((present & 1 << 2) != 0) {
+            writeDoctor(out, appointment.getDoctor());
+        }
+        if ((present & 1 << 3) != 0) {
+            writeDateTime(out, appointment.getAppointmentDateTime());
+        }
+        if ((present & 1 << 4) != 0) {
+            writeVarLong(out, zigzag(appointment.getDuration().getSeconds()));
+            writeVarInt(out, appointment.getDuration().getNano());
+        }
+        if ((present & 1 << 5) != 0) {
+            writeVarInt(out, APPOINTMENT_STATUSES.code(appointment.getStatus()));
+        }
+        if ((present & 1 << 6) != 0) {
+            writeString(out, appointment.getReason());
+        }
+        if ((present & 1 << 7) != 0) {
+            writeString(out, appointment.getNotes());
+        }
+    }
+    
+    public Appointment decodeAppointment(ByteBuffer in) {
+        readHeader(in, in.get(), KIND_APPOINTMENT);
+        int present = readVarInt(in);
+        Appointment appointment = new Appointment();
+        if ((present & 1) != 0) {
+            appointment.setAppointmentId(readString(in));
+        }
+        if ((present & 1 << 1) != 0) {
+            appointment.setPatient(readPatient(in));
+        }
+        if ((present & 1 << 2) != 0) {
+            appointment.setDoctor(readDoctor(in));
+        }
+        if ((present & 1 << 3) != 0) {
+            appointment.setAppointmentDateTime(readDateTime(in));
+        }
+        if ((present & 1 << 4) != 0) {
+            long seconds = unzigzag(readVarLong(in));
+            appointment.setDuration(Duration.ofSeconds(seconds, readVarInt(in)));
+        }
+        if ((present & 1 << 5) != 0) {
+            appointment.setStatus(APPOINTMENT_STATUSES.value(readVarInt(in)));
+        }
+        if ((present & 1 << 6) != 0) {
+            appointment.setReason(readString(in));
+        }
+        if ((present & 1 << 7) != 0) {
+            appointment.setNotes(readString(in));
+        }
+        return appointment;
+    }
+    
+    public void encode(Prescription prescription, ByteBuffer out) {
+        out.put(VERSION).put(KIND_PRESCRIPTION);
+        int present = mask(prescription.getPrescriptionId(), prescription.getPatient(), prescription.getDoctor(),
+                prescription.getIssueDate(), prescription.getExpiryDate(), prescription.getMedications(),
+                prescription.getInstructions(), prescription.getStatus());
+        writeVarInt(out, present);
+        if ((present & 1) != 0) {
+            writeString(out, prescription.getPrescriptionId());
+        }
+        if ((present & 1 << 1) != 0) {
+            writePatient(out, prescription.getPatient());
+        }
+        if ((present & 1 << 2) != 0) {
+            writeDoctor(out, prescription.getDoctor());
+        }
+        if ((present & 1 << 3) != 0) {
+            writeVarLong(out, zigzag(prescription.getIssueDate().toEpochDay()));
+        }
+        if ((present & 1 << 4) != 0) {
+            writeVarLong(out, zigzag(prescription.getExpiryDate().toEpochDay()));
+        }
+        if ((present & 1 << 5) != 0) {
+            writeVarInt(out, prescription.getMedications().size());
+            for (Prescription.Medication medication : prescription.getMedications()) {
+                int medicationPresent = mask(medication.getName(), medication.getDosage(), medication.getFrequency());
+                writeVarInt(out, medicationPresent);
+                if ((medicationPresent & 1) != 0) {
+                    writeString(out, medication.getName());
+                }
+                if ((medicationPresent & 1 << 1) != 0) {
+                    writeString(out, medication.getDosage());
+                }
+                if ((medicationPresent & 1 << 2) != 0) {
+                    writeString(out, medication.getFrequency());
+                }
+                writeVarLong(out, zigzag(medication.getQuantity()));
+            }
+        }
+        if ((present & 1 << 6) != 0) {
+            writeString(out, prescription.getInstructions());
+        }
+        if ((present & 1 << 7) != 0) {
+            writeVarInt(out, PRESCRIPTION_STATUSES.code(prescription.getStatus()));
+        }
+    }
+    
+    public Prescription decodePrescription(ByteBuffer in) {
+        readHeader(in, in.get(), KIND_PRESCRIPTION);
+        int present = readVarInt(in);
+        Prescription prescription = new Prescription();
+        if ((present & 1) != 0) {
+            prescription.setPrescriptionId(readString(in));
+        }
+        if ((present & 1 << 1) != 0) {
+            prescription.setPatient(readPatient(in));
+        }
+        if ((present & 1 << 2) != 0) {
+            prescription.setDoctor(readDoctor(in));
+        }
+        if ((present & 1 << 3) != 0) {
+            prescription.setIssueDate(LocalDate.ofEpochDay(unzigzag(readVarLong(in))));
+        }
+        if ((present & 1 << 4) != 0) {
+            prescription.setExpiryDate(LocalDate.ofEpochDay(unzigzag(readVarLong(in))));
+        }
+        if ((present & 1 << 5) != 0) {
+            int medications = readVarInt(in);
+            for (int i = 0; i < medications; i++) {
+                int medicationPresent = readVarInt(in);
+                Prescription.Medication medication = new Prescription.Medication();
+                if ((medicationPresent & 1) != 0) {
+                    medication.setName(readString(in));
+                }
+                if ((medicationPresent & 1 << 1) != 0) {
+                    medication.setDosage(readString(in));
+                }
+                if ((medicationPresent & 1 << 2) != 0) {
+                    medication.setFrequency(readString(in));
+                }
+                medication.setQuantity((int) unzigzag(readVarLong(in)));
+                prescription.addMedication(medication);
+            }
+        }
+        if ((present & 1 << 6) != 0) {
+            prescription.setInstructions(readString(in));
+        }
+        if ((present & 1 << 7) != 0) {
+            prescription.setStatus(PRESCRIPTION_STATUSES.value(readVarInt(in)));
+        }
+        return prescription;
+    }
+    
+    private void writePatient(ByteBuffer out, Patient patient) {
+        if (writeReference(out, patient)) {
+            return;
+        }
+        int present = mask(patient.getPatientId(), patient.getFirstName(), patient.getLastName(),
+                patient.getDateOfBirth(), patient.getEmail(), patient.getPhoneNumber());
+        writeVarInt(out, present);
+        if ((present & 1) != 0) {
+            writeString(out, patient.getPatientId());
+        }
+        if ((present & 1 << 1) != 0) {
+            writeString(out, patient.getFirstName());
+        }
+        if ((present & 1 << 2) != 0) {
+            writeString(out, patient.getLastName());
+        }
+        if ((present & 1 << 3) != 0) {
+            writeVarLong(out, zigzag(patient.getDateOfBirth().toEpochDay()));
+        }
+        if ((present & 1 << 4) != 0) {
+            writeString(out, patient.getEmail());
+        }
+        if ((present & 1 << 5) != 0) {
+            writeString(out, patient.getPhoneNumber());
+        }
+    }
+    
+    private Patient readPatient(ByteBuffer in) {
+        int tag = readVarInt(in);
+        if ((tag & 1) != 0) {
+            return (Patient) readEntities.get(tag >>> 1);
+        }
+        int present = readVarInt(in);
+        String patientId = (present & 1) != 0 ? readString(in) : null;
+        String firstName = (present & 1 << 1) != 0 ? readString(in) : null;
+        String lastName = (present & 1 << 2) != 0 ? readString(in) : null;
+        LocalDate dateOfBirth = (present & 1 << 3) != 0 ? LocalDate.ofEpochDay(unzigzag(readVarLong(in))) : null;
+        String email = (present & 1 << 4) != 0 ? readString(in) : null;
+        String phoneNumber = (present & 1 << 5) != 0 ? readString(in) : null;
+        Patient patient = patientId == null ? null : patients.get(patientId);
+        if (patient == null) {
+            patient = new Patient(patientId, firstName, lastName, dateOfBirth);
+            patient.setEmail(email);
+            patient.setPhoneNumber(phoneNumber);
+            if (patientId != null) {
+                patients.put(patientId, patient);
+            }
+        }
+        rememberRead(patient);
+        return patient;
+    }
+    
+    private void writeDoctor(ByteBuffer out, Doctor doctor) {
+        if (writeReference(out, doctor)) {
+            return;
+        }
+        int present = mask(doctor.getDoctorId(), doctor.getLicenseNumber(), doctor.getFirstName(),
+                doctor.getLastName(), doctor.getSpecialization());
+        writeVarInt(out, present);
+        if ((present & 1) != 0) {
+            writeString(out, doctor.getDoctorId());
+        }
+        if ((present & 1 << 1) != 0) {
+            writeString(out, doctor.getLicenseNumber());
+        }
+        if ((present & 1 << 2) != 0) {
+            writeString(out, doctor.getFirstName());
+        }
+        if ((present & 1 << 3) != 0) {
+            writeString(out, doctor.getLastName());
+        }
+        if ((present & 1 << 4) != 0) {
+            writeString(out, doctor.getSpecialization());
+        }
+    }
+    
+    private Doctor readDoctor(ByteBuffer in) {
+        int tag = readVarInt(in);
+        if ((tag & 1) != 0) {
+            return (Doctor) readEntities.get(tag >>> 1);
+        }
+        int present = readVarInt(in);
+        String doctorId = (present & 1) != 0 ? readString(in) : null;
+        String licenseNumber = (present & 1 << 1) != 0 ? readString(in) : null;
+        String firstName = (present & 1 << 2) != 0 ? readString(in) : null;
+        String lastName = (present & 1 << 3) != 0 ? readString(in) : null;
+        String specialization = (present & 1 << 4) != 0 ? readString(in) : null;
+        Doctor doctor = doctorId == null ? null : doctors.get(doctorId);
+        if (doctor == null) {
+            doctor = new Doctor(doctorId, licenseNumber);
+            doctor.setFirstName(firstName);
+            doctor.setLastName(lastName);
+            doctor.setSpecialization(specialization);
+            if (doctorId != null) {
+                doctors.put(doctorId, doctor);
+            }
+        }
+        rememberRead(doctor);
+        return doctor;
+    }
+    
+    private boolean writeReference(ByteBuffer out, Object entity) {
+        Integer reference = writtenEntities.get(entity);
+        if (reference != null) {
+            writeVarInt(out, reference << 1 | 1);
+            return true;
+        }
+        writeVarInt(out, 0);
+        if (writtenEntities.size() < MAX_REFERENCES) {
+            writtenEntities.put(entity, writtenEntities.size());
+        }
+        return false;
+    }
+    
+    private void rememberRead(Object entity) {
+        if (readEntities.size() < MAX_REFERENCES) {
+            readEntities.add(entity);
+        }
+    }
+    
+    private void writeString(ByteBuffer out, String value) {
+        Integer reference = writtenStrings.get(value);
+        if (reference != null) {
+            writeVarInt(out, reference << 1 | 1);
+            return;
+        }
+        int length = utf8Length(value);
+        writeVarInt(out, length << 1);
+        if (out.remaining() < length) {
+            throw new BufferOverflowException();
+        }
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c < 0x80) {
+                out.put((byte) c);
+            } else if (c < 0x800) {
+                out.put((byte) (0xC0 | c >> 6)).put((byte) (0x80 | c & 0x3F));
+            } else if (Character.isHighSurrogate(c) && i + 1 < value.length() && Character.isLowSurrogate(value.charAt(i + 1))) {
+                int codePoint = Character.toCodePoint(c, value.charAt(++i));
+                out.put((byte) (0xF0 | codePoint >> 18)).put((byte) (0x80 | codePoint >> 12 & 0x3F))
+                        .put((byte) (0x80 | codePoint >> 6 & 0x3F)).put((byte) (0x80 | codePoint & 0x3F));
+            } else if (Character.isSurrogate(c)) {
+                out.put((byte) '?');
+            } else {
+                out.put((byte) (0xE0 | c >> 12)).put((byte) (0x80 | c >> 6 & 0x3F)).put((byte) (0x80 | c & 0x3F));
+            }
+        }
+        if (writtenStrings.size() < MAX_REFERENCES) {
+            writtenStrings.put(value, writtenStrings.size());
+        }
+    }
+    
+    private String readString(ByteBuffer in) {
+        int tag = readVarInt(in);
+        if ((tag & 1) != 0) {
+            return readStrings.get(tag >>> 1);
+        }
+        int length = tag >>> 1;
+        String value;
+        if (in.hasArray()) {
+            value = new String(in.array(), in.arrayOffset() + in.position(), length, StandardCharsets.UTF_8);
+            in.position(in.position() + length);
+        } else {
+            if (stringBytes.length < length) {
+                stringBytes = new byte[Math.max(length, stringBytes.length * 2)];
+            }
+            in.get(stringBytes, 0, length);
+            value = new String(stringBytes, 0, length, StandardCharsets.UTF_8);
+        }
+        if (readStrings.size() < MAX_REFERENCES) {
+            readStrings.add(value);
+        }
+        return value;
+    }
+    
+    private static int utf8Length(String value) {
+        int length = 0;
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c < 0x80) {
+                length++;
+            } else if (c < 0x800) {
+                length += 2;
+            } else if (Character.isHighSurrogate(c) && i + 1 < value.length() && Character.isLowSurrogate(value.charAt(i + 1))) {
+                length += 4;
+                i++;
+            } else if (Character.isSurrogate(c)) {
+                length++;
+            } else {
+                length += 3;
+            }
+        }
+        return length;
+    }
+    
+    private static void writeDateTime(ByteBuffer out, LocalDateTime dateTime) {
+        writeVarLong(out, zigzag(dateTime.toEpochSecond(ZoneOffset.UTC)));
+        writeVarInt(out, dateTime.getNano());
+    }
+    
+    private static LocalDateTime readDateTime(ByteBuffer in) {
+        long epochSecond = unzigzag(readVarLong(in));
+        return LocalDateTime.ofEpochSecond(epochSecond, readVarInt(in), ZoneOffset.UTC);
+    }
+    
+    private static void readHeader(ByteBuffer in, byte version, byte kind) {
+        if (version != VERSION) {
+            throw new IllegalArgumentException("Unsupported codec version " + version);
+        }
+        byte actual = in.get();
+        if (actual != kind) {
+            throw new IllegalArgumentException("Expected entity kind " + kind + " but found " + actual);
+        }
+    }
+    
+    private static int mask(Object... fields) {
+        int mask = 0;
+        for (int i = 0; i < fields.length; i++) {
+            if (fields[i] != null) {
+                mask |= 1 << i;
+            }
+        }
+        return mask;
+    }
+    
+    private static void writeVarInt(ByteBuffer out, int value) {
+        while ((value & ~0x7F) != 0) {
+            out.put((byte) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        out.put((byte) value);
+    }
+    
+    private static int readVarInt(ByteBuffer in) {
+        return (int) readVarLong(in);
+    }
+    
+    private static void writeVarLong(ByteBuffer out, long value) {
+        while ((value & ~0x7FL) != 0) {
+            out.put((byte) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        out.put((byte) value);
+    }
+    
+    private static long readVarLong(ByteBuffer in) {
+        long value = 0;
+        int shift = 0;
+        byte b;
+        do {
+            if (shift > 63) {
+                throw new IllegalArgumentException("Malformed varint");
+            }
+            b = in.get();
+            value |= (long) (b & 0x7F) << shift;
+            shift += 7;
+        } while (b < 0);
+        return value;
+    }
+    
+    private static long zigzag(long value) {
+        return (value << 1) ^ (value >> 63);
+    }
+    
+    private static long unzigzag(long value) {
+        return (value >>> 1) ^ -(value & 1);
+    }
+    
+    private static class EnumTable<E extends Enum<E>> {
+
+        private final List<E> values;
+        private final int[] codes;
+        
+        EnumTable(Class<E> type, List<E> values) {
+            if (values.size() != type.getEnumConstants().length) {
+                throw new IllegalStateException("Codec table for " + type.getSimpleName() + " does not list every constant");
+            }
+            this.values = List.copyOf(values);
+            this.codes = new int[values.size()];
+            for (int code = 0; code < values.size(); code++) {
+                codes[values.get(code).ordinal()] = code;
+            }
+        }
+        
+        int code(E value) {
+            return codes[value.ordinal()];
+        }
+        
+        E value(int code) {
+            if (code < 0 || code >= values.size()) {
+                throw new IllegalArgumentException("Unknown code " + code);
+            }
+            return values.get(code);
+        }
+    }
+}
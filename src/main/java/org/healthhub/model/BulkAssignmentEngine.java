@@ -0,0 +1,294 @@
+package org.healthhub.model;
+
+import java.time.Duration;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.TreeMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class BulkAssignmentEngine {
+
+    private final List<Doctor> doctors;
+    private final int maxPanelSize;
+    private final LocalTime dayStart;
+    private final LocalTime dayEnd;
+    private final ForkJoinPool pool;
+    
+    public BulkAssignmentEngine(Collection<Doctor> doctors, int maxPanelSize, LocalTime dayStart, LocalTime dayEnd) {
+        this(doctors, maxPanelSize, dayStart, dayEnd, ForkJoinPool.commonPool());
+    }
+    
+    public BulkAssignmentEngine(Collection<Doctor> doctors, int maxPanelSize, LocalTime dayStart, LocalTime dayEnd,
+                                ForkJoinPool pool) {
+        this.doctors = List.copyOf(doctors);
+        this.maxPanelSize = maxPanelSize;
+        this.dayStart = dayStart;
+        this.dayEnd = dayEnd;
+        this.pool = pool;
+    }
+    
+    public AssignmentPlan plan(Collection<AssignmentRequest> requests) {
+        Map<Doctor, AtomicInteger> panelCapacity = new HashMap<>();
+        for (Doctor doctor : doctors) {
+            panelCapacity.put(doctor, new AtomicInteger(maxPanelSize - doctor.getPatients().size()));
+        }
+        Map<PartitionKey, List<AssignmentRequest>> partitions = new LinkedHashMap<>();
+        for (AssignmentRequest request : requests) {
+            partitions.computeIfAbsent(new PartitionKey(request.getSpecialization(), request.getDay()),
+                    key -> new ArrayList<>()).add(request);
+        }
+        List<Partition> tasks = new ArrayList<>();
+        for (Map.Entry<PartitionKey, List<AssignmentRequest>> entry : partitions.entrySet()) {
+            List<Doctor> candidates = doctors.stream()
+                    .filter(doctor -> entry.getKey().specialization.matches(doctor.getSpecialization()))
+                    .toList();
+            tasks.add(new Partition(entry.getKey().day, entry.getValue(), candidates, panelCapacity));
+        }
+        return pool.invoke(new PlanTask(tasks, 0, tasks.size()));
+    }
+    
+    private class PlanTask extends RecursiveTask<AssignmentPlan> {
+
+        private static final long serialVersionUID = 1L;
+        
+        private final List<Partition> partitions;
+        private final int from;
+        private final int to;
+        
+        PlanTask(List<Partition> partitions, int from, int to) {
+            this.partitions = partitions;
+            this.from = from;
+            this.to = to;
+        }
+        
+        @Override
+        protected AssignmentPlan compute() {
+            if (to - from <= 1) {
+                return from < to ? partitions.get(from).solve() : new AssignmentPlan(List.of(), List.of());
+            }
+            int middle = (from + to) >>> 1;
+            PlanTask left = new PlanTask(partitions, from, middle);
+            PlanTask right = new PlanTask(partitions, middle, to);
+            left.fork();
+            AssignmentPlan rightPlan = right.compute();
+            return left.join().merge(rightPlan);
+        }
+    }
+    
+    private class Partition {
+
+        private final LocalDate day;
+        private final List<AssignmentRequest> requests;
+        private final List<Doctor> candidates;
+        private final Map<Doctor, AtomicInteger> panelCapacity;
+        private final Map<Doctor, TreeMap<LocalDateTime, LocalDateTime>> tentative = new HashMap<>();
+        
+        Partition(LocalDate day, List<AssignmentRequest> requests, List<Doctor> candidates,
+                  Map<Doctor, AtomicInteger> panelCapacity) {
+            this.day = day;
+            this.requests = requests;
+            this.candidates = candidates;
+            this.panelCapacity = panelCapacity;
+        }
+        
+        AssignmentPlan solve() {
+            List<Assignment> assignments = new ArrayList<>();
+            List<AssignmentRequest> unassigned = new ArrayList<>();
+            long dayStartGranule = Appointment.AppointmentScheduler.DoctorSchedule.granuleCeil(day.atTime(dayStart));
+            long dayEndGranule = Appointment.AppointmentScheduler.DoctorSchedule.granuleFloor(day.atTime(dayEnd));
+            for (AssignmentRequest request : requests) {
+                int length = Appointment.AppointmentScheduler.DoctorSchedule.granulesFor(request.getDuration());
+                Doctor bestDoctor = null;
+                LocalDateTime bestStart = null;
+                for (Doctor doctor : candidates) {
+                    boolean onPanel = doctor.getPatients().contains(request.getPatient());
+                    if (!onPanel && panelCapacity.get(doctor).get() <= 0) {
+                        continue;
+                    }
+                    LocalDateTime start = earliestStart(doctor, dayStartGranule, dayEndGranule, length);
+                    if (start != null && (bestStart == null || start.isBefore(bestStart))) {
+                        bestDoctor = doctor;
+                        bestStart = start;
+                    }
+                }
+                if (bestDoctor != null && reservePanelSeat(bestDoctor, request.getPatient())) {
+                    LocalDateTime end = bestStart.plus(request.getDuration());
+                    tentative.computeIfAbsent(bestDoctor, key -> new TreeMap<>()).put(bestStart, end);
+                    assignments.add(new Assignment(request, bestDoctor, bestStart, end));
+                } else {
+                    unassigned.add(request);
+                }
+            }
+            return new AssignmentPlan(assignments, unassigned);
+        }
+        
+        private LocalDateTime earliestStart(Doctor doctor, long fromGranule, long toGranule, int length) {
+            TreeMap<LocalDateTime, LocalDateTime> planned = tentative.getOrDefault(doctor, new TreeMap<>());
+            long from = fromGranule;
+            while (true) {
+                Appointment.AppointmentScheduler.FreeSlot slot =
+                        Appointment.AppointmentScheduler.nextFreeSlot(doctor, from, toGranule, length);
+                if (slot == null) {
+                    return null;
+                }
+                Map.Entry<LocalDateTime, LocalDateTime> overlapping = planned.lowerEntry(slot.getEnd());
+                if (overlapping == null || !overlapping.getValue().isAfter(slot.getStart())) {
+                    return slot.getStart();
+                }
+                from = Appointment.AppointmentScheduler.DoctorSchedule.granuleCeil(overlapping.getValue());
+            }
+        }
+        
+        private boolean reservePanelSeat(Doctor doctor, Patient patient) {
+            if (doctor.getPatients().contains(patient)) {
+                return true;
+            }
+            AtomicInteger capacity = panelCapacity.get(doctor);
+            int remaining;
+            do {
+                remaining = capacity.get();
+                if (remaining <= 0) {
+                    return false;
+                }
+            } while (!capacity.compareAndSet(remaining, remaining - 1));
+            return true;
+        }
+    }
+    
+    private static class PartitionKey {
+
+        private final Doctor.Specialization specialization;
+        private final LocalDate day;
+        
+        PartitionKey(Doctor.Specialization specialization, LocalDate day) {
+            this.specialization = specialization;
+            this.day = day;
+        }
+        
+        @Override
+        public boolean equals(Object other) {
+            if (!(other instanceof PartitionKey)) {
+                return false;
+            }
+            PartitionKey key = (PartitionKey) other;
+            return specialization == key.specialization && day.equals(key.day);
+        }
+        
+        @Override
+        public int hashCode() {
+            return Objects.hash(specialization, day);
+        }
+    }
+    
+    public static class AssignmentRequest {
+
+        private final Patient patient;
+        private final Doctor.Specialization specialization;
+        private final LocalDate day;
+        private final Duration duration;
+        
+        public AssignmentRequest(Patient patient, Doctor.Specialization specialization, LocalDate day, Duration duration) {
+            this.patient = patient;
+            this.specialization = specialization;
+            this.day = day;
+            this.duration = duration;
+        }
+        
+        public Patient getPatient() {
+            return patient;
+        }
+        
+        public Doctor.Specialization getSpecialization() {
+            return specialization;
+        }
+        
+        public LocalDate getDay() {
+            return day;
+        }
+        
+        public Duration getDuration() {
+            return duration;
+        }
+    }
+    
+    public static class Assignment {
+
+        private final AssignmentRequest request;
+        private final Doctor doctor;
+        private final LocalDateTime start;
+        private final LocalDateTime end;
+        
+        Assignment(AssignmentRequest request, Doctor doctor, LocalDateTime start, LocalDateTime end) {
+            this.request = request;
+            this.doctor = doctor;
+            this.start = start;
+            this.end = end;
+        }
+        
+        public AssignmentRequest getRequest() {
+            return request;
+        }
+        
+        public Doctor getDoctor() {
+            return doctor;
+        }
+        
+        public LocalDateTime getStart() {
+            return start;
+        }
+        
+        public LocalDateTime getEnd() {
+            return end;
+        }
+    }
+    
+    public static class AssignmentPlan {
+
+        private final List<Assignment> assignments;
+        private final List<AssignmentRequest> unassigned;
+        
+        AssignmentPlan(List<Assignment> assignments, List<AssignmentRequest> unassigned) {
+            this.assignments = assignments;
+            this.unassigned = unassigned;
+        }
+        
+        public List<Assignment> getAssignments() {
+            return assignments;
+        }
+        
+        public List<AssignmentRequest> getUnassigned() {
+            return unassigned;
+        }
+        
+        public List<Appointment> commit() {
+            List<Appointment.AppointmentScheduler.BookingRequest> bookings = new ArrayList<>();
+            for (Assignment assignment : assignments) {
+                bookings.add(new Appointment.AppointmentScheduler.BookingRequest(assignment.getRequest().getPatient(),
+                        assignment.getDoctor(), assignment.getStart(), assignment.getRequest().getDuration()));
+            }
+            List<Appointment> appointments = Appointment.AppointmentScheduler.bookAtomically(bookings);
+            for (Assignment assignment : assignments) {
+                assignment.getDoctor().addPatient(assignment.getRequest().getPatient());
+            }
+            return appointments;
+        }
+        
+        AssignmentPlan merge(AssignmentPlan other) {
+            List<Assignment> mergedAssignments = new ArrayList<>(assignments);
+            mergedAssignments.addAll(other.assignments);
+            List<AssignmentRequest> mergedUnassigned = new ArrayList<>(unassigned);
+            mergedUnassigned.addAll(other.unassigned);
+            return new AssignmentPlan(mergedAssignments, mergedUnassigned);
+        }
+    }
+}
@@ -74,12 +74,33 @@ public class Doctor {
     
     public static class DoctorValidator {
 
+        /**
+         * Two capital letters followed by six digits, checked by hand so that
+         * no pattern is compiled per call.
+         */
         public static boolean isValidLicenseNumber(String licenseNumber) {
-            return licenseNumber != null && licenseNumber.matches("[A-Z]{2}\\d{6}");
+            if (licenseNumber == null || licenseNumber.length() != 8) {
+                return false;
+            }
+            for (int i = 0; i < 8; i++) {
+                char c = licenseNumber.charAt(i);
+                if (i < 2 ? c < 'A' || c > 'Z' : c < '0' || c > '9') {
+                    return false;
+                }
+            }
+            return true;
         }
         
         public static boolean isValidSpecialization(String specialization) {
-            return specialization != null && !specialization.trim().isEmpty();
+            if (specialization == null) {
+                return false;
+            }
+            for (int i = 0; i < specialization.length(); i++) {
+                if (specialization.charAt(i) > ' ') {
+                    return true;
+                }
+            }
+            return false;
         }
     }
     
@@ -101,6 +122,11 @@ public class Doctor {
         public String getDisplayName() {
             return displayName;
         }
+        
+        public boolean matches(String specialization) {
+            return specialization != null
+                    && (name().equalsIgnoreCase(specialization.trim()) || displayName.equalsIgnoreCase(specialization.trim()));
+        }
     }
 }
 
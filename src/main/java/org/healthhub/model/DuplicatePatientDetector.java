@@ -0,0 +1,478 @@
+package org.healthhub.model;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+
+/**
+ * Record linkage for patients. Instead of comparing every pair, patients are
+ * grouped into blocks that share a cheap key (Soundex of the last name plus
+ * date of birth, the normalized phone number, or the email address) and only
+ * pairs within a block are scored. A score combines Jaro-Winkler name
+ * similarity with date of birth, phone and email agreement, weighted over the
+ * fields both patients have.
+ * <p>
+ * {@link #add} works incrementally: it scores a new patient against the
+ * blocks it falls into and then joins them, so duplicates are flagged as
+ * patients arrive, for example from {@link Patient.PatientBuilder}.
+ * {@link #findDuplicates} scores a whole population with blocks spread over
+ * a fork-join pool. Blocks larger than {@code maxBlockSize} carry no signal
+ * (a shared placeholder phone number, say) and are not scored beyond that
+ * size. Keys are taken when a patient is added; later edits are not tracked.
+ */
+public class DuplicatePatientDetector {
+
+    public static final double DEFAULT_THRESHOLD = 0.8;
+    public static final int DEFAULT_MAX_BLOCK_SIZE = 500;
+    private static final int PAIRS_PER_TASK = 4096;
+    private static final double LAST_NAME_WEIGHT = 0.3;
+    private static final double FIRST_NAME_WEIGHT = 0.2;
+    private static final double BIRTH_DATE_WEIGHT = 0.25;
+    private static final double PHONE_WEIGHT = 0.15;
+    private static final double EMAIL_WEIGHT = 0.1;
+    
+    private final double threshold;
+    private final int maxBlockSize;
+    private final ForkJoinPool pool;
+    private final Map<String, List<Patient>> blocks = new ConcurrentHashMap<>();
+    private final List<Consumer<DuplicateMatch>> listeners = new CopyOnWriteArrayList<>();
+    private final LongAdder comparisons = new LongAdder();
+    
+    public DuplicatePatientDetector() {
+        this(DEFAULT_THRESHOLD, DEFAULT_MAX_BLOCK_SIZE, ForkJoinPool.commonPool());
+    }
+    
+    public DuplicatePatientDetector(double threshold, int maxBlockSize, ForkJoinPool pool) {
+        this.threshold = threshold;
+        this.maxBlockSize = maxBlockSize;
+        this.pool = pool;
+    }
+    
+    /**
+     * Scores the patient against every patient added before that shares a
+     * block with it, then adds it. Matches at or above the threshold are
+     * returned best first and passed to the listeners.
+     */
+    public List<DuplicateMatch> add(Patient patient) {
+        List<String> keys = blockingKeys(patient);
+        Collections.sort(keys);
+        List<List<Patient>> patientBlocks = new ArrayList<>(keys.size());
+        for (String key : keys) {
+            patientBlocks.add(blocks.computeIfAbsent(key, k -> new ArrayList<>()));
+        }
+        List<Patient[]> snapshots = new ArrayList<>(keys.size());
+        join(patient, patientBlocks, 0, snapshots);
+        Set<Patient> candidates = Collections.newSetFromMap(new IdentityHashMap<>());
+        for (Patient[] snapshot : snapshots) {
+            Collections.addAll(candidates, snapshot);
+        }
+        candidates.remove(patient);
+        List<DuplicateMatch> matches = new ArrayList<>();
+        for (Patient candidate : candidates) {
+            DuplicateMatch match = match(candidate, patient);
+            if (match != null) {
+                matches.add(match);
+            }
+        }
+        matches.sort(Comparator.comparingDouble(DuplicateMatch::getScore).reversed());
+        matches.forEach(this::notifyListeners);
+        return matches;
+    }
+    
+    /**
+     * Finds probable duplicates within the given patients, independent of the
+     * patients added incrementally. A pair that shares several blocks is
+     * scored once, in the first block in which both patients are scored, so a
+     * pair cut from an oversized block is still scored in another block.
+     */
+    public List<DuplicateMatch> findDuplicates(Collection<Patient> patients) {
+        Map<Patient, List<String>> keysByPatient = new IdentityHashMap<>();
+        Map<String, List<Patient>> population = new LinkedHashMap<>();
+        for (Patient patient : patients) {
+            List<String> keys = blockingKeys(patient);
+            if (keysByPatient.putIfAbsent(patient, keys) != null) {
+                continue;
+            }
+            for (String key : keys) {
+                population.computeIfAbsent(key, k -> new ArrayList<>()).add(patient);
+            }
+        }
+        List<Block> work = new ArrayList<>();
+        for (Map.Entry<String, List<Patient>> entry : population.entrySet()) {
+            List<Patient> members = entry.getValue();
+            if (members.size() > maxBlockSize) {
+                for (Patient skipped : members.subList(maxBlockSize, members.size())) {
+                    keysByPatient.get(skipped).remove(entry.getKey());
+                }
+                members = members.subList(0, maxBlockSize);
+            }
+            if (members.size() > 1) {
+                work.add(new Block(entry.getKey(), members));
+            }
+        }
+        List<DuplicateMatch> matches = pool.invoke(new BlockTask(work, keysByPatient, 0, work.size()));
+        matches.sort(Comparator.comparingDouble(DuplicateMatch::getScore).reversed());
+        matches.forEach(this::notifyListeners);
+        return matches;
+    }
+    
+    public void onDuplicate(Consumer<DuplicateMatch> listener) {
+        listeners.add(Objects.requireNonNull(listener));
+    }
+    
+    public double score(Patient first, Patient second) {
+        comparisons.increment();
+        double weight = 0;
+        double total = 0;
+        String firstName1 = normalizeName(first.getFirstName());
+        String firstName2 = normalizeName(second.getFirstName());
+        String lastName1 = normalizeName(first.getLastName());
+        String lastName2 = normalizeName(second.getLastName());
+        if (!lastName1.isEmpty() && !lastName2.isEmpty()) {
+            double lastName = jaroWinkler(lastName1, lastName2);
+            double firstName = firstName1.isEmpty() || firstName2.isEmpty() ? -1 : jaroWinkler(firstName1, firstName2);
+            if (firstName >= 0) {
+                double swappedLast = jaroWinkler(lastName1, firstName2);
+                double swappedFirst = jaroWinkler(firstName1, lastName2);
+                if (swappedLast + swappedFirst > lastName + firstName) {
+                    lastName = swappedLast;
+                    firstName = swappedFirst;
+                }
+                weight += FIRST_NAME_WEIGHT;
+                total += FIRST_NAME_WEIGHT * firstName;
+            }
+            weight += LAST_NAME_WEIGHT;
+            total += LAST_NAME_WEIGHT * lastName;
+        }
+        LocalDate birth1 = first.getDateOfBirth();
+        LocalDate birth2 = second.getDateOfBirth();
+        if (birth1 != null && birth2 != null) {
+            int agreeing = (birth1.getYear() == birth2.getYear() ? 1 : 0)
+                    + (birth1.getMonthValue() == birth2.getMonthValue() ? 1 : 0)
+                    + (birth1.getDayOfMonth() == birth2.getDayOfMonth() ? 1 : 0);
+            boolean transposed = birth1.getYear() == birth2.getYear()
+                    && birth1.getMonthValue() == birth2.getDayOfMonth() && birth1.getDayOfMonth() == birth2.getMonthValue();
+            weight += BIRTH_DATE_WEIGHT;
+            total += BIRTH_DATE_WEIGHT * (agreeing == 3 ? 1 : transposed ? 0.8 : agreeing == 2 ? 0.5 : 0);
+        }
+        String phone1 = normalizePhone(first.getPhoneNumber());
+        String phone2 = normalizePhone(second.getPhoneNumber());
+        if (phone1 != null && phone2 != null) {
+            weight += PHONE_WEIGHT;
+            total += phone1.equals(phone2) ? PHONE_WEIGHT : 0;
+        }
+        String email1 = normalizeEmail(first.getEmail());
+        String email2 = normalizeEmail(second.getEmail());
+        if (email1 != null && email2 != null) {
+            weight += EMAIL_WEIGHT;
+            total += email1.equals(email2) ? EMAIL_WEIGHT : 0;
+        }
+        return weight == 0 ? 0 : total / weight;
+    }
+    
+    public int size() {
+        Set<Patient> patients = Collections.newSetFromMap(new IdentityHashMap<>());
+        for (List<Patient> block : blocks.values()) {
+            synchronized (block) {
+                patients.addAll(block);
+            }
+        }
+        return patients.size();
+    }
+    
+    public long getComparisonCount() {
+        return comparisons.sum();
+    }
+    
+    public void clear() {
+        blocks.clear();
+        comparisons.reset();
+    }
+    
+    static List<String> blockingKeys(Patient patient) {
+        List<String> keys = new ArrayList<>(3);
+        String lastName = normalizeName(patient.getLastName());
+        if (!lastName.isEmpty() && patient.getDateOfBirth() != null) {
+            keys.add("N:" + soundex(lastName) + ':' + patient.getDateOfBirth());
+        }
+        String phone = normalizePhone(patient.getPhoneNumber());
+        if (phone != null) {
+            keys.add("P:" + phone);
+        }
+        String email = normalizeEmail(patient.getEmail());
+        if (email != null) {
+            keys.add("E:" + email);
+        }
+        return keys;
+    }
+    
+    /**
+     * American Soundex: the first letter followed by three digits for the
+     * consonant groups that follow. Letters separated only by H or W share a
+     * code. Names without Latin letters are returned lower-cased, so they
+     * still block on the exact name.
+     */
+    public static String soundex(String name) {
+        StringBuilder code = new StringBuilder(4);
+        char previous = 0;
+        for (int i = 0; i < name.length() && code.length() < 4; i++) {
+            char c = Character.toUpperCase(name.charAt(i));
+            if (c < 'A' || c > 'Z') {
+                continue;
+            }
+            char digit = "01230120022455012623010202".charAt(c - 'A');
+            if (code.length() == 0) {
+                code.append(c);
+                previous = digit;
+            } else if (digit != '0' && digit != previous) {
+                code.append(digit);
+                previous = digit;
+            } else if (c != 'H' && c != 'W') {
+                previous = digit;
+            }
+        }
+        if (code.length() == 0) {
+            return name.toLowerCase(Locale.ROOT);
+        }
+        while (code.length() < 4) {
+            code.append('0');
+        }
+        return code.toString();
+    }
+    
+    public static double jaroWinkler(String first, String second) {
+        if (first.equals(second)) {
+            return 1;
+        }
+        int length1 = first.length();
+        int length2 = second.length();
+        if (length1 == 0 || length2 == 0) {
+            return 0;
+        }
+        int window = Math.max(0, Math.max(length1, length2) / 2 - 1);
+        boolean[] matched1 = new boolean[length1];
+        boolean[] matched2 = new boolean[length2];
+        int matches = 0;
+        for (int i = 0; i < length1; i++) {
+            int from = Math.max(0, i - window);
+            int to = Math.min(length2, i + window + 1);
+            for (int j = from; j < to; j++) {
+                if (!matched2[j] && first.charAt(i) == second.charAt(j)) {
+                    matched1[i] = true;
+                    matched2[j] = true;
+                    matches++;
+                    break;
+                }
+            }
+        }
+        if (matches == 0) {
+            return 0;
+        }
+        int transpositions = 0;
+        for (int i = 0, j = 0; i < length1; i++) {
+            if (matched1[i]) {
+                while (!matched2[j]) {
+                    j++;
+                }
+                if (first.charAt(i) != second.charAt(j)) {
+                    transpositions++;
+                }
+                j++;
+            }
+        }
+        double m = matches;
+        double jaro = (m / length1 + m / length2 + (m - transpositions / 2.0) / m) / 3;
+        int prefix = 0;
+        while (prefix < Math.min(4, Math.min(length1, length2)) && first.charAt(prefix) == second.charAt(prefix)) {
+            prefix++;
+        }
+        return jaro + prefix * 0.1 * (1 - jaro);
+    }
+    
+    /**
+     * Holds every block lock, taken in key order, until the patient is in all
+     * of its blocks. Of two patients added concurrently, exactly one sees the
+     * other, so a pair is flagged once. Only a copy of each block is taken
+     * under the locks; candidates are collected and scored after release.
+     */
+    private void join(Patient patient, List<List<Patient>> patientBlocks, int index, List<Patient[]> snapshots) {
+        if (index == patientBlocks.size()) {
+            return;
+        }
+        List<Patient> block = patientBlocks.get(index);
+        synchronized (block) {
+            if (block.size() < maxBlockSize) {
+                snapshots.add(block.toArray(new Patient[0]));
+                block.add(patient);
+            }
+            join(patient, patientBlocks, index + 1, snapshots);
+        }
+    }
+    
+    private DuplicateMatch match(Patient first, Patient second) {
+        double score = score(first, second);
+        return score >= threshold ? new DuplicateMatch(first, second, score) : null;
+    }
+    
+    private void notifyListeners(DuplicateMatch match) {
+        for (Consumer<DuplicateMatch> listener : listeners) {
+            listener.accept(match);
+        }
+    }
+    
+    private static String normalizeName(String name) {
+        return name == null ? "" : name.trim().toLowerCase(Locale.ROOT);
+    }
+    
+    /**
+     * Digits only, keeping the last ten so that a country prefix does not
+     * split a block. Fewer than seven digits is not a usable number.
+     */
+    private static String normalizePhone(String phone) {
+        if (phone == null) {
+            return null;
+        }
+        StringBuilder digits = new StringBuilder(phone.length());
+        for (int i = 0; i < phone.length(); i++) {
+            char c = phone.charAt(i);
+            if (c >= '0' && c <= '9') {
+                digits.append(c);
+            }
+        }
+        if (digits.length() < 7) {
+            return null;
+        }
+        return digits.length() > 10 ? digits.substring(digits.length() - 10) : digits.toString();
+    }
+    
+    private static String normalizeEmail(String email) {
+        if (email == null || email.isBlank()) {
+            return null;
+        }
+        return email.trim().toLowerCase(Locale.ROOT);
+    }
+    
+    public static class DuplicateMatch {
+
+        private final Patient first;
+        private final Patient second;
+        private final double score;
+        
+        DuplicateMatch(Patient first, Patient second, double score) {
+            this.first = first;
+            this.second = second;
+            this.score = score;
+        }
+        
+        public Patient getFirst() {
+            return first;
+        }
+        
+        public Patient getSecond() {
+            return second;
+        }
+        
+        public double getScore() {
+            return score;
+        }
+        
+        @Override
+        public String toString() {
+            return first.getPatientId() + " ~ " + second.getPatientId() + String.format(Locale.ROOT, " (%.3f)", score);
+        }
+    }
+    
+    private static class Block {
+
+        private final String key;
+        private final List<Patient> members;
+        
+        Block(String key, List<Patient> members) {
+            this.key = key;
+            this.members = members;
+        }
+        
+        long pairs() {
+            return (long) members.size() * (members.size() - 1) / 2;
+        }
+    }
+    
+    private class BlockTask extends RecursiveTask<List<DuplicateMatch>> {
+
+        private static final long serialVersionUID = 1L;
+        
+        private final List<Block> blocks;
+        private final Map<Patient, List<String>> keysByPatient;
+        private final int from;
+        private final int to;
+        
+        BlockTask(List<Block> blocks, Map<Patient, List<String>> keysByPatient, int from, int to) {
+            this.blocks = blocks;
+            this.keysByPatient = keysByPatient;
+            this.from = from;
+            this.to = to;
+        }
+        
+        @Override
+        protected List<DuplicateMatch> compute() {
+            long pairs = 0;
+            for (int i = from; i < to && pairs <= PAIRS_PER_TASK; i++) {
+                pairs += blocks.get(i).pairs();
+            }
+            if (to - from > 1 && pairs > PAIRS_PER_TASK) {
+                int middle = (from + to) >>> 1;
+                BlockTask left = new BlockTask(blocks, keysByPatient, from, middle);
+                BlockTask right = new BlockTask(blocks, keysByPatient, middle, to);
+                left.fork();
+                List<DuplicateMatch> matches = right.compute();
+                matches.addAll(left.join());
+                return matches;
+            }
+            List<DuplicateMatch> matches = new ArrayList<>();
+            for (int i = from; i < to; i++) {
+                score(blocks.get(i), matches);
+            }
+            return matches;
+        }
+        
+        private void score(Block block, List<DuplicateMatch> matches) {
+            List<Patient> members = block.members;
+            for (int i = 0; i < members.size(); i++) {
+                List<String> keys = keysByPatient.get(members.get(i));
+                for (int j = i + 1; j < members.size(); j++) {
+                    if (!block.key.equals(firstSharedKey(keys, keysByPatient.get(members.get(j))))) {
+                        continue;
+                    }
+                    DuplicateMatch match = match(members.get(i), members.get(j));
+                    if (match != null) {
+                        matches.add(match);
+                    }
+                }
+            }
+        }
+        
+        private String firstSharedKey(List<String> keys, List<String> otherKeys) {
+            for (String key : keys) {
+                if (otherKeys.contains(key)) {
+                    return key;
+                }
+            }
+            return null;
+        }
+    }
+}
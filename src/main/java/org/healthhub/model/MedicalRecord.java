@@ -1,8 +1,41 @@
 package org.healthhub.model;
 
+import org.healthhub.storage.FsyncPolicy;
+import org.healthhub.storage.SnapshotFile;
+import org.healthhub.storage.WriteAheadLog;
+import org.healthhub.util.IdGenerator;
+import org.healthhub.util.TimeOrderedIdGenerator;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Path;
+import java.time.Duration;
 import java.time.LocalDateTime;
+import java.time.YearMonth;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.NoSuchElementException;
+import java.util.Optional;
+import java.util.Set;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 public class MedicalRecord {
 
@@ -16,13 +49,18 @@ public class MedicalRecord {
     private List<String> testResults;
     private RecordType type;
     private RecordStatus status;
+    private volatile long sequence;
     
     public String getRecordId() {
         return recordId;
     }
     
     public void setRecordId(String recordId) {
-        this.recordId = recordId;
+        MedicalRecordManager.mutate(this, () -> {
+            String previousId = this.recordId;
+            this.recordId = recordId;
+            MedicalRecordManager.onRecordIdChanged(this, previousId);
+        });
     }
     
     public Patient getPatient() {
@@ -30,7 +68,11 @@ public class MedicalRecord {
     }
     
     public void setPatient(Patient patient) {
-        this.patient = patient;
+        MedicalRecordManager.mutate(this, () -> {
+            Patient previousPatient = this.patient;
+            this.patient = patient;
+            MedicalRecordManager.onPatientChanged(this, previousPatient);
+        });
     }
     
     public Doctor getDoctor() {
@@ -38,7 +80,10 @@ public class MedicalRecord {
     }
     
     public void setDoctor(Doctor doctor) {
-        this.doctor = doctor;
+        MedicalRecordManager.mutate(this, () -> {
+            this.doctor = doctor;
+            MedicalRecordManager.onChanged(this);
+        });
     }
     
     public LocalDateTime getRecordDate() {
@@ -46,7 +91,11 @@ public class MedicalRecord {
     }
     
     public void setRecordDate(LocalDateTime recordDate) {
-        this.recordDate = recordDate;
+        MedicalRecordManager.mutate(this, () -> {
+            LocalDateTime previousDate = this.recordDate;
+            this.recordDate = recordDate;
+            MedicalRecordManager.onRecordDateChanged(this, previousDate);
+        });
     }
     
     public String getDiagnosis() {
@@ -54,7 +103,10 @@ public class MedicalRecord {
     }
     
     public void setDiagnosis(String diagnosis) {
-        this.diagnosis = diagnosis;
+        MedicalRecordManager.mutate(this, () -> {
+            this.diagnosis = diagnosis;
+            MedicalRecordManager.onTextChanged(this);
+        });
     }
     
     public String getSymptoms() {
@@ -62,7 +114,10 @@ public class MedicalRecord {
     }
     
     public void setSymptoms(String symptoms) {
-        this.symptoms = symptoms;
+        MedicalRecordManager.mutate(this, () -> {
+            this.symptoms = symptoms;
+            MedicalRecordManager.onTextChanged(this);
+        });
     }
     
     public String getTreatment() {
@@ -70,7 +125,10 @@ public class MedicalRecord {
     }
     
     public void setTreatment(String treatment) {
-        this.treatment = treatment;
+        MedicalRecordManager.mutate(this, () -> {
+            this.treatment = treatment;
+            MedicalRecordManager.onTextChanged(this);
+        });
     }
     
     public List<String> getTestResults() {
@@ -78,10 +136,21 @@ public class MedicalRecord {
     }
     
     public void addTestResult(String testResult) {
-        if (this.testResults == null) {
-            this.testResults = new ArrayList<>();
-        }
-        this.testResults.add(testResult);
+        MedicalRecordManager.mutate(this, () -> {
+            if (this.testResults == null) {
+                this.testResults = new ArrayList<>();
+            }
+            this.testResults.add(testResult);
+            MedicalRecordManager.onChanged(this);
+        });
+    }
+    
+    long getSequence() {
+        return sequence;
+    }
+    
+    void setSequence(long sequence) {
+        this.sequence = sequence;
     }
     
     public RecordType getType() {
@@ -89,7 +158,11 @@ public class MedicalRecord {
     }
     
     public void setType(RecordType type) {
-        this.type = type;
+        MedicalRecordManager.mutate(this, () -> {
+            RecordType previousType = this.type;
+            this.type = type;
+            MedicalRecordManager.onTypeChanged(this, previousType);
+        });
     }
     
     public RecordStatus getStatus() {
@@ -97,11 +170,15 @@ public class MedicalRecord {
     }
     
     public void setStatus(RecordStatus status) {
-        this.status = status;
+        MedicalRecordManager.mutate(this, () -> {
+            RecordStatus previousStatus = this.status;
+            this.status = status;
+            MedicalRecordManager.onStatusChanged(this, previousStatus);
+        });
     }
     
     public void archive() {
-        this.status = RecordStatus.ARCHIVED;
+        setStatus(RecordStatus.ARCHIVED);
     }
     
     public enum RecordType {
@@ -141,33 +218,818 @@ public class MedicalRecord {
         }
     }
     
+    /**
+     * Writers serialize on a single monitor; readers never take it. Every index
+     * is a concurrent skip list and sealed partitions are replaced rather than
+     * modified, so reads run against a weakly consistent view that never
+     * includes a record whose registration has not finished: each read only
+     * sees records whose sequence is at or below the published sequence it
+     * observed when it started. Log entries are queued under the monitor but
+     * awaited after it is released, so concurrent commits share one fsync.
+     */
     public static class MedicalRecordManager {
 
-        private static List<MedicalRecord> allRecords = new ArrayList<>();
+        private static final Object writeLock = new Object();
+        private static final Object snapshotLock = new Object();
+        private static final TimePartitionedRecordStore store = new TimePartitionedRecordStore();
+        private static final Map<String, MedicalRecord> recordsById = new ConcurrentHashMap<>();
+        private static final Map<Patient, NavigableMap<Long, MedicalRecord>> recordsByPatient = new ConcurrentHashMap<>();
+        private static final Map<RecordType, NavigableMap<Long, MedicalRecord>> recordsByType = newEnumIndex(RecordType.class);
+        private static final Map<RecordStatus, NavigableMap<Long, MedicalRecord>> recordsByStatus = newEnumIndex(RecordStatus.class);
+        private static final RecordSearchIndex searchIndex = new RecordSearchIndex();
+        private static volatile IdGenerator idGenerator = TimeOrderedIdGenerator.shared();
+        private static final BinaryCodec codec = new BinaryCodec();
+        private static final byte LOG_UPSERT = 1;
+        private static final byte LOG_CLEAR = 2;
+        private static final byte LOG_PURGE = 3;
+        private static final byte LOG_ARCHIVE = 4;
+        private static final int COMPACTION_BATCH = 256;
+        private static final int SNAPSHOT_CHUNK = 1024;
+        private static final ArchivedRecordTier archive = new ArchivedRecordTier();
+        private static ScheduledExecutorService compactor;
+        private static ExecutorService snapshotter;
+        private static long lastSequence;
+        private static volatile long publishedSequence;
+        private static WriteAheadLog log;
+        private static Path storageDirectory;
+        private static int snapshotInterval;
+        private static int loggedSinceSnapshot;
+        private static boolean snapshotQueued;
+        private static CompletableFuture<Long> pendingCommit;
         
         public static void addRecord(MedicalRecord record) {
-            allRecords.add(record);
+            CompletableFuture<Long> commit;
+            synchronized (writeLock) {
+                if (record.sequence != 0) {
+                    throw new IllegalArgumentException("Record " + record.getRecordId() + " has already been added");
+                }
+                if (record.getRecordId() == null) {
+                    record.recordId = generateRecordId();
+                }
+                record.sequence = ++lastSequence;
+                register(record);
+                journal(record);
+                commit = takePendingCommit();
+            }
+            awaitCommit(commit);
+        }
+        
+        /**
+         * Adds a batch of records under one acquisition of the write lock and
+         * journals them with a single log flush. Either every record in the
+         * batch is added or, if one of them is already managed, none is.
+         */
+        public static void addRecords(List<MedicalRecord> records) {
+            CompletableFuture<Long> commit;
+            synchronized (writeLock) {
+                Set<MedicalRecord> batch = Collections.newSetFromMap(new IdentityHashMap<>());
+                for (MedicalRecord record : records) {
+                    if (record.sequence != 0 || !batch.add(record)) {
+                        throw new IllegalArgumentException("Record " + record.getRecordId() + " has already been added");
+                    }
+                }
+                List<byte[]> payloads = new ArrayList<>();
+                for (MedicalRecord record : records) {
+                    if (record.getRecordId() == null) {
+                        record.recordId = generateRecordId();
+                    }
+                    record.sequence = ++lastSequence;
+                    register(record);
+                    if (log != null) {
+                        payloads.add(upsertPayload(record));
+                    }
+                }
+                if (!payloads.isEmpty()) {
+                    appendAll(payloads);
+                }
+                commit = takePendingCommit();
+            }
+            awaitCommit(commit);
+        }
+        
+        public static void openStorage(Path directory, FsyncPolicy policy, int snapshotEveryRecords) throws IOException {
+            synchronized (writeLock) {
+                if (log != null) {
+                    throw new IllegalStateException("Storage is already open at " + storageDirectory);
+                }
+                if (store.size() > 0 || archive.size() > 0) {
+                    throw new IllegalStateException("Storage must be opened before records are added");
+                }
+                BinaryCodec decoder = new BinaryCodec();
+                NavigableMap<Long, MedicalRecord> recovered = new TreeMap<>();
+                NavigableMap<Long, byte[]> recoveredArchive = new TreeMap<>();
+                Consumer<ByteBuffer> apply = entry -> {
+                    byte kind = entry.get();
+                    if (kind == LOG_CLEAR) {
+                        recovered.clear();
+                        recoveredArchive.clear();
+                    } else if (kind == LOG_PURGE) {
+                        recovered.remove(entry.getLong());
+                    } else if (kind == LOG_ARCHIVE) {
+                        byte[] encoded = new byte[entry.remaining()];
+                        entry.get(encoded);
+                        MedicalRecord record = decoder.fromBytes(ByteBuffer.wrap(encoded));
+                        recovered.remove(record.sequence);
+                        recoveredArchive.put(record.sequence, encoded);
+                    } else {
+                        MedicalRecord record = decoder.fromBytes(entry);
+                        recovered.put(record.sequence, record);
+                    }
+                };
+                long fromLsn = 0;
+                Optional<SnapshotFile> snapshot = SnapshotFile.latest(directory);
+                if (snapshot.isPresent()) {
+                    fromLsn = snapshot.get().getLsn();
+                    snapshot.get().read(apply);
+                }
+                WriteAheadLog opened = WriteAheadLog.open(directory, policy);
+                try {
+                    opened.replay(fromLsn, apply);
+                } catch (IOException | RuntimeException e) {
+                    opened.close();
+                    throw e;
+                }
+                recovered.values().forEach(MedicalRecordManager::register);
+                for (byte[] encoded : recoveredArchive.values()) {
+                    MedicalRecord record = decoder.fromBytes(ByteBuffer.wrap(encoded));
+                    archive.add(record, encoded);
+                    lastSequence = Math.max(lastSequence, record.sequence);
+                }
+                publishedSequence = lastSequence;
+                log = opened;
+                storageDirectory = directory;
+                snapshotInterval = snapshotEveryRecords;
+                loggedSinceSnapshot = 0;
+                snapshotQueued = false;
+                if (snapshotInterval > 0 && snapshotter == null) {
+                    snapshotter = Executors.newSingleThreadExecutor(runnable -> {
+                        Thread thread = new Thread(runnable, "record-snapshotter");
+                        thread.setDaemon(true);
+                        return thread;
+                    });
+                }
+            }
+        }
+        
+        /**
+         * Writes a snapshot and drops the log segments it covers. Only the log
+         * roll that fixes the snapshot's sequence number runs under the write
+         * lock; records are then encoded in chunks, each under a short hold of
+         * the lock, and written outside it. A record changed after the roll
+         * may be captured in its newer state, which is harmless because the
+         * log replayed from that point ends in the same state.
+         */
+        public static long snapshot() throws IOException {
+            synchronized (snapshotLock) {
+                WriteAheadLog snapshotLog;
+                Path directory;
+                long lsn;
+                synchronized (writeLock) {
+                    if (log == null) {
+                        throw new IllegalStateException("Storage is not open");
+                    }
+                    snapshotLog = log;
+                    directory = storageDirectory;
+                    lsn = log.roll();
+                    loggedSinceSnapshot = 0;
+                    snapshotQueued = false;
+                }
+                try (SnapshotFile.Writer writer = SnapshotFile.create(directory, lsn)) {
+                    Iterator<MedicalRecord> records = store.iterator(Long.MIN_VALUE, Long.MIN_VALUE,
+                            TimePartitionedRecordStore.UNDATED, true);
+                    List<MedicalRecord> chunk = new ArrayList<>(SNAPSHOT_CHUNK);
+                    List<byte[]> encoded = new ArrayList<>(SNAPSHOT_CHUNK);
+                    while (records.hasNext()) {
+                        while (records.hasNext() && chunk.size() < SNAPSHOT_CHUNK) {
+                            chunk.add(records.next());
+                        }
+                        synchronized (writeLock) {
+                            for (MedicalRecord record : chunk) {
+                                if (record.sequence != 0) {
+                                    encoded.add(upsertPayload(record));
+                                }
+                            }
+                        }
+                        for (byte[] payload : encoded) {
+                            writer.write(payload);
+                        }
+                        chunk.clear();
+                        encoded.clear();
+                    }
+                    for (byte[] archived : archivedPayloads()) {
+                        writer.write(archived);
+                    }
+                    writer.commit();
+                }
+                snapshotLog.deleteSegmentsBefore(lsn);
+                SnapshotFile.deleteOlderThan(directory, lsn);
+                return lsn;
+            }
+        }
+        
+        public static void closeStorage() {
+            synchronized (snapshotLock) {
+                synchronized (writeLock) {
+                    if (log != null) {
+                        log.close();
+                        log = null;
+                        storageDirectory = null;
+                    }
+                }
+            }
+        }
+        
+        /**
+         * Moves up to {@code maxRecords} records out of the hot set: deleted
+         * records are dropped and archived ones are encoded into the cold
+         * tier. Both moves are logged, so archived records are restored cold
+         * on the next open. The write lock is held for one batch only, and
+         * readers never wait on it. A compacted record is detached from the
+         * manager, so later changes to that object are not tracked.
+         */
+        public static int compact(int maxRecords) {
+            CompletableFuture<Long> commit;
+            int compacted;
+            synchronized (writeLock) {
+                List<MedicalRecord> batch = new ArrayList<>();
+                for (RecordStatus status : new RecordStatus[] {RecordStatus.DELETED, RecordStatus.ARCHIVED}) {
+                    for (MedicalRecord record : recordsByStatus.get(status).values()) {
+                        if (batch.size() == maxRecords) {
+                            break;
+                        }
+                        batch.add(record);
+                    }
+                }
+                List<byte[]> entries = new ArrayList<>();
+                for (MedicalRecord record : batch) {
+                    if (record.status == RecordStatus.ARCHIVED) {
+                        byte[] encoded = codec.toBytes(record);
+                        archive.add(record, encoded);
+                        entries.add(archivePayload(encoded));
+                    } else {
+                        entries.add(ByteBuffer.allocate(1 + Long.BYTES).put(LOG_PURGE).putLong(record.sequence).array());
+                    }
+                    unregister(record);
+                }
+                if (log != null && !entries.isEmpty()) {
+                    appendAll(entries);
+                }
+                commit = takePendingCommit();
+                compacted = batch.size();
+            }
+            awaitCommit(commit);
+            return compacted;
+        }
+        
+        public static synchronized void startCompaction(Duration interval) {
+            if (compactor != null) {
+                return;
+            }
+            compactor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "record-compactor");
+                thread.setDaemon(true);
+                return thread;
+            });
+            compactor.scheduleWithFixedDelay(() -> {
+                while (compact(COMPACTION_BATCH) == COMPACTION_BATCH && !Thread.currentThread().isInterrupted()) {
+                    Thread.yield();
+                }
+            }, interval.toMillis(), interval.toMillis(), TimeUnit.MILLISECONDS);
+        }
+        
+        public static synchronized void stopCompaction() {
+            if (compactor != null) {
+                compactor.shutdownNow();
+                compactor = null;
+            }
+        }
+        
+        public static List<MedicalRecord> getArchivedRecords() {
+            return archive.getRecords();
+        }
+        
+        public static List<MedicalRecord> getArchivedRecords(Patient patient) {
+            return archive.getRecords(patient);
+        }
+        
+        public static int getArchivedRecordCount() {
+            return archive.size();
+        }
+        
+        public static String generateRecordId() {
+            return idGenerator.nextId("REC-");
+        }
+        
+        public static void setIdGenerator(IdGenerator generator) {
+            idGenerator = generator;
+        }
+        
+        /**
+         * Returns the live record registered under the given id, or null when no
+         * published record carries it. Archived and compacted records are not
+         * found here.
+         */
+        public static MedicalRecord getRecord(String recordId) {
+            if (recordId == null) {
+                return null;
+            }
+            MedicalRecord record = recordsById.get(recordId);
+            return record != null && isVisible(record, publishedSequence) ? record : null;
         }
         
         public static List<MedicalRecord> getRecordsForPatient(Patient patient) {
-            return allRecords.stream()
-                    .filter(record -> record.getPatient().equals(patient))
-                    .toList();
+            return lookup(recordsByPatient, patient);
         }
         
         public static List<MedicalRecord> getRecordsByType(RecordType type) {
-            return allRecords.stream()
-                    .filter(record -> record.getType() == type)
-                    .toList();
+            if (type == null) {
+                return scan(record -> record.getType() == null);
+            }
+            return lookup(recordsByType, type);
+        }
+        
+        public static List<MedicalRecord> getRecordsByStatus(RecordStatus status) {
+            if (status == null) {
+                return scan(record -> record.getStatus() == null);
+            }
+            return lookup(recordsByStatus, status);
+        }
+        
+        public static RecordQuery query() {
+            return new RecordQuery();
+        }
+        
+        public static RecordAnalytics analytics() {
+            return new RecordAnalytics(store, publishedSequence);
+        }
+        
+        public static List<MedicalRecord> getRecordsBetween(LocalDateTime from, LocalDateTime to) {
+            return visible(store.between(from, to), publishedSequence);
+        }
+        
+        public static int sealPartitionsBefore(YearMonth month) {
+            synchronized (writeLock) {
+                return store.sealPartitionsBefore(month);
+            }
+        }
+        
+        public static List<MedicalRecord> search(String query) {
+            return search(RecordSearchIndex.Query.parse(query), null, null);
+        }
+        
+        public static List<MedicalRecord> search(RecordSearchIndex.Query query, RecordType type, RecordStatus status) {
+            return visible(searchIndex.search(query, type, status), publishedSequence);
         }
         
         public static void clearAllRecords() {
-            allRecords.clear();
+            CompletableFuture<Long> commit;
+            synchronized (writeLock) {
+                if (log != null) {
+                    append(new byte[] {LOG_CLEAR});
+                }
+                store.forEach(record -> record.sequence = 0);
+                store.clear();
+                recordsById.clear();
+                recordsByPatient.clear();
+                recordsByType.values().forEach(Map::clear);
+                recordsByStatus.values().forEach(Map::clear);
+                searchIndex.clear();
+                archive.clear();
+                commit = takePendingCommit();
+            }
+            awaitCommit(commit);
         }
         
         public static int getTotalRecordCount() {
-            return allRecords.size();
+            return store.size();
+        }
+        
+        static void mutate(MedicalRecord record, Runnable change) {
+            if (record.sequence == 0) {
+                change.run();
+                return;
+            }
+            CompletableFuture<Long> commit;
+            synchronized (writeLock) {
+                change.run();
+                store.invalidate(record);
+                commit = takePendingCommit();
+            }
+            awaitCommit(commit);
+        }
+        
+        static void onChanged(MedicalRecord record) {
+            journal(record);
+        }
+        
+        static void onTextChanged(MedicalRecord record) {
+            if (record.sequence != 0) {
+                searchIndex.update(record);
+                journal(record);
+            }
+        }
+        
+        static void onRecordDateChanged(MedicalRecord record, LocalDateTime previousDate) {
+            if (record.sequence != 0 && store.remove(record, previousDate)) {
+                store.add(record);
+                journal(record);
+            }
+        }
+        
+        static void onRecordIdChanged(MedicalRecord record, String previousId) {
+            if (record.sequence != 0) {
+                if (previousId != null) {
+                    recordsById.remove(previousId, record);
+                }
+                if (record.recordId != null) {
+                    recordsById.put(record.recordId, record);
+                }
+                journal(record);
+            }
+        }
+        
+        static void onPatientChanged(MedicalRecord record, Patient previousPatient) {
+            if (record.sequence != 0) {
+                reindex(recordsByPatient, previousPatient, record.patient, record);
+                journal(record);
+            }
+        }
+        
+        static void onTypeChanged(MedicalRecord record, RecordType previousType) {
+            if (record.sequence != 0) {
+                reindex(recordsByType, previousType, record.type, record);
+                journal(record);
+            }
+        }
+        
+        static void onStatusChanged(MedicalRecord record, RecordStatus previousStatus) {
+            if (record.sequence != 0) {
+                reindex(recordsByStatus, previousStatus, record.status, record);
+                journal(record);
+            }
+        }
+        
+        private static void register(MedicalRecord record) {
+            store.add(record);
+            if (record.recordId != null) {
+                recordsById.put(record.recordId, record);
+            }
+            index(recordsByPatient, record.patient, record);
+            index(recordsByType, record.type, record);
+            index(recordsByStatus, record.status, record);
+            searchIndex.add(record);
+            lastSequence = Math.max(lastSequence, record.sequence);
+            publishedSequence = lastSequence;
+        }
+        
+        private static void unregister(MedicalRecord record) {
+            store.remove(record, record.recordDate);
+            if (record.recordId != null) {
+                recordsById.remove(record.recordId, record);
+            }
+            reindex(recordsByPatient, record.patient, null, record);
+            reindex(recordsByType, record.type, null, record);
+            reindex(recordsByStatus, record.status, null, record);
+            searchIndex.remove(record);
+            record.sequence = 0;
+        }
+        
+        private static List<byte[]> archivedPayloads() {
+            List<byte[]> payloads = new ArrayList<>();
+            archive.forEachPayload(encoded -> payloads.add(archivePayload(encoded)));
+            return payloads;
+        }
+        
+        private static void journal(MedicalRecord record) {
+            if (log == null || record.sequence == 0) {
+                return;
+            }
+            append(upsertPayload(record));
+        }
+        
+        private static byte[] upsertPayload(MedicalRecord record) {
+            return entryPayload(LOG_UPSERT, codec.toBytes(record));
+        }
+        
+        private static byte[] archivePayload(byte[] encoded) {
+            return entryPayload(LOG_ARCHIVE, encoded);
+        }
+        
+        private static byte[] entryPayload(byte kind, byte[] encoded) {
+            byte[] payload = new byte[encoded.length + 1];
+            payload[0] = kind;
+            System.arraycopy(encoded, 0, payload, 1, encoded.length);
+            return payload;
+        }
+        
+        /**
+         * Queues an entry without waiting for it to reach disk. Under a
+         * synchronous policy the entry is remembered as the pending commit,
+         * which the caller takes before releasing the write lock and awaits
+         * after, so writers that commit concurrently share one fsync.
+         */
+        private static void append(byte[] payload) {
+            CompletableFuture<Long> written = log.append(payload);
+            if (log.getPolicy().isSynchronous()) {
+                pendingCommit = written;
+            }
+            loggedSinceSnapshot++;
+            snapshotIfDue();
+        }
+        
+        private static void appendAll(List<byte[]> payloads) {
+            CompletableFuture<Long> last = null;
+            for (byte[] payload : payloads) {
+                last = log.append(payload);
+            }
+            if (log.getPolicy().isSynchronous()) {
+                pendingCommit = last;
+            }
+            loggedSinceSnapshot += payloads.size();
+            snapshotIfDue();
+        }
+        
+        private static CompletableFuture<Long> takePendingCommit() {
+            CompletableFuture<Long> commit = pendingCommit;
+            pendingCommit = null;
+            return commit;
+        }
+        
+        private static void awaitCommit(CompletableFuture<Long> commit) {
+            if (commit != null) {
+                WriteAheadLog.await(commit);
+            }
+        }
+        
+        /**
+         * Queues a snapshot on the background thread once enough entries have
+         * been logged, so the writer that crosses the interval neither waits
+         * for it nor sees it fail. A failed snapshot loses nothing, since the
+         * log it would have replaced is kept, and the next interval retries.
+         */
+        private static void snapshotIfDue() {
+            if (snapshotInterval > 0 && loggedSinceSnapshot >= snapshotInterval && !snapshotQueued) {
+                snapshotQueued = true;
+                snapshotter.execute(() -> {
+                    try {
+                        snapshot();
+                    } catch (IOException | RuntimeException e) {
+                        synchronized (writeLock) {
+                            snapshotQueued = false;
+                        }
+                    }
+                });
+            }
+        }
+        
+        private static List<MedicalRecord> scan(Predicate<MedicalRecord> filter) {
+            long visibleSequence = publishedSequence;
+            List<MedicalRecord> records = new ArrayList<>();
+            store.forEach(record -> {
+                if (isVisible(record, visibleSequence) && filter.test(record)) {
+                    records.add(record);
+                }
+            });
+            return records;
+        }
+        
+        private static boolean isVisible(MedicalRecord record, long visibleSequence) {
+            long sequence = record.sequence;
+            return sequence != 0 && sequence <= visibleSequence;
+        }
+        
+        private static List<MedicalRecord> visible(List<MedicalRecord> records, long visibleSequence) {
+            records.removeIf(record -> !isVisible(record, visibleSequence));
+            return records;
+        }
+        
+        private static <K extends Enum<K>> Map<K, NavigableMap<Long, MedicalRecord>> newEnumIndex(Class<K> keyType) {
+            Map<K, NavigableMap<Long, MedicalRecord>> index = new EnumMap<>(keyType);
+            for (K key : keyType.getEnumConstants()) {
+                index.put(key, new ConcurrentSkipListMap<>());
+            }
+            return index;
+        }
+        
+        private static <K> void index(Map<K, NavigableMap<Long, MedicalRecord>> index, K key, MedicalRecord record) {
+            if (key != null) {
+                index.computeIfAbsent(key, k -> new ConcurrentSkipListMap<>()).put(record.sequence, record);
+            }
+        }
+        
+        private static <K> void reindex(Map<K, NavigableMap<Long, MedicalRecord>> index, K previousKey, K key,
+                                        MedicalRecord record) {
+            if (previousKey == key) {
+                return;
+            }
+            if (previousKey != null) {
+                NavigableMap<Long, MedicalRecord> previous = index.get(previousKey);
+                previous.remove(record.sequence);
+                if (previous.isEmpty() && index == recordsByPatient) {
+                    index.remove(previousKey);
+                }
+            }
+            index(index, key, record);
+        }
+        
+        private static <K> List<MedicalRecord> lookup(Map<K, NavigableMap<Long, MedicalRecord>> index, K key) {
+            long visibleSequence = publishedSequence;
+            NavigableMap<Long, MedicalRecord> records = index.get(key);
+            if (records == null) {
+                return List.of();
+            }
+            List<MedicalRecord> result = new ArrayList<>();
+            for (MedicalRecord record : records.headMap(visibleSequence, true).values()) {
+                if (record.sequence != 0) {
+                    result.add(record);
+                }
+            }
+            return result;
+        }
+        
+        public static class RecordQuery {
+
+            public static final int DEFAULT_PAGE_SIZE = 100;
+            
+            private Patient patient;
+            private RecordType type;
+            private RecordStatus status;
+            private LocalDateTime from;
+            private LocalDateTime to;
+            private int pageSize = DEFAULT_PAGE_SIZE;
+            
+            public RecordQuery forPatient(Patient patient) {
+                this.patient = patient;
+                return this;
+            }
+            
+            public RecordQuery ofType(RecordType type) {
+                this.type = type;
+                return this;
+            }
+            
+            public RecordQuery withStatus(RecordStatus status) {
+                this.status = status;
+                return this;
+            }
+            
+            public RecordQuery between(LocalDateTime from, LocalDateTime to) {
+                this.from = from;
+                this.to = to;
+                return this;
+            }
+            
+            public RecordQuery pageSize(int pageSize) {
+                if (pageSize <= 0) {
+                    throw new IllegalArgumentException("Page size must be positive");
+                }
+                this.pageSize = pageSize;
+                return this;
+            }
+            
+            public RecordCursor cursor() {
+                return cursor(null);
+            }
+            
+            public RecordCursor cursor(String resumeToken) {
+                char source = patient != null ? 'P'
+                        : from != null || to != null ? 'D'
+                        : type != null ? 'T'
+                        : status != null ? 'S'
+                        : 'D';
+                long afterTime = Long.MIN_VALUE;
+                long afterSequence = Long.MIN_VALUE;
+                if (resumeToken != null) {
+                    String[] parts = resumeToken.split("\\.");
+                    if (parts.length != 3 || parts[0].length() != 1 || parts[0].charAt(0) != source) {
+                        throw new IllegalArgumentException("Resume token does not belong to this query: " + resumeToken);
+                    }
+                    afterTime = Long.parseLong(parts[1], 36);
+                    afterSequence = Long.parseLong(parts[2], 36);
+                }
+                Iterator<MedicalRecord> records = switch (source) {
+                    case 'P' -> tail(recordsByPatient.get(patient), afterSequence);
+                    case 'T' -> tail(recordsByType.get(type), afterSequence);
+                    case 'S' -> tail(recordsByStatus.get(status), afterSequence);
+                    default -> timeOrdered(afterTime, afterSequence, resumeToken != null);
+                };
+                long visibleSequence = publishedSequence;
+                return new RecordCursor(source, records, record -> isVisible(record, visibleSequence) && matches(record),
+                        afterTime, afterSequence);
+            }
+            
+            public RecordPage page(String resumeToken) {
+                RecordCursor cursor = cursor(resumeToken);
+                List<MedicalRecord> records = new ArrayList<>(pageSize);
+                while (records.size() < pageSize && cursor.hasNext()) {
+                    records.add(cursor.next());
+                }
+                return new RecordPage(records, cursor.hasNext() ? cursor.getResumeToken() : null);
+            }
+            
+            public Stream<MedicalRecord> stream() {
+                return StreamSupport.stream(Spliterators.spliteratorUnknownSize(cursor(),
+                        Spliterator.ORDERED | Spliterator.NONNULL), false);
+            }
+            
+            private Iterator<MedicalRecord> timeOrdered(long afterTime, long afterSequence, boolean resumed) {
+                long fromTime = from == null ? Long.MIN_VALUE : TimePartitionedRecordStore.timeOf(from);
+                long toTime = to == null ? TimePartitionedRecordStore.UNDATED : TimePartitionedRecordStore.timeOf(to);
+                long startTime = fromTime;
+                long startSequence = Long.MIN_VALUE;
+                if (resumed && (afterTime > fromTime || (afterTime == fromTime && afterSequence != Long.MAX_VALUE))) {
+                    startTime = afterTime;
+                    startSequence = afterSequence + 1;
+                }
+                return store.iterator(startTime, startSequence, toTime, from == null && to == null);
+            }
+            
+            private boolean matches(MedicalRecord record) {
+                if (patient != null && record.patient != patient) {
+                    return false;
+                }
+                if ((type != null && record.type != type) || (status != null && record.status != status)) {
+                    return false;
+                }
+                LocalDateTime recordDate = record.recordDate;
+                if (from != null && (recordDate == null || recordDate.isBefore(from))) {
+                    return false;
+                }
+                return to == null || (recordDate != null && recordDate.isBefore(to));
+            }
+            
+            private static Iterator<MedicalRecord> tail(NavigableMap<Long, MedicalRecord> index, long afterSequence) {
+                return index == null ? Collections.emptyIterator() : index.tailMap(afterSequence, false).values().iterator();
+            }
+        }
+        
+        public static class RecordCursor implements Iterator<MedicalRecord> {
+
+            private final char source;
+            private final Iterator<MedicalRecord> records;
+            private final Predicate<MedicalRecord> filter;
+            private MedicalRecord next;
+            private long lastTime;
+            private long lastSequence;
+            
+            RecordCursor(char source, Iterator<MedicalRecord> records, Predicate<MedicalRecord> filter,
+                         long lastTime, long lastSequence) {
+                this.source = source;
+                this.records = records;
+                this.filter = filter;
+                this.lastTime = lastTime;
+                this.lastSequence = lastSequence;
+            }
+            
+            @Override
+            public boolean hasNext() {
+                while (next == null && records.hasNext()) {
+                    MedicalRecord candidate = records.next();
+                    if (filter.test(candidate)) {
+                        next = candidate;
+                    }
+                }
+                return next != null;
+            }
+            
+            @Override
+            public MedicalRecord next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                MedicalRecord record = next;
+                next = null;
+                lastTime = TimePartitionedRecordStore.timeOf(record.recordDate);
+                lastSequence = record.sequence;
+                return record;
+            }
+            
+            public String getResumeToken() {
+                return source + "." + Long.toString(lastTime, 36) + "." + Long.toString(lastSequence, 36);
+            }
+        }
+        
+        public static class RecordPage {
+
+            private final List<MedicalRecord> records;
+            private final String nextToken;
+            
+            RecordPage(List<MedicalRecord> records, String nextToken) {
+                this.records = records;
+                this.nextToken = nextToken;
+            }
+            
+            public List<MedicalRecord> getRecords() {
+                return records;
+            }
+            
+            public String getNextToken() {
+                return nextToken;
+            }
+            
+            public boolean hasMore() {
+                return nextToken != null;
+            }
         }
     }
 }
-
@@ -1,25 +1,50 @@
 package org.healthhub.model;
 
+import java.lang.ref.WeakReference;
 import java.time.LocalDate;
+import java.util.AbstractList;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Objects;
+import java.util.Set;
+import java.util.WeakHashMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
 
+/**
+ * Patients are stored compactly, since a registry may hold millions of them:
+ * names are shared through the {@link NameDictionary}, the date of birth is
+ * kept as an epoch day, a phone number of up to 15 digits is packed into a
+ * long, and the medical records list is only created for the first record.
+ * The getters rebuild the usual types, so a date or phone number read back
+ * is equal to, but not the same object as, the one that was set.
+ */
 public class Patient {
 
+    private static final int NO_DATE = Integer.MIN_VALUE;
+    private static final int MAX_PACKED_DIGITS = 15;
+    private static final int PHONE_LENGTH_SHIFT = 50;
+    
     private String patientId;
     private String firstName;
     private String lastName;
-    private LocalDate dateOfBirth;
+    private int dateOfBirth = NO_DATE;
     private String email;
-    private String phoneNumber;
+    private long packedPhoneNumber;
+    private String phoneNumberText;
     private List<MedicalRecord> medicalRecords;
     
     public Patient(String patientId, String firstName, String lastName, LocalDate dateOfBirth) {
         this.patientId = patientId;
-        this.firstName = firstName;
-        this.lastName = lastName;
-        this.dateOfBirth = dateOfBirth;
-        this.medicalRecords = new ArrayList<>();
+        this.firstName = NameDictionary.share(firstName);
+        this.lastName = NameDictionary.share(lastName);
+        setDateOfBirth(dateOfBirth);
     }
     
     public String getPatientId() {
@@ -27,7 +52,7 @@ public class Patient {
     }
     
     public void setPatientId(String patientId) {
-        this.patientId = patientId;
+        PatientRegistry.changeId(this, patientId);
     }
     
     public String getFirstName() {
@@ -35,7 +60,8 @@ public class Patient {
     }
     
     public void setFirstName(String firstName) {
-        this.firstName = firstName;
+        String shared = NameDictionary.share(firstName);
+        PatientRegistry.rename(this, () -> this.firstName = shared);
     }
     
     public String getLastName() {
@@ -43,15 +69,28 @@ public class Patient {
     }
     
     public void setLastName(String lastName) {
-        this.lastName = lastName;
+        String shared = NameDictionary.share(lastName);
+        PatientRegistry.rename(this, () -> this.lastName = shared);
     }
     
     public LocalDate getDateOfBirth() {
-        return dateOfBirth;
+        return dateOfBirth == NO_DATE ? null : LocalDate.ofEpochDay(dateOfBirth);
     }
     
+    /**
+     * Dates are stored as an int epoch day, which covers about five million
+     * years either side of 1970.
+     */
     public void setDateOfBirth(LocalDate dateOfBirth) {
-        this.dateOfBirth = dateOfBirth;
+        if (dateOfBirth == null) {
+            this.dateOfBirth = NO_DATE;
+            return;
+        }
+        long epochDay = dateOfBirth.toEpochDay();
+        if (epochDay <= NO_DATE || epochDay > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Date of birth " + dateOfBirth + " is out of range");
+        }
+        this.dateOfBirth = (int) epochDay;
     }
     
     public String getEmail() {
@@ -63,48 +102,384 @@ public class Patient {
     }
     
     public String getPhoneNumber() {
-        return phoneNumber;
+        if (packedPhoneNumber == 0) {
+            return phoneNumberText;
+        }
+        char[] digits = new char[(int) (packedPhoneNumber >>> PHONE_LENGTH_SHIFT)];
+        long value = packedPhoneNumber & ((1L << PHONE_LENGTH_SHIFT) - 1);
+        for (int i = digits.length - 1; i >= 0; i--) {
+            digits[i] = (char) ('0' + value % 10);
+            value /= 10;
+        }
+        return new String(digits);
     }
     
+    /**
+     * A number of 1 to 15 ASCII digits is packed as its value with the digit
+     * count in the bits above, so leading zeros survive; anything else is
+     * kept as text.
+     */
     public void setPhoneNumber(String phoneNumber) {
-        this.phoneNumber = phoneNumber;
+        long packed = 0;
+        if (phoneNumber != null && !phoneNumber.isEmpty() && phoneNumber.length() <= MAX_PACKED_DIGITS) {
+            for (int i = 0; i < phoneNumber.length(); i++) {
+                char c = phoneNumber.charAt(i);
+                if (c < '0' || c > '9') {
+                    packed = 0;
+                    break;
+                }
+                packed = packed * 10 + (c - '0');
+                if (i == phoneNumber.length() - 1) {
+                    packed |= (long) phoneNumber.length() << PHONE_LENGTH_SHIFT;
+                }
+            }
+        }
+        this.packedPhoneNumber = packed;
+        this.phoneNumberText = packed == 0 ? phoneNumber : null;
+    }
+    
+    /**
+     * Validates the phone number in place, so batch validation does not
+     * unpack it. A packed number is all digits, so only its length matters.
+     */
+    boolean hasValidPhoneNumber() {
+        if (packedPhoneNumber == 0) {
+            return PatientValidator.isValidPhoneNumber(phoneNumberText);
+        }
+        return packedPhoneNumber >>> PHONE_LENGTH_SHIFT >= 10;
     }
     
+    boolean hasPhoneNumber() {
+        return packedPhoneNumber != 0 || phoneNumberText != null;
+    }
+    
+    boolean isBornAfter(long epochDay) {
+        return dateOfBirth != NO_DATE && dateOfBirth > epochDay;
+    }
+    
+    /**
+     * The patient's own records. Until the first record is added this is a
+     * view that allocates the list on its first write, so reading the records
+     * of a patient without any costs nothing.
+     */
     public List<MedicalRecord> getMedicalRecords() {
-        return medicalRecords;
+        return medicalRecords == null ? new RecordList() : medicalRecords;
     }
     
     public void addMedicalRecord(MedicalRecord record) {
+        if (this.medicalRecords == null) {
+            this.medicalRecords = new ArrayList<>(2);
+        }
         this.medicalRecords.add(record);
     }
     
     public int getAge() {
-        return LocalDate.now().getYear() - dateOfBirth.getYear();
+        return LocalDate.now().getYear() - getDateOfBirth().getYear();
     }
     
+    private class RecordList extends AbstractList<MedicalRecord> {
+        @Override
+        public MedicalRecord get(int index) {
+            Objects.checkIndex(index, size());
+            return medicalRecords.get(index);
+        }
+        
+        @Override
+        public int size() {
+            return medicalRecords == null ? 0 : medicalRecords.size();
+        }
+        
+        @Override
+        public MedicalRecord set(int index, MedicalRecord record) {
+            Objects.checkIndex(index, size());
+            return medicalRecords.set(index, record);
+        }
+        
+        @Override
+        public void add(int index, MedicalRecord record) {
+            Objects.checkIndex(index, size() + 1);
+            if (medicalRecords == null) {
+                medicalRecords = new ArrayList<>(2);
+            }
+            medicalRecords.add(index, record);
+        }
+        
+        @Override
+        public MedicalRecord remove(int index) {
+            Objects.checkIndex(index, size());
+            return medicalRecords.remove(index);
+        }
+    }
+    
+    /**
+     * Checks are written out by hand rather than with regular expressions or
+     * trimming, so they allocate nothing and stay cheap at import scale.
+     */
     public static class PatientValidator {
         public static boolean isValidEmail(String email) {
-            return email != null && email.contains("@") && email.contains(".");
+            return email != null && email.indexOf('@') >= 0 && email.indexOf('.') >= 0;
         }
         
         public static boolean isValidPhoneNumber(String phoneNumber) {
-            return phoneNumber != null && phoneNumber.matches("\\d{10,15}");
+            if (phoneNumber == null || phoneNumber.length() < 10 || phoneNumber.length() > 15) {
+                return false;
+            }
+            for (int i = 0; i < phoneNumber.length(); i++) {
+                char c = phoneNumber.charAt(i);
+                if (c < '0' || c > '9') {
+                    return false;
+                }
+            }
+            return true;
         }
         
         public static boolean isValidPatientId(String patientId) {
-            return patientId != null && !patientId.trim().isEmpty();
+            if (patientId == null) {
+                return false;
+            }
+            for (int i = 0; i < patientId.length(); i++) {
+                if (patientId.charAt(i) > ' ') {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+    
+    /**
+     * Shared first and last names. Imports produce a new string for every
+     * occurrence of a name; passing names through the dictionary keeps one
+     * copy of each. Entries are weak, so a name is forgotten once no patient
+     * holds it. The dictionary is split into stripes with a lock each, so
+     * concurrent imports rarely wait on one another.
+     */
+    public static class NameDictionary {
+
+        private static final int STRIPES = 64;
+        
+        private static final Stripe[] stripes = new Stripe[STRIPES];
+        
+        static {
+            for (int i = 0; i < STRIPES; i++) {
+                stripes[i] = new Stripe();
+            }
+        }
+        
+        public static String share(String name) {
+            if (name == null) {
+                return null;
+            }
+            int hash = name.hashCode();
+            Stripe stripe = stripes[(hash ^ hash >>> 16) & STRIPES - 1];
+            synchronized (stripe) {
+                WeakReference<String> entry = stripe.names.get(name);
+                String shared = entry == null ? null : entry.get();
+                if (shared == null) {
+                    stripe.names.put(name, new WeakReference<>(name));
+                    shared = name;
+                }
+                return shared;
+            }
+        }
+        
+        /**
+         * Number of names still held by some patient, or not yet collected.
+         */
+        public static int size() {
+            int size = 0;
+            for (Stripe stripe : stripes) {
+                synchronized (stripe) {
+                    size += stripe.names.size();
+                }
+            }
+            return size;
+        }
+        
+        /**
+         * Forgets all names. Patients keep the strings they hold, so this only
+         * affects deduplication of names seen afterwards.
+         */
+        public static void clear() {
+            for (Stripe stripe : stripes) {
+                synchronized (stripe) {
+                    stripe.names.clear();
+                }
+            }
+        }
+        
+        private static class Stripe {
+
+            private final Map<String, WeakReference<String>> names = new WeakHashMap<>();
+        }
+    }
+    
+    /**
+     * Registered patients by id, plus two sorted name indexes for type-ahead
+     * search: one keyed by last name then first name, one by first name then
+     * last name. Index keys are lower-cased and end with the patient id, so
+     * they are unique and a prefix query is a range scan of the skip list.
+     * Changes to one patient are serialized on that patient; lookups and
+     * searches never block and may briefly see a renamed patient under both
+     * its old and new name, but never under neither.
+     */
+    public static class PatientRegistry {
+
+        private static final char SEPARATOR = '\u0000';
+        private static final char RANGE_END = '\uffff';
+        private static final Map<String, Patient> patientsById = new ConcurrentHashMap<>();
+        private static final NavigableMap<String, Patient> byLastName = new ConcurrentSkipListMap<>();
+        private static final NavigableMap<String, Patient> byFirstName = new ConcurrentSkipListMap<>();
+        
+        public static void register(Patient patient) {
+            synchronized (patient) {
+                if (!PatientValidator.isValidPatientId(patient.patientId)) {
+                    throw new IllegalArgumentException("Invalid patient id '" + patient.patientId + "'");
+                }
+                Patient existing = patientsById.putIfAbsent(patient.patientId, patient);
+                if (existing != null) {
+                    throw new IllegalArgumentException("Patient " + patient.patientId + " is already registered");
+                }
+                byLastName.put(lastNameKey(patient), patient);
+                byFirstName.put(firstNameKey(patient), patient);
+            }
+        }
+        
+        public static boolean unregister(Patient patient) {
+            synchronized (patient) {
+                if (!isRegistered(patient)) {
+                    return false;
+                }
+                byLastName.remove(lastNameKey(patient));
+                byFirstName.remove(firstNameKey(patient));
+                patientsById.remove(patient.patientId);
+                return true;
+            }
+        }
+        
+        public static Patient getPatient(String patientId) {
+            return patientId == null ? null : patientsById.get(patientId);
+        }
+        
+        public static boolean isRegistered(Patient patient) {
+            return patient.patientId != null && patientsById.get(patient.patientId) == patient;
+        }
+        
+        public static int getPatientCount() {
+            return patientsById.size();
+        }
+        
+        /**
+         * Returns up to {@code limit} patients whose last or first name starts
+         * with the query, ignoring case. Last-name matches come first, each
+         * group sorted by name. A query with a space also matches a full name
+         * followed by a prefix of the other name, so "doe j" finds Jane Doe and
+         * so does "jane d"; such matches rank after plain prefix matches.
+         */
+        public static List<Patient> searchByName(String query, int limit) {
+            String prefix = normalize(query).trim();
+            if (prefix.isEmpty() || limit <= 0) {
+                return List.of();
+            }
+            Set<Patient> matches = Collections.newSetFromMap(new IdentityHashMap<>());
+            List<Patient> result = new ArrayList<>();
+            collect(byLastName, prefix, limit, matches, result);
+            collect(byFirstName, prefix, limit, matches, result);
+            for (int space = prefix.indexOf(' '); space > 0 && result.size() < limit; space = prefix.indexOf(' ', space + 1)) {
+                String split = prefix.substring(0, space) + SEPARATOR + prefix.substring(space + 1).trim();
+                collect(byLastName, split, limit, matches, result);
+                collect(byFirstName, split, limit, matches, result);
+            }
+            return result;
+        }
+        
+        public static void clearAllPatients() {
+            patientsById.clear();
+            byLastName.clear();
+            byFirstName.clear();
+        }
+        
+        static void changeId(Patient patient, String patientId) {
+            synchronized (patient) {
+                if (!isRegistered(patient)) {
+                    patient.patientId = patientId;
+                    return;
+                }
+                if (patientId != null && patientId.equals(patient.patientId)) {
+                    return;
+                }
+                if (!PatientValidator.isValidPatientId(patientId)) {
+                    throw new IllegalArgumentException("Invalid patient id '" + patientId + "'");
+                }
+                if (patientsById.putIfAbsent(patientId, patient) != null) {
+                    throw new IllegalArgumentException("Patient " + patientId + " is already registered");
+                }
+                String previousId = patient.patientId;
+                reindex(patient, () -> patient.patientId = patientId);
+                patientsById.remove(previousId, patient);
+            }
+        }
+        
+        static void rename(Patient patient, Runnable change) {
+            synchronized (patient) {
+                if (isRegistered(patient)) {
+                    reindex(patient, change);
+                } else {
+                    change.run();
+                }
+            }
+        }
+        
+        private static void reindex(Patient patient, Runnable change) {
+            String previousLastNameKey = lastNameKey(patient);
+            String previousFirstNameKey = firstNameKey(patient);
+            change.run();
+            String lastNameKey = lastNameKey(patient);
+            String firstNameKey = firstNameKey(patient);
+            if (!lastNameKey.equals(previousLastNameKey)) {
+                byLastName.put(lastNameKey, patient);
+                byLastName.remove(previousLastNameKey);
+            }
+            if (!firstNameKey.equals(previousFirstNameKey)) {
+                byFirstName.put(firstNameKey, patient);
+                byFirstName.remove(previousFirstNameKey);
+            }
+        }
+        
+        private static void collect(NavigableMap<String, Patient> index, String prefix, int limit, Set<Patient> matches,
+                                    List<Patient> result) {
+            Iterator<Patient> candidates = index.subMap(prefix, true, prefix + RANGE_END, false).values().iterator();
+            while (result.size() < limit && candidates.hasNext()) {
+                Patient candidate = candidates.next();
+                if (matches.add(candidate)) {
+                    result.add(candidate);
+                }
+            }
+        }
+        
+        private static String lastNameKey(Patient patient) {
+            return normalize(patient.lastName) + SEPARATOR + normalize(patient.firstName) + SEPARATOR + patient.patientId;
+        }
+        
+        private static String firstNameKey(Patient patient) {
+            return normalize(patient.firstName) + SEPARATOR + normalize(patient.lastName) + SEPARATOR + patient.patientId;
+        }
+        
+        private static String normalize(String name) {
+            return name == null ? "" : name.toLowerCase(Locale.ROOT);
         }
     }
     
     public static class PatientBuilder {
 
+        private static volatile DuplicatePatientDetector duplicateDetector;
+        
         private String patientId;
         private String firstName;
         private String lastName;
         private LocalDate dateOfBirth;
         private String email;
         private String phoneNumber;
-
+        
         public PatientBuilder setPatientId(String patientId) {
             this.patientId = patientId;
             return this;
@@ -139,8 +514,20 @@ public class Patient {
             Patient patient = new Patient(patientId, firstName, lastName, dateOfBirth);
             patient.setEmail(email);
             patient.setPhoneNumber(phoneNumber);
+            DuplicatePatientDetector detector = duplicateDetector;
+            if (detector != null) {
+                detector.add(patient);
+            }
             return patient;
         }
+        
+        /**
+         * Every patient built afterwards is added to the detector, which flags
+         * it against the patients built before. Pass null to stop.
+         */
+        public static void setDuplicateDetector(DuplicatePatientDetector detector) {
+            duplicateDetector = detector;
+        }
     }
 }
 
@@ -1,5 +1,7 @@
 package org.healthhub.model;
 
+import org.healthhub.util.IdGenerator;
+import org.healthhub.util.TimeOrderedIdGenerator;
 import java.time.LocalDate;
 import java.util.ArrayList;
 import java.util.List;
@@ -14,7 +16,8 @@ public class Prescription {
     private List<Medication> medications;
     private String instructions;
     private PrescriptionStatus status;
-
+    
+    private static volatile IdGenerator idGenerator = TimeOrderedIdGenerator.shared();
     
     public String getPrescriptionId() {
         return prescriptionId;
@@ -91,6 +94,14 @@ public class Prescription {
         this.status = PrescriptionStatus.EXPIRED;
     }
     
+    public static String generatePrescriptionId() {
+        return idGenerator.nextId("RX-");
+    }
+    
+    public static void setIdGenerator(IdGenerator generator) {
+        idGenerator = generator;
+    }
+    
     public enum PrescriptionStatus {
         ACTIVE("Active"),
         EXPIRED("Expired"),
@@ -159,7 +170,15 @@ public class Prescription {
         }
         
         public static boolean isValidExpiryDate(LocalDate expiryDate) {
-            return expiryDate != null && expiryDate.isAfter(LocalDate.now());
+            return isValidExpiryDate(expiryDate, LocalDate.now());
+        }
+        
+        /**
+         * Takes the current date from the caller, so a batch reads the clock
+         * once instead of per prescription.
+         */
+        public static boolean isValidExpiryDate(LocalDate expiryDate, LocalDate today) {
+            return expiryDate != null && expiryDate.isAfter(today);
         }
     }
 }
@@ -0,0 +1,523 @@
+package org.healthhub.model;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.YearMonth;
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.function.Supplier;
+
+/**
+ * Parallel aggregations over the record store. Every partition is read through
+ * its columnar projection, which sealed partitions cache between queries, and
+ * the work is split with fork-join across partitions and across row ranges of
+ * large partitions. Each query resolves patient and doctor fields against the
+ * live objects once per partition. Rows are grouped by small integer codes and
+ * only turned into keys once per partition.
+ */
+public class RecordAnalytics {
+
+    private static final int ROWS_PER_TASK = 1 << 15;
+    private static final int MAX_DENSE_GROUPS = 1 << 20;
+    
+    private final TimePartitionedRecordStore store;
+    private final long visibleSequence;
+    private ForkJoinPool pool = ForkJoinPool.commonPool();
+    private MedicalRecord.RecordType type;
+    private MedicalRecord.RecordStatus status;
+    private LocalDateTime from;
+    private LocalDateTime to;
+    
+    RecordAnalytics(TimePartitionedRecordStore store, long visibleSequence) {
+        this.store = store;
+        this.visibleSequence = visibleSequence;
+    }
+    
+    public RecordAnalytics ofType(MedicalRecord.RecordType type) {
+        this.type = type;
+        return this;
+    }
+    
+    public RecordAnalytics withStatus(MedicalRecord.RecordStatus status) {
+        this.status = status;
+        return this;
+    }
+    
+    public RecordAnalytics between(LocalDateTime from, LocalDateTime to) {
+        this.from = from;
+        this.to = to;
+        return this;
+    }
+    
+    public RecordAnalytics using(ForkJoinPool pool) {
+        this.pool = pool;
+        return this;
+    }
+    
+    public long count() {
+        return run(new Aggregation<Long>() {
+            @Override
+            public Long aggregate(RecordColumns columns, int fromRow, int toRow, Filter filter) {
+                long count = 0;
+                for (int row = fromRow; row < toRow; row++) {
+                    if (filter.accepts(columns, row)) {
+                        count++;
+                    }
+                }
+                return count;
+            }
+            
+            @Override
+            public Long merge(Long left, Long right) {
+                return left + right;
+            }
+            
+            @Override
+            public Long empty() {
+                return 0L;
+            }
+        });
+    }
+    
+    public <K> Map<K, Long> countBy(Dimension<K> dimension) {
+        return run(new Aggregation<Map<K, Long>>() {
+            @Override
+            public Map<K, Long> aggregate(RecordColumns columns, int fromRow, int toRow, Filter filter) {
+                GroupCounter counter = new GroupCounter(dimension.cardinality(columns));
+                for (int row = fromRow; row < toRow; row++) {
+                    if (filter.accepts(columns, row)) {
+                        counter.increment(dimension.code(columns, row));
+                    }
+                }
+                Map<K, Long> counts = new HashMap<>();
+                counter.forEach((code, count) -> counts.merge(dimension.key(columns, (int) code), count, Long::sum));
+                return counts;
+            }
+            
+            @Override
+            public Map<K, Long> merge(Map<K, Long> left, Map<K, Long> right) {
+                return mergeCounts(left, right);
+            }
+            
+            @Override
+            public Map<K, Long> empty() {
+                return new HashMap<>();
+            }
+        });
+    }
+    
+    public <K1, K2> Map<K1, Map<K2, Long>> countBy(Dimension<K1> outer, Dimension<K2> inner) {
+        return run(new Aggregation<Map<K1, Map<K2, Long>>>() {
+            @Override
+            public Map<K1, Map<K2, Long>> aggregate(RecordColumns columns, int fromRow, int toRow, Filter filter) {
+                long innerCardinality = inner.cardinality(columns);
+                GroupCounter counter = new GroupCounter(outer.cardinality(columns) * innerCardinality);
+                for (int row = fromRow; row < toRow; row++) {
+                    if (filter.accepts(columns, row)) {
+                        counter.increment(outer.code(columns, row) * innerCardinality + inner.code(columns, row));
+                    }
+                }
+                Map<K1, Map<K2, Long>> counts = new HashMap<>();
+                counter.forEach((code, count) -> counts
+                        .computeIfAbsent(outer.key(columns, (int) (code / innerCardinality)), key -> new HashMap<>())
+                        .merge(inner.key(columns, (int) (code % innerCardinality)), count, Long::sum));
+                return counts;
+            }
+            
+            @Override
+            public Map<K1, Map<K2, Long>> merge(Map<K1, Map<K2, Long>> left, Map<K1, Map<K2, Long>> right) {
+                right.forEach((key, counts) -> left.merge(key, counts, RecordAnalytics::mergeCounts));
+                return left;
+            }
+            
+            @Override
+            public Map<K1, Map<K2, Long>> empty() {
+                return new HashMap<>();
+            }
+        });
+    }
+    
+    public <K> List<Map.Entry<K, Long>> topK(Dimension<K> dimension, int k) {
+        if (k <= 0) {
+            throw new IllegalArgumentException("k must be positive");
+        }
+        PriorityQueue<Map.Entry<K, Long>> top = new PriorityQueue<>(Map.Entry.comparingByValue());
+        for (Map.Entry<K, Long> entry : countBy(dimension).entrySet()) {
+            if (top.size() < k) {
+                top.add(new AbstractMap.SimpleImmutableEntry<>(entry));
+            } else if (entry.getValue() > top.peek().getValue()) {
+                top.poll();
+                top.add(new AbstractMap.SimpleImmutableEntry<>(entry));
+            }
+        }
+        List<Map.Entry<K, Long>> result = new ArrayList<>(top);
+        result.sort(Map.Entry.<K, Long>comparingByValue().reversed());
+        return result;
+    }
+    
+    /**
+     * Counts rows per bucket of {@code metric}: bucket 0 holds values below
+     * the first boundary, bucket {@code i} values in
+     * {@code [boundaries[i - 1], boundaries[i])} and the last bucket values at
+     * or above the last boundary. Rows without a value are not counted.
+     */
+    public long[] histogram(Metric metric, long... boundaries) {
+        for (int i = 1; i < boundaries.length; i++) {
+            if (boundaries[i] <= boundaries[i - 1]) {
+                throw new IllegalArgumentException("Histogram boundaries must be strictly increasing");
+            }
+        }
+        long[] sorted = boundaries.clone();
+        return run(new Aggregation<long[]>() {
+            @Override
+            public long[] aggregate(RecordColumns columns, int fromRow, int toRow, Filter filter) {
+                long[] buckets = new long[sorted.length + 1];
+                for (int row = fromRow; row < toRow; row++) {
+                    if (filter.accepts(columns, row)) {
+                        long value = metric.value(columns, row);
+                        if (value != Metric.MISSING) {
+                            int index = Arrays.binarySearch(sorted, value);
+                            buckets[index >= 0 ? index + 1 : -index - 1]++;
+                        }
+                    }
+                }
+                return buckets;
+            }
+            
+            @Override
+            public long[] merge(long[] left, long[] right) {
+                for (int i = 0; i < left.length; i++) {
+                    left[i] += right[i];
+                }
+                return left;
+            }
+            
+            @Override
+            public long[] empty() {
+                return new long[sorted.length + 1];
+            }
+        });
+    }
+    
+    private <R> R run(Aggregation<R> aggregation) {
+        Filter filter = new Filter(visibleSequence, type, status,
+                from == null ? Long.MIN_VALUE : TimePartitionedRecordStore.timeOf(from),
+                to == null ? TimePartitionedRecordStore.UNDATED : TimePartitionedRecordStore.timeOf(to));
+        List<Supplier<RecordColumns>> sources = store.columnSources(filter.fromTime, filter.toTime,
+                from == null && to == null);
+        if (sources.isEmpty()) {
+            return aggregation.empty();
+        }
+        return pool.invoke(new SourceTask<>(sources, 0, sources.size(), aggregation, filter));
+    }
+    
+    private static <K> Map<K, Long> mergeCounts(Map<K, Long> left, Map<K, Long> right) {
+        right.forEach((key, count) -> left.merge(key, count, Long::sum));
+        return left;
+    }
+    
+    public abstract static class Dimension<K> {
+
+        public static final Dimension<String> SPECIALIZATION = new Dimension<>() {
+            @Override
+            int cardinality(RecordColumns columns) {
+                return columns.specializationNames.length + 1;
+            }
+            
+            @Override
+            int code(RecordColumns columns, int row) {
+                int code = columns.specialization(row);
+                return code < 0 ? columns.specializationNames.length : code;
+            }
+            
+            @Override
+            String key(RecordColumns columns, int code) {
+                return code == columns.specializationNames.length ? null : columns.specializationNames[code];
+            }
+        };
+        
+        public static final Dimension<String> DIAGNOSIS = new Dimension<>() {
+            @Override
+            int cardinality(RecordColumns columns) {
+                return columns.diagnosisNames.length + 1;
+            }
+            
+            @Override
+            int code(RecordColumns columns, int row) {
+                int code = columns.diagnoses[row];
+                return code < 0 ? columns.diagnosisNames.length : code;
+            }
+            
+            @Override
+            String key(RecordColumns columns, int code) {
+                return code == columns.diagnosisNames.length ? null : columns.diagnosisNames[code];
+            }
+        };
+        
+        public static final Dimension<MedicalRecord.RecordType> TYPE = new Dimension<>() {
+            private final MedicalRecord.RecordType[] values = MedicalRecord.RecordType.values();
+            
+            @Override
+            int cardinality(RecordColumns columns) {
+                return values.length + 1;
+            }
+            
+            @Override
+            int code(RecordColumns columns, int row) {
+                return columns.types[row] < 0 ? values.length : columns.types[row];
+            }
+            
+            @Override
+            MedicalRecord.RecordType key(RecordColumns columns, int code) {
+                return code == values.length ? null : values[code];
+            }
+        };
+        
+        public static final Dimension<MedicalRecord.RecordStatus> STATUS = new Dimension<>() {
+            private final MedicalRecord.RecordStatus[] values = MedicalRecord.RecordStatus.values();
+            
+            @Override
+            int cardinality(RecordColumns columns) {
+                return values.length + 1;
+            }
+            
+            @Override
+            int code(RecordColumns columns, int row) {
+                return columns.statuses[row] < 0 ? values.length : columns.statuses[row];
+            }
+            
+            @Override
+            MedicalRecord.RecordStatus key(RecordColumns columns, int code) {
+                return code == values.length ? null : values[code];
+            }
+        };
+        
+        public static final Dimension<YearMonth> MONTH = new Dimension<>() {
+            @Override
+            int cardinality(RecordColumns columns) {
+                return 1;
+            }
+            
+            @Override
+            int code(RecordColumns columns, int row) {
+                return 0;
+            }
+            
+            @Override
+            YearMonth key(RecordColumns columns, int code) {
+                return columns.month;
+            }
+        };
+        
+        /**
+         * Groups rows by the patient's age on {@code asOf}, in bands of
+         * {@code years}; each band is keyed by its lowest age.
+         */
+        public static Dimension<Integer> ageBand(LocalDate asOf, int years) {
+            if (years <= 0) {
+                throw new IllegalArgumentException("Age bands must span at least one year");
+            }
+            int packedAsOf = RecordColumns.packDate(asOf);
+            int bands = Metric.MAX_AGE / years + 1;
+            return new Dimension<>() {
+                @Override
+                int cardinality(RecordColumns columns) {
+                    return bands + 1;
+                }
+                
+                @Override
+                int code(RecordColumns columns, int row) {
+                    int age = Metric.age(packedAsOf, columns.birthDate(row));
+                    return age < 0 ? bands : Math.min(age / years, bands - 1);
+                }
+                
+                @Override
+                Integer key(RecordColumns columns, int code) {
+                    return code == bands ? null : code * years;
+                }
+            };
+        }
+        
+        abstract int cardinality(RecordColumns columns);
+        
+        abstract int code(RecordColumns columns, int row);
+        
+        abstract K key(RecordColumns columns, int code);
+    }
+    
+    public abstract static class Metric {
+
+        static final long MISSING = Long.MIN_VALUE;
+        static final int MAX_AGE = 150;
+        
+        public static final Metric HOUR_OF_DAY = new Metric() {
+            @Override
+            long value(RecordColumns columns, int row) {
+                long time = columns.times[row];
+                return time == TimePartitionedRecordStore.UNDATED ? MISSING : Math.floorMod(Math.floorDiv(time, 3_600_000_000L), 24);
+            }
+        };
+        
+        public static Metric ageAt(LocalDate asOf) {
+            int packedAsOf = RecordColumns.packDate(asOf);
+            return new Metric() {
+                @Override
+                long value(RecordColumns columns, int row) {
+                    int age = age(packedAsOf, columns.birthDate(row));
+                    return age < 0 ? MISSING : age;
+                }
+            };
+        }
+        
+        abstract long value(RecordColumns columns, int row);
+        
+        static int age(int packedAsOf, int packedBirthDate) {
+            if (packedBirthDate < 0 || packedBirthDate > packedAsOf) {
+                return -1;
+            }
+            return (packedAsOf - packedBirthDate) / 10_000;
+        }
+    }
+    
+    private interface Aggregation<R> {
+
+        R aggregate(RecordColumns columns, int fromRow, int toRow, Filter filter);
+        
+        R merge(R left, R right);
+        
+        R empty();
+    }
+    
+    private static class Filter {
+
+        private final long visibleSequence;
+        private final int type;
+        private final int status;
+        private final long fromTime;
+        private final long toTime;
+        
+        Filter(long visibleSequence, MedicalRecord.RecordType type, MedicalRecord.RecordStatus status,
+               long fromTime, long toTime) {
+            this.visibleSequence = visibleSequence;
+            this.type = type == null ? -1 : type.ordinal();
+            this.status = status == null ? -1 : status.ordinal();
+            this.fromTime = fromTime;
+            this.toTime = toTime;
+        }
+        
+        boolean accepts(RecordColumns columns, int row) {
+            long sequence = columns.sequences[row];
+            long time = columns.times[row];
+            return sequence != 0 && sequence <= visibleSequence
+                    && (type < 0 || columns.types[row] == type)
+                    && (status < 0 || columns.statuses[row] == status)
+                    && (time == TimePartitionedRecordStore.UNDATED || (time >= fromTime && time < toTime));
+        }
+    }
+    
+    private static class GroupCounter {
+
+        private final long[] dense;
+        private final Map<Long, long[]> sparse;
+        
+        GroupCounter(long groups) {
+            this.dense = groups <= MAX_DENSE_GROUPS ? new long[(int) groups] : null;
+            this.sparse = dense == null ? new HashMap<>() : null;
+        }
+        
+        void increment(long group) {
+            if (dense != null) {
+                dense[(int) group]++;
+            } else {
+                sparse.computeIfAbsent(group, key -> new long[1])[0]++;
+            }
+        }
+        
+        void forEach(GroupConsumer action) {
+            if (dense != null) {
+                for (int group = 0; group < dense.length; group++) {
+                    if (dense[group] > 0) {
+                        action.accept(group, dense[group]);
+                    }
+                }
+            } else {
+                sparse.forEach((group, count) -> action.accept(group, count[0]));
+            }
+        }
+    }
+    
+    private interface GroupConsumer {
+
+        void accept(long group, long count);
+    }
+    
+    private static class SourceTask<R> extends RecursiveTask<R> {
+
+        private static final long serialVersionUID = 1L;
+        
+        private final List<Supplier<RecordColumns>> sources;
+        private final int low;
+        private final int high;
+        private final Aggregation<R> aggregation;
+        private final Filter filter;
+        
+        SourceTask(List<Supplier<RecordColumns>> sources, int low, int high, Aggregation<R> aggregation, Filter filter) {
+            this.sources = sources;
+            this.low = low;
+            this.high = high;
+            this.aggregation = aggregation;
+            this.filter = filter;
+        }
+        
+        @Override
+        protected R compute() {
+            if (high - low == 1) {
+                RecordColumns columns = sources.get(low).get().resolve();
+                return new RowTask<>(columns, 0, columns.size, aggregation, filter).compute();
+            }
+            int middle = (low + high) >>> 1;
+            SourceTask<R> left = new SourceTask<>(sources, low, middle, aggregation, filter);
+            left.fork();
+            R right = new SourceTask<>(sources, middle, high, aggregation, filter).compute();
+            return aggregation.merge(left.join(), right);
+        }
+    }
+    
+    private static class RowTask<R> extends RecursiveTask<R> {
+
+        private static final long serialVersionUID = 1L;
+        
+        private final RecordColumns columns;
+        private final int fromRow;
+        private final int toRow;
+        private final Aggregation<R> aggregation;
+        private final Filter filter;
+        
+        RowTask(RecordColumns columns, int fromRow, int toRow, Aggregation<R> aggregation, Filter filter) {
+            this.columns = columns;
+            this.fromRow = fromRow;
+            this.toRow = toRow;
+            this.aggregation = aggregation;
+            this.filter = filter;
+        }
+        
+        @Override
+        protected R compute() {
+            if (toRow - fromRow <= ROWS_PER_TASK) {
+                return aggregation.aggregate(columns, fromRow, toRow, filter);
+            }
+            int middle = (fromRow + toRow) >>> 1;
+            RowTask<R> left = new RowTask<>(columns, fromRow, middle, aggregation, filter);
+            left.fork();
+            R right = new RowTask<>(columns, middle, toRow, aggregation, filter).compute();
+            return aggregation.merge(left.join(), right);
+        }
+    }
+}
@@ -0,0 +1,152 @@
+package org.healthhub.model;
+
+import java.time.LocalDate;
+import java.time.YearMonth;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Columnar projection of one partition of the record store, as read by
+ * {@link RecordAnalytics}. Enums are stored as ordinals, text as codes into a
+ * per-partition dictionary, and patients and doctors as codes into
+ * per-partition tables of references; -1 marks a missing value in every
+ * column. Birth dates (packed {@code yyyymmdd} ints) and specializations are
+ * read from those references by {@link #resolve()} once per query, so a
+ * cached projection of a sealed month follows later edits to its patients
+ * and doctors.
+ */
+class RecordColumns {
+    
+    final YearMonth month;
+    final int version;
+    final int size;
+    final long[] times;
+    final long[] sequences;
+    final byte[] types;
+    final byte[] statuses;
+    final int[] patients;
+    final Patient[] patientRefs;
+    final int[] doctors;
+    final Doctor[] doctorRefs;
+    final int[] diagnoses;
+    final String[] diagnosisNames;
+    final int[] birthDates;
+    final int[] specializations;
+    final String[] specializationNames;
+    
+    private RecordColumns(YearMonth month, int version, List<MedicalRecord> rows) {
+        this.month = month;
+        this.version = version;
+        this.size = rows.size();
+        this.times = new long[size];
+        this.sequences = new long[size];
+        this.types = new byte[size];
+        this.statuses = new byte[size];
+        this.patients = new int[size];
+        this.doctors = new int[size];
+        this.diagnoses = new int[size];
+        Dictionary<Patient> patientDictionary = new Dictionary<>(new IdentityHashMap<>());
+        Dictionary<Doctor> doctorDictionary = new Dictionary<>(new IdentityHashMap<>());
+        Dictionary<String> diagnosisDictionary = new Dictionary<>(new HashMap<>());
+        for (int row = 0; row < size; row++) {
+            MedicalRecord record = rows.get(row);
+            times[row] = TimePartitionedRecordStore.timeOf(record.getRecordDate());
+            sequences[row] = record.getSequence();
+            types[row] = (byte) (record.getType() == null ? -1 : record.getType().ordinal());
+            statuses[row] = (byte) (record.getStatus() == null ? -1 : record.getStatus().ordinal());
+            patients[row] = patientDictionary.code(record.getPatient());
+            doctors[row] = doctorDictionary.code(record.getDoctor());
+            diagnoses[row] = diagnosisDictionary.code(record.getDiagnosis());
+        }
+        this.patientRefs = patientDictionary.values(new Patient[0]);
+        this.doctorRefs = doctorDictionary.values(new Doctor[0]);
+        this.diagnosisNames = diagnosisDictionary.values(new String[0]);
+        this.birthDates = null;
+        this.specializations = null;
+        this.specializationNames = null;
+    }
+    
+    private RecordColumns(RecordColumns projection) {
+        this.month = projection.month;
+        this.version = projection.version;
+        this.size = projection.size;
+        this.times = projection.times;
+        this.sequences = projection.sequences;
+        this.types = projection.types;
+        this.statuses = projection.statuses;
+        this.patients = projection.patients;
+        this.patientRefs = projection.patientRefs;
+        this.doctors = projection.doctors;
+        this.doctorRefs = projection.doctorRefs;
+        this.diagnoses = projection.diagnoses;
+        this.diagnosisNames = projection.diagnosisNames;
+        this.birthDates = new int[patientRefs.length];
+        for (int code = 0; code < patientRefs.length; code++) {
+            LocalDate birthDate = patientRefs[code].getDateOfBirth();
+            birthDates[code] = birthDate == null ? -1 : packDate(birthDate);
+        }
+        this.specializations = new int[doctorRefs.length];
+        Dictionary<String> specializationDictionary = new Dictionary<>(new HashMap<>());
+        for (int code = 0; code < doctorRefs.length; code++) {
+            specializations[code] = specializationDictionary.code(doctorRefs[code].getSpecialization());
+        }
+        this.specializationNames = specializationDictionary.values(new String[0]);
+    }
+    
+    static RecordColumns of(YearMonth month, int version, Iterable<MedicalRecord> records) {
+        List<MedicalRecord> rows = new ArrayList<>();
+        records.forEach(rows::add);
+        return new RecordColumns(month, version, rows);
+    }
+    
+    /**
+     * Returns a view of this projection with birth dates and specializations
+     * read from the current state of its patients and doctors. The row
+     * columns are shared, so this costs one pass over the distinct patients
+     * and doctors of the partition.
+     */
+    RecordColumns resolve() {
+        return new RecordColumns(this);
+    }
+    
+    int birthDate(int row) {
+        int patient = patients[row];
+        return patient < 0 ? -1 : birthDates[patient];
+    }
+    
+    int specialization(int row) {
+        int doctor = doctors[row];
+        return doctor < 0 ? -1 : specializations[doctor];
+    }
+    
+    static int packDate(LocalDate date) {
+        return date.getYear() * 10_000 + date.getMonthValue() * 100 + date.getDayOfMonth();
+    }
+    
+    private static class Dictionary<T> {
+
+        private final Map<T, Integer> codes;
+        private final List<T> values = new ArrayList<>();
+        
+        Dictionary(Map<T, Integer> codes) {
+            this.codes = codes;
+        }
+        
+        int code(T value) {
+            if (value == null) {
+                return -1;
+            }
+            return codes.computeIfAbsent(value, key -> {
+                values.add(key);
+                return values.size() - 1;
+            });
+        }
+        
+        T[] values(T[] empty) {
+            return values.toArray(empty);
+        }
+    }
+}
@@ -0,0 +1,531 @@
+package org.healthhub.model;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Inverted index over the diagnosis, symptoms and treatment text of medical
+ * records. Each posting list is a byte array of varint-encoded document id
+ * deltas followed by the token positions within that document, so phrase
+ * queries can be answered from the index alone.
+ * <p>
+ * A record whose text changes is re-indexed under a fresh document id and its
+ * old id tombstoned; the index rebuilds itself once tombstones outnumber the
+ * live documents.
+ * <p>
+ * Only one thread may modify the index at a time, but searches may run
+ * concurrently with it. Posting lists publish each document through a
+ * volatile count after its bytes are written, and a rebuild fills a fresh
+ * generation before swapping it in, so a search sees a consistent prefix of
+ * every list it reads.
+ */
+public class RecordSearchIndex {
+
+    private static final int REBUILD_THRESHOLD = 1024;
+    
+    private volatile Generation generation = new Generation();
+    
+    public void add(MedicalRecord record) {
+        generation.add(record);
+    }
+    
+    public void remove(MedicalRecord record) {
+        Generation current = generation;
+        Integer document = current.documentIds.remove(record);
+        if (document == null) {
+            return;
+        }
+        current.documents[document] = null;
+        int tombstones = current.documentCount - current.documentIds.size();
+        if (tombstones > REBUILD_THRESHOLD && tombstones > current.documentIds.size()) {
+            rebuild(current);
+        }
+    }
+    
+    public void update(MedicalRecord record) {
+        remove(record);
+        add(record);
+    }
+    
+    public void clear() {
+        generation = new Generation();
+    }
+    
+    public int size() {
+        return generation.documentIds.size();
+    }
+    
+    public List<MedicalRecord> search(Query query) {
+        return search(query, null, null);
+    }
+    
+    public List<MedicalRecord> search(Query query, MedicalRecord.RecordType type, MedicalRecord.RecordStatus status) {
+        Generation current = generation;
+        int[] matches = query.evaluate(current);
+        MedicalRecord[] documents = current.documents;
+        List<MedicalRecord> results = new ArrayList<>();
+        for (int document : matches) {
+            MedicalRecord record = documents[document];
+            if (record != null && (type == null || record.getType() == type)
+                    && (status == null || record.getStatus() == status)) {
+                results.add(record);
+            }
+        }
+        return results;
+    }
+    
+    private void rebuild(Generation current) {
+        Generation rebuilt = new Generation();
+        for (int document = 0; document < current.documentCount; document++) {
+            if (current.documents[document] != null) {
+                rebuilt.add(current.documents[document]);
+            }
+        }
+        generation = rebuilt;
+    }
+    
+    public static List<String> tokenize(String text) {
+        List<String> tokens = new ArrayList<>();
+        if (text == null) {
+            return tokens;
+        }
+        int start = -1;
+        for (int i = 0; i <= text.length(); i++) {
+            boolean wordCharacter = i < text.length() && Character.isLetterOrDigit(text.charAt(i));
+            if (wordCharacter && start < 0) {
+                start = i;
+            } else if (!wordCharacter && start >= 0) {
+                tokens.add(text.substring(start, i).toLowerCase(Locale.ROOT));
+                start = -1;
+            }
+        }
+        return tokens;
+    }
+    
+    public abstract static class Query {
+
+        static final int[] NO_DOCUMENTS = new int[0];
+        
+        abstract int[] evaluate(Generation generation);
+        
+        public static Query term(String word) {
+            return new PhraseQuery(tokenize(word));
+        }
+        
+        public static Query phrase(String text) {
+            return new PhraseQuery(tokenize(text));
+        }
+        
+        public static Query and(Query... queries) {
+            return and(List.of(queries));
+        }
+        
+        public static Query and(List<Query> queries) {
+            return queries.size() == 1 ? queries.get(0) : new AndQuery(List.copyOf(queries));
+        }
+        
+        public static Query or(Query... queries) {
+            return or(List.of(queries));
+        }
+        
+        public static Query or(List<Query> queries) {
+            return queries.size() == 1 ? queries.get(0) : new OrQuery(List.copyOf(queries));
+        }
+        
+        public static Query parse(String text) {
+            List<Query> alternatives = new ArrayList<>();
+            List<Query> clauses = new ArrayList<>();
+            int i = 0;
+            while (i < text.length()) {
+                char c = text.charAt(i);
+                if (Character.isWhitespace(c)) {
+                    i++;
+                    continue;
+                }
+                int end;
+                String clause;
+                if (c == '"') {
+                    end = text.indexOf('"', i + 1);
+                    if (end < 0) {
+                        end = text.length();
+                    }
+                    clause = text.substring(i + 1, end);
+                    end++;
+                } else {
+                    end = i;
+                    while (end < text.length() && !Character.isWhitespace(text.charAt(end)) && text.charAt(end) != '"') {
+                        end++;
+                    }
+                    clause = text.substring(i, end);
+                }
+                if (c != '"' && clause.equals("OR")) {
+                    if (!clauses.isEmpty()) {
+                        alternatives.add(and(clauses));
+                        clauses = new ArrayList<>();
+                    }
+                } else if ((c == '"' || !clause.equals("AND")) && !tokenize(clause).isEmpty()) {
+                    clauses.add(phrase(clause));
+                }
+                i = end;
+            }
+            if (!clauses.isEmpty()) {
+                alternatives.add(and(clauses));
+            }
+            return or(alternatives);
+        }
+    }
+    
+    private static class PhraseQuery extends Query {
+
+        private final List<String> tokens;
+        
+        PhraseQuery(List<String> tokens) {
+            this.tokens = tokens;
+        }
+        
+        @Override
+        int[] evaluate(Generation generation) {
+            if (tokens.isEmpty()) {
+                return NO_DOCUMENTS;
+            }
+            PostingList[] lists = new PostingList[tokens.size()];
+            for (int i = 0; i < lists.length; i++) {
+                lists[i] = generation.postings.get(tokens.get(i));
+                if (lists[i] == null) {
+                    return NO_DOCUMENTS;
+                }
+            }
+            if (lists.length == 1) {
+                return lists[0].documents();
+            }
+            PostingCursor[] cursors = new PostingCursor[lists.length];
+            for (int i = 0; i < lists.length; i++) {
+                cursors[i] = lists[i].cursor();
+            }
+            PostingCursor[] byRarity = cursors.clone();
+            Arrays.sort(byRarity, (left, right) -> Integer.compare(left.frequency, right.frequency));
+            IntArray matches = new IntArray();
+            int target = 0;
+            candidates:
+            while (true) {
+                int document = byRarity[0].advance(target);
+                if (document == PostingCursor.END) {
+                    break;
+                }
+                for (int i = 1; i < byRarity.length; i++) {
+                    int found = byRarity[i].advance(document);
+                    if (found == PostingCursor.END) {
+                        break candidates;
+                    }
+                    if (found != document) {
+                        target = found;
+                        continue candidates;
+                    }
+                }
+                if (containsPhrase(cursors)) {
+                    matches.add(document);
+                }
+                target = document + 1;
+            }
+            return matches.toArray();
+        }
+        
+        private static boolean containsPhrase(PostingCursor[] cursors) {
+            int[][] positions = new int[cursors.length][];
+            for (int i = 0; i < cursors.length; i++) {
+                positions[i] = cursors[i].positions();
+            }
+            starts:
+            for (int start : positions[0]) {
+                for (int i = 1; i < positions.length; i++) {
+                    if (Arrays.binarySearch(positions[i], start + i) < 0) {
+                        continue starts;
+                    }
+                }
+                return true;
+            }
+            return false;
+        }
+    }
+    
+    private static class AndQuery extends Query {
+
+        private final List<Query> queries;
+        
+        AndQuery(List<Query> queries) {
+            this.queries = queries;
+        }
+        
+        @Override
+        int[] evaluate(Generation generation) {
+            if (queries.isEmpty()) {
+                return NO_DOCUMENTS;
+            }
+            List<int[]> operands = new ArrayList<>();
+            for (Query query : queries) {
+                int[] documents = query.evaluate(generation);
+                if (documents.length == 0) {
+                    return NO_DOCUMENTS;
+                }
+                operands.add(documents);
+            }
+            operands.sort((left, right) -> Integer.compare(left.length, right.length));
+            int[] result = operands.get(0);
+            for (int i = 1; i < operands.size() && result.length > 0; i++) {
+                result = intersect(result, operands.get(i));
+            }
+            return result;
+        }
+        
+        private static int[] intersect(int[] smaller, int[] larger) {
+            IntArray result = new IntArray();
+            int from = 0;
+            for (int document : smaller) {
+                int found = Arrays.binarySearch(larger, from, larger.length, document);
+                if (found >= 0) {
+                    result.add(document);
+                    from = found + 1;
+                } else {
+                    from = -found - 1;
+                }
+                if (from == larger.length) {
+                    break;
+                }
+            }
+            return result.toArray();
+        }
+    }
+    
+    private static class OrQuery extends Query {
+
+        private final List<Query> queries;
+        
+        OrQuery(List<Query> queries) {
+            this.queries = queries;
+        }
+        
+        @Override
+        int[] evaluate(Generation generation) {
+            int[] result = NO_DOCUMENTS;
+            for (Query query : queries) {
+                result = union(result, query.evaluate(generation));
+            }
+            return result;
+        }
+        
+        private static int[] union(int[] left, int[] right) {
+            int[] result = new int[left.length + right.length];
+            int i = 0;
+            int j = 0;
+            int size = 0;
+            while (i < left.length || j < right.length) {
+                if (j == right.length || (i < left.length && left[i] < right[j])) {
+                    result[size++] = left[i++];
+                } else if (i == left.length || right[j] < left[i]) {
+                    result[size++] = right[j++];
+                } else {
+                    result[size++] = left[i++];
+                    j++;
+                }
+            }
+            return Arrays.copyOf(result, size);
+        }
+    }
+    
+    static class Generation {
+
+        private final Map<String, PostingList> postings = new ConcurrentHashMap<>();
+        private final Map<MedicalRecord, Integer> documentIds = new HashMap<>();
+        private volatile MedicalRecord[] documents = new MedicalRecord[1024];
+        private int documentCount;
+        
+        void add(MedicalRecord record) {
+            if (documentIds.containsKey(record)) {
+                return;
+            }
+            int document = documentCount++;
+            if (document == documents.length) {
+                documents = Arrays.copyOf(documents, document * 2);
+            }
+            documents[document] = record;
+            documentIds.put(record, document);
+            Map<String, IntArray> positions = new HashMap<>();
+            int position = 0;
+            for (String text : new String[] {record.getDiagnosis(), record.getSymptoms(), record.getTreatment()}) {
+                for (String token : tokenize(text)) {
+                    positions.computeIfAbsent(token, key -> new IntArray()).add(position++);
+                }
+                position++;
+            }
+            positions.forEach((term, termPositions) ->
+                    postings.computeIfAbsent(term, key -> new PostingList()).add(document, termPositions));
+        }
+    }
+    
+    static class PostingList {
+
+        private static final int SKIP_INTERVAL = 64;
+        
+        private byte[] bytes = new byte[16];
+        private int length;
+        private int lastDocument = -1;
+        private volatile int documentFrequency;
+        private int[] skipDocuments = new int[0];
+        private int[] skipOffsets = new int[0];
+        
+        void add(int document, IntArray positions) {
+            if (documentFrequency % SKIP_INTERVAL == 0) {
+                int skip = documentFrequency / SKIP_INTERVAL;
+                if (skip == skipDocuments.length) {
+                    skipDocuments = Arrays.copyOf(skipDocuments, Math.max(4, skip * 2));
+                    skipOffsets = Arrays.copyOf(skipOffsets, skipDocuments.length);
+                }
+                skipDocuments[skip] = lastDocument;
+                skipOffsets[skip] = length;
+            }
+            writeVarint(document - lastDocument);
+            writeVarint(positions.size);
+            int previous = 0;
+            for (int i = 0; i < positions.size; i++) {
+                writeVarint(positions.values[i] - previous);
+                previous = positions.values[i];
+            }
+            lastDocument = document;
+            documentFrequency++;
+        }
+        
+        int[] documents() {
+            PostingCursor cursor = cursor();
+            int[] documents = new int[cursor.frequency];
+            for (int i = 0; i < documents.length; i++) {
+                documents[i] = cursor.next();
+            }
+            return documents;
+        }
+        
+        PostingCursor cursor() {
+            return new PostingCursor(this);
+        }
+        
+        private void writeVarint(int value) {
+            if (length + 5 > bytes.length) {
+                bytes = Arrays.copyOf(bytes, bytes.length * 2);
+            }
+            while ((value & ~0x7F) != 0) {
+                bytes[length++] = (byte) ((value & 0x7F) | 0x80);
+                value >>>= 7;
+            }
+            bytes[length++] = (byte) value;
+        }
+    }
+    
+    static class PostingCursor {
+
+        static final int END = Integer.MAX_VALUE;
+        
+        private final int frequency;
+        private final byte[] bytes;
+        private final int[] skipDocuments;
+        private final int[] skipOffsets;
+        private int index = -1;
+        private int document = -1;
+        private int offset;
+        private int positionsOffset;
+        private int positionCount;
+        
+        PostingCursor(PostingList list) {
+            this.frequency = list.documentFrequency;
+            this.bytes = list.bytes;
+            this.skipDocuments = list.skipDocuments;
+            this.skipOffsets = list.skipOffsets;
+        }
+        
+        int next() {
+            skipPositions();
+            if (++index >= frequency) {
+                document = END;
+                return END;
+            }
+            document += readVarint();
+            positionCount = readVarint();
+            positionsOffset = offset;
+            return document;
+        }
+        
+        int advance(int target) {
+            if (document >= target) {
+                return document;
+            }
+            int skip = (index + 1) / PostingList.SKIP_INTERVAL;
+            int last = (frequency - 1) / PostingList.SKIP_INTERVAL;
+            while (skip < last && skipDocuments[skip + 1] < target) {
+                skip++;
+            }
+            if (skip * PostingList.SKIP_INTERVAL > index + 1) {
+                index = skip * PostingList.SKIP_INTERVAL - 1;
+                document = skipDocuments[skip];
+                offset = skipOffsets[skip];
+                positionsOffset = offset;
+                positionCount = 0;
+            }
+            while (document < target) {
+                next();
+            }
+            return document;
+        }
+        
+        int[] positions() {
+            int[] positions = new int[positionCount];
+            offset = positionsOffset;
+            int position = 0;
+            for (int i = 0; i < positionCount; i++) {
+                position += readVarint();
+                positions[i] = position;
+            }
+            return positions;
+        }
+        
+        private void skipPositions() {
+            offset = positionsOffset;
+            for (int i = 0; i < positionCount; i++) {
+                readVarint();
+            }
+            positionCount = 0;
+            positionsOffset = offset;
+        }
+        
+        private int readVarint() {
+            int value = 0;
+            int shift = 0;
+            byte b;
+            do {
+                b = bytes[offset++];
+                value |= (b & 0x7F) << shift;
+                shift += 7;
+            } while (b < 0);
+            return value;
+        }
+    }
+    
+    static class IntArray {
+
+        private int[] values = new int[4];
+        private int size;
+        
+        void add(int value) {
+            if (size == values.length) {
+                values = Arrays.copyOf(values, size * 2);
+            }
+            values[size++] = value;
+        }
+        
+        int[] toArray() {
+            return Arrays.copyOf(values, size);
+        }
+    }
+}
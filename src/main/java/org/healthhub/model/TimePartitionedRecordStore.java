@@ -0,0 +1,604 @@
+package org.healthhub.model;
+
+import java.time.Clock;
+import java.time.LocalDateTime;
+import java.time.YearMonth;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+/**
+ * Medical record store partitioned by the calendar month of each record's
+ * date. The months of the open window, counted back from the current month
+ * by the clock, stay open as sorted maps; older months are sealed into
+ * parallel sorted arrays that take a fraction of the memory and scan
+ * sequentially. A write that lands in a sealed month goes to a small sorted
+ * delta beside the arrays, and a record removed from the arrays is only
+ * marked; both are folded into new arrays once they grow, or when the month
+ * is sealed again.
+ * <p>
+ * A single writer at a time is expected; readers may iterate concurrently
+ * with it and see a weakly consistent view. Sealed partitions cache their
+ * columnar projection until a record in them is changed.
+ */
+public class TimePartitionedRecordStore {
+
+    public static final int DEFAULT_OPEN_MONTHS = 3;
+    static final long UNDATED = Long.MAX_VALUE;
+    
+    private final NavigableMap<YearMonth, Partition> partitions = new ConcurrentSkipListMap<>();
+    private final NavigableMap<Long, MedicalRecord> undated = new ConcurrentSkipListMap<>();
+    private final int openMonths;
+    private final Clock clock;
+    private YearMonth firstOpenMonth;
+    private long nextSealMillis = Long.MIN_VALUE;
+    private volatile int size;
+    
+    public TimePartitionedRecordStore() {
+        this(DEFAULT_OPEN_MONTHS);
+    }
+    
+    public TimePartitionedRecordStore(int openMonths) {
+        this(openMonths, Clock.systemDefaultZone());
+    }
+    
+    public TimePartitionedRecordStore(int openMonths, Clock clock) {
+        if (openMonths < 1) {
+            throw new IllegalArgumentException("At least one month must stay open");
+        }
+        this.openMonths = openMonths;
+        this.clock = clock;
+    }
+    
+    public void add(MedicalRecord record) {
+        LocalDateTime recordDate = record.getRecordDate();
+        if (recordDate == null) {
+            undated.put(record.getSequence(), record);
+        } else {
+            sealExpiredMonths();
+            YearMonth month = YearMonth.from(recordDate);
+            Partition partition = partitions.get(month);
+            if (partition == null) {
+                partition = new OpenPartition().with(record);
+                partitions.put(month, month.isBefore(firstOpenMonth) ? partition.seal() : partition);
+            } else {
+                partitions.put(month, partition.with(record));
+            }
+        }
+        size++;
+    }
+    
+    public boolean remove(MedicalRecord record, LocalDateTime recordDate) {
+        if (recordDate == null) {
+            if (undated.remove(record.getSequence()) == null) {
+                return false;
+            }
+        } else {
+            YearMonth month = YearMonth.from(recordDate);
+            Partition partition = partitions.get(month);
+            if (partition == null) {
+                return false;
+            }
+            int before = partition.size();
+            Partition remaining = partition.without(record, timeOf(recordDate));
+            if (remaining.size() == before) {
+                return false;
+            }
+            if (remaining.size() == 0) {
+                partitions.remove(month);
+            } else {
+                partitions.put(month, remaining);
+            }
+        }
+        size--;
+        return true;
+    }
+    
+    public List<MedicalRecord> between(LocalDateTime from, LocalDateTime to) {
+        List<MedicalRecord> records = new ArrayList<>();
+        if (!from.isBefore(to)) {
+            return records;
+        }
+        long fromTime = timeOf(from);
+        long toTime = timeOf(to);
+        for (Partition partition : partitions.subMap(YearMonth.from(from), true, YearMonth.from(to), true).values()) {
+            partition.collect(fromTime, toTime, records);
+        }
+        return records;
+    }
+    
+    Iterator<MedicalRecord> iterator(long startTime, long startSequence, long toTime, boolean includeUndated) {
+        List<Iterator<MedicalRecord>> sources = new ArrayList<>();
+        if (startTime < toTime) {
+            NavigableMap<YearMonth, Partition> range = partitions;
+            if (startTime != Long.MIN_VALUE) {
+                range = range.tailMap(monthOf(startTime), true);
+            }
+            if (toTime != UNDATED) {
+                range = range.headMap(monthOf(toTime), true);
+            }
+            for (Partition partition : range.values()) {
+                sources.add(new LazyIterator(() -> partition.iterator(startTime, startSequence, toTime)));
+            }
+        }
+        if (includeUndated) {
+            long fromSequence = startTime == UNDATED ? startSequence : Long.MIN_VALUE;
+            sources.add(new LazyIterator(() -> undated.tailMap(fromSequence, true).values().iterator()));
+        }
+        return new ChainedIterator(sources.iterator());
+    }
+    
+    List<Supplier<RecordColumns>> columnSources(long fromTime, long toTime, boolean includeUndated) {
+        List<Supplier<RecordColumns>> sources = new ArrayList<>();
+        if (fromTime < toTime) {
+            NavigableMap<YearMonth, Partition> range = partitions;
+            if (fromTime != Long.MIN_VALUE) {
+                range = range.tailMap(monthOf(fromTime), true);
+            }
+            if (toTime != UNDATED) {
+                range = range.headMap(monthOf(toTime), true);
+            }
+            for (Map.Entry<YearMonth, Partition> entry : range.entrySet()) {
+                YearMonth month = entry.getKey();
+                Partition partition = entry.getValue();
+                sources.add(() -> partition.columns(month));
+            }
+        }
+        if (includeUndated) {
+            sources.add(() -> RecordColumns.of(null, 0, undated.values()));
+        }
+        return sources;
+    }
+    
+    void invalidate(MedicalRecord record) {
+        if (record.getRecordDate() != null) {
+            Partition partition = partitions.get(YearMonth.from(record.getRecordDate()));
+            if (partition != null) {
+                partition.invalidate();
+            }
+        }
+    }
+    
+    public void forEach(Consumer<MedicalRecord> action) {
+        partitions.values().forEach(partition -> partition.forEach(action));
+        undated.values().forEach(action);
+    }
+    
+    /**
+     * Seals everything before the open window, which covers the current
+     * month by the store's clock and the {@code openMonths - 1} before it.
+     * Record dates play no part, so a mistyped future date cannot seal the
+     * months still being written. The check reads the clock once per write
+     * and does work only when a new month begins.
+     */
+    private void sealExpiredMonths() {
+        if (clock.millis() < nextSealMillis) {
+            return;
+        }
+        YearMonth current = YearMonth.now(clock);
+        firstOpenMonth = current.minusMonths(openMonths - 1);
+        nextSealMillis = current.plusMonths(1).atDay(1).atStartOfDay(clock.getZone()).toInstant().toEpochMilli();
+        sealPartitionsBefore(firstOpenMonth);
+    }
+    
+    public int sealPartitionsBefore(YearMonth month) {
+        int sealed = 0;
+        for (Map.Entry<YearMonth, Partition> entry : partitions.headMap(month, false).entrySet()) {
+            Partition partition = entry.getValue();
+            Partition resealed = partition.seal();
+            if (resealed != partition) {
+                partitions.put(entry.getKey(), resealed);
+                sealed += partition.isSealed() ? 0 : 1;
+            }
+        }
+        return sealed;
+    }
+    
+    public int getPartitionCount() {
+        return partitions.size();
+    }
+    
+    public int getSealedPartitionCount() {
+        return (int) partitions.values().stream().filter(Partition::isSealed).count();
+    }
+    
+    public int size() {
+        return size;
+    }
+    
+    public void clear() {
+        partitions.clear();
+        undated.clear();
+        size = 0;
+    }
+    
+    static long timeOf(LocalDateTime dateTime) {
+        if (dateTime == null) {
+            return UNDATED;
+        }
+        return dateTime.toEpochSecond(ZoneOffset.UTC) * 1_000_000L + dateTime.getNano() / 1_000;
+    }
+    
+    private static YearMonth monthOf(long time) {
+        return YearMonth.from(LocalDateTime.ofEpochSecond(Math.floorDiv(time, 1_000_000L), 0, ZoneOffset.UTC));
+    }
+    
+    private interface Partition {
+
+        Partition with(MedicalRecord record);
+        
+        Partition without(MedicalRecord record, long time);
+        
+        void collect(long fromTime, long toTime, List<MedicalRecord> records);
+        
+        Iterator<MedicalRecord> iterator(long startTime, long startSequence, long toTime);
+        
+        void forEach(Consumer<MedicalRecord> action);
+        
+        int size();
+        
+        boolean isSealed();
+        
+        Partition seal();
+        
+        RecordColumns columns(YearMonth month);
+        
+        void invalidate();
+    }
+    
+    private static class OpenPartition implements Partition {
+
+        private final NavigableMap<RecordKey, MedicalRecord> records = new ConcurrentSkipListMap<>();
+        private int size;
+        
+        @Override
+        public Partition with(MedicalRecord record) {
+            if (records.put(new RecordKey(timeOf(record.getRecordDate()), record.getSequence()), record) == null) {
+                size++;
+            }
+            return this;
+        }
+        
+        @Override
+        public Partition without(MedicalRecord record, long time) {
+            if (records.remove(new RecordKey(time, record.getSequence())) != null) {
+                size--;
+            }
+            return this;
+        }
+        
+        @Override
+        public void collect(long fromTime, long toTime, List<MedicalRecord> result) {
+            result.addAll(records.subMap(new RecordKey(fromTime, Long.MIN_VALUE), true,
+                    new RecordKey(toTime, Long.MIN_VALUE), false).values());
+        }
+        
+        @Override
+        public Iterator<MedicalRecord> iterator(long startTime, long startSequence, long toTime) {
+            return records.subMap(new RecordKey(startTime, startSequence), true,
+                    new RecordKey(toTime, Long.MIN_VALUE), false).values().iterator();
+        }
+        
+        @Override
+        public void forEach(Consumer<MedicalRecord> action) {
+            records.values().forEach(action);
+        }
+        
+        @Override
+        public int size() {
+            return size;
+        }
+        
+        @Override
+        public boolean isSealed() {
+            return false;
+        }
+        
+        @Override
+        public Partition seal() {
+            long[] times = new long[size];
+            MedicalRecord[] sealed = new MedicalRecord[size];
+            int i = 0;
+            for (Map.Entry<RecordKey, MedicalRecord> entry : records.entrySet()) {
+                times[i] = entry.getKey().time;
+                sealed[i++] = entry.getValue();
+            }
+            return new SealedPartition(times, sealed);
+        }
+        
+        @Override
+        public RecordColumns columns(YearMonth month) {
+            return RecordColumns.of(month, 0, records.values());
+        }
+        
+        @Override
+        public void invalidate() {
+        }
+    }
+    
+    private static class SealedPartition implements Partition {
+
+        private static final int MIN_DELTA = 256;
+        private static final int DELTA_RATIO = 8;
+        
+        private final long[] times;
+        private final MedicalRecord[] records;
+        private final NavigableMap<RecordKey, MedicalRecord> delta = new ConcurrentSkipListMap<>();
+        private int deltaSize;
+        private volatile boolean[] removed;
+        private int removedCount;
+        private volatile int version;
+        private volatile RecordColumns columns;
+        
+        SealedPartition(long[] times, MedicalRecord[] records) {
+            this.times = times;
+            this.records = records;
+        }
+        
+        /**
+         * Late records go to the delta; once it outgrows an eighth of the
+         * arrays both are merged into a new partition, so a run of late
+         * writes costs amortized constant time each instead of a full copy.
+         */
+        @Override
+        public Partition with(MedicalRecord record) {
+            if (delta.put(new RecordKey(timeOf(record.getRecordDate()), record.getSequence()), record) == null) {
+                deltaSize++;
+            }
+            invalidate();
+            return deltaSize > Math.max(MIN_DELTA, records.length / DELTA_RATIO) ? merge() : this;
+        }
+        
+        /**
+         * Records in the delta are dropped from it; records in the arrays are
+         * marked removed and left out of reads, and the arrays are rebuilt
+         * once an eighth of them is marked, so removing a batch from a sealed
+         * month costs one copy rather than one per record.
+         */
+        @Override
+        public Partition without(MedicalRecord record, long time) {
+            if (delta.remove(new RecordKey(time, record.getSequence())) != null) {
+                deltaSize--;
+                invalidate();
+                return this;
+            }
+            for (int index = lowerBound(time); index < times.length && times[index] == time; index++) {
+                if (records[index] == record && !isRemoved(index)) {
+                    boolean[] marks = removed;
+                    if (marks == null) {
+                        marks = new boolean[records.length];
+                    }
+                    marks[index] = true;
+                    removed = marks;
+                    removedCount++;
+                    invalidate();
+                    return removedCount > Math.max(MIN_DELTA, records.length / DELTA_RATIO) ? merge() : this;
+                }
+            }
+            return this;
+        }
+        
+        @Override
+        public void collect(long fromTime, long toTime, List<MedicalRecord> result) {
+            if (delta.isEmpty() && removedCount == 0) {
+                for (int index = lowerBound(fromTime); index < times.length && times[index] < toTime; index++) {
+                    result.add(records[index]);
+                }
+            } else {
+                iterator(fromTime, Long.MIN_VALUE, toTime).forEachRemaining(result::add);
+            }
+        }
+        
+        @Override
+        public Iterator<MedicalRecord> iterator(long startTime, long startSequence, long toTime) {
+            int first = lowerBound(startTime);
+            while (first < times.length && times[first] == startTime && records[first].getSequence() < startSequence) {
+                first++;
+            }
+            int start = first;
+            Iterator<Map.Entry<RecordKey, MedicalRecord>> late = delta.subMap(new RecordKey(startTime, startSequence), true,
+                    new RecordKey(toTime, Long.MIN_VALUE), false).entrySet().iterator();
+            return new Iterator<>() {
+                private int index = start;
+                private Map.Entry<RecordKey, MedicalRecord> pending = late.hasNext() ? late.next() : null;
+                
+                @Override
+                public boolean hasNext() {
+                    while (index < times.length && isRemoved(index)) {
+                        index++;
+                    }
+                    return pending != null || (index < times.length && times[index] < toTime);
+                }
+                
+                @Override
+                public MedicalRecord next() {
+                    if (!hasNext()) {
+                        throw new NoSuchElementException();
+                    }
+                    boolean fromArrays = index < times.length && times[index] < toTime
+                            && (pending == null || compare(index, pending.getKey()) < 0);
+                    if (fromArrays) {
+                        return records[index++];
+                    }
+                    MedicalRecord record = pending.getValue();
+                    pending = late.hasNext() ? late.next() : null;
+                    return record;
+                }
+            };
+        }
+        
+        @Override
+        public void forEach(Consumer<MedicalRecord> action) {
+            if (delta.isEmpty() && removedCount == 0) {
+                Arrays.asList(records).forEach(action);
+            } else {
+                iterator(Long.MIN_VALUE, Long.MIN_VALUE, UNDATED).forEachRemaining(action);
+            }
+        }
+        
+        @Override
+        public int size() {
+            return records.length - removedCount + deltaSize;
+        }
+        
+        @Override
+        public boolean isSealed() {
+            return true;
+        }
+        
+        @Override
+        public Partition seal() {
+            return delta.isEmpty() && removedCount == 0 ? this : merge();
+        }
+        
+        @Override
+        public RecordColumns columns(YearMonth month) {
+            int current = version;
+            RecordColumns cached = columns;
+            if (cached == null || cached.version != current) {
+                List<MedicalRecord> all = Arrays.asList(records);
+                if (!delta.isEmpty() || removedCount > 0) {
+                    all = new ArrayList<>(size());
+                    forEach(all::add);
+                }
+                cached = RecordColumns.of(month, current, all);
+                columns = cached;
+            }
+            return cached;
+        }
+        
+        @Override
+        public void invalidate() {
+            version++;
+        }
+        
+        /**
+         * Rebuilds the arrays with the delta folded in and removed records
+         * left out.
+         */
+        private SealedPartition merge() {
+            int length = records.length - removedCount + deltaSize;
+            long[] mergedTimes = new long[length];
+            MedicalRecord[] mergedRecords = new MedicalRecord[length];
+            Iterator<Map.Entry<RecordKey, MedicalRecord>> late = delta.entrySet().iterator();
+            Map.Entry<RecordKey, MedicalRecord> pending = late.hasNext() ? late.next() : null;
+            int index = 0;
+            for (int target = 0; target < length; target++) {
+                while (index < records.length && isRemoved(index)) {
+                    index++;
+                }
+                if (pending != null && (index >= records.length || compare(index, pending.getKey()) > 0)) {
+                    mergedTimes[target] = pending.getKey().time;
+                    mergedRecords[target] = pending.getValue();
+                    pending = late.hasNext() ? late.next() : null;
+                } else {
+                    mergedTimes[target] = times[index];
+                    mergedRecords[target] = records[index++];
+                }
+            }
+            return new SealedPartition(mergedTimes, mergedRecords);
+        }
+        
+        private boolean isRemoved(int index) {
+            boolean[] marks = removed;
+            return marks != null && marks[index];
+        }
+        
+        private int compare(int index, RecordKey key) {
+            int byTime = Long.compare(times[index], key.time);
+            return byTime != 0 ? byTime : Long.compare(records[index].getSequence(), key.sequence);
+        }
+        
+        private int lowerBound(long time) {
+            int low = 0;
+            int high = times.length;
+            while (low < high) {
+                int middle = (low + high) >>> 1;
+                if (times[middle] < time) {
+                    low = middle + 1;
+                } else {
+                    high = middle;
+                }
+            }
+            return low;
+        }
+    }
+    
+    private static class RecordKey implements Comparable<RecordKey> {
+
+        private final long time;
+        private final long sequence;
+        
+        RecordKey(long time, long sequence) {
+            this.time = time;
+            this.sequence = sequence;
+        }
+        
+        @Override
+        public int compareTo(RecordKey other) {
+            int byTime = Long.compare(time, other.time);
+            return byTime != 0 ? byTime : Long.compare(sequence, other.sequence);
+        }
+    }
+    
+    private static class LazyIterator implements Iterator<MedicalRecord> {
+
+        private final Supplier<Iterator<MedicalRecord>> supplier;
+        private Iterator<MedicalRecord> delegate;
+        
+        LazyIterator(Supplier<Iterator<MedicalRecord>> supplier) {
+            this.supplier = supplier;
+        }
+        
+        @Override
+        public boolean hasNext() {
+            if (delegate == null) {
+                delegate = supplier.get();
+            }
+            return delegate.hasNext();
+        }
+        
+        @Override
+        public MedicalRecord next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            return delegate.next();
+        }
+    }
+    
+    private static class ChainedIterator implements Iterator<MedicalRecord> {
+
+        private final Iterator<Iterator<MedicalRecord>> sources;
+        private Iterator<MedicalRecord> current = Collections.emptyIterator();
+        
+        ChainedIterator(Iterator<Iterator<MedicalRecord>> sources) {
+            this.sources = sources;
+        }
+        
+        @Override
+        public boolean hasNext() {
+            while (!current.hasNext() && sources.hasNext()) {
+                current = sources.next();
+            }
+            return current.hasNext();
+        }
+        
+        @Override
+        public MedicalRecord next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            return current.next();
+        }
+    }
+}
@@ -0,0 +1,300 @@
+package org.healthhub.model;
+
+import org.healthhub.model.Doctor.DoctorValidator;
+import org.healthhub.model.Patient.PatientValidator;
+import org.healthhub.model.Prescription.PrescriptionValidator;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Validates whole collections or columns of values in one pass and collects
+ * every failure into a {@link ValidationReport} instead of stopping at the
+ * first. The checks are the entity validators, which allocate nothing, and
+ * the current date is read once per engine, so validating a valid batch
+ * allocates only the report. Failures past the error limit are counted but
+ * not kept.
+ */
+public class ValidationEngine {
+
+    public static final int DEFAULT_ERROR_LIMIT = 1000;
+    
+    private final LocalDate today;
+    private final long todayEpochDay;
+    private final int errorLimit;
+    
+    public ValidationEngine() {
+        this(LocalDate.now(), DEFAULT_ERROR_LIMIT);
+    }
+    
+    public ValidationEngine(LocalDate today, int errorLimit) {
+        if (errorLimit < 0) {
+            throw new IllegalArgumentException("Error limit must not be negative");
+        }
+        this.today = today;
+        this.todayEpochDay = today.toEpochDay();
+        this.errorLimit = errorLimit;
+    }
+    
+    /**
+     * A patient needs an id; email, phone number and date of birth are
+     * optional but must be valid when present, and a date of birth must not
+     * be in the future.
+     */
+    public ValidationReport validatePatients(List<Patient> patients) {
+        ValidationReport report = new ValidationReport(Field.PATIENT_ID, Field.DATE_OF_BIRTH, errorLimit);
+        for (int i = 0; i < patients.size(); i++) {
+            Patient patient = patients.get(i);
+            String id = patient.getPatientId();
+            check(report, i, id, Field.PATIENT_ID, id);
+            check(report, i, id, Field.EMAIL, patient.getEmail());
+            if (patient.hasPhoneNumber() && !patient.hasValidPhoneNumber()) {
+                report.reject(i, id, Field.PHONE_NUMBER, patient.getPhoneNumber());
+            }
+            if (patient.isBornAfter(todayEpochDay)) {
+                report.reject(i, id, Field.DATE_OF_BIRTH, patient.getDateOfBirth());
+            }
+        }
+        report.checked = patients.size();
+        return report;
+    }
+    
+    /**
+     * A doctor needs an id and a valid license number; a specialization is
+     * optional but must not be blank.
+     */
+    public ValidationReport validateDoctors(List<Doctor> doctors) {
+        ValidationReport report = new ValidationReport(Field.DOCTOR_ID, Field.SPECIALIZATION, errorLimit);
+        for (int i = 0; i < doctors.size(); i++) {
+            Doctor doctor = doctors.get(i);
+            String id = doctor.getDoctorId();
+            check(report, i, id, Field.DOCTOR_ID, id);
+            check(report, i, id, Field.LICENSE_NUMBER, doctor.getLicenseNumber());
+            check(report, i, id, Field.SPECIALIZATION, doctor.getSpecialization());
+        }
+        report.checked = doctors.size();
+        return report;
+    }
+    
+    /**
+     * A prescription needs an {@code RX-} id, at least one medication and an
+     * expiry date after the engine's current date.
+     */
+    public ValidationReport validatePrescriptions(List<Prescription> prescriptions) {
+        ValidationReport report = new ValidationReport(Field.PRESCRIPTION_ID, Field.EXPIRY_DATE, errorLimit);
+        for (int i = 0; i < prescriptions.size(); i++) {
+            Prescription prescription = prescriptions.get(i);
+            String id = prescription.getPrescriptionId();
+            check(report, i, id, Field.PRESCRIPTION_ID, id);
+            if (!PrescriptionValidator.hasMedications(prescription)) {
+                report.reject(i, id, Field.MEDICATIONS, null);
+            }
+            if (!PrescriptionValidator.isValidExpiryDate(prescription.getExpiryDate(), today)) {
+                report.reject(i, id, Field.EXPIRY_DATE, prescription.getExpiryDate());
+            }
+        }
+        report.checked = prescriptions.size();
+        return report;
+    }
+    
+    /**
+     * Validates a column of raw values, such as one field of an import, with
+     * the rule for {@code field}. Violations carry the value's index and no id.
+     */
+    public ValidationReport validateColumn(Field field, String[] values) {
+        if (!field.isText()) {
+            throw new IllegalArgumentException(field.getKey() + " is not a text field");
+        }
+        ValidationReport report = new ValidationReport(field, field, errorLimit);
+        for (int i = 0; i < values.length; i++) {
+            check(report, i, null, field, values[i]);
+        }
+        report.checked = values.length;
+        return report;
+    }
+    
+    public static boolean isValid(Field field, String value) {
+        if (value == null) {
+            return !field.isRequired();
+        }
+        switch (field) {
+            case PATIENT_ID:
+            case DOCTOR_ID:
+                return PatientValidator.isValidPatientId(value);
+            case EMAIL:
+                return PatientValidator.isValidEmail(value);
+            case PHONE_NUMBER:
+                return PatientValidator.isValidPhoneNumber(value);
+            case LICENSE_NUMBER:
+                return DoctorValidator.isValidLicenseNumber(value);
+            case SPECIALIZATION:
+                return DoctorValidator.isValidSpecialization(value);
+            case PRESCRIPTION_ID:
+                return PrescriptionValidator.isValidPrescriptionId(value);
+            default:
+                throw new IllegalArgumentException(field.getKey() + " is not a text field");
+        }
+    }
+    
+    private static void check(ValidationReport report, int index, String id, Field field, String value) {
+        if (!isValid(field, value)) {
+            report.reject(index, id, field, value);
+        }
+    }
+    
+    public enum Field {
+        PATIENT_ID("patientId", true, true, "must not be blank"),
+        EMAIL("email", true, false, "must contain '@' and '.'"),
+        PHONE_NUMBER("phoneNumber", true, false, "must be 10 to 15 digits"),
+        DATE_OF_BIRTH("dateOfBirth", false, false, "must not be in the future"),
+        DOCTOR_ID("doctorId", true, true, "must not be blank"),
+        LICENSE_NUMBER("licenseNumber", true, true, "must be two capital letters and six digits"),
+        SPECIALIZATION("specialization", true, false, "must not be blank"),
+        PRESCRIPTION_ID("prescriptionId", true, true, "must start with RX-"),
+        MEDICATIONS("medications", false, true, "must not be empty"),
+        EXPIRY_DATE("expiryDate", false, true, "must be after today");
+        
+        private final String key;
+        private final boolean text;
+        private final boolean required;
+        private final String rule;
+        
+        Field(String key, boolean text, boolean required, String rule) {
+            this.key = key;
+            this.text = text;
+            this.required = required;
+            this.rule = rule;
+        }
+        
+        public String getKey() {
+            return key;
+        }
+        
+        public boolean isText() {
+            return text;
+        }
+        
+        public boolean isRequired() {
+            return required;
+        }
+        
+        public String getRule() {
+            return rule;
+        }
+    }
+    
+    public static class ValidationReport {
+
+        private final Field firstField;
+        private final int[] counts;
+        private final int errorLimit;
+        private final List<Violation> violations = new ArrayList<>();
+        private int checked;
+        private int violationCount;
+        private int invalidCount;
+        private int lastInvalidIndex = -1;
+        
+        ValidationReport(Field firstField, Field lastField, int errorLimit) {
+            this.firstField = firstField;
+            this.counts = new int[lastField.ordinal() - firstField.ordinal() + 1];
+            this.errorLimit = errorLimit;
+        }
+        
+        public boolean isValid() {
+            return violationCount == 0;
+        }
+        
+        public int getCheckedCount() {
+            return checked;
+        }
+        
+        /**
+         * Number of entities or values with at least one violation.
+         */
+        public int getInvalidCount() {
+            return invalidCount;
+        }
+        
+        /**
+         * Number of violations, including those past the error limit.
+         */
+        public int getViolationCount() {
+            return violationCount;
+        }
+        
+        public int getViolationCount(Field field) {
+            int slot = field.ordinal() - firstField.ordinal();
+            return slot < 0 || slot >= counts.length ? 0 : counts[slot];
+        }
+        
+        /**
+         * The first violations up to the error limit, in input order.
+         */
+        public List<Violation> getViolations() {
+            return Collections.unmodifiableList(violations);
+        }
+        
+        @Override
+        public String toString() {
+            return violationCount + " violations in " + invalidCount + " of " + checked + " checked";
+        }
+        
+        private void reject(int index, String id, Field field, Object value) {
+            counts[field.ordinal() - firstField.ordinal()]++;
+            violationCount++;
+            if (index != lastInvalidIndex) {
+                invalidCount++;
+                lastInvalidIndex = index;
+            }
+            if (violations.size() < errorLimit) {
+                violations.add(new Violation(index, id, field, value));
+            }
+        }
+    }
+    
+    public static class Violation {
+
+        private final int index;
+        private final String id;
+        private final Field field;
+        private final Object value;
+        
+        Violation(int index, String id, Field field, Object value) {
+            this.index = index;
+            this.id = id;
+            this.field = field;
+            this.value = value;
+        }
+        
+        public int getIndex() {
+            return index;
+        }
+        
+        /**
+         * The id of the entity that failed, or null for column validation and
+         * entities without a usable id.
+         */
+        public String getId() {
+            return id;
+        }
+        
+        public Field getField() {
+            return field;
+        }
+        
+        public Object getValue() {
+            return value;
+        }
+        
+        public String getMessage() {
+            return field.getKey() + (value == null && field.isRequired() ? " is required" : " " + field.getRule());
+        }
+        
+        @Override
+        public String toString() {
+            return "#" + index + (id == null || !PatientValidator.isValidPatientId(id) ? "" : " " + id) + ": " + getMessage()
+                    + (value == null ? "" : " (was '" + value + "')");
+        }
+    }
+}
@@ -0,0 +1,38 @@
+package org.healthhub.storage;
+
+import java.time.Duration;
+
+/**
+ * How often a {@link WriteAheadLog} forces written frames to disk. With
+ * {@link #onEveryCommit()} an append completes only once its group commit is
+ * durable; with {@link #atMostEvery(Duration)} appends complete as soon as
+ * they are written and at most one interval of commits can be lost on a
+ * crash.
+ */
+public final class FsyncPolicy {
+
+    private final Duration interval;
+    
+    private FsyncPolicy(Duration interval) {
+        this.interval = interval;
+    }
+    
+    public static FsyncPolicy onEveryCommit() {
+        return new FsyncPolicy(Duration.ZERO);
+    }
+    
+    public static FsyncPolicy atMostEvery(Duration interval) {
+        if (interval.isNegative() || interval.isZero()) {
+            throw new IllegalArgumentException("Fsync interval must be positive");
+        }
+        return new FsyncPolicy(interval);
+    }
+    
+    public Duration getInterval() {
+        return interval;
+    }
+    
+    public boolean isSynchronous() {
+        return interval.isZero();
+    }
+}
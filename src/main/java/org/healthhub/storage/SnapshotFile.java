@@ -0,0 +1,196 @@
+package org.healthhub.storage;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.Optional;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+
+/**
+ * Point-in-time image of a record store, consistent with a log sequence
+ * number of the {@link WriteAheadLog}. Entries are written and read through
+ * memory-mapped windows; the image is written to a temporary file and renamed
+ * into place only once complete, so a crash never leaves a partial snapshot.
+ * <p>
+ * Layout: magic, format version, log sequence number, then length-prefixed
+ * entries terminated by a length of -1 and the entry count.
+ */
+public class SnapshotFile {
+
+    private static final long MAGIC = 0x4848534E41505348L;
+    private static final int VERSION = 1;
+    private static final int HEADER_BYTES = Long.BYTES + Integer.BYTES + Long.BYTES;
+    private static final long WINDOW_BYTES = 16L * 1024 * 1024;
+    private static final String PREFIX = "snapshot-";
+    private static final String SUFFIX = ".snap";
+    
+    private final Path path;
+    private final long lsn;
+    
+    private SnapshotFile(Path path, long lsn) {
+        this.path = path;
+        this.lsn = lsn;
+    }
+    
+    public static Writer create(Path directory, long lsn) throws IOException {
+        Files.createDirectories(directory);
+        return new Writer(directory, lsn);
+    }
+    
+    public static Optional<SnapshotFile> latest(Path directory) throws IOException {
+        List<Long> snapshots = snapshotLsns(directory);
+        if (snapshots.isEmpty()) {
+            return Optional.empty();
+        }
+        long lsn = snapshots.get(snapshots.size() - 1);
+        return Optional.of(new SnapshotFile(snapshotPath(directory, lsn), lsn));
+    }
+    
+    public static void deleteOlderThan(Path directory, long lsn) throws IOException {
+        for (long snapshot : snapshotLsns(directory)) {
+            if (snapshot < lsn) {
+                Files.deleteIfExists(snapshotPath(directory, snapshot));
+            }
+        }
+    }
+    
+    public long getLsn() {
+        return lsn;
+    }
+    
+    public Path getPath() {
+        return path;
+    }
+    
+    public long read(Consumer<ByteBuffer> visitor) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            MappedWindow window = new MappedWindow(channel, FileChannel.MapMode.READ_ONLY, channel.size());
+            ByteBuffer header = window.ensure(HEADER_BYTES);
+            if (header.getLong() != MAGIC || header.getInt() != VERSION || header.getLong() != lsn) {
+                throw new IOException("Not a valid snapshot: " + path);
+            }
+            long count = 0;
+            while (true) {
+                int length = window.ensure(Integer.BYTES).getInt();
+                if (length < 0) {
+                    break;
+                }
+                ByteBuffer buffer = window.ensure(length);
+                visitor.accept(buffer.slice(buffer.position(), length).asReadOnlyBuffer());
+                buffer.position(buffer.position() + length);
+                count++;
+            }
+            if (window.ensure(Long.BYTES).getLong() != count) {
+                throw new IOException("Snapshot entry count mismatch: " + path);
+            }
+            return count;
+        }
+    }
+    
+    private static List<Long> snapshotLsns(Path directory) throws IOException {
+        if (!Files.isDirectory(directory)) {
+            return List.of();
+        }
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.map(file -> file.getFileName().toString())
+                    .filter(name -> name.startsWith(PREFIX) && name.endsWith(SUFFIX))
+                    .map(name -> Long.parseLong(name.substring(PREFIX.length(), name.length() - SUFFIX.length())))
+                    .sorted()
+                    .toList();
+        }
+    }
+    
+    private static Path snapshotPath(Path directory, long lsn) {
+        return directory.resolve(String.format("%s%020d%s", PREFIX, lsn, SUFFIX));
+    }
+    
+    public static class Writer implements AutoCloseable {
+
+        private final Path directory;
+        private final Path temporary;
+        private final long lsn;
+        private final FileChannel channel;
+        private final MappedWindow window;
+        private long count;
+        private boolean committed;
+        
+        private Writer(Path directory, long lsn) throws IOException {
+            this.directory = directory;
+            this.lsn = lsn;
+            this.temporary = directory.resolve(PREFIX + lsn + ".tmp");
+            this.channel = FileChannel.open(temporary, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                    StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+            this.window = new MappedWindow(channel, FileChannel.MapMode.READ_WRITE, Long.MAX_VALUE);
+            window.ensure(HEADER_BYTES).putLong(MAGIC).putInt(VERSION).putLong(lsn);
+        }
+        
+        public void write(byte[] entry) throws IOException {
+            window.ensure(Integer.BYTES + entry.length).putInt(entry.length).put(entry);
+            count++;
+        }
+        
+        public SnapshotFile commit() throws IOException {
+            window.ensure(Integer.BYTES + Long.BYTES).putInt(-1).putLong(count);
+            long size = window.finish();
+            channel.truncate(size);
+            channel.force(true);
+            channel.close();
+            Path target = snapshotPath(directory, lsn);
+            Files.move(temporary, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            committed = true;
+            return new SnapshotFile(target, lsn);
+        }
+        
+        @Override
+        public void close() throws IOException {
+            if (!committed) {
+                channel.close();
+                Files.deleteIfExists(temporary);
+            }
+        }
+    }
+    
+    private static class MappedWindow {
+
+        private final FileChannel channel;
+        private final FileChannel.MapMode mode;
+        private final long limit;
+        private MappedByteBuffer buffer;
+        private long windowStart;
+        
+        MappedWindow(FileChannel channel, FileChannel.MapMode mode, long limit) {
+            this.channel = channel;
+            this.mode = mode;
+            this.limit = limit;
+        }
+        
+        ByteBuffer ensure(int bytes) throws IOException {
+            if (buffer != null && buffer.remaining() >= bytes) {
+                return buffer;
+            }
+            long position = buffer == null ? 0 : windowStart + buffer.position();
+            if (buffer != null && mode == FileChannel.MapMode.READ_WRITE) {
+                buffer.force();
+            }
+            long size = Math.min(Math.max(WINDOW_BYTES, bytes), limit - position);
+            if (size < bytes) {
+                throw new IOException("Snapshot is truncated");
+            }
+            windowStart = position;
+            buffer = channel.map(mode, position, size);
+            return buffer;
+        }
+        
+        long finish() {
+            buffer.force();
+            return windowStart + buffer.position();
+        }
+    }
+}
@@ -0,0 +1,346 @@
+package org.healthhub.storage;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+
+/**
+ * Append-only log of opaque payloads. Each frame is the payload length, the
+ * CRC32 of the payload and the payload itself. The log is split into segment
+ * files named after the log sequence number (the global byte offset) they
+ * start at.
+ * <p>
+ * Appends are queued to a single flusher thread that writes everything
+ * pending with one gathering write, so concurrent writers share each fsync.
+ * A torn frame at the end of the last segment is truncated on open.
+ */
+public class WriteAheadLog implements AutoCloseable {
+
+    public static final long MAX_SEGMENT_BYTES = 64L * 1024 * 1024;
+    private static final int HEADER_BYTES = 8;
+    private static final int MAX_BATCH = 4096;
+    private static final String SEGMENT_PREFIX = "wal-";
+    private static final String SEGMENT_SUFFIX = ".log";
+    
+    private final Path directory;
+    private final FsyncPolicy policy;
+    private final BlockingQueue<Pending> pending = new LinkedBlockingQueue<>();
+    private final Thread flusher;
+    private FileChannel channel;
+    private long segmentStart;
+    private volatile long endLsn;
+    private volatile IOException failure;
+    private volatile boolean closed;
+    
+    private WriteAheadLog(Path directory, FsyncPolicy policy, long segmentStart, long endLsn) throws IOException {
+        this.directory = directory;
+        this.policy = policy;
+        this.segmentStart = segmentStart;
+        this.endLsn = endLsn;
+        this.channel = FileChannel.open(segmentPath(directory, segmentStart),
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+        this.channel.position(endLsn - segmentStart);
+        this.flusher = new Thread(this::flushLoop, "wal-flusher");
+        this.flusher.setDaemon(true);
+        this.flusher.start();
+    }
+    
+    public static WriteAheadLog open(Path directory, FsyncPolicy policy) throws IOException {
+        Files.createDirectories(directory);
+        List<Long> segments = segmentStarts(directory);
+        if (segments.isEmpty()) {
+            return new WriteAheadLog(directory, policy, 0, 0);
+        }
+        long lastStart = segments.get(segments.size() - 1);
+        Path last = segmentPath(directory, lastStart);
+        long validLength = scan(last, 0, null);
+        try (FileChannel file = FileChannel.open(last, StandardOpenOption.WRITE)) {
+            if (file.size() > validLength) {
+                file.truncate(validLength);
+                file.force(true);
+            }
+        }
+        return new WriteAheadLog(directory, policy, lastStart, lastStart + validLength);
+    }
+    
+    public CompletableFuture<Long> append(byte[] payload) {
+        if (payload.length == 0) {
+            throw new IllegalArgumentException("Log payloads must not be empty");
+        }
+        checkOpen();
+        CRC32 crc = new CRC32();
+        crc.update(payload);
+        ByteBuffer frame = ByteBuffer.allocate(HEADER_BYTES + payload.length);
+        frame.putInt(payload.length).putInt((int) crc.getValue()).put(payload).flip();
+        Pending write = new Pending(frame, false);
+        pending.add(write);
+        return write.future;
+    }
+    
+    public long appendAndWait(byte[] payload) {
+        return await(append(payload));
+    }
+    
+    public long roll() {
+        checkOpen();
+        Pending roll = new Pending(null, false);
+        pending.add(roll);
+        return await(roll.future);
+    }
+    
+    public FsyncPolicy getPolicy() {
+        return policy;
+    }
+    
+    public long getEndLsn() {
+        return endLsn;
+    }
+    
+    public long replay(long fromLsn, Consumer<ByteBuffer> visitor) throws IOException {
+        List<Long> segments = segmentStarts(directory);
+        long replayed = 0;
+        for (int i = 0; i < segments.size(); i++) {
+            long start = segments.get(i);
+            if (i + 1 < segments.size() && segments.get(i + 1) <= fromLsn) {
+                continue;
+            }
+            replayed += scan(segmentPath(directory, start), Math.max(0, fromLsn - start), visitor);
+        }
+        return replayed;
+    }
+    
+    public void deleteSegmentsBefore(long lsn) throws IOException {
+        List<Long> segments = segmentStarts(directory);
+        for (int i = 0; i + 1 < segments.size(); i++) {
+            if (segments.get(i + 1) <= lsn) {
+                Files.deleteIfExists(segmentPath(directory, segments.get(i)));
+            }
+        }
+    }
+    
+    @Override
+    public void close() {
+        if (closed) {
+            return;
+        }
+        Pending close = new Pending(null, true);
+        pending.add(close);
+        closed = true;
+        try {
+            await(close.future);
+            flusher.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+    
+    private void flushLoop() {
+        List<Pending> batch = new ArrayList<>();
+        long intervalNanos = policy.getInterval().toNanos();
+        long lastSync = System.nanoTime();
+        boolean unsynced = false;
+        while (true) {
+            Pending first;
+            try {
+                long wait = unsynced ? Math.max(0, lastSync + intervalNanos - System.nanoTime()) : Long.MAX_VALUE;
+                first = pending.poll(wait, TimeUnit.NANOSECONDS);
+            } catch (InterruptedException e) {
+                return;
+            }
+            try {
+                if (first == null) {
+                    channel.force(false);
+                    lastSync = System.nanoTime();
+                    unsynced = false;
+                    continue;
+                }
+                batch.add(first);
+                pending.drainTo(batch, MAX_BATCH - 1);
+                List<Pending> written = new ArrayList<>();
+                for (int i = 0; i < batch.size(); i++) {
+                    Pending entry = batch.get(i);
+                    if (entry.frame != null) {
+                        written.add(entry);
+                        continue;
+                    }
+                    write(written);
+                    channel.force(false);
+                    lastSync = System.nanoTime();
+                    unsynced = false;
+                    complete(written);
+                    if (entry.close) {
+                        channel.close();
+                        entry.future.complete(endLsn);
+                        IOException closedLog = new IOException("Write-ahead log is closed");
+                        batch.subList(i + 1, batch.size()).forEach(late -> late.future.completeExceptionally(closedLog));
+                        fail(closedLog);
+                        return;
+                    }
+                    openSegment(endLsn);
+                    entry.future.complete(endLsn);
+                }
+                write(written);
+                if (policy.isSynchronous() || System.nanoTime() - lastSync >= intervalNanos) {
+                    channel.force(false);
+                    lastSync = System.nanoTime();
+                    unsynced = false;
+                } else {
+                    unsynced |= !written.isEmpty();
+                }
+                complete(written);
+            } catch (IOException e) {
+                failure = e;
+                batch.forEach(entry -> entry.future.completeExceptionally(e));
+                fail(e);
+                return;
+            } finally {
+                batch.clear();
+            }
+        }
+    }
+    
+    private void write(List<Pending> written) throws IOException {
+        if (written.isEmpty()) {
+            return;
+        }
+        if (endLsn - segmentStart >= MAX_SEGMENT_BYTES) {
+            channel.force(false);
+            openSegment(endLsn);
+        }
+        ByteBuffer[] buffers = new ByteBuffer[written.size()];
+        long bytes = 0;
+        for (int i = 0; i < buffers.length; i++) {
+            buffers[i] = written.get(i).frame;
+            bytes += buffers[i].remaining();
+        }
+        long remaining = bytes;
+        while (remaining > 0) {
+            remaining -= channel.write(buffers);
+        }
+        long lsn = endLsn;
+        for (Pending entry : written) {
+            lsn += entry.frame.capacity();
+            entry.lsn = lsn;
+        }
+        endLsn = lsn;
+    }
+    
+    private void complete(List<Pending> written) {
+        written.forEach(entry -> entry.future.complete(entry.lsn));
+        written.clear();
+    }
+    
+    private void openSegment(long start) throws IOException {
+        channel.close();
+        segmentStart = start;
+        channel = FileChannel.open(segmentPath(directory, start), StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+    }
+    
+    private void fail(IOException e) {
+        Pending entry;
+        while ((entry = pending.poll()) != null) {
+            entry.future.completeExceptionally(e);
+        }
+    }
+    
+    private void checkOpen() {
+        if (failure != null) {
+            throw new UncheckedIOException(failure);
+        }
+        if (closed) {
+            throw new IllegalStateException("Write-ahead log is closed");
+        }
+    }
+    
+    /**
+     * Waits for an append to complete, rethrowing a failed write as an
+     * {@link UncheckedIOException}.
+     */
+    public static long await(CompletableFuture<Long> future) {
+        try {
+            return future.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof IOException) {
+                throw new UncheckedIOException((IOException) e.getCause());
+            }
+            throw e;
+        }
+    }
+    
+    private static long scan(Path segment, long fromOffset, Consumer<ByteBuffer> visitor) throws IOException {
+        try (FileChannel file = FileChannel.open(segment, StandardOpenOption.READ)) {
+            long size = file.size();
+            if (size == 0 || fromOffset >= size) {
+                return visitor == null ? Math.min(fromOffset, size) : 0;
+            }
+            MappedByteBuffer buffer = file.map(FileChannel.MapMode.READ_ONLY, 0, size);
+            buffer.position((int) fromOffset);
+            long frames = 0;
+            CRC32 crc = new CRC32();
+            while (buffer.remaining() >= HEADER_BYTES) {
+                int start = buffer.position();
+                int length = buffer.getInt();
+                int checksum = buffer.getInt();
+                if (length <= 0 || length > buffer.remaining()) {
+                    buffer.position(start);
+                    break;
+                }
+                ByteBuffer payload = buffer.slice(buffer.position(), length);
+                crc.reset();
+                crc.update(payload.duplicate());
+                if ((int) crc.getValue() != checksum) {
+                    buffer.position(start);
+                    break;
+                }
+                buffer.position(buffer.position() + length);
+                if (visitor != null) {
+                    visitor.accept(payload.asReadOnlyBuffer());
+                }
+                frames++;
+            }
+            return visitor == null ? buffer.position() : frames;
+        }
+    }
+    
+    private static List<Long> segmentStarts(Path directory) throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.map(path -> path.getFileName().toString())
+                    .filter(name -> name.startsWith(SEGMENT_PREFIX) && name.endsWith(SEGMENT_SUFFIX))
+                    .map(name -> Long.parseLong(name.substring(SEGMENT_PREFIX.length(), name.length() - SEGMENT_SUFFIX.length())))
+                    .sorted()
+                    .toList();
+        }
+    }
+    
+    private static Path segmentPath(Path directory, long start) {
+        return directory.resolve(String.format("%s%020d%s", SEGMENT_PREFIX, start, SEGMENT_SUFFIX));
+    }
+    
+    private static class Pending {
+
+        private final ByteBuffer frame;
+        private final boolean close;
+        private final CompletableFuture<Long> future = new CompletableFuture<>();
+        private long lsn;
+        
+        Pending(ByteBuffer frame, boolean close) {
+            this.frame = frame;
+            this.close = close;
+        }
+    }
+}
@@ -0,0 +1,17 @@
+package org.healthhub.util;
+
+public interface IdGenerator {
+
+    long nextId();
+    
+    default String nextId(String prefix) {
+        return format(prefix, nextId());
+    }
+    
+    static String format(String prefix, long id) {
+        char[] chars = new char[prefix.length() + TimeOrderedIdGenerator.ENCODED_LENGTH];
+        prefix.getChars(0, prefix.length(), chars, 0);
+        TimeOrderedIdGenerator.encode(id, chars, prefix.length());
+        return new String(chars);
+    }
+}
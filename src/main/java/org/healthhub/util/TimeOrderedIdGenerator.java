@@ -0,0 +1,70 @@
+package org.healthhub.util;
+
+import java.time.Instant;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Lock-free generator of unique, time-ordered 63-bit ids laid out as
+ * 41 bits of milliseconds since {@link #EPOCH}, 10 bits of node id and
+ * 12 bits of per-millisecond sequence.
+ * <p>
+ * When a millisecond's sequence is exhausted, or the wall clock moves
+ * backwards, ids keep counting forward from the last issued value instead
+ * of waiting, so callers never block and ids stay strictly increasing.
+ */
+public class TimeOrderedIdGenerator implements IdGenerator {
+
+    public static final Instant EPOCH = Instant.parse("2024-01-01T00:00:00Z");
+    public static final int NODE_BITS = 10;
+    public static final int SEQUENCE_BITS = 12;
+    public static final int MAX_NODE_ID = (1 << NODE_BITS) - 1;
+    
+    static final int ENCODED_LENGTH = 13;
+    
+    private static final long SEQUENCE_MASK = (1L << SEQUENCE_BITS) - 1;
+    private static final char[] ALPHABET = "0123456789ABCDEFGHJKMNPQRSTVWXYZ".toCharArray();
+    private static final TimeOrderedIdGenerator SHARED = new TimeOrderedIdGenerator(Integer.getInteger("healthhub.node.id", 0));
+    
+    private final long epochMillis = EPOCH.toEpochMilli();
+    private final long nodeBits;
+    private final AtomicLong lastState = new AtomicLong();
+    
+    public TimeOrderedIdGenerator(int nodeId) {
+        if (nodeId < 0 || nodeId > MAX_NODE_ID) {
+            throw new IllegalArgumentException("Node id must be between 0 and " + MAX_NODE_ID);
+        }
+        this.nodeBits = (long) nodeId << SEQUENCE_BITS;
+    }
+    
+    public static TimeOrderedIdGenerator shared() {
+        return SHARED;
+    }
+    
+    @Override
+    public long nextId() {
+        long now = (System.currentTimeMillis() - epochMillis) << SEQUENCE_BITS;
+        long last;
+        long next;
+        do {
+            last = lastState.get();
+            next = Math.max(last + 1, now);
+        } while (!lastState.compareAndSet(last, next));
+        long timestamp = next >>> SEQUENCE_BITS;
+        return (timestamp << (NODE_BITS + SEQUENCE_BITS)) | nodeBits | (next & SEQUENCE_MASK);
+    }
+    
+    public static long timestampOf(long id) {
+        return (id >>> (NODE_BITS + SEQUENCE_BITS)) + EPOCH.toEpochMilli();
+    }
+    
+    public static int nodeOf(long id) {
+        return (int) ((id >>> SEQUENCE_BITS) & MAX_NODE_ID);
+    }
+    
+    static void encode(long id, char[] target, int offset) {
+        for (int i = offset + ENCODED_LENGTH - 1; i >= offset; i--) {
+            target[i] = ALPHABET[(int) (id & 31)];
+            id >>>= 5;
+        }
+    }
+}
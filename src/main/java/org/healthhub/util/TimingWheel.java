@@ -0,0 +1,218 @@
+package org.healthhub.util;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Hierarchical timing wheel over abstract ticks. Level {@code n} holds the
+ * timers whose deadline first differs from the current tick in the
+ * {@code n}-th group of six bits, so scheduling and cancelling are O(1) and
+ * each timer is cascaded at most once per level before it expires.
+ * <p>
+ * Expired payloads are returned from {@link #advanceTo(long)} rather than
+ * called back, so callers can act on them without holding the wheel's lock.
+ */
+public class TimingWheel<T> {
+
+    private static final int BITS_PER_LEVEL = 6;
+    private static final int SLOTS_PER_LEVEL = 1 << BITS_PER_LEVEL;
+    private static final int SLOT_MASK = SLOTS_PER_LEVEL - 1;
+    private static final int LEVELS = (Long.SIZE + BITS_PER_LEVEL - 1) / BITS_PER_LEVEL;
+    
+    private final Timer<T>[][] wheels;
+    private final List<Timer<T>> overdue = new ArrayList<>();
+    private long currentTick;
+    private int size;
+    
+    @SuppressWarnings("unchecked")
+    public TimingWheel(long startTick) {
+        this.currentTick = startTick;
+        this.wheels = (Timer<T>[][]) new Timer<?>[LEVELS][];
+    }
+    
+    public synchronized Timer<T> schedule(long deadlineTick, T payload) {
+        Timer<T> timer = new Timer<>(this, deadlineTick, payload);
+        insert(timer);
+        size++;
+        return timer;
+    }
+    
+    public synchronized List<T> advanceTo(long tick) {
+        List<T> expired = new ArrayList<>();
+        drainOverdue(expired);
+        while (currentTick < tick) {
+            if (size == 0) {
+                currentTick = tick;
+                break;
+            }
+            currentTick++;
+            for (int level = LEVELS - 1; level > 0; level--) {
+                long lowerBits = currentTick & ((1L << (BITS_PER_LEVEL * level)) - 1);
+                if (lowerBits == 0) {
+                    cascade(level, slotOf(currentTick, level));
+                }
+            }
+            drainOverdue(expired);
+            Timer<T> timer = detachSlot(0, slotOf(currentTick, 0));
+            while (timer != null) {
+                Timer<T> next = timer.next;
+                expire(timer, expired);
+                timer = next;
+            }
+        }
+        return expired;
+    }
+    
+    public synchronized long currentTick() {
+        return currentTick;
+    }
+    
+    public synchronized int size() {
+        return size;
+    }
+    
+    public synchronized void clear() {
+        for (Timer<T>[] wheel : wheels) {
+            if (wheel != null) {
+                for (int slot = 0; slot < SLOTS_PER_LEVEL; slot++) {
+                    Timer<T> timer = wheel[slot];
+                    while (timer != null) {
+                        timer.wheel = null;
+                        timer = timer.next;
+                    }
+                    wheel[slot] = null;
+                }
+            }
+        }
+        overdue.forEach(timer -> timer.wheel = null);
+        overdue.clear();
+        size = 0;
+    }
+    
+    private void insert(Timer<T> timer) {
+        if (timer.deadlineTick <= currentTick) {
+            timer.level = -1;
+            overdue.add(timer);
+            return;
+        }
+        int level = (Long.SIZE - 1 - Long.numberOfLeadingZeros(timer.deadlineTick ^ currentTick)) / BITS_PER_LEVEL;
+        int slot = slotOf(timer.deadlineTick, level);
+        if (wheels[level] == null) {
+            wheels[level] = newWheel();
+        }
+        Timer<T> head = wheels[level][slot];
+        timer.level = level;
+        timer.slot = slot;
+        timer.prev = null;
+        timer.next = head;
+        if (head != null) {
+            head.prev = timer;
+        }
+        wheels[level][slot] = timer;
+    }
+    
+    private void cascade(int level, int slot) {
+        Timer<T> timer = detachSlot(level, slot);
+        while (timer != null) {
+            Timer<T> next = timer.next;
+            insert(timer);
+            timer = next;
+        }
+    }
+    
+    private Timer<T> detachSlot(int level, int slot) {
+        if (wheels[level] == null) {
+            return null;
+        }
+        Timer<T> head = wheels[level][slot];
+        wheels[level][slot] = null;
+        return head;
+    }
+    
+    private void drainOverdue(List<T> expired) {
+        if (!overdue.isEmpty()) {
+            List<Timer<T>> due = new ArrayList<>(overdue);
+            overdue.clear();
+            due.forEach(timer -> expire(timer, expired));
+        }
+    }
+    
+    private void expire(Timer<T> timer, List<T> expired) {
+        timer.wheel = null;
+        timer.prev = null;
+        timer.next = null;
+        size--;
+        expired.add(timer.payload);
+    }
+    
+    private void unlink(Timer<T> timer) {
+        if (timer.level < 0) {
+            overdue.remove(timer);
+        } else {
+            if (timer.prev != null) {
+                timer.prev.next = timer.next;
+            } else {
+                wheels[timer.level][timer.slot] = timer.next;
+            }
+            if (timer.next != null) {
+                timer.next.prev = timer.prev;
+            }
+        }
+        timer.wheel = null;
+        timer.prev = null;
+        timer.next = null;
+        size--;
+    }
+    
+    private static int slotOf(long tick, int level) {
+        return (int) ((tick >>> (BITS_PER_LEVEL * level)) & SLOT_MASK);
+    }
+    
+    @SuppressWarnings("unchecked")
+    private static <T> Timer<T>[] newWheel() {
+        return (Timer<T>[]) new Timer<?>[SLOTS_PER_LEVEL];
+    }
+    
+    public static class Timer<T> {
+
+        private final long deadlineTick;
+        private final T payload;
+        private volatile TimingWheel<T> wheel;
+        private Timer<T> prev;
+        private Timer<T> next;
+        private int level;
+        private int slot;
+        
+        private Timer(TimingWheel<T> wheel, long deadlineTick, T payload) {
+            this.wheel = wheel;
+            this.deadlineTick = deadlineTick;
+            this.payload = payload;
+        }
+        
+        public long getDeadlineTick() {
+            return deadlineTick;
+        }
+        
+        public T getPayload() {
+            return payload;
+        }
+        
+        public boolean cancel() {
+            TimingWheel<T> owner = wheel;
+            if (owner == null) {
+                return false;
+            }
+            synchronized (owner) {
+                if (wheel != owner) {
+                    return false;
+                }
+                owner.unlink(this);
+                return true;
+            }
+        }
+        
+        public boolean isPending() {
+            return wheel != null;
+        }
+    }
+}
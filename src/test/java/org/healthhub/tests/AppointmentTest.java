@@ -1,12 +1,25 @@
 package org.healthhub.tests;
 
 import org.healthhub.model.Appointment;
+import org.healthhub.model.BulkAssignmentEngine;
 import org.healthhub.model.Doctor;
 import org.healthhub.model.Patient;
 import org.testng.annotations.*;
 import org.testng.asserts.SoftAssert;
+import java.time.Duration;
 import java.time.LocalDate;
 import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 import static org.testng.Assert.*;
 
 public class AppointmentTest {
@@ -203,4 +216,404 @@ public class AppointmentTest {
         softAssert.assertEquals(Appointment.AppointmentScheduler.getAppointmentsForPatient(patient).size(), 1, "Should have one appointment for patient");
         softAssert.assertAll();
     }
+    
+    @Test(groups = "scheduler", priority = 13)
+    public void testCancelReleasesTimeSlot() {
+        SoftAssert softAssert = new SoftAssert();
+        LocalDateTime dateTime = LocalDateTime.now().plusDays(7);
+        Appointment scheduled = Appointment.AppointmentScheduler.scheduleAppointment(patient, doctor, dateTime);
+        softAssert.assertFalse(Appointment.AppointmentScheduler.isTimeSlotAvailable(doctor, dateTime), "Time slot should be taken after scheduling");
+        
+        scheduled.cancel();
+        softAssert.assertTrue(Appointment.AppointmentScheduler.isTimeSlotAvailable(doctor, dateTime), "Time slot should be free after cancellation");
+        
+        Appointment rebooked = Appointment.AppointmentScheduler.scheduleAppointment(patient, doctor, dateTime);
+        rebooked.complete();
+        softAssert.assertFalse(Appointment.AppointmentScheduler.isTimeSlotAvailable(doctor, dateTime), "Completed appointment should keep the time slot");
+        softAssert.assertAll();
+    }
+    
+    @Test(groups = "scheduler", priority = 14)
+    public void testRescheduleMovesTimeSlot() {
+        SoftAssert softAssert = new SoftAssert();
+        LocalDateTime original = LocalDateTime.now().plusDays(8);
+        LocalDateTime moved = original.plusHours(2);
+        Appointment scheduled = Appointment.AppointmentScheduler.scheduleAppointment(patient, doctor, original);
+        
+        scheduled.setAppointmentDateTime(moved);
+        softAssert.assertTrue(Appointment.AppointmentScheduler.isTimeSlotAvailable(doctor, original), "Original time slot should be free after rescheduling");
+        softAssert.assertFalse(Appointment.AppointmentScheduler.isTimeSlotAvailable(doctor, moved), "New time slot should be taken after rescheduling");
+        softAssert.assertEquals(Appointment.AppointmentScheduler.getAppointmentsForDoctor(doctor).size(), 1, "Doctor should still have one appointment");
+        softAssert.assertAll();
+    }
+    
+    @Test(groups = "scheduler", priority = 15)
+    public void testConcurrentBookingNeverDoubleBooks() throws InterruptedException {
+        SoftAssert softAssert = new SoftAssert();
+        int threadCount = 8;
+        int slotsPerDoctor = 250;
+        List<Doctor> doctors = new ArrayList<>();
+        for (int i = 0; i < 4; i++) {
+            doctors.add(new Doctor("DOC-C" + i, "CD00000" + i));
+        }
+        LocalDateTime start = LocalDateTime.now().plusDays(30);
+        AtomicInteger booked = new AtomicInteger();
+        AtomicInteger rejected = new AtomicInteger();
+        
+        ExecutorService executor = Executors.newFixedThreadPool(threadCount);
+        long startNanos = System.nanoTime();
+        for (int t = 0; t < threadCount; t++) {
+            executor.submit(() -> {
+                List<Integer> order = new ArrayList<>();
+                for (int i = 0; i < slotsPerDoctor * doctors.size(); i++) {
+                    order.add(i);
+                }
+                Collections.shuffle(order);
+                for (int index : order) {
+                    Doctor target = doctors.get(index % doctors.size());
+                    LocalDateTime slot = start.plusMinutes(30L * (index / doctors.size()));
+                    try {
+                        Appointment.AppointmentScheduler.scheduleAppointment(patient, target, slot);
+                        booked.incrementAndGet();
+                    } catch (IllegalStateException e) {
+                        rejected.incrementAndGet();
+                    }
+                }
+            });
+        }
+        executor.shutdown();
+        softAssert.assertTrue(executor.awaitTermination(60, TimeUnit.SECONDS), "Booking threads should finish");
+        long elapsedNanos = System.nanoTime() - startNanos;
+        System.out.println("AppointmentTest - " + (booked.get() + rejected.get()) + " booking attempts in "
+                + TimeUnit.NANOSECONDS.toMillis(elapsedNanos) + "ms across " + threadCount + " threads");
+        
+        softAssert.assertEquals(booked.get(), slotsPerDoctor * doctors.size(), "Every slot should be booked exactly once");
+        for (Doctor target : doctors) {
+            List<Appointment> appointments = Appointment.AppointmentScheduler.getAppointmentsForDoctor(target);
+            Set<LocalDateTime> slots = new HashSet<>();
+            appointments.forEach(apt -> slots.add(apt.getAppointmentDateTime()));
+            softAssert.assertEquals(appointments.size(), slotsPerDoctor, "Doctor should hold one appointment per slot");
+            softAssert.assertEquals(slots.size(), slotsPerDoctor, "No slot should be double-booked");
+        }
+        softAssert.assertAll();
+    }
+    
+    @Test(groups = "scheduler", priority = 16)
+    public void testBatchScheduling() {
+        SoftAssert softAssert = new SoftAssert();
+        Doctor secondDoctor = new Doctor("DOC-002", "CD123456");
+        LocalDateTime taken = LocalDateTime.now().plusDays(9);
+        LocalDateTime free = taken.plusHours(1);
+        Appointment.AppointmentScheduler.scheduleAppointment(patient, doctor, taken);
+        
+        List<Appointment.AppointmentScheduler.BookingResult> results = Appointment.AppointmentScheduler.scheduleAppointments(List.of(
+                new Appointment.AppointmentScheduler.BookingRequest(patient, doctor, free),
+                new Appointment.AppointmentScheduler.BookingRequest(patient, doctor, taken),
+                new Appointment.AppointmentScheduler.BookingRequest(patient, doctor, free),
+                new Appointment.AppointmentScheduler.BookingRequest(patient, secondDoctor, free),
+                new Appointment.AppointmentScheduler.BookingRequest(patient, null, free)));
+        
+        softAssert.assertEquals(results.size(), 5, "Should return one result per request");
+        softAssert.assertTrue(results.get(0).isBooked(), "Free slot should be booked");
+        softAssert.assertEquals(results.get(1).getRejectionReason(), Appointment.AppointmentScheduler.RejectionReason.SLOT_TAKEN, "Existing booking should be rejected");
+        softAssert.assertEquals(results.get(2).getRejectionReason(), Appointment.AppointmentScheduler.RejectionReason.CONFLICTS_WITH_BATCH, "Duplicate within batch should be rejected");
+        softAssert.assertTrue(results.get(3).isBooked(), "Same time with another doctor should be booked");
+        softAssert.assertEquals(results.get(4).getRejectionReason(), Appointment.AppointmentScheduler.RejectionReason.INVALID_REQUEST, "Request without doctor should be rejected");
+        softAssert.assertFalse(Appointment.AppointmentScheduler.isTimeSlotAvailable(doctor, free), "Batch booking should reserve the slot");
+        softAssert.assertEquals(Appointment.AppointmentScheduler.getAppointmentsForPatient(patient).size(), 3, "Patient should hold three appointments");
+        softAssert.assertAll();
+    }
+    
+    @Test(groups = "scheduler", priority = 17)
+    public void testOverlappingAppointmentsRejected() {
+        SoftAssert softAssert = new SoftAssert();
+        LocalDateTime nineAm = LocalDateTime.now().plusDays(10).withHour(9).withMinute(0).withSecond(0).withNano(0);
+        Appointment.AppointmentScheduler.scheduleAppointment(patient, doctor, nineAm, Duration.ofMinutes(45));
+        
+        softAssert.assertFalse(Appointment.AppointmentScheduler.isTimeSlotAvailable(doctor, nineAm.plusMinutes(15)), "Slot inside a running visit should be taken");
+        softAssert.assertFalse(Appointment.AppointmentScheduler.isTimeSlotAvailable(doctor, nineAm.minusMinutes(15)), "Slot running into a visit should be taken");
+        softAssert.assertTrue(Appointment.AppointmentScheduler.isTimeSlotAvailable(doctor, nineAm.plusMinutes(45)), "Slot starting when the visit ends should be free");
+        softAssert.assertTrue(Appointment.AppointmentScheduler.isTimeSlotAvailable(doctor, nineAm.minusMinutes(30)), "Slot ending when the visit starts should be free");
+        
+        try {
+            Appointment.AppointmentScheduler.scheduleAppointment(patient, doctor, nineAm.plusMinutes(15));
+            softAssert.fail("Overlapping appointment should be rejected");
+        } catch (IllegalStateException e) {
+            softAssert.assertEquals(e.getMessage(), "Time slot not available", "Rejection message should match");
+        }
+        softAssert.assertAll();
+        
+        LocalDateTime noon = nineAm.plusHours(3);
+        assertThrows(IllegalArgumentException.class, () -> Appointment.AppointmentScheduler.scheduleAppointment(patient, doctor, noon, null));
+        assertThrows(IllegalArgumentException.class, () -> Appointment.AppointmentScheduler.scheduleAppointment(patient, doctor, noon, Duration.ZERO));
+        assertThrows(IllegalArgumentException.class, () -> Appointment.AppointmentScheduler.scheduleAppointment(patient, doctor, noon, Duration.ofMinutes(-30)));
+        assertTrue(Appointment.AppointmentScheduler.isTimeSlotAvailable(doctor, noon), "Rejected durations should not book anything");
+    }
+    
+    @Test(groups = "scheduler", priority = 18)
+    public void testBookedAppointmentsBetween() {
+        SoftAssert softAssert = new SoftAssert();
+        LocalDateTime nineAm = LocalDateTime.now().plusDays(11).withHour(9).withMinute(0).withSecond(0).withNano(0);
+        Appointment first = Appointment.AppointmentScheduler.scheduleAppointment(patient, doctor, nineAm, Duration.ofMinutes(60));
+        Appointment second = Appointment.AppointmentScheduler.scheduleAppointment(patient, doctor, nineAm.plusHours(2));
+        Appointment.AppointmentScheduler.scheduleAppointment(patient, doctor, nineAm.plusHours(5));
+        
+        softAssert.assertEquals(Appointment.AppointmentScheduler.getBookedAppointmentsBetween(doctor, nineAm.plusMinutes(30), nineAm.plusHours(3)),
+                List.of(first, second), "Query should include the visit already running at the start");
+        softAssert.assertTrue(Appointment.AppointmentScheduler.getBookedAppointmentsBetween(doctor, nineAm.plusHours(3), nineAm.plusHours(4)).isEmpty(), "Gap should hold no visits");
+        
+        second.setDuration(Duration.ofMinutes(90));
+        softAssert.assertFalse(Appointment.AppointmentScheduler.isTimeSlotAvailable(doctor, nineAm.plusMinutes(200)), "Longer visit should occupy the extended range");
+        try {
+            first.setAppointmentDateTime(nineAm.plusMinutes(90));
+            softAssert.fail("Moving onto another visit should be rejected");
+        } catch (IllegalStateException e) {
+            softAssert.assertEquals(first.getAppointmentDateTime(), nineAm, "Rejected move should leave the visit in place");
+        }
+        softAssert.assertAll();
+    }
+    
+    @Test(groups = "scheduler", priority = 19)
+    public void testFindEarliestFreeSlotsBySpecialization() {
+        SoftAssert softAssert = new SoftAssert();
+        LocalDateTime nineAm = LocalDateTime.now().plusDays(12).withHour(9).withMinute(0).withSecond(0).withNano(0);
+        Doctor busyCardiologist = doctor;
+        Doctor otherCardiologist = new Doctor("DOC-003", "CD654321");
+        otherCardiologist.setSpecialization("CARDIOLOGY");
+        Doctor neurologist = new Doctor("DOC-004", "NE123456");
+        neurologist.setSpecialization("Neurology");
+        
+        Appointment firstVisit = Appointment.AppointmentScheduler.scheduleAppointment(patient, busyCardiologist, nineAm, Duration.ofMinutes(40));
+        Appointment.AppointmentScheduler.scheduleAppointment(patient, otherCardiologist, nineAm, Duration.ofMinutes(90));
+        
+        List<Appointment.AppointmentScheduler.FreeSlot> slots = Appointment.AppointmentScheduler.findEarliestFreeSlots(
+                List.of(busyCardiologist, otherCardiologist, neurologist), Doctor.Specialization.CARDIOLOGY,
+                nineAm, nineAm.plusHours(3), Duration.ofMinutes(30), 3);
+        
+        softAssert.assertEquals(slots.size(), 3, "Should return three slots");
+        softAssert.assertEquals(slots.get(0).getDoctor(), busyCardiologist, "Earliest slot should belong to the cardiologist who frees up first");
+        softAssert.assertEquals(slots.get(0).getStart(), nineAm.plusMinutes(40), "Earliest slot should start when the first visit ends");
+        softAssert.assertEquals(slots.get(1).getStart(), nineAm.plusMinutes(70), "Next slot should follow the first one");
+        softAssert.assertEquals(slots.get(2).getDoctor(), otherCardiologist, "Third slot should come from the other cardiologist");
+        softAssert.assertEquals(slots.get(2).getStart(), nineAm.plusMinutes(90), "Other cardiologist should be free after the long visit");
+        softAssert.assertTrue(slots.stream().noneMatch(slot -> slot.getDoctor() == neurologist), "Neurologist should not be offered");
+        
+        List<Appointment.AppointmentScheduler.FreeSlot> none = Appointment.AppointmentScheduler.findEarliestFreeSlots(
+                List.of(busyCardiologist), Doctor.Specialization.CARDIOLOGY, nineAm, nineAm.plusMinutes(60), Duration.ofMinutes(30), 1);
+        softAssert.assertTrue(none.isEmpty(), "No slot should fit before the window closes");
+        
+        firstVisit.cancel();
+        List<Appointment.AppointmentScheduler.FreeSlot> afterCancel = Appointment.AppointmentScheduler.findEarliestFreeSlots(
+                List.of(busyCardiologist), Doctor.Specialization.CARDIOLOGY, nineAm, nineAm.plusMinutes(60), Duration.ofMinutes(30), 1);
+        softAssert.assertEquals(afterCancel.get(0).getStart(), nineAm, "Cancelled visit should free its slot for the finder");
+        softAssert.assertAll();
+    }
+    
+    @Test(groups = "status", priority = 20)
+    public void testSweepMarksNoShows() {
+        SoftAssert softAssert = new SoftAssert();
+        LocalDateTime now = LocalDateTime.now();
+        Appointment missed = Appointment.AppointmentScheduler.scheduleAppointment(patient, doctor, now.minusHours(3));
+        Appointment missedConfirmed = Appointment.AppointmentScheduler.scheduleAppointment(patient, doctor, now.minusHours(2));
+        missedConfirmed.setStatus(Appointment.AppointmentStatus.CONFIRMED);
+        Appointment cancelled = Appointment.AppointmentScheduler.scheduleAppointment(patient, doctor, now.minusHours(4));
+        cancelled.cancel();
+        Appointment completed = Appointment.AppointmentScheduler.scheduleAppointment(patient, doctor, now.minusHours(5));
+        completed.complete();
+        Appointment withinGrace = Appointment.AppointmentScheduler.scheduleAppointment(patient, doctor, now.minusMinutes(5));
+        
+        int transitioned = Appointment.AppointmentScheduler.sweepNoShows(now);
+        
+        softAssert.assertEquals(transitioned, 2, "Two missed appointments should be transitioned");
+        softAssert.assertEquals(missed.getStatus(), Appointment.AppointmentStatus.NO_SHOW, "Missed appointment should be NO_SHOW");
+        softAssert.assertEquals(missedConfirmed.getStatus(), Appointment.AppointmentStatus.NO_SHOW, "Missed confirmed appointment should be NO_SHOW");
+        softAssert.assertEquals(cancelled.getStatus(), Appointment.AppointmentStatus.CANCELLED, "Cancelled appointment should stay CANCELLED");
+        softAssert.assertEquals(completed.getStatus(), Appointment.AppointmentStatus.COMPLETED, "Completed appointment should stay COMPLETED");
+        softAssert.assertEquals(withinGrace.getStatus(), Appointment.AppointmentStatus.SCHEDULED, "Appointment within the grace period should stay SCHEDULED");
+        softAssert.assertAll();
+    }
+    
+    @Test(groups = "scheduler", priority = 21)
+    public void testCancellationBackfillsFromWaitlist() {
+        SoftAssert softAssert = new SoftAssert();
+        LocalDateTime nineAm = LocalDateTime.now().plusDays(13).withHour(9).withMinute(0).withSecond(0).withNano(0);
+        Patient routinePatient = new Patient("PAT-101", "Rita", "Routine", LocalDate.of(1970, 1, 1));
+        Patient urgentPatient = new Patient("PAT-102", "Uma", "Urgent", LocalDate.of(1980, 1, 1));
+        Patient latePatient = new Patient("PAT-103", "Leo", "Late", LocalDate.of(1990, 1, 1));
+        Appointment booked = Appointment.AppointmentScheduler.scheduleAppointment(patient, doctor, nineAm, Duration.ofMinutes(60));
+        
+        Appointment.AppointmentScheduler.WaitlistEntry routine = Appointment.AppointmentScheduler.joinWaitlist(routinePatient, doctor,
+                nineAm, nineAm.plusHours(4), Duration.ofMinutes(30), Appointment.AppointmentScheduler.Urgency.ROUTINE);
+        Appointment.AppointmentScheduler.WaitlistEntry urgent = Appointment.AppointmentScheduler.joinWaitlist(urgentPatient, doctor,
+                nineAm, nineAm.plusHours(4), Duration.ofMinutes(30), Appointment.AppointmentScheduler.Urgency.URGENT);
+        Appointment.AppointmentScheduler.WaitlistEntry late = Appointment.AppointmentScheduler.joinWaitlist(latePatient, doctor,
+                nineAm.plusHours(3), nineAm.plusHours(4), Duration.ofMinutes(30), Appointment.AppointmentScheduler.Urgency.URGENT);
+        softAssert.assertEquals(Appointment.AppointmentScheduler.getWaitlist(doctor), List.of(urgent, late, routine), "Waitlist should be ordered by urgency then request time");
+        
+        booked.cancel();
+        
+        softAssert.assertTrue(urgent.isFulfilled(), "Urgent patient should get the freed slot first");
+        softAssert.assertEquals(urgent.getAppointment().getAppointmentDateTime(), nineAm, "Urgent patient should start at the freed time");
+        softAssert.assertTrue(routine.isFulfilled(), "Routine patient should get the rest of the freed hour");
+        softAssert.assertEquals(routine.getAppointment().getAppointmentDateTime(), nineAm.plusMinutes(30), "Routine patient should follow the urgent one");
+        softAssert.assertFalse(late.isFulfilled(), "Patient whose window starts later should keep waiting");
+        softAssert.assertEquals(Appointment.AppointmentScheduler.getWaitlist(doctor), List.of(late), "Only the unmatched entry should remain");
+        softAssert.assertEquals(Appointment.AppointmentScheduler.getAppointmentsForPatient(urgentPatient).size(), 1, "Backfilled appointment should be indexed for the patient");
+        
+        softAssert.assertTrue(Appointment.AppointmentScheduler.leaveWaitlist(late), "Waiting patient should be able to leave");
+        softAssert.assertTrue(Appointment.AppointmentScheduler.getWaitlist(doctor).isEmpty(), "Waitlist should be empty");
+        softAssert.assertAll();
+    }
+    
+    @Test(groups = "scheduler", priority = 22)
+    public void testBulkAssignmentPlanAndCommit() {
+        SoftAssert softAssert = new SoftAssert();
+        LocalDate firstDay = LocalDate.now().plusDays(40);
+        List<Doctor> cardiologists = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            Doctor cardiologist = new Doctor("DOC-B" + i, "BA00000" + i);
+            cardiologist.setSpecialization("Cardiology");
+            cardiologists.add(cardiologist);
+        }
+        Doctor neurologist = new Doctor("DOC-BN", "BN000000");
+        neurologist.setSpecialization("Neurology");
+        Appointment.AppointmentScheduler.scheduleAppointment(patient, cardiologists.get(0), firstDay.atTime(9, 0), Duration.ofHours(2));
+        
+        List<BulkAssignmentEngine.AssignmentRequest> requests = new ArrayList<>();
+        for (int i = 0; i < 40; i++) {
+            Patient newPatient = new Patient("PAT-B" + i, "Bulk", "Patient" + i, LocalDate.of(1980, 1, 1));
+            requests.add(new BulkAssignmentEngine.AssignmentRequest(newPatient, Doctor.Specialization.CARDIOLOGY,
+                    firstDay.plusDays(i % 2), Duration.ofMinutes(30)));
+        }
+        requests.add(new BulkAssignmentEngine.AssignmentRequest(patient, Doctor.Specialization.DERMATOLOGY, firstDay, Duration.ofMinutes(30)));
+        
+        List<Doctor> allDoctors = new ArrayList<>(cardiologists);
+        allDoctors.add(neurologist);
+        BulkAssignmentEngine engine = new BulkAssignmentEngine(allDoctors, 12, LocalTime.of(9, 0), LocalTime.of(17, 0));
+        BulkAssignmentEngine.AssignmentPlan plan = engine.plan(requests);
+        
+        softAssert.assertEquals(plan.getAssignments().size(), 36, "Panel limits should cap assignments at 36");
+        softAssert.assertEquals(plan.getUnassigned().size(), 5, "Remaining requests should be reported as unassigned");
+        softAssert.assertTrue(plan.getAssignments().stream().noneMatch(a -> a.getDoctor() == neurologist), "Neurologist should not be assigned cardiology patients");
+        softAssert.assertTrue(plan.getAssignments().stream()
+                .filter(a -> a.getDoctor() == cardiologists.get(0) && a.getStart().toLocalDate().equals(firstDay))
+                .allMatch(a -> !a.getStart().isBefore(firstDay.atTime(11, 0))), "Existing booking should be respected");
+        
+        List<Appointment> committed = plan.commit();
+        softAssert.assertEquals(committed.size(), 36, "Commit should book every planned assignment");
+        for (Doctor cardiologist : cardiologists) {
+            softAssert.assertEquals(cardiologist.getPatients().size(), 12, "Each cardiologist should have a full panel");
+        }
+        
+        BulkAssignmentEngine.AssignmentPlan stale = engine.plan(List.of(new BulkAssignmentEngine.AssignmentRequest(
+                cardiologists.get(1).getPatients().get(0), Doctor.Specialization.CARDIOLOGY, firstDay.plusDays(5), Duration.ofMinutes(30))));
+        BulkAssignmentEngine.Assignment planned = stale.getAssignments().get(0);
+        Appointment.AppointmentScheduler.scheduleAppointment(patient, planned.getDoctor(), planned.getStart());
+        int bookedBefore = Appointment.AppointmentScheduler.getAppointmentsForDoctor(planned.getDoctor()).size();
+        try {
+            stale.commit();
+            softAssert.fail("Stale plan should not commit");
+        } catch (IllegalStateException e) {
+            softAssert.assertEquals(Appointment.AppointmentScheduler.getAppointmentsForDoctor(planned.getDoctor()).size(), bookedBefore, "Failed commit should book nothing");
+        }
+        softAssert.assertAll();
+    }
+    
+    @Test(groups = "status", priority = 23)
+    public void testLiveStatusCounts() {
+        SoftAssert softAssert = new SoftAssert();
+        LocalDateTime nineAm = LocalDateTime.now().plusDays(14).withHour(9).withMinute(0).withSecond(0).withNano(0);
+        long scheduledBefore = Appointment.AppointmentScheduler.getStatusCount(Appointment.AppointmentStatus.SCHEDULED);
+        long cancelledBefore = Appointment.AppointmentScheduler.getStatusCount(Appointment.AppointmentStatus.CANCELLED);
+        
+        Appointment first = Appointment.AppointmentScheduler.scheduleAppointment(patient, doctor, nineAm);
+        Appointment second = Appointment.AppointmentScheduler.scheduleAppointment(patient, doctor, nineAm.plusHours(1));
+        Appointment.AppointmentScheduler.scheduleAppointment(patient, doctor, nineAm.plusHours(2));
+        first.cancel();
+        second.setStatus(Appointment.AppointmentStatus.IN_PROGRESS);
+        
+        softAssert.assertEquals(Appointment.AppointmentScheduler.getStatusCount(doctor, Appointment.AppointmentStatus.SCHEDULED), 1, "Doctor should have one scheduled appointment");
+        softAssert.assertEquals(Appointment.AppointmentScheduler.getStatusCount(doctor, Appointment.AppointmentStatus.CANCELLED), 1, "Doctor should have one cancelled appointment");
+        softAssert.assertEquals(Appointment.AppointmentScheduler.getStatusCount(doctor, Appointment.AppointmentStatus.IN_PROGRESS), 1, "Doctor should have one appointment in progress");
+        softAssert.assertEquals(Appointment.AppointmentScheduler.getStatusCount(Appointment.AppointmentStatus.SCHEDULED) - scheduledBefore, 1, "Global scheduled count should grow by one");
+        softAssert.assertEquals(Appointment.AppointmentScheduler.getStatusCount(Appointment.AppointmentStatus.CANCELLED) - cancelledBefore, 1, "Global cancelled count should grow by one");
+        
+        Appointment.AppointmentScheduler.clearAllAppointments();
+        softAssert.assertTrue(Appointment.AppointmentScheduler.getStatusCounts().values().stream().allMatch(count -> count == 0), "Clearing appointments should reset every count");
+        softAssert.assertAll();
+    }
+    
+    @Test(groups = "scheduler", priority = 24)
+    public void testConcurrentPatientReassignment() throws InterruptedException {
+        SoftAssert softAssert = new SoftAssert();
+        LocalDateTime nineAm = LocalDateTime.now().plusDays(15).withHour(9).withMinute(0).withSecond(0).withNano(0);
+        Patient other = new Patient("PAT-REASSIGN", "Other", "Patient", LocalDate.of(1980, 1, 1));
+        Doctor otherDoctor = new Doctor("DOC-REASSIGN", "CD654321");
+        Appointment shared = Appointment.AppointmentScheduler.scheduleAppointment(patient, doctor, nineAm);
+        
+        ExecutorService executor = Executors.newFixedThreadPool(3);
+        executor.submit(() -> {
+            for (int i = 0; i < 20_000; i++) {
+                shared.setPatient(i % 2 == 0 ? other : patient);
+            }
+        });
+        executor.submit(() -> {
+            for (int i = 0; i < 20_000; i++) {
+                shared.setDoctor(i % 2 == 0 ? otherDoctor : doctor);
+            }
+        });
+        executor.submit(() -> {
+            for (int i = 0; i < 20_000; i++) {
+                shared.setStatus(i % 2 == 0 ? Appointment.AppointmentStatus.CONFIRMED : Appointment.AppointmentStatus.SCHEDULED);
+            }
+        });
+        executor.shutdown();
+        softAssert.assertTrue(executor.awaitTermination(60, TimeUnit.SECONDS), "Writers should finish");
+        
+        long forFinalPatient = Appointment.AppointmentScheduler.getAppointmentsForPatient(shared.getPatient()).stream()
+                .filter(candidate -> candidate == shared).count();
+        Patient previous = shared.getPatient() == patient ? other : patient;
+        long forPreviousPatient = Appointment.AppointmentScheduler.getAppointmentsForPatient(previous).stream()
+                .filter(candidate -> candidate == shared).count();
+        softAssert.assertEquals(shared.getPatient(), patient, "The last reassignment should win");
+        softAssert.assertEquals(forFinalPatient, 1L, "The appointment should be indexed once under its patient");
+        softAssert.assertEquals(forPreviousPatient, 0L, "The appointment should not stay under the previous patient");
+        softAssert.assertAll();
+    }
+    
+    @Test(groups = "scheduler", priority = 25)
+    public void testFreeSlotSearchInPrunedPastDays() {
+        SoftAssert softAssert = new SoftAssert();
+        LocalDateTime yesterdayNine = LocalDateTime.now().minusDays(1).withHour(9).withMinute(0).withSecond(0).withNano(0);
+        LocalDateTime tomorrowNine = yesterdayNine.plusDays(2);
+        Appointment.AppointmentScheduler.scheduleAppointment(patient, doctor, yesterdayNine, Duration.ofMinutes(60));
+        Appointment.AppointmentScheduler.scheduleAppointment(patient, doctor, tomorrowNine, Duration.ofMinutes(60));
+        
+        List<Appointment.AppointmentScheduler.FreeSlot> past = Appointment.AppointmentScheduler.findEarliestFreeSlots(
+                List.of(doctor), null, yesterdayNine, yesterdayNine.plusHours(2), Duration.ofMinutes(30), 2);
+        softAssert.assertEquals(past.size(), 2, "Two slots should fit after yesterday's visit");
+        softAssert.assertEquals(past.get(0).getStart(), yesterdayNine.plusMinutes(60), "Past bookings should still block slots");
+        
+        List<Appointment.AppointmentScheduler.FreeSlot> future = Appointment.AppointmentScheduler.findEarliestFreeSlots(
+                List.of(doctor), null, tomorrowNine, tomorrowNine.plusHours(2), Duration.ofMinutes(30), 1);
+        softAssert.assertEquals(future.get(0).getStart(), tomorrowNine.plusMinutes(60), "Future bookings should block slots");
+        softAssert.assertAll();
+    }
+    
+    @Test(groups = "status", priority = 26)
+    public void testSweepInsideTheDeadlineMinuteKeepsTimers() {
+        SoftAssert softAssert = new SoftAssert();
+        Appointment.AppointmentScheduler.clearAllAppointments();
+        Doctor sweptDoctor = new Doctor("DOC-003", "EF123456");
+        LocalDateTime deadline = LocalDateTime.now().truncatedTo(ChronoUnit.MINUTES).plusMinutes(2);
+        Appointment pending = Appointment.AppointmentScheduler.scheduleAppointment(patient, sweptDoctor, deadline.minusMinutes(15));
+        
+        softAssert.assertEquals(Appointment.AppointmentScheduler.sweepNoShows(deadline.minusSeconds(30)), 0,
+                "A sweep before the deadline should not mark a no-show");
+        softAssert.assertEquals(pending.getStatus(), Appointment.AppointmentStatus.SCHEDULED, "Appointment should wait for its deadline");
+        softAssert.assertEquals(Appointment.AppointmentScheduler.sweepNoShows(deadline), 1,
+                "The sweep at the deadline should still find the appointment");
+        softAssert.assertEquals(pending.getStatus(), Appointment.AppointmentStatus.NO_SHOW, "Appointment should be NO_SHOW at its deadline");
+        softAssert.assertAll();
+    }
 }
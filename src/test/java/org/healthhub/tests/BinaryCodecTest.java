@@ -0,0 +1,268 @@
+package org.healthhub.tests;
+
+import org.healthhub.model.Appointment;
+import org.healthhub.model.BinaryCodec;
+import org.healthhub.model.Doctor;
+import org.healthhub.model.MedicalRecord;
+import org.healthhub.model.Patient;
+import org.healthhub.model.Prescription;
+import org.testng.annotations.*;
+import org.testng.asserts.SoftAssert;
+import java.nio.ByteBuffer;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import static org.testng.Assert.*;
+
+public class BinaryCodecTest {
+
+    private static int suiteCounter = 0;
+    private static int testCounter = 0;
+    private static int classCounter = 0;
+    private static int methodCounter = 0;
+    
+    private Patient patient;
+    private Doctor doctor;
+    
+    @BeforeSuite
+    public void beforeSuite() {
+        suiteCounter++;
+        System.out.println("BinaryCodecTest - BeforeSuite executed. Suite counter: " + suiteCounter);
+    }
+    
+    @AfterSuite
+    public void afterSuite() {
+        System.out.println("BinaryCodecTest - AfterSuite executed. Suite counter: " + suiteCounter);
+    }
+    
+    @BeforeTest
+    public void beforeTest() {
+        testCounter++;
+        System.out.println("BinaryCodecTest - BeforeTest executed. Test counter: " + testCounter);
+    }
+    
+    @AfterTest
+    public void afterTest() {
+        System.out.println("BinaryCodecTest - AfterTest executed. Test counter: " + testCounter);
+    }
+    
+    @BeforeClass
+    public void beforeClass() {
+        classCounter++;
+        System.out.println("BinaryCodecTest - BeforeClass executed. Class counter: " + classCounter);
+    }
+    
+    @AfterClass
+    public void afterClass() {
+        System.out.println("BinaryCodecTest - AfterClass executed. Class counter: " + classCounter);
+    }
+    
+    @BeforeGroups(groups = {"roundtrip", "session"})
+    public void beforeGroups() {
+        System.out.println("BinaryCodecTest - BeforeGroups executed for roundtrip and session groups");
+    }
+    
+    @AfterGroups(groups = {"roundtrip", "session"})
+    public void afterGroups() {
+        System.out.println("BinaryCodecTest - AfterGroups executed for roundtrip and session groups");
+    }
+    
+    @BeforeMethod
+    public void beforeMethod() {
+        methodCounter++;
+        patient = new Patient("PAT-001", "Nino", "Beridze", LocalDate.of(1988, 4, 12));
+        patient.setEmail("nino@example.com");
+        patient.setPhoneNumber("995555123456");
+        doctor = new Doctor("DOC-001", "AB123456");
+        doctor.setFirstName("Giorgi");
+        doctor.setLastName("Kapanadze");
+        doctor.setSpecialization("Cardiology");
+        System.out.println("BinaryCodecTest - BeforeMethod executed. Method counter: " + methodCounter);
+    }
+    
+    @AfterMethod
+    public void afterMethod() {
+        patient = null;
+        doctor = null;
+        System.out.println("BinaryCodecTest - AfterMethod executed");
+    }
+    
+    @Test(groups = "roundtrip", priority = 1)
+    public void testMedicalRecordRoundTrip() {
+        SoftAssert softAssert = new SoftAssert();
+        MedicalRecord record = newRecord(7);
+        record.setSymptoms("Chest pain, ტკივილი 💔");
+        record.addTestResult("ECG normal");
+        record.addTestResult("Troponin negative");
+        
+        MedicalRecord decoded = new BinaryCodec().fromBytes(ByteBuffer.wrap(new BinaryCodec().toBytes(record)));
+        softAssert.assertEquals(decoded.getRecordId(), record.getRecordId(), "Record id should round trip");
+        softAssert.assertEquals(decoded.getRecordDate(), record.getRecordDate(), "Record date should round trip");
+        softAssert.assertEquals(decoded.getDiagnosis(), record.getDiagnosis(), "Diagnosis should round trip");
+        softAssert.assertEquals(decoded.getSymptoms(), record.getSymptoms(), "Non-ASCII text should round trip");
+        softAssert.assertNull(decoded.getTreatment(), "Absent fields should stay absent");
+        softAssert.assertEquals(decoded.getTestResults(), record.getTestResults(), "Test results should round trip");
+        softAssert.assertEquals(decoded.getType(), MedicalRecord.RecordType.LAB_RESULT, "Type should round trip");
+        softAssert.assertEquals(decoded.getStatus(), MedicalRecord.RecordStatus.ACTIVE, "Status should round trip");
+        softAssert.assertEquals(decoded.getPatient().getDateOfBirth(), patient.getDateOfBirth(), "Patient should round trip");
+        softAssert.assertEquals(decoded.getPatient().getPhoneNumber(), patient.getPhoneNumber(), "Patient contact details should round trip");
+        softAssert.assertEquals(decoded.getDoctor().getSpecialization(), "Cardiology", "Doctor should round trip");
+        
+        MedicalRecord empty = new MedicalRecord();
+        MedicalRecord decodedEmpty = new BinaryCodec().fromBytes(ByteBuffer.wrap(new BinaryCodec().toBytes(empty)));
+        softAssert.assertNull(decodedEmpty.getPatient(), "A record without fields should decode without fields");
+        softAssert.assertNull(decodedEmpty.getType(), "A record without a type should decode without a type");
+        softAssert.assertTrue(new BinaryCodec().toBytes(empty).length <= 4, "An empty record should take only a few bytes");
+        softAssert.assertAll();
+    }
+    
+    @Test(groups = "roundtrip", priority = 2)
+    public void testRelatedEntitiesRoundTripThroughDirectBuffers() {
+        SoftAssert softAssert = new SoftAssert();
+        Appointment appointment = new Appointment();
+        appointment.setAppointmentId("APT-001");
+        appointment.setPatient(patient);
+        appointment.setDoctor(doctor);
+        appointment.setAppointmentDateTime(LocalDateTime.of(2024, 6, 3, 9, 30));
+        appointment.setDuration(Duration.ofMinutes(45));
+        appointment.setStatus(Appointment.AppointmentStatus.CONFIRMED);
+        appointment.setReason("Follow-up");
+        
+        Prescription prescription = new Prescription();
+        prescription.setPrescriptionId("RX-001");
+        prescription.setPatient(patient);
+        prescription.setDoctor(doctor);
+        prescription.setIssueDate(LocalDate.of(2024, 6, 3));
+        prescription.setExpiryDate(LocalDate.of(2024, 9, 3));
+        prescription.setStatus(Prescription.PrescriptionStatus.ACTIVE);
+        for (String name : new String[] {"Aspirin", "Atorvastatin"}) {
+            Prescription.Medication medication = new Prescription.Medication();
+            medication.setName(name);
+            medication.setDosage("10mg");
+            medication.setFrequency("Once daily");
+            medication.setQuantity(30);
+            prescription.addMedication(medication);
+        }
+        
+        ByteBuffer buffer = ByteBuffer.allocateDirect(4096);
+        BinaryCodec writer = new BinaryCodec();
+        writer.encode(patient, buffer);
+        writer.encode(doctor, buffer);
+        writer.encode(appointment, buffer);
+        writer.encode(prescription, buffer);
+        buffer.flip();
+        
+        BinaryCodec reader = new BinaryCodec();
+        Patient decodedPatient = reader.decodePatient(buffer);
+        Doctor decodedDoctor = reader.decodeDoctor(buffer);
+        Appointment decodedAppointment = reader.decodeAppointment(buffer);
+        Prescription decodedPrescription = reader.decodePrescription(buffer);
+        softAssert.assertFalse(buffer.hasRemaining(), "Every byte should be consumed");
+        softAssert.assertEquals(decodedPatient.getEmail(), patient.getEmail(), "Patient should round trip");
+        softAssert.assertEquals(decodedDoctor.getLicenseNumber(), doctor.getLicenseNumber(), "Doctor should round trip");
+        softAssert.assertSame(decodedAppointment.getPatient(), decodedPatient, "Later messages should refer back to the patient");
+        softAssert.assertSame(decodedAppointment.getDoctor(), decodedDoctor, "Later messages should refer back to the doctor");
+        softAssert.assertEquals(decodedAppointment.getAppointmentDateTime(), appointment.getAppointmentDateTime(), "Appointment time should round trip");
+        softAssert.assertEquals(decodedAppointment.getDuration(), Duration.ofMinutes(45), "Appointment duration should round trip");
+        softAssert.assertEquals(decodedAppointment.getStatus(), Appointment.AppointmentStatus.CONFIRMED, "Appointment status should round trip");
+        softAssert.assertNull(decodedAppointment.getNotes(), "Absent notes should stay absent");
+        softAssert.assertEquals(decodedPrescription.getExpiryDate(), prescription.getExpiryDate(), "Expiry date should round trip");
+        softAssert.assertEquals(decodedPrescription.getMedications().size(), 2, "Medications should round trip");
+        softAssert.assertEquals(decodedPrescription.getMedications().get(1).getName(), "Atorvastatin", "Medication names should round trip");
+        softAssert.assertEquals(decodedPrescription.getMedications().get(1).getQuantity(), 30, "Medication quantities should round trip");
+        
+        buffer.rewind();
+        assertThrows(IllegalArgumentException.class, () -> new BinaryCodec().decodeDoctor(buffer));
+        softAssert.assertAll();
+    }
+    
+    @Test(groups = "session", priority = 3)
+    public void testSessionReferencesShrinkStreams() {
+        SoftAssert softAssert = new SoftAssert();
+        int count = 1_000;
+        BinaryCodec standalone = new BinaryCodec();
+        long standaloneBytes = 0;
+        ByteBuffer stream = ByteBuffer.allocate(1 << 20);
+        BinaryCodec writer = new BinaryCodec();
+        for (int i = 0; i < count; i++) {
+            MedicalRecord record = newRecord(i);
+            standaloneBytes += standalone.toBytes(record).length;
+            writer.encode(record, stream);
+        }
+        stream.flip();
+        System.out.println("BinaryCodecTest - " + count + " records: " + standaloneBytes + " bytes standalone, " + stream.remaining() + " bytes in one session");
+        softAssert.assertTrue(stream.remaining() < standaloneBytes * 2 / 3, "Repeated strings and people should be written once per session");
+        
+        BinaryCodec reader = new BinaryCodec();
+        List<MedicalRecord> decoded = new ArrayList<>();
+        while (stream.hasRemaining()) {
+            decoded.add(reader.decodeMedicalRecord(stream));
+        }
+        softAssert.assertEquals(decoded.size(), count, "Every record should decode");
+        softAssert.assertEquals(decoded.get(count - 1).getRecordId(), "REC-" + (count - 1), "Records should decode in order");
+        softAssert.assertSame(decoded.get(0).getPatient(), decoded.get(count - 1).getPatient(), "Records should share their patient");
+        softAssert.assertAll();
+    }
+    
+    @Test(groups = "session", priority = 4)
+    public void testUnknownVersionsAndKindsAreRejected() {
+        BinaryCodec codec = new BinaryCodec();
+        ByteBuffer patientMessage = ByteBuffer.allocate(256);
+        codec.encode(patient, patientMessage);
+        patientMessage.flip();
+        
+        assertThrows(IllegalArgumentException.class, () -> new BinaryCodec().fromBytes(ByteBuffer.wrap(new byte[] {9, 1})));
+        assertThrows(IllegalArgumentException.class, () -> new BinaryCodec().fromBytes(ByteBuffer.wrap(new byte[] {2, 1})));
+        assertThrows(IllegalArgumentException.class, () -> new BinaryCodec().decodeMedicalRecord(patientMessage));
+    }
+    
+    @Test(groups = "session", priority = 5)
+    public void testEncodeAndDecodeThroughput() {
+        int count = 200_000;
+        List<MedicalRecord> records = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            records.add(newRecord(i));
+        }
+        BinaryCodec codec = new BinaryCodec();
+        for (int warmup = 0; warmup < 20_000; warmup++) {
+            codec.fromBytes(ByteBuffer.wrap(codec.toBytes(records.get(warmup))));
+        }
+        
+        ByteBuffer buffer = ByteBuffer.allocateDirect(64 << 20);
+        BinaryCodec writer = new BinaryCodec();
+        long start = System.nanoTime();
+        for (MedicalRecord record : records) {
+            writer.reset().encode(record, buffer);
+        }
+        long encodeNanos = System.nanoTime() - start;
+        buffer.flip();
+        long bytes = buffer.remaining();
+        
+        BinaryCodec reader = new BinaryCodec();
+        int decoded = 0;
+        start = System.nanoTime();
+        while (buffer.hasRemaining()) {
+            reader.reset().decodeMedicalRecord(buffer);
+            decoded++;
+        }
+        long decodeNanos = System.nanoTime() - start;
+        System.out.println("BinaryCodecTest - " + count + " records, " + bytes / count + " bytes each: encode "
+                + count * 1_000_000_000L / Math.max(1, encodeNanos) + " records/s, decode "
+                + count * 1_000_000_000L / Math.max(1, decodeNanos) + " records/s");
+        assertEquals(decoded, count, "Every encoded record should decode");
+    }
+    
+    private MedicalRecord newRecord(int i) {
+        MedicalRecord record = new MedicalRecord();
+        record.setRecordId("REC-" + i);
+        record.setPatient(patient);
+        record.setDoctor(doctor);
+        record.setRecordDate(LocalDateTime.of(2024, 1, 1, 0, 0).plusMinutes(i));
+        record.setDiagnosis("Hypertension stage " + (i % 3 + 1));
+        record.setType(MedicalRecord.RecordType.LAB_RESULT);
+        record.setStatus(MedicalRecord.RecordStatus.ACTIVE);
+        return record;
+    }
+}
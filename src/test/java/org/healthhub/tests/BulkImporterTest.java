@@ -0,0 +1,361 @@
+package org.healthhub.tests;
+
+import org.healthhub.io.BulkImporter;
+import org.healthhub.model.Doctor;
+import org.healthhub.model.MedicalRecord;
+import org.healthhub.model.Patient;
+import org.testng.annotations.*;
+import org.testng.asserts.SoftAssert;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
+import java.io.UncheckedIOException;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongFunction;
+import static org.testng.Assert.*;
+
+public class BulkImporterTest {
+
+    private static int suiteCounter = 0;
+    private static int testCounter = 0;
+    private static int classCounter = 0;
+    private static int methodCounter = 0;
+    
+    @BeforeSuite
+    public void beforeSuite() {
+        suiteCounter++;
+        System.out.println("BulkImporterTest - BeforeSuite executed. Suite counter: " + suiteCounter);
+    }
+    
+    @AfterSuite
+    public void afterSuite() {
+        System.out.println("BulkImporterTest - AfterSuite executed. Suite counter: " + suiteCounter);
+    }
+    
+    @BeforeTest
+    public void beforeTest() {
+        testCounter++;
+        System.out.println("BulkImporterTest - BeforeTest executed. Test counter: " + testCounter);
+    }
+    
+    @AfterTest
+    public void afterTest() {
+        System.out.println("BulkImporterTest - AfterTest executed. Test counter: " + testCounter);
+    }
+    
+    @BeforeClass
+    public void beforeClass() {
+        classCounter++;
+        System.out.println("BulkImporterTest - BeforeClass executed. Class counter: " + classCounter);
+    }
+    
+    @AfterClass
+    public void afterClass() {
+        MedicalRecord.MedicalRecordManager.clearAllRecords();
+        System.out.println("BulkImporterTest - AfterClass executed. Class counter: " + classCounter);
+    }
+    
+    @BeforeGroups(groups = {"import", "pipeline"})
+    public void beforeGroups() {
+        System.out.println("BulkImporterTest - BeforeGroups executed for import and pipeline groups");
+    }
+    
+    @AfterGroups(groups = {"import", "pipeline"})
+    public void afterGroups() {
+        System.out.println("BulkImporterTest - AfterGroups executed for import and pipeline groups");
+    }
+    
+    @BeforeMethod
+    public void beforeMethod() {
+        methodCounter++;
+        MedicalRecord.MedicalRecordManager.clearAllRecords();
+        System.out.println("BulkImporterTest - BeforeMethod executed. Method counter: " + methodCounter);
+    }
+    
+    @AfterMethod
+    public void afterMethod() {
+        System.out.println("BulkImporterTest - AfterMethod executed");
+    }
+    
+    @Test(groups = "import", priority = 1)
+    public void testCsvImportSharesPatientsAndDoctors() throws IOException {
+        SoftAssert softAssert = new SoftAssert();
+        String csv = String.join("\n",
+                "recordId,patientId,firstName,lastName,dateOfBirth,email,doctorId,licenseNumber,specialization,recordDate,type,status,diagnosis,testResults,notes",
+                "REC-1,PAT-1,Nino,Beridze,1988-04-12,nino@example.com,DOC-1,AB123456,Cardiology,2024-03-01T09:30,CONSULTATION,ACTIVE,\"Hypertension, stage 1\",ECG normal|BP 150/95,ignored",
+                "REC-2,PAT-1,,,,,DOC-1,,,2024-03-15,Lab Result,Active,\"Said \"\"better\"\"\",,",
+                "",
+                ",PAT-2,Giorgi,Kapanadze,1975-11-02,,,,,,,,,,",
+                "REC-3,PAT-2,,,,,,,,2024-04-01T10:00,FOLLOW_UP,,,,");
+        List<Patient> patients = new ArrayList<>();
+        BulkImporter.ImportReport report = BulkImporter.builder(BulkImporter.Format.CSV)
+                .withParallelism(2)
+                .withBatchSize(2)
+                .onPatient(patients::add)
+                .build()
+                .importFrom(new StringReader(csv));
+        
+        softAssert.assertEquals(report.getRowCount(), 4, "Blank lines should not count as rows");
+        softAssert.assertEquals(report.getImportedRecordCount(), 3, "Rows with record columns should become records");
+        softAssert.assertEquals(report.getImportedPatientCount(), 2, "Each patient id should be imported once");
+        softAssert.assertEquals(report.getRejectedRowCount(), 0, "No row should be rejected");
+        softAssert.assertEquals(patients.size(), 2, "New patients should be reported once each");
+        softAssert.assertEquals(MedicalRecord.MedicalRecordManager.getTotalRecordCount(), 3, "Records should be indexed by the manager");
+        
+        Patient nino = patients.get(0);
+        List<MedicalRecord> ninoRecords = MedicalRecord.MedicalRecordManager.getRecordsForPatient(nino);
+        softAssert.assertEquals(ninoRecords.size(), 2, "Rows for the same patient id should share one patient");
+        softAssert.assertEquals(nino.getEmail(), "nino@example.com", "Patient details should come from the first row");
+        MedicalRecord first = ninoRecords.get(0);
+        MedicalRecord second = ninoRecords.get(1);
+        softAssert.assertEquals(first.getDiagnosis(), "Hypertension, stage 1", "Quoted fields may contain commas");
+        softAssert.assertEquals(first.getTestResults(), List.of("ECG normal", "BP 150/95"), "Test results should be split");
+        softAssert.assertEquals(first.getRecordDate(), LocalDateTime.of(2024, 3, 1, 9, 30), "Record date should be parsed");
+        softAssert.assertEquals(second.getDiagnosis(), "Said \"better\"", "Doubled quotes should be unescaped");
+        softAssert.assertEquals(second.getRecordDate(), LocalDate.of(2024, 3, 15).atStartOfDay(), "A bare date should mean start of day");
+        softAssert.assertEquals(second.getType(), MedicalRecord.RecordType.LAB_RESULT, "Display names should be accepted");
+        softAssert.assertSame(second.getDoctor(), first.getDoctor(), "Rows for the same doctor id should share one doctor");
+        softAssert.assertEquals(second.getDoctor().getSpecialization(), "Cardiology", "Doctor details should come from the first row");
+        
+        Patient giorgi = patients.get(1);
+        softAssert.assertEquals(giorgi.getLastName(), "Kapanadze", "Patient-only rows should import the patient");
+        softAssert.assertEquals(MedicalRecord.MedicalRecordManager.getRecordsForPatient(giorgi).size(), 1, "Later records should attach to the imported patient");
+        softAssert.assertAll();
+    }
+    
+    @Test(groups = "import", priority = 2)
+    public void testRejectedRowsAreReportedWithLineNumbers() throws IOException {
+        SoftAssert softAssert = new SoftAssert();
+        Patient existing = new Patient("PAT-1", "Nino", "Beridze", LocalDate.of(1988, 4, 12));
+        String ndjson = String.join("\n",
+                "{\"recordId\": \"REC-1\", \"patientId\": \"PAT-1\", \"diagnosis\": \"Asthma\"}",
+                "{\"recordId\": \"REC-2\", \"patientId\": \"PAT-1\", \"recordDate\": \"2024-13-01\"}",
+                "{\"recordId\": \"REC-3\", \"patientId\": \"PAT-1\", \"type\": \"CHECKUP\"}",
+                "{\"recordId\": \"REC-4\", \"patientId\": \"PAT-2\", \"email\": \"not-an-email\"}",
+                "{\"recordId\": \"REC-1\", \"patientId\": \"PAT-1\"}",
+                "{\"recordId\": \"REC-5\", \"patientId\": \"PAT-1\", \"lastName\": \"Smith\"}",
+                "{\"recordId\": \"REC-6\", \"diagnosis\": \"Migraine\"}",
+                "{\"recordId\": \"REC-7\", \"patientId\": \"PAT-1\", \"diagnosis\": \"Migraine\"",
+                "{\"recordId\": \"REC-8\", \"patientId\": \"PAT-1\", \"extra\": {\"nested\": true}}",
+                "{\"recordId\": \"REC-9\", \"patientId\": \"PAT-1\", \"specialization\": \"Cardiology\"}",
+                "{\"recordId\": \"REC-10\", \"patientId\": \"PAT-1\", \"diagnosis\": \"Influenza\"}");
+        List<BulkImporter.RowError> handled = new ArrayList<>();
+        BulkImporter.ImportReport report = BulkImporter.builder(BulkImporter.Format.NDJSON)
+                .withParallelism(3)
+                .withBatchSize(1)
+                .withErrorLimit(3)
+                .withPatients(List.of(existing))
+                .onError(handled::add)
+                .build()
+                .importFrom(new StringReader(ndjson));
+        
+        softAssert.assertEquals(report.getRowCount(), 11, "Every non-blank line should count as a row");
+        softAssert.assertEquals(report.getImportedRecordCount(), 2, "Only valid rows should be imported");
+        softAssert.assertEquals(report.getImportedPatientCount(), 0, "Known patients should not count as imported");
+        softAssert.assertEquals(report.getRejectedRowCount(), 9, "Invalid rows should be rejected");
+        softAssert.assertEquals(report.getErrors().size(), 3, "The report should keep errors up to the limit");
+        softAssert.assertEquals(handled.size(), 9, "The handler should see every rejected row");
+        
+        long[] lines = handled.stream().mapToLong(BulkImporter.RowError::getLine).toArray();
+        softAssert.assertEquals(lines, new long[] {2, 3, 4, 5, 6, 7, 8, 9, 10}, "Errors should arrive in input order with line numbers");
+        softAssert.assertTrue(handled.get(0).getMessage().contains("recordDate"), "Bad dates should name the column: " + handled.get(0));
+        softAssert.assertTrue(handled.get(1).getMessage().contains("CHECKUP"), "Unknown types should be named: " + handled.get(1));
+        softAssert.assertTrue(handled.get(2).getMessage().contains("email"), "Bad emails should be rejected: " + handled.get(2));
+        softAssert.assertTrue(handled.get(3).getMessage().contains("REC-1"), "Repeated record ids should be rejected: " + handled.get(3));
+        softAssert.assertTrue(handled.get(4).getMessage().contains("lastName"), "Conflicting patient details should be rejected: " + handled.get(4));
+        softAssert.assertTrue(handled.get(5).getMessage().contains("patientId"), "Rows need a patient id: " + handled.get(5));
+        softAssert.assertTrue(handled.get(6).getMessage().contains("column"), "Malformed JSON should report a position: " + handled.get(6));
+        softAssert.assertTrue(handled.get(7).getMessage().contains("Nested"), "Nested objects should be rejected: " + handled.get(7));
+        softAssert.assertTrue(handled.get(8).getMessage().contains("doctorId"), "Doctor details need a doctor id: " + handled.get(8));
+        
+        List<MedicalRecord> records = MedicalRecord.MedicalRecordManager.getRecordsForPatient(existing);
+        softAssert.assertEquals(records.size(), 2, "Valid rows should attach to the known patient");
+        softAssert.assertEquals(records.get(1).getDiagnosis(), "Influenza", "Rows after errors should still be imported");
+        softAssert.assertAll();
+    }
+    
+    @Test(groups = "import", priority = 3)
+    public void testNdjsonValuesAreDecoded() throws IOException {
+        SoftAssert softAssert = new SoftAssert();
+        Doctor known = new Doctor("DOC-1", "AB123456");
+        known.setSpecialization("Neurology");
+        String ndjson = "{ \"patientId\" : \"PAT-1\", \"firstName\": \"Nino\", \"lastName\": \"\\u10d1\\u10d4\\u10e0\\u10d8\\u10eb\\u10d4\","
+                + " \"phoneNumber\": 995555123456, \"doctorId\": \"DOC-1\", \"recordDate\": \"2024-05-06T07:08:09\", \"type\": \"imaging\","
+                + " \"symptoms\": \"Line one\\nLine \\\"two\\\"\", \"testResults\": [\"MRI clear\", null, \"CT clear\"], \"treatment\": null,"
+                + " \"followUp\": [1, 2.5e3, true] }\n";
+        BulkImporter.ImportReport report = BulkImporter.builder(BulkImporter.Format.NDJSON)
+                .withDoctors(List.of(known))
+                .build()
+                .importFrom(new StringReader(ndjson));
+        
+        softAssert.assertEquals(report.getImportedRecordCount(), 1, "The row should be imported");
+        MedicalRecord record = MedicalRecord.MedicalRecordManager.getRecordsByType(MedicalRecord.RecordType.IMAGING).get(0);
+        softAssert.assertEquals(record.getPatient().getLastName(), "ბერიძე", "Unicode escapes should be decoded");
+        softAssert.assertEquals(record.getPatient().getPhoneNumber(), "995555123456", "Numbers should keep their digits");
+        softAssert.assertEquals(record.getSymptoms(), "Line one\nLine \"two\"", "String escapes should be decoded");
+        softAssert.assertEquals(record.getTestResults(), List.of("MRI clear", "CT clear"), "Arrays should become test results");
+        softAssert.assertNull(record.getTreatment(), "Null should mean a missing value");
+        softAssert.assertSame(record.getDoctor(), known, "Known doctors should be reused");
+        softAssert.assertNotNull(record.getRecordId(), "Records without an id should get one");
+        
+        String[] badNumbers = {"01", "1.", ".5", "-", "1e", "1e+", "+1", "0x1F", "1.2.3"};
+        StringBuilder rows = new StringBuilder();
+        for (String number : badNumbers) {
+            rows.append("{\"patientId\": \"PAT-1\", \"phoneNumber\": ").append(number).append("}\n");
+        }
+        BulkImporter.ImportReport rejected = BulkImporter.builder(BulkImporter.Format.NDJSON)
+                .build()
+                .importFrom(new StringReader(rows.toString()));
+        softAssert.assertEquals(rejected.getRejectedRowCount(), badNumbers.length, "Malformed numbers should be rejected: " + rejected.getErrors());
+        softAssert.assertAll();
+    }
+    
+    @Test(groups = "pipeline", priority = 4)
+    public void testSlowStageThrottlesTheReader() throws Exception {
+        SoftAssert softAssert = new SoftAssert();
+        int rows = 100_000;
+        int batchSize = 100;
+        int window = 4;
+        CountDownLatch stalled = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        GeneratedReader input = new GeneratedReader(rows, row -> "{\"patientId\": \"PAT-" + row + "\", \"recordId\": \"REC-" + row + "\"}");
+        BulkImporter importer = BulkImporter.builder(BulkImporter.Format.NDJSON)
+                .withParallelism(2)
+                .withBatchSize(batchSize)
+                .withWindow(window)
+                .onPatient(patient -> {
+                    if (patient.getPatientId().equals("PAT-0")) {
+                        stalled.countDown();
+                        try {
+                            release.await();
+                        } catch (InterruptedException e) {
+                            Thread.currentThread().interrupt();
+                        }
+                    }
+                })
+                .build();
+        CompletableFuture<BulkImporter.ImportReport> running = CompletableFuture.supplyAsync(() -> {
+            try {
+                return importer.importFrom(input);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        });
+        
+        assertTrue(stalled.await(10, TimeUnit.SECONDS), "The dedupe stage should reach the first patient");
+        Thread.sleep(300);
+        long generatedWhileStalled = input.getGeneratedLines();
+        release.countDown();
+        BulkImporter.ImportReport report = running.get(60, TimeUnit.SECONDS);
+        System.out.println("BulkImporterTest - lines read while the pipeline was stalled: " + generatedWhileStalled + " of " + rows);
+        
+        softAssert.assertTrue(generatedWhileStalled < 2_000, "The reader should stop after filling the window, read " + generatedWhileStalled);
+        softAssert.assertEquals(report.getImportedRecordCount(), rows, "Every row should be imported once the stage resumes");
+        softAssert.assertEquals(MedicalRecord.MedicalRecordManager.getTotalRecordCount(), rows, "The manager should hold every record");
+        softAssert.assertAll();
+    }
+    
+    @Test(groups = "pipeline", priority = 5)
+    public void testInputFailureStopsTheImport() throws InterruptedException {
+        SoftAssert softAssert = new SoftAssert();
+        GeneratedReader input = new GeneratedReader(10_000, row -> {
+            if (row == 5_000) {
+                throw new UncheckedIOException(new IOException("Disk went away"));
+            }
+            return "{\"patientId\": \"PAT-" + row + "\", \"recordId\": \"REC-" + row + "\"}";
+        });
+        BulkImporter importer = BulkImporter.builder(BulkImporter.Format.NDJSON).withBatchSize(64).build();
+        IOException failure = expectThrows(IOException.class, () -> importer.importFrom(input));
+        softAssert.assertEquals(failure.getMessage(), "Disk went away", "The input failure should surface");
+        
+        Thread.sleep(100);
+        boolean leaked = Thread.getAllStackTraces().keySet().stream()
+                .anyMatch(thread -> thread.getName().startsWith("bulk-import-") && thread.isAlive());
+        softAssert.assertFalse(leaked, "Pipeline threads should stop after a failure");
+        softAssert.assertTrue(MedicalRecord.MedicalRecordManager.getTotalRecordCount() < 5_000, "Rows after the failure should not be imported");
+        softAssert.assertAll();
+    }
+    
+    @Test(groups = "pipeline", priority = 6)
+    public void testImportThroughput() throws IOException {
+        SoftAssert softAssert = new SoftAssert();
+        int rows = 200_000;
+        String[] diagnoses = {"Hypertension", "Migraine", "Asthma", "Diabetes", "Eczema"};
+        LongFunction<String> row = i -> "REC-" + i + ",PAT-" + (i % 20_000) + ",First" + (i % 20_000) + ",Last,1970-01-01,DOC-" + (i % 50)
+                + ",LIC-" + (i % 50) + "," + LocalDateTime.of(2023, 1, 1, 0, 0).plusMinutes(i * 7) + ",CONSULTATION,ACTIVE,"
+                + diagnoses[(int) (i % diagnoses.length)] + ",\"Cough, fever\"";
+        GeneratedReader input = new GeneratedReader(rows + 1, i -> i == 0
+                ? "recordId,patientId,firstName,lastName,dateOfBirth,doctorId,licenseNumber,recordDate,type,status,diagnosis,symptoms"
+                : row.apply(i - 1));
+        BulkImporter.ImportReport report = BulkImporter.builder(BulkImporter.Format.CSV).build().importFrom(input);
+        long millis = Math.max(1, report.getElapsed().toMillis());
+        System.out.println("BulkImporterTest - imported " + report.getImportedRecordCount() + " records and "
+                + report.getImportedPatientCount() + " patients in " + millis + " ms (" + (rows * 1000L / millis) + " rows/s, "
+                + Runtime.getRuntime().availableProcessors() + " cores)");
+        
+        softAssert.assertEquals(report.getRejectedRowCount(), 0, "Generated rows should be valid");
+        softAssert.assertEquals(report.getImportedRecordCount(), rows, "Every row should become a record");
+        softAssert.assertEquals(report.getImportedPatientCount(), 20_000, "Patients should be deduplicated");
+        softAssert.assertEquals(MedicalRecord.MedicalRecordManager.getRecordsByType(MedicalRecord.RecordType.CONSULTATION).size(), rows, "Imported records should be indexed");
+        
+        GeneratedReader again = new GeneratedReader(rows + 1, i -> i == 0
+                ? "recordId,patientId,firstName,lastName,dateOfBirth,doctorId,licenseNumber,recordDate,type,status,diagnosis,symptoms"
+                : row.apply(i - 1));
+        List<BulkImporter.RowError> repeated = new ArrayList<>();
+        BulkImporter.ImportReport second = BulkImporter.builder(BulkImporter.Format.CSV).onError(repeated::add).build().importFrom(again);
+        softAssert.assertEquals(second.getImportedRecordCount(), 0, "Records already in the manager should not be imported again");
+        softAssert.assertEquals(second.getRejectedRowCount(), rows, "Every repeated row should be rejected");
+        softAssert.assertTrue(repeated.stream().allMatch(error -> error.getMessage().contains("already exists")), "Repeated rows should name the existing record");
+        softAssert.assertEquals(MedicalRecord.MedicalRecordManager.getTotalRecordCount(), rows, "A repeated import should not add records");
+        softAssert.assertAll();
+    }
+    
+    private static class GeneratedReader extends Reader {
+
+        private final long lines;
+        private final LongFunction<String> generator;
+        private final StringBuilder pending = new StringBuilder();
+        private int offset;
+        private volatile long generated;
+        
+        GeneratedReader(long lines, LongFunction<String> generator) {
+            this.lines = lines;
+            this.generator = generator;
+        }
+        
+        long getGeneratedLines() {
+            return generated;
+        }
+        
+        @Override
+        public int read(char[] buffer, int off, int len) throws IOException {
+            if (offset == pending.length()) {
+                if (generated == lines) {
+                    return -1;
+                }
+                pending.setLength(0);
+                offset = 0;
+                try {
+                    pending.append(generator.apply(generated)).append('\n');
+                } catch (UncheckedIOException e) {
+                    throw e.getCause();
+                }
+                generated++;
+            }
+            int count = Math.min(len, pending.length() - offset);
+            pending.getChars(offset, offset + count, buffer, off);
+            offset += count;
+            return count;
+        }
+        
+        @Override
+        public void close() {
+        }
+    }
+}
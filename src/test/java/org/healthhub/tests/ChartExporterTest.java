@@ -0,0 +1,319 @@
+package org.healthhub.tests;
+
+import org.healthhub.io.ChartExporter;
+import org.healthhub.io.PatientChart;
+import org.healthhub.model.Appointment;
+import org.healthhub.model.Doctor;
+import org.healthhub.model.MedicalRecord;
+import org.healthhub.model.Patient;
+import org.healthhub.model.Prescription;
+import org.testng.annotations.*;
+import org.testng.asserts.SoftAssert;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import static org.testng.Assert.*;
+
+public class ChartExporterTest {
+
+    private static int suiteCounter = 0;
+    private static int testCounter = 0;
+    private static int classCounter = 0;
+    private static int methodCounter = 0;
+    
+    private Patient patient;
+    private Doctor doctor;
+    
+    @BeforeSuite
+    public void beforeSuite() {
+        suiteCounter++;
+        System.out.println("ChartExporterTest - BeforeSuite executed. Suite counter: " + suiteCounter);
+    }
+    
+    @AfterSuite
+    public void afterSuite() {
+        System.out.println("ChartExporterTest - AfterSuite executed. Suite counter: " + suiteCounter);
+    }
+    
+    @BeforeTest
+    public void beforeTest() {
+        testCounter++;
+        System.out.println("ChartExporterTest - BeforeTest executed. Test counter: " + testCounter);
+    }
+    
+    @AfterTest
+    public void afterTest() {
+        System.out.println("ChartExporterTest - AfterTest executed. Test counter: " + testCounter);
+    }
+    
+    @BeforeClass
+    public void beforeClass() {
+        classCounter++;
+        System.out.println("ChartExporterTest - BeforeClass executed. Class counter: " + classCounter);
+    }
+    
+    @AfterClass
+    public void afterClass() {
+        MedicalRecord.MedicalRecordManager.clearAllRecords();
+        Appointment.AppointmentScheduler.clearAllAppointments();
+        System.out.println("ChartExporterTest - AfterClass executed. Class counter: " + classCounter);
+    }
+    
+    @BeforeGroups(groups = {"ndjson", "bundle"})
+    public void beforeGroups() {
+        System.out.println("ChartExporterTest - BeforeGroups executed for ndjson and bundle groups");
+    }
+    
+    @AfterGroups(groups = {"ndjson", "bundle"})
+    public void afterGroups() {
+        System.out.println("ChartExporterTest - AfterGroups executed for ndjson and bundle groups");
+    }
+    
+    @BeforeMethod
+    public void beforeMethod() {
+        methodCounter++;
+        patient = new Patient("PAT-001", "Nino", "Beridze", LocalDate.of(1988, 4, 12));
+        patient.setEmail("nino@example.com");
+        doctor = new Doctor("DOC-001", "AB123456");
+        doctor.setSpecialization("Cardiology");
+        System.out.println("ChartExporterTest - BeforeMethod executed. Method counter: " + methodCounter);
+    }
+    
+    @AfterMethod
+    public void afterMethod() {
+        patient = null;
+        doctor = null;
+        System.out.println("ChartExporterTest - AfterMethod executed");
+    }
+    
+    @Test(groups = "ndjson", priority = 1)
+    public void testNdjsonLineMatchesExpectedJson() throws IOException {
+        MedicalRecord record = new MedicalRecord();
+        record.setRecordId("REC-1");
+        record.setPatient(patient);
+        record.setDoctor(doctor);
+        record.setRecordDate(LocalDateTime.of(2024, 3, 1, 9, 30));
+        record.setType(MedicalRecord.RecordType.LAB_RESULT);
+        record.setDiagnosis("Said \"ok\"\\ \u0001 ტკივილი 💔");
+        record.addTestResult("ECG normal");
+        Appointment appointment = new Appointment();
+        appointment.setAppointmentId("APT-1");
+        appointment.setDoctor(doctor);
+        appointment.setAppointmentDateTime(LocalDateTime.of(2024, 3, 2, 10, 0, 0, 250_000_000));
+        appointment.setDuration(Duration.ofMinutes(45));
+        appointment.setStatus(Appointment.AppointmentStatus.IN_PROGRESS);
+        Prescription prescription = prescription();
+        
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (ChartExporter exporter = new ChartExporter(Channels.newChannel(out), ChartExporter.Format.NDJSON)) {
+            exporter.write(new PatientChart(patient, List.of(record), List.of(appointment), List.of(prescription)));
+            exporter.write(new PatientChart(new Patient("PAT-002", null, null, null), List.of(), List.of(), List.of()));
+        }
+        String[] lines = out.toString(StandardCharsets.UTF_8).split("\n");
+        assertEquals(lines.length, 2, "Each chart should take one line");
+        assertEquals(lines[0], "{\"patientId\":\"PAT-001\",\"firstName\":\"Nino\",\"lastName\":\"Beridze\",\"dateOfBirth\":\"1988-04-12\","
+                + "\"email\":\"nino@example.com\",\"records\":[{\"recordId\":\"REC-1\",\"recordDate\":\"2024-03-01T09:30:00\","
+                + "\"type\":\"LAB_RESULT\",\"doctorId\":\"DOC-001\",\"diagnosis\":\"Said \\\"ok\\\"\\\\ \\u0001 ტკივილი 💔\","
+                + "\"testResults\":[\"ECG normal\"]}],\"appointments\":[{\"appointmentId\":\"APT-1\",\"doctorId\":\"DOC-001\","
+                + "\"start\":\"2024-03-02T10:00:00.250\",\"durationMinutes\":45,\"status\":\"IN_PROGRESS\"}],"
+                + "\"prescriptions\":[{\"prescriptionId\":\"RX-1\",\"doctorId\":\"DOC-001\",\"issueDate\":\"2024-03-01\","
+                + "\"expiryDate\":\"2024-06-01\",\"status\":\"ACTIVE\",\"instructions\":\"After meals\",\"medications\":["
+                + "{\"name\":\"Aspirin\",\"dosage\":\"100mg\",\"frequency\":\"Once daily\",\"quantity\":30},"
+                + "{\"name\":\"Atorvastatin\",\"dosage\":\"20mg\",\"frequency\":\"Once daily\",\"quantity\":-1}]}]}");
+        assertEquals(lines[1], "{\"patientId\":\"PAT-002\",\"records\":[],\"appointments\":[],\"prescriptions\":[]}");
+    }
+    
+    @Test(groups = "ndjson", priority = 2)
+    public void testSmallBufferProducesIdenticalOutput() throws IOException {
+        SoftAssert softAssert = new SoftAssert();
+        MedicalRecord record = new MedicalRecord();
+        record.setRecordId("REC-LONG");
+        record.setSymptoms("Ωμέγα 💔 ".repeat(5_000));
+        record.setTreatment("\"quoted\"\n".repeat(1_000));
+        PatientChart chart = new PatientChart(patient, List.of(record), List.of(), List.of(prescription()));
+        
+        byte[] large = export(chart, ChartExporter.Format.NDJSON, ChartExporter.DEFAULT_BUFFER_SIZE);
+        byte[] small = export(chart, ChartExporter.Format.NDJSON, 64);
+        softAssert.assertEquals(small, large, "Output should not depend on where the buffer is drained");
+        softAssert.assertEquals(export(chart, ChartExporter.Format.BUNDLE, 64), export(chart, ChartExporter.Format.BUNDLE, 4096),
+                "Bundles should not depend on where the buffer is drained");
+        softAssert.assertTrue(new String(large, StandardCharsets.UTF_8).contains("Ωμέγα 💔 Ωμέγα"), "Text should be valid UTF-8");
+        softAssert.assertAll();
+    }
+    
+    @Test(groups = "bundle", priority = 3)
+    public void testBundleContainsOneResourcePerEntry() throws IOException {
+        SoftAssert softAssert = new SoftAssert();
+        Appointment.AppointmentScheduler.clearAllAppointments();
+        MedicalRecord.MedicalRecordManager.clearAllRecords();
+        MedicalRecord record = new MedicalRecord();
+        record.setRecordId("REC-B");
+        record.setPatient(patient);
+        record.setDoctor(doctor);
+        record.setType(MedicalRecord.RecordType.CONSULTATION);
+        record.setStatus(MedicalRecord.RecordStatus.ACTIVE);
+        record.setSymptoms("Cough");
+        patient.addMedicalRecord(record);
+        MedicalRecord.MedicalRecordManager.addRecord(record);
+        Appointment appointment = Appointment.AppointmentScheduler.scheduleAppointment(patient, doctor, LocalDateTime.of(2030, 1, 7, 9, 0));
+        PatientChart chart = PatientChart.of(patient, List.of(prescription()));
+        softAssert.assertEquals(chart.getRecords().size(), 1, "Records on the patient and in the manager should not be repeated");
+        softAssert.assertEquals(chart.getAppointments(), List.of(appointment), "Scheduled appointments should be included");
+        
+        String bundle = new String(export(chart, ChartExporter.Format.BUNDLE, 4096), StandardCharsets.UTF_8);
+        softAssert.assertTrue(bundle.startsWith("{\"resourceType\":\"Bundle\",\"type\":\"collection\",\"entry\":[{\"resource\":{\"resourceType\":\"Patient\",\"id\":\"PAT-001\","
+                + "\"name\":[{\"family\":\"Beridze\",\"given\":[\"Nino\"]}],\"birthDate\":\"1988-04-12\",\"telecom\":[{\"system\":\"email\",\"value\":\"nino@example.com\"}]}}"),
+                "The bundle should start with the patient: " + bundle);
+        softAssert.assertTrue(bundle.endsWith("]}\n"), "The bundle should be closed");
+        softAssert.assertEquals(count(bundle, "{\"resource\":"), 5, "Patient, encounter, appointment and two medication requests");
+        softAssert.assertTrue(bundle.contains("{\"resourceType\":\"Encounter\",\"id\":\"REC-B\",\"status\":\"active\",\"type\":[{\"text\":\"Consultation\"}],"
+                + "\"subject\":{\"reference\":\"Patient/PAT-001\"},\"participant\":[{\"individual\":{\"reference\":\"Practitioner/DOC-001\"}}],"
+                + "\"extension\":[{\"url\":\"urn:healthhub:symptoms\",\"valueString\":\"Cough\"}]}"), "Records should become encounters: " + bundle);
+        softAssert.assertTrue(bundle.contains("\"resourceType\":\"Appointment\",\"id\":\"" + appointment.getAppointmentId() + "\",\"status\":\"scheduled\","
+                + "\"start\":\"2030-01-07T09:00:00\",\"end\":\"2030-01-07T09:30:00\",\"minutesDuration\":30"), "Appointments should be exported: " + bundle);
+        softAssert.assertTrue(bundle.contains("\"resourceType\":\"MedicationRequest\",\"id\":\"RX-1-2\",\"groupIdentifier\":{\"value\":\"RX-1\"}"),
+                "Each medication should get its own request: " + bundle);
+        softAssert.assertTrue(bundle.contains("\"dosageInstruction\":[{\"text\":\"100mg, Once daily\",\"patientInstruction\":\"After meals\"}]"),
+                "Dosage should be combined into one instruction: " + bundle);
+        
+        ByteArrayOutputStream empty = new ByteArrayOutputStream();
+        new ChartExporter(Channels.newChannel(empty), ChartExporter.Format.BUNDLE).close();
+        softAssert.assertEquals(empty.toString(StandardCharsets.UTF_8), "{\"resourceType\":\"Bundle\",\"type\":\"collection\",\"entry\":[]}\n",
+                "An empty export should still be a valid bundle");
+        Appointment.AppointmentScheduler.clearAllAppointments();
+        MedicalRecord.MedicalRecordManager.clearAllRecords();
+        softAssert.assertAll();
+    }
+    
+    @Test(groups = "ndjson", priority = 4)
+    public void testExportThroughputAndAllocation() throws IOException {
+        SoftAssert softAssert = new SoftAssert();
+        List<MedicalRecord> records = new ArrayList<>();
+        for (int i = 0; i < 20; i++) {
+            MedicalRecord record = new MedicalRecord();
+            record.setRecordId("REC-" + i);
+            record.setDoctor(doctor);
+            record.setRecordDate(LocalDateTime.of(2024, 1, 1, 8, 0).plusDays(i));
+            record.setType(MedicalRecord.RecordType.CONSULTATION);
+            record.setStatus(MedicalRecord.RecordStatus.ACTIVE);
+            record.setDiagnosis("Hypertension, follow-up visit " + i);
+            record.setSymptoms("Headache, dizziness and occasional chest discomfort after exercise ".repeat(4));
+            record.setTreatment("Lisinopril 10mg once daily, reduce salt intake");
+            records.add(record);
+        }
+        PatientChart chart = new PatientChart(patient, records, List.of(), List.of(prescription()));
+        int charts = 20_000;
+        Path file = Files.createTempFile("charts", ".ndjson");
+        try {
+            try (ChartExporter exporter = ChartExporter.open(file, ChartExporter.Format.NDJSON)) {
+                for (int i = 0; i < 2_000; i++) {
+                    exporter.write(chart);
+                }
+            }
+            long start = System.nanoTime();
+            long bytes;
+            try (ChartExporter exporter = ChartExporter.open(file, ChartExporter.Format.NDJSON)) {
+                for (int i = 0; i < charts; i++) {
+                    exporter.write(chart);
+                }
+                exporter.flush();
+                bytes = exporter.getBytesWritten();
+            }
+            long nanos = System.nanoTime() - start;
+            System.out.println("ChartExporterTest - exported " + charts + " charts (" + bytes / (1024 * 1024) + " MB) in "
+                    + nanos / 1_000_000 + " ms (" + (bytes * 1000L / Math.max(1, nanos)) + " MB/s)");
+            softAssert.assertEquals(Files.size(file), bytes, "Every byte should reach the file");
+            softAssert.assertEquals(Files.readAllLines(file).size(), charts, "Every chart should be one line");
+        } finally {
+            Files.deleteIfExists(file);
+        }
+        
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        CountingChannel sink = new CountingChannel();
+        ChartExporter exporter = new ChartExporter(sink, ChartExporter.Format.NDJSON);
+        for (int i = 0; i < 1_000; i++) {
+            exporter.write(chart);
+        }
+        long before = threads.getCurrentThreadAllocatedBytes();
+        for (int i = 0; i < 10_000; i++) {
+            exporter.write(chart);
+        }
+        long allocated = threads.getCurrentThreadAllocatedBytes() - before;
+        exporter.close();
+        System.out.println("ChartExporterTest - allocated " + allocated + " bytes while writing " + sink.bytes / (1024 * 1024) + " MB");
+        softAssert.assertTrue(allocated < sink.bytes / 100, "Exporting should allocate far less than it writes: " + allocated + " bytes");
+        softAssert.assertAll();
+    }
+    
+    private Prescription prescription() {
+        Prescription prescription = new Prescription();
+        prescription.setPrescriptionId("RX-1");
+        prescription.setPatient(patient);
+        prescription.setDoctor(doctor);
+        prescription.setIssueDate(LocalDate.of(2024, 3, 1));
+        prescription.setExpiryDate(LocalDate.of(2024, 6, 1));
+        prescription.setStatus(Prescription.PrescriptionStatus.ACTIVE);
+        prescription.setInstructions("After meals");
+        String[][] medications = {{"Aspirin", "100mg", "30"}, {"Atorvastatin", "20mg", "-1"}};
+        for (String[] values : medications) {
+            Prescription.Medication medication = new Prescription.Medication();
+            medication.setName(values[0]);
+            medication.setDosage(values[1]);
+            medication.setFrequency("Once daily");
+            medication.setQuantity(Integer.parseInt(values[2]));
+            prescription.addMedication(medication);
+        }
+        return prescription;
+    }
+    
+    private static byte[] export(PatientChart chart, ChartExporter.Format format, int bufferSize) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (ChartExporter exporter = new ChartExporter(Channels.newChannel(out), format, bufferSize)) {
+            exporter.write(chart);
+        }
+        return out.toByteArray();
+    }
+    
+    private static int count(String text, String fragment) {
+        int count = 0;
+        for (int at = text.indexOf(fragment); at >= 0; at = text.indexOf(fragment, at + 1)) {
+            count++;
+        }
+        return count;
+    }
+    
+    private static class CountingChannel implements WritableByteChannel {
+
+        private long bytes;
+        private boolean open = true;
+        
+        @Override
+        public int write(ByteBuffer source) {
+            int written = source.remaining();
+            source.position(source.limit());
+            bytes += written;
+            return written;
+        }
+        
+        @Override
+        public boolean isOpen() {
+            return open;
+        }
+        
+        @Override
+        public void close() {
+            open = false;
+        }
+    }
+}
@@ -0,0 +1,332 @@
+package org.healthhub.tests;
+
+import org.healthhub.model.DuplicatePatientDetector;
+import org.healthhub.model.DuplicatePatientDetector.DuplicateMatch;
+import org.healthhub.model.Patient;
+import org.testng.annotations.*;
+import org.testng.asserts.SoftAssert;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+public class DuplicatePatientDetectorTest {
+
+    private static int suiteCounter = 0;
+    private static int testCounter = 0;
+    private static int classCounter = 0;
+    private static int methodCounter = 0;
+    
+    private DuplicatePatientDetector detector;
+    
+    @BeforeSuite
+    public void beforeSuite() {
+        suiteCounter++;
+        System.out.println("DuplicatePatientDetectorTest - BeforeSuite executed. Suite counter: " + suiteCounter);
+    }
+    
+    @AfterSuite
+    public void afterSuite() {
+        System.out.println("DuplicatePatientDetectorTest - AfterSuite executed. Suite counter: " + suiteCounter);
+    }
+    
+    @BeforeTest
+    public void beforeTest() {
+        testCounter++;
+        System.out.println("DuplicatePatientDetectorTest - BeforeTest executed. Test counter: " + testCounter);
+    }
+    
+    @AfterTest
+    public void afterTest() {
+        System.out.println("DuplicatePatientDetectorTest - AfterTest executed. Test counter: " + testCounter);
+    }
+    
+    @BeforeClass
+    public void beforeClass() {
+        classCounter++;
+        System.out.println("DuplicatePatientDetectorTest - BeforeClass executed. Class counter: " + classCounter);
+    }
+    
+    @AfterClass
+    public void afterClass() {
+        System.out.println("DuplicatePatientDetectorTest - AfterClass executed. Class counter: " + classCounter);
+    }
+    
+    @BeforeGroups(groups = {"similarity", "detection"})
+    public void beforeGroups() {
+        System.out.println("DuplicatePatientDetectorTest - BeforeGroups executed for similarity and detection groups");
+    }
+    
+    @AfterGroups(groups = {"similarity", "detection"})
+    public void afterGroups() {
+        System.out.println("DuplicatePatientDetectorTest - AfterGroups executed for similarity and detection groups");
+    }
+    
+    @BeforeMethod
+    public void beforeMethod() {
+        methodCounter++;
+        detector = new DuplicatePatientDetector();
+        System.out.println("DuplicatePatientDetectorTest - BeforeMethod executed. Method counter: " + methodCounter);
+    }
+    
+    @AfterMethod
+    public void afterMethod() {
+        detector = null;
+        Patient.PatientBuilder.setDuplicateDetector(null);
+        System.out.println("DuplicatePatientDetectorTest - AfterMethod executed");
+    }
+    
+
+    @Test(groups = "similarity", priority = 1)
+    public void testSoundexCodes() {
+        SoftAssert softAssert = new SoftAssert();
+        softAssert.assertEquals(DuplicatePatientDetector.soundex("Robert"), "R163", "Robert should encode as R163");
+        softAssert.assertEquals(DuplicatePatientDetector.soundex("Rupert"), "R163", "Rupert should share Robert's code");
+        softAssert.assertEquals(DuplicatePatientDetector.soundex("Tymczak"), "T522", "Vowels should separate repeated codes");
+        softAssert.assertEquals(DuplicatePatientDetector.soundex("Pfister"), "P236", "A second letter coded like the first is dropped");
+        softAssert.assertEquals(DuplicatePatientDetector.soundex("Ashcraft"), "A261", "Letters separated by H should share a code");
+        softAssert.assertEquals(DuplicatePatientDetector.soundex("Lee"), "L000", "Short codes should be zero-padded");
+        softAssert.assertEquals(DuplicatePatientDetector.soundex("Øyen"), "Y500", "Non-Latin letters should be skipped");
+        softAssert.assertEquals(DuplicatePatientDetector.soundex("李"), "李", "Names without Latin letters should block on the name");
+        softAssert.assertAll();
+    }
+    
+    @Test(groups = "similarity", priority = 2)
+    public void testJaroWinklerSimilarity() {
+        SoftAssert softAssert = new SoftAssert();
+        softAssert.assertEquals(DuplicatePatientDetector.jaroWinkler("MARTHA", "MARHTA"), 0.961, 0.001, "MARTHA/MARHTA");
+        softAssert.assertEquals(DuplicatePatientDetector.jaroWinkler("DIXON", "DICKSONX"), 0.813, 0.001, "DIXON/DICKSONX");
+        softAssert.assertEquals(DuplicatePatientDetector.jaroWinkler("DWAYNE", "DUANE"), 0.840, 0.001, "DWAYNE/DUANE");
+        softAssert.assertEquals(DuplicatePatientDetector.jaroWinkler("same", "same"), 1.0, "Equal strings should score 1");
+        softAssert.assertEquals(DuplicatePatientDetector.jaroWinkler("abc", "xyz"), 0.0, "Disjoint strings should score 0");
+        softAssert.assertEquals(DuplicatePatientDetector.jaroWinkler("", "abc"), 0.0, "Empty strings should score 0");
+        softAssert.assertAll();
+    }
+    
+    @Test(groups = "similarity", priority = 3)
+    public void testPatientScore() {
+        SoftAssert softAssert = new SoftAssert();
+        Patient original = patient("PAT-1", "Jonathan", "Smith", LocalDate.of(1980, 3, 4), "jsmith@example.com", "555-123-4567");
+        Patient typo = patient("PAT-2", "Jonathon", "Smith", LocalDate.of(1980, 3, 4), "JSmith@Example.com", "+1 (555) 123 4567");
+        Patient swapped = patient("PAT-3", "Smith", "Jonathan", LocalDate.of(1980, 3, 4), null, null);
+        Patient transposed = patient("PAT-4", "Jonathan", "Smith", LocalDate.of(1980, 4, 3), null, "5551234567");
+        Patient relative = patient("PAT-5", "Margaret", "Smith", LocalDate.of(1952, 7, 2), "msmith@example.com", "555-123-4567");
+        softAssert.assertTrue(detector.score(original, typo) > 0.95, "A typo and formatting differences should still match");
+        softAssert.assertEquals(detector.score(original, swapped), 1.0, 1e-9, "Swapped names should match when nothing else differs");
+        softAssert.assertEquals(detector.score(original, transposed), 0.8 * 0.25 / 0.9 + 0.65 / 0.9, 1e-9,
+                "Day and month transposed should earn partial credit");
+        softAssert.assertTrue(detector.score(original, relative) < DuplicatePatientDetector.DEFAULT_THRESHOLD,
+                "A relative sharing a phone number should not match");
+        softAssert.assertEquals(detector.score(new Patient("PAT-6", null, null, null), new Patient("PAT-7", null, null, null)), 0.0,
+                "Patients without comparable fields should score 0");
+        softAssert.assertEquals(detector.getComparisonCount(), 5L, "Every score should be counted");
+        softAssert.assertAll();
+    }
+    
+    @Test(groups = "detection", priority = 4)
+    public void testBuilderFlagsDuplicatesIncrementally() {
+        SoftAssert softAssert = new SoftAssert();
+        List<DuplicateMatch> flagged = new ArrayList<>();
+        detector.onDuplicate(flagged::add);
+        Patient.PatientBuilder.setDuplicateDetector(detector);
+        
+        Patient first = build("PAT-1", "Alice", "Johnson", LocalDate.of(1975, 5, 20), "alice@example.com", "555-000-1111");
+        build("PAT-2", "Robert", "Brown", LocalDate.of(1990, 1, 1), "rob@example.com", "555-000-2222");
+        softAssert.assertTrue(flagged.isEmpty(), "Distinct patients should not be flagged");
+        
+        Patient second = build("PAT-3", "Alicia", "Jonson", LocalDate.of(1975, 5, 20), null, "(555) 000-1111");
+        softAssert.assertEquals(flagged.size(), 1, "The near duplicate should be flagged when built");
+        if (!flagged.isEmpty()) {
+            softAssert.assertSame(flagged.get(0).getFirst(), first, "The earlier patient should come first");
+            softAssert.assertSame(flagged.get(0).getSecond(), second, "The new patient should come second");
+            softAssert.assertTrue(flagged.get(0).toString().startsWith("PAT-1 ~ PAT-3 ("), "Match should print both ids");
+        }
+        
+        Patient.PatientBuilder.setDuplicateDetector(null);
+        build("PAT-4", "Alice", "Johnson", LocalDate.of(1975, 5, 20), "alice@example.com", "555-000-1111");
+        softAssert.assertEquals(flagged.size(), 1, "No detection should happen once the detector is removed");
+        softAssert.assertEquals(detector.size(), 3, "Only patients built with the detector set should be added");
+        softAssert.assertAll();
+    }
+    
+    @Test(groups = "detection", priority = 5)
+    public void testConcurrentAddsSeeEachOther() throws InterruptedException {
+        SoftAssert softAssert = new SoftAssert();
+        int threadCount = 4;
+        int pairs = 2_000;
+        List<DuplicateMatch> flagged = new CopyOnWriteArrayList<>();
+        detector.onDuplicate(flagged::add);
+        Patient.PatientBuilder.setDuplicateDetector(detector);
+        
+        ExecutorService executor = Executors.newFixedThreadPool(threadCount);
+        for (int t = 0; t < threadCount; t++) {
+            int offset = t;
+            executor.submit(() -> {
+                for (int i = offset; i < pairs * 2; i += threadCount) {
+                    int person = i / 2;
+                    build("PAT-" + i, "First" + person, "Last" + person, LocalDate.of(1950, 1, 1).plusDays(person),
+                            "person" + person + "@example.com", String.format("555-%07d", person));
+                }
+            });
+        }
+        executor.shutdown();
+        softAssert.assertTrue(executor.awaitTermination(30, TimeUnit.SECONDS), "Builders should finish");
+        
+        Set<String> flaggedPeople = new HashSet<>();
+        boolean samePerson = true;
+        for (DuplicateMatch match : flagged) {
+            samePerson &= match.getFirst().getLastName().equals(match.getSecond().getLastName());
+            flaggedPeople.add(match.getFirst().getLastName());
+        }
+        softAssert.assertEquals(flagged.size(), pairs, "Each pair should be flagged exactly once");
+        softAssert.assertEquals(flaggedPeople.size(), pairs, "Every pair should be flagged");
+        softAssert.assertTrue(samePerson, "Only records of the same person should be flagged");
+        softAssert.assertEquals(detector.size(), pairs * 2, "All patients should be added");
+        softAssert.assertAll();
+    }
+    
+    @Test(groups = "detection", priority = 6)
+    public void testOversizedBlocksAreNotScored() {
+        SoftAssert softAssert = new SoftAssert();
+        DuplicatePatientDetector small = new DuplicatePatientDetector(0.8, 10, ForkJoinPool.commonPool());
+        List<Patient> patients = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            patients.add(patient("PAT-" + i, "Name" + i, "Other" + i, null, null, "000-000-0000"));
+        }
+        small.findDuplicates(patients);
+        softAssert.assertEquals(small.getComparisonCount(), 45L, "Only the first block members should be compared");
+        for (Patient patient : patients) {
+            small.add(patient);
+        }
+        softAssert.assertEquals(small.getComparisonCount(), 90L, "Incremental adds should stop at the block limit");
+        softAssert.assertAll();
+    }
+    
+    @Test(groups = "detection", priority = 7)
+    public void testPairsCutFromOversizedBlocksAreScoredElsewhere() {
+        SoftAssert softAssert = new SoftAssert();
+        DuplicatePatientDetector small = new DuplicatePatientDetector(0.8, 3, ForkJoinPool.commonPool());
+        LocalDate born = LocalDate.of(1980, 5, 17);
+        List<Patient> patients = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            patients.add(patient("PAT-" + i, "Name" + i, "Beridze", born, null, null));
+        }
+        Patient original = patient("PAT-10", "Nino", "Beridze", born, "nino@example.com", null);
+        Patient duplicate = patient("PAT-11", "Nino", "Beridze", born, "NINO@example.com", null);
+        patients.add(original);
+        patients.add(duplicate);
+        List<DuplicateMatch> matches = small.findDuplicates(patients);
+        softAssert.assertTrue(matches.stream().anyMatch(match -> match.getFirst() == original && match.getSecond() == duplicate),
+                "A pair cut from its first shared block should be scored in the next one: " + matches);
+        softAssert.assertEquals(small.getComparisonCount(), 4L, "Each pair should still be scored only once");
+        softAssert.assertAll();
+    }
+    
+    @Test(groups = "detection", priority = 8)
+    public void testBatchDetectionAtScale() {
+        SoftAssert softAssert = new SoftAssert();
+        int population = 50_000;
+        int duplicates = 2_500;
+        Random random = new Random(42);
+        List<Patient> patients = new ArrayList<>(population + duplicates);
+        for (int i = 0; i < population; i++) {
+            patients.add(patient("PAT-" + i, syllables(random, 2), syllables(random, 3),
+                    LocalDate.of(1930, 1, 1).plusDays(random.nextInt(30_000)), "p" + i + "@example.com",
+                    String.format("555-%03d-%04d", i / 10_000, i % 10_000)));
+        }
+        Set<String> expected = new HashSet<>();
+        for (int i = 0; i < duplicates; i++) {
+            int index = random.nextInt(population);
+            Patient original = patients.get(index);
+            Patient duplicate;
+            switch (i % 4) {
+                case 0:
+                    duplicate = patient("DUP-" + i, typo(original.getFirstName(), random), original.getLastName(),
+                            original.getDateOfBirth(), original.getEmail().toUpperCase(), original.getPhoneNumber());
+                    break;
+                case 1:
+                    duplicate = patient("DUP-" + i, original.getFirstName(), typo(original.getLastName(), random),
+                            original.getDateOfBirth(), null, "+1 " + original.getPhoneNumber());
+                    break;
+                case 2:
+                    duplicate = patient("DUP-" + i, original.getLastName(), original.getFirstName(),
+                            original.getDateOfBirth(), "other" + i + "@example.com", original.getPhoneNumber());
+                    break;
+                default:
+                    duplicate = patient("DUP-" + i, original.getFirstName(), original.getLastName(),
+                            original.getDateOfBirth(), original.getEmail(), null);
+                    break;
+            }
+            patients.add(duplicate);
+            expected.add(original.getPatientId() + " " + duplicate.getPatientId());
+        }
+        
+        long startNanos = System.nanoTime();
+        List<DuplicateMatch> matches = detector.findDuplicates(patients);
+        long elapsedMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos);
+        
+        int truePositives = 0;
+        for (DuplicateMatch match : matches) {
+            String pair = match.getFirst().getPatientId() + " " + match.getSecond().getPatientId();
+            String reversed = match.getSecond().getPatientId() + " " + match.getFirst().getPatientId();
+            if (expected.contains(pair) || expected.contains(reversed)) {
+                truePositives++;
+            }
+        }
+        double recall = (double) truePositives / expected.size();
+        double precision = matches.isEmpty() ? 0 : (double) truePositives / matches.size();
+        long comparisons = detector.getComparisonCount();
+        long allPairs = (long) patients.size() * (patients.size() - 1) / 2;
+        System.out.println("Duplicate detection over " + patients.size() + " patients: " + elapsedMillis + " ms, "
+                + comparisons + " comparisons instead of " + allPairs + ", recall " + recall + ", precision " + precision);
+        softAssert.assertTrue(recall >= 0.9, "Recall should be at least 90% but was " + recall);
+        softAssert.assertTrue(precision >= 0.9, "Precision should be at least 90% but was " + precision);
+        softAssert.assertTrue(comparisons < allPairs / 1000, "Blocking should avoid nearly all comparisons");
+        softAssert.assertAll();
+    }
+    
+    private static Patient patient(String id, String firstName, String lastName, LocalDate dateOfBirth, String email,
+                                   String phoneNumber) {
+        Patient patient = new Patient(id, firstName, lastName, dateOfBirth);
+        patient.setEmail(email);
+        patient.setPhoneNumber(phoneNumber);
+        return patient;
+    }
+    
+    private static Patient build(String id, String firstName, String lastName, LocalDate dateOfBirth, String email,
+                                 String phoneNumber) {
+        return new Patient.PatientBuilder()
+                .setPatientId(id)
+                .setFirstName(firstName)
+                .setLastName(lastName)
+                .setDateOfBirth(dateOfBirth)
+                .withEmail(email)
+                .withPhoneNumber(phoneNumber)
+                .build();
+    }
+    
+    private static String syllables(Random random, int count) {
+        String[] parts = {"ka", "lo", "mi", "ra", "ten", "dor", "vi", "sa", "bel", "qu", "zan", "fi", "gro", "pe", "wu", "ny"};
+        StringBuilder name = new StringBuilder();
+        for (int i = 0; i < count; i++) {
+            name.append(parts[random.nextInt(parts.length)]);
+        }
+        return Character.toUpperCase(name.charAt(0)) + name.substring(1);
+    }
+    
+    private static String typo(String name, Random random) {
+        int position = 1 + random.nextInt(name.length() - 2);
+        char[] chars = name.toCharArray();
+        char swap = chars[position];
+        chars[position] = chars[position + 1];
+        chars[position + 1] = swap;
+        return new String(chars);
+    }
+}
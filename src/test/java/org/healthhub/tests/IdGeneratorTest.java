@@ -0,0 +1,170 @@
+package org.healthhub.tests;
+
+import org.healthhub.model.MedicalRecord;
+import org.healthhub.model.Prescription;
+import org.healthhub.util.IdGenerator;
+import org.healthhub.util.TimeOrderedIdGenerator;
+import org.testng.annotations.*;
+import org.testng.asserts.SoftAssert;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import static org.testng.Assert.*;
+
+public class IdGeneratorTest {
+
+    private static int suiteCounter = 0;
+    private static int testCounter = 0;
+    private static int classCounter = 0;
+    private static int methodCounter = 0;
+    
+    private TimeOrderedIdGenerator generator;
+    
+    @BeforeSuite
+    public void beforeSuite() {
+        suiteCounter++;
+        System.out.println("IdGeneratorTest - BeforeSuite executed. Suite counter: " + suiteCounter);
+    }
+    
+    @AfterSuite
+    public void afterSuite() {
+        System.out.println("IdGeneratorTest - AfterSuite executed. Suite counter: " + suiteCounter);
+    }
+    
+    @BeforeTest
+    public void beforeTest() {
+        testCounter++;
+        System.out.println("IdGeneratorTest - BeforeTest executed. Test counter: " + testCounter);
+    }
+    
+    @AfterTest
+    public void afterTest() {
+        System.out.println("IdGeneratorTest - AfterTest executed. Test counter: " + testCounter);
+    }
+    
+    @BeforeClass
+    public void beforeClass() {
+        classCounter++;
+        System.out.println("IdGeneratorTest - BeforeClass executed. Class counter: " + classCounter);
+    }
+    
+    @AfterClass
+    public void afterClass() {
+        System.out.println("IdGeneratorTest - AfterClass executed. Class counter: " + classCounter);
+    }
+    
+    @BeforeGroups(groups = {"ordering", "concurrency"})
+    public void beforeGroups() {
+        System.out.println("IdGeneratorTest - BeforeGroups executed for ordering and concurrency groups");
+    }
+    
+    @AfterGroups(groups = {"ordering", "concurrency"})
+    public void afterGroups() {
+        System.out.println("IdGeneratorTest - AfterGroups executed for ordering and concurrency groups");
+    }
+    
+    @BeforeMethod
+    public void beforeMethod() {
+        methodCounter++;
+        generator = new TimeOrderedIdGenerator(7);
+        System.out.println("IdGeneratorTest - BeforeMethod executed. Method counter: " + methodCounter);
+    }
+    
+    @AfterMethod
+    public void afterMethod() {
+        generator = null;
+        System.out.println("IdGeneratorTest - AfterMethod executed");
+    }
+    
+    @Test(groups = "ordering", priority = 1)
+    public void testIdsAreStrictlyIncreasing() {
+        SoftAssert softAssert = new SoftAssert();
+        long previous = generator.nextId();
+        boolean increasing = true;
+        for (int i = 0; i < 100_000; i++) {
+            long next = generator.nextId();
+            increasing &= next > previous;
+            previous = next;
+        }
+        softAssert.assertTrue(increasing, "Ids should be strictly increasing");
+        softAssert.assertAll();
+    }
+    
+    @Test(groups = "ordering", priority = 2)
+    public void testIdLayout() {
+        SoftAssert softAssert = new SoftAssert();
+        long before = System.currentTimeMillis();
+        long id = generator.nextId();
+        softAssert.assertEquals(TimeOrderedIdGenerator.nodeOf(id), 7, "Node id should be encoded in the id");
+        softAssert.assertTrue(TimeOrderedIdGenerator.timestampOf(id) >= before, "Timestamp should not precede generation time");
+        softAssert.assertTrue(id > 0, "Ids should be positive");
+        softAssert.assertAll();
+    }
+    
+    @Test(groups = "ordering", priority = 3)
+    public void testFormattedIdsSortLikeNumericIds() {
+        SoftAssert softAssert = new SoftAssert();
+        String first = generator.nextId("APT-");
+        String second = generator.nextId("APT-");
+        softAssert.assertTrue(first.startsWith("APT-"), "Formatted id should keep the prefix");
+        softAssert.assertEquals(first.length(), second.length(), "Formatted ids should have a fixed width");
+        softAssert.assertTrue(first.compareTo(second) < 0, "Formatted ids should sort in generation order");
+        softAssert.assertEquals(IdGenerator.format("X-", 0L), "X-0000000000000", "Zero should be zero-padded");
+        softAssert.assertAll();
+    }
+    
+    @Test(groups = "ordering", priority = 4)
+    public void testInvalidNodeIdRejected() {
+        assertThrows(IllegalArgumentException.class, () -> new TimeOrderedIdGenerator(TimeOrderedIdGenerator.MAX_NODE_ID + 1));
+        assertThrows(IllegalArgumentException.class, () -> new TimeOrderedIdGenerator(-1));
+    }
+    
+    @Test(groups = "concurrency", priority = 5)
+    public void testConcurrentIdsAreUnique() throws InterruptedException {
+        SoftAssert softAssert = new SoftAssert();
+        int threadCount = 8;
+        int idsPerThread = 100_000;
+        Set<Long> ids = ConcurrentHashMap.newKeySet(threadCount * idsPerThread);
+        List<long[]> batches = new ArrayList<>();
+        for (int t = 0; t < threadCount; t++) {
+            batches.add(new long[idsPerThread]);
+        }
+        
+        ExecutorService executor = Executors.newFixedThreadPool(threadCount);
+        long startNanos = System.nanoTime();
+        for (long[] batch : batches) {
+            executor.submit(() -> {
+                for (int i = 0; i < batch.length; i++) {
+                    batch[i] = generator.nextId();
+                }
+            });
+        }
+        executor.shutdown();
+        softAssert.assertTrue(executor.awaitTermination(60, TimeUnit.SECONDS), "Generator threads should finish");
+        long elapsedNanos = System.nanoTime() - startNanos;
+        System.out.println("IdGeneratorTest - " + (threadCount * idsPerThread) + " ids in "
+                + TimeUnit.NANOSECONDS.toMillis(elapsedNanos) + "ms across " + threadCount + " threads");
+        
+        for (long[] batch : batches) {
+            for (long id : batch) {
+                ids.add(id);
+            }
+        }
+        softAssert.assertEquals(ids.size(), threadCount * idsPerThread, "All generated ids should be unique");
+        softAssert.assertAll();
+    }
+    
+    @Test(priority = 6)
+    public void testEntityIdPrefixes() {
+        SoftAssert softAssert = new SoftAssert();
+        String prescriptionId = Prescription.generatePrescriptionId();
+        softAssert.assertTrue(Prescription.PrescriptionValidator.isValidPrescriptionId(prescriptionId), "Generated prescription id should be valid");
+        softAssert.assertTrue(MedicalRecord.MedicalRecordManager.generateRecordId().startsWith("REC-"), "Record id should use the REC- prefix");
+        softAssert.assertNotEquals(Prescription.generatePrescriptionId(), prescriptionId, "Prescription ids should not repeat");
+        softAssert.assertAll();
+    }
+}
@@ -3,10 +3,32 @@ package org.healthhub.tests;
 import org.healthhub.model.Doctor;
 import org.healthhub.model.MedicalRecord;
 import org.healthhub.model.Patient;
+import org.healthhub.model.RecordAnalytics;
+import org.healthhub.model.RecordSearchIndex;
+import org.healthhub.storage.FsyncPolicy;
 import org.testng.annotations.*;
 import org.testng.asserts.SoftAssert;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
 import java.time.LocalDate;
 import java.time.LocalDateTime;
+import java.time.Period;
+import java.time.YearMonth;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 import static org.testng.Assert.*;
 
 public class MedicalRecordTest {
@@ -220,4 +242,708 @@ public class MedicalRecordTest {
         softAssert.assertEquals(medicalRecord.getTreatment(), "Prescribed medication and lifestyle changes", "Treatment should be set correctly");
         softAssert.assertAll();
     }
+    
+    @Test(groups = "manager", priority = 13)
+    public void testIndexesFollowRecordChanges() {
+        SoftAssert softAssert = new SoftAssert();
+        MedicalRecord.MedicalRecordManager.clearAllRecords();
+        Patient patient2 = new Patient("PAT-002", "Jane", "Smith", LocalDate.of(1985, 3, 20));
+        medicalRecord.setType(MedicalRecord.RecordType.CONSULTATION);
+        MedicalRecord.MedicalRecordManager.addRecord(medicalRecord);
+        
+        medicalRecord.setType(MedicalRecord.RecordType.FOLLOW_UP);
+        softAssert.assertTrue(MedicalRecord.MedicalRecordManager.getRecordsByType(MedicalRecord.RecordType.CONSULTATION).isEmpty(), "Old type index should no longer hold the record");
+        softAssert.assertEquals(MedicalRecord.MedicalRecordManager.getRecordsByType(MedicalRecord.RecordType.FOLLOW_UP).size(), 1, "New type index should hold the record");
+        
+        medicalRecord.setPatient(patient2);
+        softAssert.assertTrue(MedicalRecord.MedicalRecordManager.getRecordsForPatient(patient).isEmpty(), "Old patient should have no records");
+        softAssert.assertEquals(MedicalRecord.MedicalRecordManager.getRecordsForPatient(patient2).size(), 1, "New patient should have the record");
+        
+        medicalRecord.archive();
+        softAssert.assertTrue(MedicalRecord.MedicalRecordManager.getRecordsByStatus(MedicalRecord.RecordStatus.ACTIVE).isEmpty(), "No active records should remain");
+        softAssert.assertEquals(MedicalRecord.MedicalRecordManager.getRecordsByStatus(MedicalRecord.RecordStatus.ARCHIVED).size(), 1, "Archived record should be indexed");
+        
+        expectThrows(IllegalArgumentException.class, () -> MedicalRecord.MedicalRecordManager.addRecord(medicalRecord));
+        softAssert.assertEquals(MedicalRecord.MedicalRecordManager.getTotalRecordCount(), 1, "Re-adding should not duplicate the record");
+        softAssert.assertAll();
+    }
+    
+    @Test(groups = "manager", priority = 14)
+    public void testIndexedLookupAtScale() {
+        SoftAssert softAssert = new SoftAssert();
+        MedicalRecord.MedicalRecordManager.clearAllRecords();
+        MedicalRecord.RecordType[] types = MedicalRecord.RecordType.values();
+        for (int i = 0; i < 240_000; i++) {
+            MedicalRecord record = new MedicalRecord();
+            record.setPatient(i % 1000 == 0 ? patient : new Patient("PAT-" + i, "First", "Last", LocalDate.of(1980, 1, 1)));
+            record.setType(types[i % types.length]);
+            record.setStatus(MedicalRecord.RecordStatus.ACTIVE);
+            MedicalRecord.MedicalRecordManager.addRecord(record);
+        }
+        
+        long start = System.nanoTime();
+        int found = 0;
+        for (int i = 0; i < 10_000; i++) {
+            found = MedicalRecord.MedicalRecordManager.getRecordsForPatient(patient).size();
+        }
+        long elapsedMicros = (System.nanoTime() - start) / 1_000;
+        System.out.println("MedicalRecordTest - 10000 patient lookups over 240000 records took " + elapsedMicros + " us");
+        
+        softAssert.assertEquals(found, 240, "Patient should have every thousandth record");
+        softAssert.assertEquals(MedicalRecord.MedicalRecordManager.getRecordsByType(types[0]).size(), 240_000 / types.length, "Type index should hold its share of records");
+        MedicalRecord.MedicalRecordManager.clearAllRecords();
+        softAssert.assertAll();
+    }
+    
+    @Test(groups = "manager", priority = 15)
+    public void testFullTextSearch() {
+        SoftAssert softAssert = new SoftAssert();
+        MedicalRecord.MedicalRecordManager.clearAllRecords();
+        medicalRecord.setType(MedicalRecord.RecordType.CONSULTATION);
+        medicalRecord.setDiagnosis("Acute chest pain");
+        medicalRecord.setSymptoms("Pain in the chest, shortness of breath");
+        MedicalRecord.MedicalRecordManager.addRecord(medicalRecord);
+        
+        MedicalRecord record2 = new MedicalRecord();
+        record2.setPatient(patient);
+        record2.setType(MedicalRecord.RecordType.EMERGENCY);
+        record2.setStatus(MedicalRecord.RecordStatus.ACTIVE);
+        record2.setDiagnosis("Migraine");
+        record2.setTreatment("Rest and pain relief");
+        MedicalRecord.MedicalRecordManager.addRecord(record2);
+        
+        softAssert.assertEquals(MedicalRecord.MedicalRecordManager.search("pain").size(), 2, "Both records mention pain");
+        softAssert.assertEquals(MedicalRecord.MedicalRecordManager.search("PAIN breath").size(), 1, "AND should match one record");
+        softAssert.assertEquals(MedicalRecord.MedicalRecordManager.search("migraine OR breath").size(), 2, "OR should match both records");
+        softAssert.assertEquals(MedicalRecord.MedicalRecordManager.search("\"chest pain\"").size(), 1, "Phrase should match in order");
+        softAssert.assertTrue(MedicalRecord.MedicalRecordManager.search("\"pain chest\"").isEmpty(), "Reversed phrase should not match");
+        softAssert.assertTrue(MedicalRecord.MedicalRecordManager.search("\"pain pain\"").isEmpty(), "Phrase should not span two fields");
+        softAssert.assertEquals(MedicalRecord.MedicalRecordManager.search(RecordSearchIndex.Query.term("pain"),
+                MedicalRecord.RecordType.EMERGENCY, null).size(), 1, "Type filter should narrow the result");
+        
+        record2.setDiagnosis("Tension headache");
+        softAssert.assertTrue(MedicalRecord.MedicalRecordManager.search("migraine").isEmpty(), "Old text should no longer match");
+        softAssert.assertEquals(MedicalRecord.MedicalRecordManager.search("headache").get(0), record2, "New text should match");
+        for (int i = 0; i < 3000; i++) {
+            medicalRecord.setTreatment("Dose " + i);
+        }
+        softAssert.assertEquals(MedicalRecord.MedicalRecordManager.search("\"dose 2999\"").size(), 1, "Latest text should survive index rebuilds");
+        softAssert.assertTrue(MedicalRecord.MedicalRecordManager.search("\"dose 1500\"").isEmpty(), "Superseded text should not match");
+        softAssert.assertEquals(MedicalRecord.MedicalRecordManager.search("headache OR chest").size(), 2, "Both records should remain searchable");
+        record2.archive();
+        softAssert.assertTrue(MedicalRecord.MedicalRecordManager.search(RecordSearchIndex.Query.term("headache"),
+                null, MedicalRecord.RecordStatus.ACTIVE).isEmpty(), "Status filter should exclude archived records");
+        MedicalRecord.MedicalRecordManager.clearAllRecords();
+        softAssert.assertAll();
+    }
+    
+    @Test(groups = "manager", priority = 16)
+    public void testFullTextSearchAtScale() {
+        SoftAssert softAssert = new SoftAssert();
+        MedicalRecord.MedicalRecordManager.clearAllRecords();
+        String[] conditions = {"hypertension", "diabetes", "asthma", "migraine", "arthritis", "influenza", "anemia", "eczema"};
+        for (int i = 0; i < 200_000; i++) {
+            MedicalRecord record = new MedicalRecord();
+            record.setPatient(patient);
+            record.setStatus(MedicalRecord.RecordStatus.ACTIVE);
+            record.setDiagnosis(conditions[i % conditions.length] + " stage " + (i % 5));
+            record.setSymptoms("reported fatigue and " + conditions[(i / 8) % conditions.length]);
+            MedicalRecord.MedicalRecordManager.addRecord(record);
+        }
+        
+        long start = System.nanoTime();
+        int found = 0;
+        for (int i = 0; i < 100; i++) {
+            found = MedicalRecord.MedicalRecordManager.search("\"asthma stage 2\" diabetes").size();
+        }
+        long elapsedMicros = (System.nanoTime() - start) / 1_000;
+        System.out.println("MedicalRecordTest - 100 phrase queries over 200000 records took " + elapsedMicros + " us");
+        
+        int expected = 0;
+        for (int i = 0; i < 200_000; i++) {
+            if (i % conditions.length == 2 && i % 5 == 2 && (i / 8) % conditions.length == 1) {
+                expected++;
+            }
+        }
+        softAssert.assertEquals(found, expected, "Phrase and term query should match the generated records");
+        MedicalRecord.MedicalRecordManager.clearAllRecords();
+        softAssert.assertAll();
+    }
+    
+    @Test(groups = "manager", priority = 17)
+    public void testTimePartitionedRangeQueries() {
+        SoftAssert softAssert = new SoftAssert();
+        MedicalRecord.MedicalRecordManager.clearAllRecords();
+        LocalDateTime start = LocalDateTime.of(2024, 1, 1, 0, 0);
+        List<MedicalRecord> records = new ArrayList<>();
+        for (int i = 0; i < 366 * 24; i++) {
+            MedicalRecord record = new MedicalRecord();
+            record.setPatient(patient);
+            record.setStatus(MedicalRecord.RecordStatus.ACTIVE);
+            record.setRecordDate(start.plusHours(i));
+            MedicalRecord.MedicalRecordManager.addRecord(record);
+            records.add(record);
+        }
+        
+        LocalDateTime from = LocalDateTime.of(2024, 3, 10, 12, 0);
+        LocalDateTime to = LocalDateTime.of(2024, 4, 2, 6, 0);
+        List<MedicalRecord> expected = records.stream()
+                .filter(record -> !record.getRecordDate().isBefore(from) && record.getRecordDate().isBefore(to))
+                .toList();
+        softAssert.assertEquals(MedicalRecord.MedicalRecordManager.getRecordsBetween(from, to), expected, "Range query should return the records in date order");
+        softAssert.assertEquals(MedicalRecord.MedicalRecordManager.sealPartitionsBefore(YearMonth.of(2024, 10)), 0, "Months older than the open window should already be sealed");
+        
+        MedicalRecord moved = expected.get(0);
+        moved.setRecordDate(LocalDateTime.of(2024, 12, 31, 23, 30));
+        softAssert.assertFalse(MedicalRecord.MedicalRecordManager.getRecordsBetween(from, to).contains(moved), "Moved record should leave its sealed partition");
+        softAssert.assertEquals(MedicalRecord.MedicalRecordManager.getRecordsBetween(LocalDateTime.of(2024, 12, 31, 23, 0), LocalDateTime.of(2025, 1, 1, 0, 0)).size(), 2, "Moved record should join the open partition");
+        
+        MedicalRecord backfilled = new MedicalRecord();
+        backfilled.setPatient(patient);
+        backfilled.setRecordDate(from);
+        MedicalRecord.MedicalRecordManager.addRecord(backfilled);
+        softAssert.assertEquals(MedicalRecord.MedicalRecordManager.getRecordsBetween(from, from.plusMinutes(1)), List.of(backfilled), "Back-filled record should land in the sealed partition");
+        softAssert.assertEquals(MedicalRecord.MedicalRecordManager.getTotalRecordCount(), 366 * 24 + 1, "Moves should not change the record count");
+        MedicalRecord.MedicalRecordManager.clearAllRecords();
+        softAssert.assertAll();
+    }
+    
+    @Test(groups = "manager", priority = 18)
+    public void testCursorQueriesResumeAcrossPages() {
+        SoftAssert softAssert = new SoftAssert();
+        MedicalRecord.MedicalRecordManager.clearAllRecords();
+        LocalDateTime start = LocalDateTime.of(2024, 1, 1, 8, 0);
+        MedicalRecord.RecordType[] types = MedicalRecord.RecordType.values();
+        List<MedicalRecord> labResults = new ArrayList<>();
+        for (int i = 0; i < 5000; i++) {
+            MedicalRecord record = new MedicalRecord();
+            record.setPatient(patient);
+            record.setType(types[i % types.length]);
+            record.setStatus(MedicalRecord.RecordStatus.ACTIVE);
+            record.setRecordDate(i % 10 == 9 ? null : start.plusHours(i * 7L % 4000));
+            MedicalRecord.MedicalRecordManager.addRecord(record);
+            if (record.getType() == MedicalRecord.RecordType.LAB_RESULT) {
+                labResults.add(record);
+            }
+        }
+        
+        MedicalRecord.MedicalRecordManager.RecordQuery labQuery = MedicalRecord.MedicalRecordManager.query()
+                .ofType(MedicalRecord.RecordType.LAB_RESULT)
+                .pageSize(64);
+        List<MedicalRecord> paged = new ArrayList<>();
+        String token = null;
+        int pages = 0;
+        do {
+            MedicalRecord.MedicalRecordManager.RecordPage page = labQuery.page(token);
+            softAssert.assertTrue(page.getRecords().size() <= 64, "Pages should respect the page size");
+            paged.addAll(page.getRecords());
+            token = page.getNextToken();
+            pages++;
+        } while (token != null);
+        softAssert.assertEquals(paged, labResults, "Paging should visit every lab result once in insertion order");
+        softAssert.assertEquals(pages, (labResults.size() + 63) / 64, "Page count should follow the page size");
+        
+        List<MedicalRecord> everything = new ArrayList<>();
+        token = null;
+        do {
+            MedicalRecord.MedicalRecordManager.RecordPage page = MedicalRecord.MedicalRecordManager.query().pageSize(333).page(token);
+            everything.addAll(page.getRecords());
+            token = page.getNextToken();
+        } while (token != null);
+        softAssert.assertEquals(everything.size(), 5000, "Unfiltered paging should include undated records");
+        softAssert.assertEquals(everything.stream().distinct().count(), 5000L, "Unfiltered paging should not repeat records");
+        
+        LocalDateTime from = start.plusDays(30);
+        LocalDateTime to = start.plusDays(60);
+        List<MedicalRecord> window = MedicalRecord.MedicalRecordManager.query()
+                .between(from, to)
+                .withStatus(MedicalRecord.RecordStatus.ACTIVE)
+                .stream()
+                .toList();
+        softAssert.assertEquals(window, MedicalRecord.MedicalRecordManager.getRecordsBetween(from, to), "Streaming a time window should match the range query");
+        softAssert.assertEquals(MedicalRecord.MedicalRecordManager.query().forPatient(patient).stream().limit(10).count(), 10L, "Streams should stop early");
+        expectThrows(IllegalArgumentException.class, () -> MedicalRecord.MedicalRecordManager.query().forPatient(patient).page("T.0.1"));
+        MedicalRecord.MedicalRecordManager.clearAllRecords();
+        softAssert.assertAll();
+    }
+    
+    @Test(groups = "manager", priority = 19)
+    public void testRecordsSurviveRestartFromSnapshotAndLog() throws IOException {
+        SoftAssert softAssert = new SoftAssert();
+        MedicalRecord.MedicalRecordManager.clearAllRecords();
+        Path directory = Files.createTempDirectory("healthhub-records");
+        int count = 50_000;
+        long start = System.nanoTime();
+        MedicalRecord.MedicalRecordManager.openStorage(directory, FsyncPolicy.atMostEvery(Duration.ofMillis(20)), 20_000);
+        try {
+            for (int i = 0; i < count; i++) {
+                MedicalRecord record = new MedicalRecord();
+                record.setPatient(i % 2 == 0 ? patient : new Patient("PAT-" + i, "First", "Last", LocalDate.of(1970, 1, 1)));
+                record.setDoctor(doctor);
+                record.setRecordDate(LocalDateTime.of(2024, 1, 1, 0, 0).plusMinutes(i));
+                record.setType(MedicalRecord.RecordType.CONSULTATION);
+                record.setStatus(MedicalRecord.RecordStatus.ACTIVE);
+                record.setDiagnosis("Routine check " + i);
+                MedicalRecord.MedicalRecordManager.addRecord(record);
+            }
+            long elapsedMillis = Math.max(1, (System.nanoTime() - start) / 1_000_000);
+            System.out.println("MedicalRecordTest - logged " + count + " records in " + elapsedMillis + " ms (" + count * 1000L / elapsedMillis + " records/s)");
+            MedicalRecord.MedicalRecordManager.getRecordsBetween(LocalDateTime.of(2024, 1, 1, 0, 0), LocalDateTime.of(2024, 1, 1, 0, 1)).get(0).archive();
+        } finally {
+            MedicalRecord.MedicalRecordManager.closeStorage();
+        }
+        try (Stream<Path> files = Files.list(directory)) {
+            softAssert.assertEquals(files.filter(file -> file.getFileName().toString().endsWith(".snap")).count(), 1L, "Older snapshots should be pruned");
+        }
+        
+        MedicalRecord.MedicalRecordManager.clearAllRecords();
+        MedicalRecord.MedicalRecordManager.openStorage(directory, FsyncPolicy.onEveryCommit(), 0);
+        try {
+            softAssert.assertEquals(MedicalRecord.MedicalRecordManager.getTotalRecordCount(), count, "Snapshot plus log tail should restore every record");
+            softAssert.assertEquals(MedicalRecord.MedicalRecordManager.getRecordsByStatus(MedicalRecord.RecordStatus.ARCHIVED).size(), 1, "Updates after the snapshot should be replayed");
+            MedicalRecord recovered = MedicalRecord.MedicalRecordManager.search("\"check 49998\"").get(0);
+            softAssert.assertEquals(recovered.getDoctor().getSpecialization(), "Cardiology", "Doctor details should be restored");
+            softAssert.assertEquals(MedicalRecord.MedicalRecordManager.getRecordsForPatient(recovered.getPatient()).size(), count / 2, "Records of one patient should share the restored patient");
+            
+            MedicalRecord added = new MedicalRecord();
+            added.setPatient(recovered.getPatient());
+            MedicalRecord.MedicalRecordManager.addRecord(added);
+            softAssert.assertTrue(MedicalRecord.MedicalRecordManager.getRecordsForPatient(recovered.getPatient()).contains(added), "New records should continue after the restored sequence");
+            MedicalRecord.MedicalRecordManager.clearAllRecords();
+        } finally {
+            MedicalRecord.MedicalRecordManager.closeStorage();
+        }
+        
+        MedicalRecord.MedicalRecordManager.openStorage(directory, FsyncPolicy.onEveryCommit(), 0);
+        try {
+            softAssert.assertEquals(MedicalRecord.MedicalRecordManager.getTotalRecordCount(), 0, "A logged clear should survive a restart");
+        } finally {
+            MedicalRecord.MedicalRecordManager.closeStorage();
+            try (Stream<Path> files = Files.walk(directory)) {
+                for (Path file : files.sorted(Comparator.reverseOrder()).toList()) {
+                    Files.deleteIfExists(file);
+                }
+            }
+        }
+        softAssert.assertAll();
+    }
+    
+    @Test(groups = "manager", priority = 20)
+    public void testConcurrentReadersAndWritersUnderMixedWorkloads() throws InterruptedException {
+        SoftAssert softAssert = new SoftAssert();
+        MedicalRecord.MedicalRecordManager.clearAllRecords();
+        List<Patient> patients = new ArrayList<>();
+        for (int i = 0; i < 20; i++) {
+            patients.add(new Patient("PAT-MIX-" + i, "First", "Last", LocalDate.of(1980, 1, 1)));
+        }
+        List<MedicalRecord> seeded = new ArrayList<>();
+        for (int i = 0; i < 20_000; i++) {
+            MedicalRecord record = mixedWorkloadRecord(patients.get(i % patients.size()), i);
+            MedicalRecord.MedicalRecordManager.addRecord(record);
+            seeded.add(record);
+        }
+        AtomicInteger added = new AtomicInteger();
+        ConcurrentLinkedQueue<Throwable> failures = new ConcurrentLinkedQueue<>();
+        
+        for (int writePercent : new int[] {5, 50}) {
+            long operationsPerSecond = runMixedWorkload(writePercent, patients, seeded, added, failures);
+            System.out.println("MedicalRecordTest - " + (100 - writePercent) + "/" + writePercent + " read/write mix: " + operationsPerSecond + " ops/s");
+        }
+        
+        softAssert.assertTrue(failures.isEmpty(), "Concurrent readers and writers should not fail: " + failures.peek());
+        int expected = seeded.size() + added.get();
+        softAssert.assertEquals(MedicalRecord.MedicalRecordManager.getTotalRecordCount(), expected, "Every concurrent add should be stored exactly once");
+        int indexed = 0;
+        for (Patient mixedPatient : patients) {
+            indexed += MedicalRecord.MedicalRecordManager.getRecordsForPatient(mixedPatient).size();
+        }
+        softAssert.assertEquals(indexed, expected, "Every concurrent add should be indexed by patient");
+        int byStatus = MedicalRecord.MedicalRecordManager.getRecordsByStatus(MedicalRecord.RecordStatus.ACTIVE).size()
+                + MedicalRecord.MedicalRecordManager.getRecordsByStatus(MedicalRecord.RecordStatus.ARCHIVED).size();
+        softAssert.assertEquals(byStatus, expected, "Concurrent status changes should leave each record in one status bucket");
+        MedicalRecord.MedicalRecordManager.clearAllRecords();
+        softAssert.assertAll();
+    }
+    
+    @Test(groups = "manager", priority = 21)
+    public void testCompactionDropsDeletedAndMovesArchivedRecords() throws IOException, InterruptedException {
+        SoftAssert softAssert = new SoftAssert();
+        MedicalRecord.MedicalRecordManager.clearAllRecords();
+        Path directory = Files.createTempDirectory("healthhub-compaction");
+        MedicalRecord.MedicalRecordManager.openStorage(directory, FsyncPolicy.onEveryCommit(), 0);
+        int count = 30_000;
+        try {
+            for (int i = 0; i < count; i++) {
+                MedicalRecord record = mixedWorkloadRecord(patient, i);
+                MedicalRecord.MedicalRecordManager.addRecord(record);
+                if (i % 3 == 1) {
+                    record.archive();
+                } else if (i % 3 == 2) {
+                    record.setStatus(MedicalRecord.RecordStatus.DELETED);
+                }
+            }
+            
+            long longestPauseNanos = 0;
+            int compacted = 0;
+            int step;
+            do {
+                long start = System.nanoTime();
+                step = MedicalRecord.MedicalRecordManager.compact(256);
+                longestPauseNanos = Math.max(longestPauseNanos, System.nanoTime() - start);
+                compacted += step;
+            } while (step > 0);
+            System.out.println("MedicalRecordTest - compacted " + compacted + " records, longest pause " + longestPauseNanos / 1_000 + " us");
+            
+            softAssert.assertEquals(compacted, count / 3 * 2, "Deleted and archived records should be compacted");
+            softAssert.assertEquals(MedicalRecord.MedicalRecordManager.getTotalRecordCount(), count / 3, "Only active records should stay hot");
+            softAssert.assertEquals(MedicalRecord.MedicalRecordManager.getRecordsForPatient(patient).size(), count / 3, "Patient index should hold only active records");
+            softAssert.assertTrue(MedicalRecord.MedicalRecordManager.getRecordsByStatus(MedicalRecord.RecordStatus.DELETED).isEmpty(), "Deleted records should be dropped");
+            softAssert.assertTrue(MedicalRecord.MedicalRecordManager.search("\"visit 2\"").isEmpty(), "Deleted records should leave the search index");
+            softAssert.assertEquals(MedicalRecord.MedicalRecordManager.getArchivedRecordCount(), count / 3, "Archived records should move to the cold tier");
+            
+            List<MedicalRecord> archived = MedicalRecord.MedicalRecordManager.getArchivedRecords(patient);
+            softAssert.assertEquals(archived.size(), count / 3, "Cold tier should be queryable by patient");
+            softAssert.assertSame(archived.get(0).getPatient(), patient, "Archived copies should share the patient");
+            softAssert.assertEquals(archived.get(0).getDiagnosis(), "Routine visit 1", "Archived copies should keep their text");
+            softAssert.assertEquals(archived.get(0).getStatus(), MedicalRecord.RecordStatus.ARCHIVED, "Archived copies should keep their status");
+            
+            MedicalRecord.MedicalRecordManager.startCompaction(Duration.ofMillis(5));
+            try {
+                MedicalRecord.MedicalRecordManager.getRecordsForPatient(patient).get(0).archive();
+                long deadline = System.nanoTime() + 2_000_000_000L;
+                while (MedicalRecord.MedicalRecordManager.getArchivedRecordCount() == count / 3 && System.nanoTime() < deadline) {
+                    Thread.sleep(5);
+                }
+            } finally {
+                MedicalRecord.MedicalRecordManager.stopCompaction();
+            }
+            softAssert.assertEquals(MedicalRecord.MedicalRecordManager.getArchivedRecordCount(), count / 3 + 1, "Background compaction should pick up newly archived records");
+        } finally {
+            MedicalRecord.MedicalRecordManager.closeStorage();
+        }
+        
+        for (String source : new String[] {"log", "snapshot"}) {
+            MedicalRecord.MedicalRecordManager.clearAllRecords();
+            MedicalRecord.MedicalRecordManager.openStorage(directory, FsyncPolicy.onEveryCommit(), 0);
+            try {
+                softAssert.assertEquals(MedicalRecord.MedicalRecordManager.getTotalRecordCount(), count / 3 - 1,
+                        "Only active records should be hot after restoring from the " + source);
+                softAssert.assertTrue(MedicalRecord.MedicalRecordManager.getRecordsByStatus(MedicalRecord.RecordStatus.DELETED).isEmpty(),
+                        "Purged records should not come back from the " + source);
+                softAssert.assertTrue(MedicalRecord.MedicalRecordManager.getRecordsByStatus(MedicalRecord.RecordStatus.ARCHIVED).isEmpty(),
+                        "Archived records should stay cold after restoring from the " + source);
+                softAssert.assertTrue(MedicalRecord.MedicalRecordManager.search("\"visit 1\"").isEmpty(),
+                        "Archived records should stay out of the search index after restoring from the " + source);
+                softAssert.assertEquals(MedicalRecord.MedicalRecordManager.getArchivedRecordCount(), count / 3 + 1,
+                        "Cold tier should be restored from the " + source);
+                Patient restored = MedicalRecord.MedicalRecordManager.getRecordsByType(MedicalRecord.RecordType.CONSULTATION).get(0).getPatient();
+                softAssert.assertEquals(MedicalRecord.MedicalRecordManager.getRecordsForPatient(restored).size(), count / 3 - 1,
+                        "Patient index should hold only active records after restoring from the " + source);
+                List<MedicalRecord> restoredArchive = MedicalRecord.MedicalRecordManager.getArchivedRecords(restored);
+                softAssert.assertEquals(restoredArchive.size(), count / 3 + 1, "Restored cold tier should be queryable by patient");
+                softAssert.assertTrue(restoredArchive.stream().anyMatch(record -> "Routine visit 1".equals(record.getDiagnosis())),
+                        "Restored archived copies should keep their text");
+                if (source.equals("log")) {
+                    MedicalRecord.MedicalRecordManager.snapshot();
+                } else {
+                    MedicalRecord.MedicalRecordManager.clearAllRecords();
+                }
+            } finally {
+                MedicalRecord.MedicalRecordManager.closeStorage();
+            }
+        }
+        try {
+            MedicalRecord.MedicalRecordManager.openStorage(directory, FsyncPolicy.onEveryCommit(), 0);
+            softAssert.assertEquals(MedicalRecord.MedicalRecordManager.getArchivedRecordCount(), 0, "A logged clear should empty the cold tier");
+        } finally {
+            MedicalRecord.MedicalRecordManager.closeStorage();
+            try (Stream<Path> files = Files.walk(directory)) {
+                for (Path file : files.sorted(Comparator.reverseOrder()).toList()) {
+                    Files.deleteIfExists(file);
+                }
+            }
+        }
+        softAssert.assertAll();
+    }
+    
+    @Test(groups = "manager", priority = 22)
+    public void testAnalyticsMatchSequentialAggregates() {
+        SoftAssert softAssert = new SoftAssert();
+        MedicalRecord.MedicalRecordManager.clearAllRecords();
+        String[] specializations = {"Cardiology", "Neurology", "Oncology", "Pediatrics", "Dermatology"};
+        String[] diagnoses = {"Hypertension", "Migraine", "Asthma", "Diabetes", "Eczema", "Influenza", "Anemia", "Arthritis"};
+        List<Doctor> doctors = new ArrayList<>();
+        for (int i = 0; i < specializations.length; i++) {
+            Doctor analyticsDoctor = new Doctor("DOC-AN-" + i, "LIC-AN-" + i);
+            analyticsDoctor.setSpecialization(specializations[i]);
+            doctors.add(analyticsDoctor);
+        }
+        List<Patient> patients = new ArrayList<>();
+        for (int i = 0; i < 60; i++) {
+            patients.add(new Patient("PAT-AN-" + i, "First", "Last", LocalDate.of(1940 + i, 1 + i % 12, 1 + i % 28)));
+        }
+        int count = 300_000;
+        List<MedicalRecord> records = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            MedicalRecord record = new MedicalRecord();
+            record.setPatient(patients.get(i % patients.size()));
+            record.setDoctor(doctors.get(i % doctors.size()));
+            record.setRecordDate(i % 50 == 0 ? null : LocalDateTime.of(2023, 1, 1, 0, 0).plusSeconds(i * 105L));
+            record.setType(MedicalRecord.RecordType.values()[i % MedicalRecord.RecordType.values().length]);
+            record.setStatus(i % 7 == 0 ? MedicalRecord.RecordStatus.ARCHIVED : MedicalRecord.RecordStatus.ACTIVE);
+            record.setDiagnosis(diagnoses[(i / 3) % diagnoses.length]);
+            MedicalRecord.MedicalRecordManager.addRecord(record);
+            records.add(record);
+        }
+        LocalDate asOf = LocalDate.of(2024, 1, 1);
+        LocalDateTime from = LocalDateTime.of(2023, 3, 1, 0, 0);
+        LocalDateTime to = LocalDateTime.of(2023, 6, 1, 0, 0);
+        
+        long start = System.nanoTime();
+        Map<String, Map<String, Long>> bySpecialization = records.stream().collect(Collectors.groupingBy(
+                record -> record.getDoctor().getSpecialization(), Collectors.groupingBy(MedicalRecord::getDiagnosis, Collectors.counting())));
+        Map<YearMonth, Map<MedicalRecord.RecordType, Long>> typeMix = records.stream()
+                .filter(record -> record.getRecordDate() != null && !record.getRecordDate().isBefore(from) && record.getRecordDate().isBefore(to))
+                .collect(Collectors.groupingBy(record -> YearMonth.from(record.getRecordDate()),
+                        Collectors.groupingBy(MedicalRecord::getType, Collectors.counting())));
+        Map<Integer, Long> ageBands = records.stream().collect(Collectors.groupingBy(
+                record -> Period.between(record.getPatient().getDateOfBirth(), asOf).getYears() / 10 * 10, Collectors.counting()));
+        long sequentialMillis = (System.nanoTime() - start) / 1_000_000;
+        
+        for (int run = 1; run <= 2; run++) {
+            start = System.nanoTime();
+            Map<String, Map<String, Long>> analyticsBySpecialization = MedicalRecord.MedicalRecordManager.analytics()
+                    .countBy(RecordAnalytics.Dimension.SPECIALIZATION, RecordAnalytics.Dimension.DIAGNOSIS);
+            Map<YearMonth, Map<MedicalRecord.RecordType, Long>> analyticsTypeMix = MedicalRecord.MedicalRecordManager.analytics()
+                    .between(from, to).countBy(RecordAnalytics.Dimension.MONTH, RecordAnalytics.Dimension.TYPE);
+            Map<Integer, Long> analyticsAgeBands = MedicalRecord.MedicalRecordManager.analytics()
+                    .countBy(RecordAnalytics.Dimension.ageBand(asOf, 10));
+            long analyticsMillis = (System.nanoTime() - start) / 1_000_000;
+            System.out.println("MedicalRecordTest - analytics over " + count + " records: sequential streams " + sequentialMillis
+                    + " ms, engine run " + run + " " + analyticsMillis + " ms");
+            softAssert.assertEquals(analyticsBySpecialization, bySpecialization, "Diagnosis counts by specialization should match");
+            softAssert.assertEquals(analyticsTypeMix, typeMix, "Type mix per month should match");
+            softAssert.assertEquals(analyticsAgeBands, ageBands, "Age bands should match");
+        }
+        
+        List<Map.Entry<String, Long>> top = MedicalRecord.MedicalRecordManager.analytics().topK(RecordAnalytics.Dimension.DIAGNOSIS, 3);
+        softAssert.assertEquals(top.size(), 3, "Top-k should return k groups");
+        softAssert.assertTrue(top.get(0).getValue() >= top.get(1).getValue() && top.get(1).getValue() >= top.get(2).getValue(), "Top-k should be ordered by count");
+        softAssert.assertEquals(MedicalRecord.MedicalRecordManager.analytics().withStatus(MedicalRecord.RecordStatus.ARCHIVED).count(),
+                records.stream().filter(record -> record.getStatus() == MedicalRecord.RecordStatus.ARCHIVED).count(), "Status filter should match");
+        long[] hours = MedicalRecord.MedicalRecordManager.analytics().histogram(RecordAnalytics.Metric.HOUR_OF_DAY, 6, 12, 18);
+        softAssert.assertEquals(hours[0] + hours[1] + hours[2] + hours[3], count - count / 50L, "Histogram should count every dated record once");
+        
+        long emergencies = MedicalRecord.MedicalRecordManager.analytics().countBy(RecordAnalytics.Dimension.TYPE).get(MedicalRecord.RecordType.EMERGENCY);
+        records.get(1).setType(MedicalRecord.RecordType.EMERGENCY);
+        softAssert.assertEquals(MedicalRecord.MedicalRecordManager.analytics().countBy(RecordAnalytics.Dimension.TYPE).get(MedicalRecord.RecordType.EMERGENCY).longValue(),
+                emergencies + 1, "Changes to records in sealed months should refresh their projection");
+        
+        doctors.get(0).setSpecialization("Cardiac Surgery");
+        patients.get(0).setDateOfBirth(LocalDate.of(2015, 6, 1));
+        Map<String, Long> bySpecializationAfterEdit = records.stream().collect(Collectors.groupingBy(
+                record -> record.getDoctor().getSpecialization(), Collectors.counting()));
+        Map<Integer, Long> ageBandsAfterEdit = records.stream().collect(Collectors.groupingBy(
+                record -> Period.between(record.getPatient().getDateOfBirth(), asOf).getYears() / 10 * 10, Collectors.counting()));
+        softAssert.assertEquals(MedicalRecord.MedicalRecordManager.analytics().countBy(RecordAnalytics.Dimension.SPECIALIZATION),
+                bySpecializationAfterEdit, "Specialization changes should show up in sealed months");
+        softAssert.assertEquals(MedicalRecord.MedicalRecordManager.analytics().countBy(RecordAnalytics.Dimension.ageBand(asOf, 10)),
+                ageBandsAfterEdit, "Birth date changes should show up in sealed months");
+        MedicalRecord.MedicalRecordManager.clearAllRecords();
+        softAssert.assertAll();
+    }
+    
+    private long runMixedWorkload(int writePercent, List<Patient> patients, List<MedicalRecord> seeded,
+            AtomicInteger added, ConcurrentLinkedQueue<Throwable> failures) throws InterruptedException {
+        int threads = 8;
+        long durationNanos = 1_000_000_000L;
+        LongAdder operations = new LongAdder();
+        CountDownLatch start = new CountDownLatch(1);
+        List<Thread> workers = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            Thread worker = new Thread(() -> {
+                ThreadLocalRandom random = ThreadLocalRandom.current();
+                try {
+                    start.await();
+                    long deadline = System.nanoTime() + durationNanos;
+                    while (System.nanoTime() < deadline) {
+                        Patient target = patients.get(random.nextInt(patients.size()));
+                        if (random.nextInt(100) < writePercent) {
+                            if (random.nextBoolean()) {
+                                MedicalRecord.MedicalRecordManager.addRecord(mixedWorkloadRecord(target, random.nextInt(20_000)));
+                                added.incrementAndGet();
+                            } else {
+                                MedicalRecord record = seeded.get(random.nextInt(seeded.size()));
+                                record.setStatus(random.nextBoolean() ? MedicalRecord.RecordStatus.ACTIVE : MedicalRecord.RecordStatus.ARCHIVED);
+                            }
+                        } else {
+                            switch (random.nextInt(4)) {
+                                case 0 -> MedicalRecord.MedicalRecordManager.getRecordsForPatient(target);
+                                case 1 -> {
+                                    LocalDateTime from = LocalDateTime.of(2024, 1, 1, 0, 0).plusHours(random.nextInt(20_000));
+                                    MedicalRecord.MedicalRecordManager.getRecordsBetween(from, from.plusDays(1));
+                                }
+                                case 2 -> MedicalRecord.MedicalRecordManager.search("\"visit " + random.nextInt(20_000) + "\"");
+                                default -> MedicalRecord.MedicalRecordManager.query().forPatient(target).pageSize(25).page(null);
+                            }
+                        }
+                        operations.increment();
+                    }
+                } catch (Throwable e) {
+                    failures.add(e);
+                }
+            }, "mixed-workload-" + t);
+            worker.start();
+            workers.add(worker);
+        }
+        start.countDown();
+        for (Thread worker : workers) {
+            worker.join();
+        }
+        return operations.sum() * 1_000_000_000L / durationNanos;
+    }
+    
+    @Test(groups = "manager", priority = 23)
+    public void testLateRecordsAndFutureDatesKeepPartitionsCheap() {
+        SoftAssert softAssert = new SoftAssert();
+        MedicalRecord.MedicalRecordManager.clearAllRecords();
+        LocalDateTime now = LocalDateTime.now();
+        for (int i = 0; i < 100; i++) {
+            MedicalRecord current = new MedicalRecord();
+            current.setPatient(patient);
+            current.setRecordDate(now.minusMinutes(i));
+            MedicalRecord.MedicalRecordManager.addRecord(current);
+        }
+        MedicalRecord mistyped = new MedicalRecord();
+        mistyped.setPatient(patient);
+        mistyped.setRecordDate(now.plusYears(20));
+        MedicalRecord.MedicalRecordManager.addRecord(mistyped);
+        softAssert.assertTrue(MedicalRecord.MedicalRecordManager.sealPartitionsBefore(YearMonth.from(now).plusMonths(1)) >= 1,
+                "A future-dated record should not seal the current month");
+        MedicalRecord.MedicalRecordManager.clearAllRecords();
+        
+        int count = 200_000;
+        LocalDateTime start = LocalDateTime.of(2023, 1, 1, 0, 0);
+        List<LocalDateTime> dates = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            dates.add(start.plusMinutes(i * 2L));
+        }
+        Collections.shuffle(dates, new Random(11));
+        long loadStart = System.nanoTime();
+        for (LocalDateTime date : dates) {
+            MedicalRecord late = new MedicalRecord();
+            late.setPatient(patient);
+            late.setRecordDate(date);
+            MedicalRecord.MedicalRecordManager.addRecord(late);
+        }
+        long loadMillis = (System.nanoTime() - loadStart) / 1_000_000;
+        System.out.println("MedicalRecordTest - loaded " + count + " out-of-order records into sealed months in " + loadMillis + " ms");
+        
+        LocalDateTime from = LocalDateTime.of(2023, 2, 20, 0, 0);
+        LocalDateTime to = LocalDateTime.of(2023, 4, 10, 0, 0);
+        List<MedicalRecord> range = MedicalRecord.MedicalRecordManager.getRecordsBetween(from, to);
+        boolean ordered = true;
+        for (int i = 1; i < range.size(); i++) {
+            ordered &= !range.get(i).getRecordDate().isBefore(range.get(i - 1).getRecordDate());
+        }
+        softAssert.assertEquals(range.size(), (int) (Duration.between(from, to).toMinutes() / 2), "Range should hold every late record");
+        softAssert.assertTrue(ordered, "Late records should come back in date order");
+        softAssert.assertEquals(MedicalRecord.MedicalRecordManager.sealPartitionsBefore(YearMonth.of(2024, 1)), 0,
+                "Historical months should already be sealed");
+        softAssert.assertEquals(MedicalRecord.MedicalRecordManager.getRecordsBetween(from, to), range, "Merging deltas should not change results");
+        
+        List<MedicalRecord> kept = new ArrayList<>();
+        for (int i = 0; i < range.size(); i++) {
+            if (i % 2 == 0) {
+                range.get(i).setStatus(MedicalRecord.RecordStatus.DELETED);
+            } else {
+                kept.add(range.get(i));
+            }
+        }
+        long compactStart = System.nanoTime();
+        long longestPauseNanos = 0;
+        int compacted = 0;
+        int step;
+        do {
+            long batchStart = System.nanoTime();
+            step = MedicalRecord.MedicalRecordManager.compact(256);
+            longestPauseNanos = Math.max(longestPauseNanos, System.nanoTime() - batchStart);
+            compacted += step;
+        } while (step > 0);
+        System.out.println("MedicalRecordTest - compacted " + compacted + " records from sealed months in "
+                + (System.nanoTime() - compactStart) / 1_000_000 + " ms, longest pause " + longestPauseNanos / 1_000 + " us");
+        softAssert.assertEquals(compacted, range.size() - kept.size(), "Every deleted record should be compacted");
+        softAssert.assertEquals(MedicalRecord.MedicalRecordManager.getRecordsBetween(from, to), kept,
+                "Removed records should leave sealed months in order");
+        softAssert.assertEquals(MedicalRecord.MedicalRecordManager.getTotalRecordCount(), count - compacted, "Store size should track removals");
+        MedicalRecord.MedicalRecordManager.clearAllRecords();
+        softAssert.assertAll();
+    }
+    
+    @Test(groups = "manager", priority = 24)
+    public void testConcurrentSynchronousCommitsShareFlushes() throws IOException, InterruptedException {
+        SoftAssert softAssert = new SoftAssert();
+        MedicalRecord.MedicalRecordManager.clearAllRecords();
+        Path directory = Files.createTempDirectory("healthhub-group-commit");
+        int writers = 8;
+        int perWriter = 500;
+        MedicalRecord.MedicalRecordManager.openStorage(directory, FsyncPolicy.onEveryCommit(), 0);
+        try {
+            CountDownLatch start = new CountDownLatch(1);
+            ConcurrentLinkedQueue<Throwable> failures = new ConcurrentLinkedQueue<>();
+            List<Thread> threads = new ArrayList<>();
+            for (int w = 0; w < writers; w++) {
+                int writer = w;
+                Thread thread = new Thread(() -> {
+                    try {
+                        start.await();
+                        for (int i = 0; i < perWriter; i++) {
+                            MedicalRecord.MedicalRecordManager.addRecord(mixedWorkloadRecord(patient, writer * perWriter + i));
+                        }
+                    } catch (Throwable e) {
+                        failures.add(e);
+                    }
+                });
+                threads.add(thread);
+                thread.start();
+            }
+            long begin = System.nanoTime();
+            start.countDown();
+            for (Thread thread : threads) {
+                thread.join();
+            }
+            long elapsedMillis = Math.max(1, (System.nanoTime() - begin) / 1_000_000);
+            System.out.println("MedicalRecordTest - " + writers + " writers committed " + writers * perWriter + " records synchronously in " + elapsedMillis + " ms");
+            softAssert.assertTrue(failures.isEmpty(), "Concurrent synchronous commits should not fail: " + failures);
+        } finally {
+            MedicalRecord.MedicalRecordManager.closeStorage();
+        }
+        
+        MedicalRecord.MedicalRecordManager.clearAllRecords();
+        MedicalRecord.MedicalRecordManager.openStorage(directory, FsyncPolicy.onEveryCommit(), 0);
+        try {
+            softAssert.assertEquals(MedicalRecord.MedicalRecordManager.getTotalRecordCount(), writers * perWriter,
+                    "Every acknowledged commit should survive a restart");
+            MedicalRecord.MedicalRecordManager.clearAllRecords();
+        } finally {
+            MedicalRecord.MedicalRecordManager.closeStorage();
+            try (Stream<Path> files = Files.walk(directory)) {
+                for (Path file : files.sorted(Comparator.reverseOrder()).toList()) {
+                    Files.deleteIfExists(file);
+                }
+            }
+        }
+        softAssert.assertAll();
+    }
+    
+    private MedicalRecord mixedWorkloadRecord(Patient owner, int visit) {
+        MedicalRecord record = new MedicalRecord();
+        record.setPatient(owner);
+        record.setDoctor(doctor);
+        record.setRecordDate(LocalDateTime.of(2024, 1, 1, 0, 0).plusHours(visit));
+        record.setType(MedicalRecord.RecordType.CONSULTATION);
+        record.setStatus(MedicalRecord.RecordStatus.ACTIVE);
+        record.setDiagnosis("Routine visit " + visit);
+        return record;
+    }
 }
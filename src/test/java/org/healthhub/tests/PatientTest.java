@@ -6,6 +6,13 @@ import org.testng.annotations.*;
 import org.testng.asserts.SoftAssert;
 import java.time.LocalDate;
 import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
 import static org.testng.Assert.*;
 
 public class PatientTest {
@@ -198,4 +205,219 @@ public class PatientTest {
         softAssert.assertTrue(patient.getMedicalRecords().contains(record2), "Should contain second record");
         softAssert.assertAll();
     }
+    
+    @Test(groups = "registry", priority = 11)
+    public void testRegistryLookupById() {
+        SoftAssert softAssert = new SoftAssert();
+        Patient.PatientRegistry.clearAllPatients();
+        Patient.PatientRegistry.register(patient);
+        softAssert.assertSame(Patient.PatientRegistry.getPatient(testPatientId), patient, "Registered patient should be found by id");
+        softAssert.assertNull(Patient.PatientRegistry.getPatient("PAT-MISSING"), "Unknown ids should not be found");
+        assertThrows(IllegalArgumentException.class,
+                () -> Patient.PatientRegistry.register(new Patient(testPatientId, "Other", "Person", null)));
+        assertThrows(IllegalArgumentException.class,
+                () -> Patient.PatientRegistry.register(new Patient(" ", "No", "Id", null)));
+        
+        patient.setPatientId("PAT-RENAMED");
+        softAssert.assertSame(Patient.PatientRegistry.getPatient("PAT-RENAMED"), patient, "Changing the id should re-key the patient");
+        softAssert.assertNull(Patient.PatientRegistry.getPatient(testPatientId), "The old id should be released");
+        Patient other = new Patient("PAT-OTHER", "Other", "Person", null);
+        Patient.PatientRegistry.register(other);
+        assertThrows(IllegalArgumentException.class, () -> other.setPatientId("PAT-RENAMED"));
+        softAssert.assertEquals(other.getPatientId(), "PAT-OTHER", "A rejected id change should leave the patient unchanged");
+        softAssert.assertEquals(Patient.PatientRegistry.getPatientCount(), 2, "Two patients should be registered");
+        
+        softAssert.assertTrue(Patient.PatientRegistry.unregister(patient), "Registered patients should unregister");
+        softAssert.assertFalse(Patient.PatientRegistry.unregister(patient), "Unregistering twice should be a no-op");
+        softAssert.assertTrue(Patient.PatientRegistry.searchByName("doe", 10).isEmpty(), "Unregistered patients should not be searchable");
+        patient.setPatientId(testPatientId);
+        softAssert.assertEquals(patient.getPatientId(), testPatientId, "Unregistered patients can change id freely");
+        Patient.PatientRegistry.clearAllPatients();
+        softAssert.assertAll();
+    }
+    
+    @Test(groups = "registry", priority = 12)
+    public void testRegistryNamePrefixSearch() {
+        SoftAssert softAssert = new SoftAssert();
+        Patient.PatientRegistry.clearAllPatients();
+        Patient janeDoe = new Patient("PAT-1", "Jane", "Doe", null);
+        Patient johnDoe = new Patient("PAT-2", "John", "Doe", null);
+        Patient doreen = new Patient("PAT-3", "Doreen", "Adams", null);
+        Patient vanDerBerg = new Patient("PAT-4", "Anna", "van der Berg", null);
+        Patient noFirstName = new Patient("PAT-5", null, "Doerr", null);
+        for (Patient registered : List.of(janeDoe, johnDoe, doreen, vanDerBerg, noFirstName)) {
+            Patient.PatientRegistry.register(registered);
+        }
+        
+        softAssert.assertEquals(ids(Patient.PatientRegistry.searchByName("DO", 10)), List.of("PAT-1", "PAT-2", "PAT-5", "PAT-3"),
+                "Last-name matches should come first, sorted by name, then first-name matches");
+        softAssert.assertEquals(ids(Patient.PatientRegistry.searchByName("do", 2)), List.of("PAT-1", "PAT-2"), "Results should be capped");
+        softAssert.assertEquals(ids(Patient.PatientRegistry.searchByName("doe j", 10)), List.of("PAT-1", "PAT-2"), "Last name then first-name prefix");
+        softAssert.assertEquals(ids(Patient.PatientRegistry.searchByName("john d", 10)), List.of("PAT-2"), "First name then last-name prefix");
+        softAssert.assertEquals(ids(Patient.PatientRegistry.searchByName("van der", 10)), List.of("PAT-4"), "Names may contain spaces");
+        softAssert.assertTrue(Patient.PatientRegistry.searchByName("  ", 10).isEmpty(), "Blank queries should match nothing");
+        
+        janeDoe.setLastName("Smith");
+        softAssert.assertEquals(ids(Patient.PatientRegistry.searchByName("doe", 10)), List.of("PAT-2", "PAT-5"), "Renamed patients should leave the old name");
+        softAssert.assertEquals(ids(Patient.PatientRegistry.searchByName("smi", 10)), List.of("PAT-1"), "Renamed patients should be found by the new name");
+        johnDoe.setFirstName("Jonathan");
+        softAssert.assertEquals(ids(Patient.PatientRegistry.searchByName("jon", 10)), List.of("PAT-2"), "First-name changes should be indexed");
+        Patient.PatientRegistry.clearAllPatients();
+        softAssert.assertAll();
+    }
+    
+    @Test(groups = "registry", priority = 13)
+    public void testRegistryConcurrentRegistrationAndSearchLatency() throws Exception {
+        SoftAssert softAssert = new SoftAssert();
+        Patient.PatientRegistry.clearAllPatients();
+        String[] lastNames = {"Smith", "Johnson", "Williams", "Brown", "Jones", "Garcia", "Miller", "Davis", "Beridze", "Kapanadze"};
+        String[] firstNames = {"James", "Mary", "Robert", "Patricia", "John", "Jennifer", "Nino", "Giorgi", "Ana", "Luka"};
+        int threads = 4;
+        int perThread = 125_000;
+        ExecutorService executor = Executors.newFixedThreadPool(threads + 1);
+        try {
+            long start = System.nanoTime();
+            List<Future<?>> writers = new ArrayList<>();
+            for (int t = 0; t < threads; t++) {
+                int offset = t * perThread;
+                writers.add(executor.submit(() -> {
+                    for (int i = offset; i < offset + perThread; i++) {
+                        Patient.PatientRegistry.register(new Patient("PAT-" + i, firstNames[i % firstNames.length] + (i / 100 % 1000),
+                                lastNames[i / 7 % lastNames.length] + (i % 10_000), null));
+                    }
+                }));
+            }
+            Future<Integer> reader = executor.submit(() -> {
+                int searches = 0;
+                while (writers.stream().anyMatch(writer -> !writer.isDone())) {
+                    for (Patient found : Patient.PatientRegistry.searchByName("smith1", 10)) {
+                        if (!found.getLastName().toLowerCase().startsWith("smith1")) {
+                            throw new AssertionError("Search returned " + found.getLastName());
+                        }
+                    }
+                    searches++;
+                }
+                return searches;
+            });
+            for (Future<?> writer : writers) {
+                writer.get(120, TimeUnit.SECONDS);
+            }
+            int searchesDuringLoad = reader.get(10, TimeUnit.SECONDS);
+            long registerMillis = (System.nanoTime() - start) / 1_000_000;
+            int total = threads * perThread;
+            softAssert.assertEquals(Patient.PatientRegistry.getPatientCount(), total, "Every concurrently registered patient should be kept");
+            softAssert.assertEquals(Patient.PatientRegistry.getPatient("PAT-" + (total - 1)).getPatientId(), "PAT-" + (total - 1), "Lookup by id should work after load");
+            
+            String[] queries = {"smith12", "jo", "nino5", "garcia 99", "mary 1", "kapanadze777", "b", "williams9999"};
+            int rounds = 20_000;
+            long found = 0;
+            start = System.nanoTime();
+            for (int i = 0; i < rounds; i++) {
+                found += Patient.PatientRegistry.searchByName(queries[i % queries.length], 10).size();
+            }
+            long searchNanos = (System.nanoTime() - start) / rounds;
+            String[] ids = new String[1024];
+            for (int i = 0; i < ids.length; i++) {
+                ids[i] = "PAT-" + (i * 487 % total);
+            }
+            start = System.nanoTime();
+            for (int i = 0; i < rounds; i++) {
+                found += Patient.PatientRegistry.getPatient(ids[i % ids.length]) == null ? 0 : 1;
+            }
+            long lookupNanos = (System.nanoTime() - start) / rounds;
+            System.out.println("PatientTest - registered " + total + " patients from " + threads + " threads in " + registerMillis
+                    + " ms (" + searchesDuringLoad + " searches meanwhile); top-10 prefix search " + searchNanos / 1000.0
+                    + " us, id lookup " + lookupNanos + " ns");
+            softAssert.assertTrue(found > rounds, "Searches and lookups should find patients");
+            softAssert.assertEquals(ids(Patient.PatientRegistry.searchByName("kapanadze777", 10)).size(), 10, "Prefix search should fill the limit");
+        } finally {
+            executor.shutdownNow();
+            Patient.PatientRegistry.clearAllPatients();
+        }
+        softAssert.assertAll();
+    }
+    
+    private static List<String> ids(List<Patient> patients) {
+        return patients.stream().map(Patient::getPatientId).collect(Collectors.toList());
+    }
+    
+    @Test(groups = "storage", priority = 14)
+    public void testCompactFieldsRoundTrip() {
+        SoftAssert softAssert = new SoftAssert();
+        Patient first = new Patient("PAT-1", new String("Nino"), new String("Beridze"), LocalDate.of(1985, 2, 28));
+        Patient second = new Patient("PAT-2", new String("Nino"), "Kapanadze", LocalDate.of(1969, 12, 31));
+        softAssert.assertSame(first.getFirstName(), second.getFirstName(), "Equal names should share one string");
+        second.setLastName(new String("Beridze"));
+        softAssert.assertSame(second.getLastName(), first.getLastName(), "Renamed patients should share names too");
+        softAssert.assertEquals(first.getDateOfBirth(), LocalDate.of(1985, 2, 28), "Date of birth should round trip");
+        softAssert.assertEquals(second.getDateOfBirth(), LocalDate.of(1969, 12, 31), "Dates before the epoch should round trip");
+        first.setDateOfBirth(null);
+        softAssert.assertNull(first.getDateOfBirth(), "A cleared date of birth should read back as null");
+        
+        String[] phones = {"5551234567", "0012345", "0", "999999999999999", "1234567890123456", "+1 555 123 4567", "", null};
+        for (String phone : phones) {
+            first.setPhoneNumber(phone);
+            softAssert.assertEquals(first.getPhoneNumber(), phone, "Phone number should round trip: " + phone);
+        }
+        
+        softAssert.assertTrue(second.getMedicalRecords().isEmpty(), "A patient without records should have an empty list");
+        MedicalRecord record = new MedicalRecord();
+        second.addMedicalRecord(record);
+        softAssert.assertEquals(second.getMedicalRecords(), List.of(record), "The first record should create the list");
+        List<MedicalRecord> view = first.getMedicalRecords();
+        view.add(record);
+        softAssert.assertEquals(first.getMedicalRecords(), List.of(record), "Adding through the empty list should create the list");
+        view.remove(record);
+        softAssert.assertTrue(first.getMedicalRecords().isEmpty(), "Removing through the view should reach the list");
+        
+        int namesBefore = Patient.NameDictionary.size();
+        for (int i = 0; i < 1000; i++) {
+            Patient.NameDictionary.share("Transient" + i);
+        }
+        long deadline = System.nanoTime() + 5_000_000_000L;
+        while (Patient.NameDictionary.size() >= namesBefore + 1000 && System.nanoTime() < deadline) {
+            System.gc();
+        }
+        softAssert.assertTrue(Patient.NameDictionary.size() < namesBefore + 1000, "Names no patient holds should be forgotten");
+        softAssert.assertAll();
+        
+        assertThrows(IllegalArgumentException.class, () -> new Patient("PAT-3", "A", "B", LocalDate.MAX));
+    }
+    
+    @Test(groups = "storage", priority = 15)
+    public void testCompactPatientFootprint() {
+        SoftAssert softAssert = new SoftAssert();
+        String[] firstNames = {"James", "Mary", "Robert", "Patricia", "John", "Jennifer", "Nino", "Giorgi", "Ana", "Luka"};
+        String[] lastNames = {"Smith", "Johnson", "Williams", "Brown", "Jones", "Garcia", "Miller", "Davis", "Beridze", "Kapanadze"};
+        int count = 500_000;
+        String[] ids = new String[count];
+        for (int i = 0; i < count; i++) {
+            ids[i] = "PAT-" + i;
+        }
+        List<Patient> patients = new ArrayList<>(count);
+        long before = usedHeap();
+        for (int i = 0; i < count; i++) {
+            // New strings per patient, as an importer would produce them.
+            Patient patient = new Patient(ids[i], new String(firstNames[i % firstNames.length]),
+                    new String(lastNames[i / 10 % lastNames.length]), LocalDate.of(1940, 1, 1).plusDays(i % 25_000));
+            patient.setPhoneNumber(Long.toString(5_550_000_000L + i));
+            patients.add(patient);
+        }
+        long bytesPerPatient = (usedHeap() - before) / count;
+        System.out.println("PatientTest - " + bytesPerPatient + " bytes per patient beyond its id, with names, birth date and phone");
+        softAssert.assertEquals(patients.get(count - 1).getPhoneNumber(), Long.toString(5_550_000_000L + count - 1), "Last phone should read back");
+        softAssert.assertTrue(bytesPerPatient < 100, "A compact patient should take well under the ~250 bytes of separate objects: "
+                + bytesPerPatient);
+        softAssert.assertAll();
+    }
+    
+    private static long usedHeap() {
+        Runtime runtime = Runtime.getRuntime();
+        long used = Long.MAX_VALUE;
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+            used = Math.min(used, runtime.totalMemory() - runtime.freeMemory());
+        }
+        return used;
+    }
 }
@@ -0,0 +1,127 @@
+package org.healthhub.tests;
+
+import org.healthhub.util.TimingWheel;
+import org.testng.annotations.*;
+import org.testng.asserts.SoftAssert;
+import java.util.ArrayList;
+import java.util.List;
+import static org.testng.Assert.*;
+
+public class TimingWheelTest {
+
+    private static int suiteCounter = 0;
+    private static int testCounter = 0;
+    private static int classCounter = 0;
+    private static int methodCounter = 0;
+    
+    private TimingWheel<String> wheel;
+    
+    @BeforeSuite
+    public void beforeSuite() {
+        suiteCounter++;
+        System.out.println("TimingWheelTest - BeforeSuite executed. Suite counter: " + suiteCounter);
+    }
+    
+    @AfterSuite
+    public void afterSuite() {
+        System.out.println("TimingWheelTest - AfterSuite executed. Suite counter: " + suiteCounter);
+    }
+    
+    @BeforeTest
+    public void beforeTest() {
+        testCounter++;
+        System.out.println("TimingWheelTest - BeforeTest executed. Test counter: " + testCounter);
+    }
+    
+    @AfterTest
+    public void afterTest() {
+        System.out.println("TimingWheelTest - AfterTest executed. Test counter: " + testCounter);
+    }
+    
+    @BeforeClass
+    public void beforeClass() {
+        classCounter++;
+        System.out.println("TimingWheelTest - BeforeClass executed. Class counter: " + classCounter);
+    }
+    
+    @AfterClass
+    public void afterClass() {
+        System.out.println("TimingWheelTest - AfterClass executed. Class counter: " + classCounter);
+    }
+    
+    @BeforeGroups(groups = {"expiry", "cancellation"})
+    public void beforeGroups() {
+        System.out.println("TimingWheelTest - BeforeGroups executed for expiry and cancellation groups");
+    }
+    
+    @AfterGroups(groups = {"expiry", "cancellation"})
+    public void afterGroups() {
+        System.out.println("TimingWheelTest - AfterGroups executed for expiry and cancellation groups");
+    }
+    
+    @BeforeMethod
+    public void beforeMethod() {
+        methodCounter++;
+        wheel = new TimingWheel<>(1_000);
+        System.out.println("TimingWheelTest - BeforeMethod executed. Method counter: " + methodCounter);
+    }
+    
+    @AfterMethod
+    public void afterMethod() {
+        wheel = null;
+        System.out.println("TimingWheelTest - AfterMethod executed");
+    }
+    
+    @Test(groups = "expiry", priority = 1)
+    public void testTimersExpireAtTheirDeadline() {
+        SoftAssert softAssert = new SoftAssert();
+        wheel.schedule(1_005, "soon");
+        wheel.schedule(1_100, "later");
+        wheel.schedule(5_000, "much later");
+        
+        softAssert.assertEquals(wheel.advanceTo(1_004), List.of(), "Nothing should expire before the first deadline");
+        softAssert.assertEquals(wheel.advanceTo(1_005), List.of("soon"), "First timer should expire at its deadline");
+        softAssert.assertEquals(wheel.advanceTo(4_999), List.of("later"), "Second timer should expire after cascading");
+        softAssert.assertEquals(wheel.advanceTo(5_000), List.of("much later"), "Far timer should expire at its deadline");
+        softAssert.assertEquals(wheel.size(), 0, "Wheel should be empty");
+        softAssert.assertAll();
+    }
+    
+    @Test(groups = "expiry", priority = 2)
+    public void testOverdueTimersExpireOnNextAdvance() {
+        SoftAssert softAssert = new SoftAssert();
+        wheel.schedule(10, "overdue");
+        softAssert.assertEquals(wheel.size(), 1, "Overdue timer should be pending until the next advance");
+        softAssert.assertEquals(wheel.advanceTo(1_000), List.of("overdue"), "Overdue timer should expire immediately");
+        softAssert.assertAll();
+    }
+    
+    @Test(groups = "expiry", priority = 3)
+    public void testExpiryMatchesDeadlinesAcrossLevels() {
+        SoftAssert softAssert = new SoftAssert();
+        List<Long> deadlines = new ArrayList<>();
+        for (long delta = 1; delta < 2_000_000; delta = delta * 3 + 1) {
+            deadlines.add(1_000 + delta);
+            wheel.schedule(1_000 + delta, String.valueOf(1_000 + delta));
+        }
+        boolean onTime = true;
+        for (long deadline : deadlines) {
+            onTime &= wheel.advanceTo(deadline - 1).isEmpty();
+            onTime &= wheel.advanceTo(deadline).equals(List.of(String.valueOf(deadline)));
+        }
+        softAssert.assertTrue(onTime, "Every timer should expire exactly at its deadline");
+        softAssert.assertAll();
+    }
+    
+    @Test(groups = "cancellation", priority = 4)
+    public void testCancelledTimersNeverExpire() {
+        SoftAssert softAssert = new SoftAssert();
+        TimingWheel.Timer<String> cancelled = wheel.schedule(1_010, "cancelled");
+        wheel.schedule(1_010, "kept");
+        
+        softAssert.assertTrue(cancelled.cancel(), "Pending timer should be cancellable");
+        softAssert.assertFalse(cancelled.cancel(), "Timer should only be cancelled once");
+        softAssert.assertEquals(wheel.advanceTo(1_020), List.of("kept"), "Only the kept timer should expire");
+        softAssert.assertAll();
+    }
+}
@@ -0,0 +1,246 @@
+package org.healthhub.tests;
+
+import org.healthhub.model.Doctor;
+import org.healthhub.model.Patient;
+import org.healthhub.model.Prescription;
+import org.healthhub.model.ValidationEngine;
+import org.healthhub.model.ValidationEngine.Field;
+import org.healthhub.model.ValidationEngine.ValidationReport;
+import org.healthhub.model.ValidationEngine.Violation;
+import org.testng.annotations.*;
+import org.testng.asserts.SoftAssert;
+import java.lang.management.ManagementFactory;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.regex.Pattern;
+import static org.testng.Assert.*;
+
+public class ValidationEngineTest {
+
+    private static int suiteCounter = 0;
+    private static int testCounter = 0;
+    private static int classCounter = 0;
+    private static int methodCounter = 0;
+    
+    private static final LocalDate TODAY = LocalDate.of(2026, 1, 15);
+    
+    private ValidationEngine engine;
+    
+    @BeforeSuite
+    public void beforeSuite() {
+        suiteCounter++;
+        System.out.println("ValidationEngineTest - BeforeSuite executed. Suite counter: " + suiteCounter);
+    }
+    
+    @AfterSuite
+    public void afterSuite() {
+        System.out.println("ValidationEngineTest - AfterSuite executed. Suite counter: " + suiteCounter);
+    }
+    
+    @BeforeTest
+    public void beforeTest() {
+        testCounter++;
+        System.out.println("ValidationEngineTest - BeforeTest executed. Test counter: " + testCounter);
+    }
+    
+    @AfterTest
+    public void afterTest() {
+        System.out.println("ValidationEngineTest - AfterTest executed. Test counter: " + testCounter);
+    }
+    
+    @BeforeClass
+    public void beforeClass() {
+        classCounter++;
+        System.out.println("ValidationEngineTest - BeforeClass executed. Class counter: " + classCounter);
+    }
+    
+    @AfterClass
+    public void afterClass() {
+        System.out.println("ValidationEngineTest - AfterClass executed. Class counter: " + classCounter);
+    }
+    
+    @BeforeGroups(groups = {"rules", "batch"})
+    public void beforeGroups() {
+        System.out.println("ValidationEngineTest - BeforeGroups executed for rules and batch groups");
+    }
+    
+    @AfterGroups(groups = {"rules", "batch"})
+    public void afterGroups() {
+        System.out.println("ValidationEngineTest - AfterGroups executed for rules and batch groups");
+    }
+    
+    @BeforeMethod
+    public void beforeMethod() {
+        methodCounter++;
+        engine = new ValidationEngine(TODAY, 5);
+        System.out.println("ValidationEngineTest - BeforeMethod executed. Method counter: " + methodCounter);
+    }
+    
+    @AfterMethod
+    public void afterMethod() {
+        engine = null;
+        System.out.println("ValidationEngineTest - AfterMethod executed");
+    }
+    
+    @Test(groups = "rules", priority = 1)
+    public void testValidatorsAgreeWithTheirPatterns() {
+        SoftAssert softAssert = new SoftAssert();
+        Pattern phone = Pattern.compile("\\d{10,15}");
+        Pattern license = Pattern.compile("[A-Z]{2}\\d{6}");
+        String alphabet = "0123456789ABZaz -\u0663\t";
+        Random random = new Random(7);
+        int disagreements = 0;
+        for (int i = 0; i < 200_000; i++) {
+            char[] chars = new char[random.nextInt(17)];
+            for (int j = 0; j < chars.length; j++) {
+                chars[j] = alphabet.charAt(random.nextInt(alphabet.length()));
+            }
+            String value = new String(chars);
+            disagreements += Patient.PatientValidator.isValidPhoneNumber(value) != phone.matcher(value).matches() ? 1 : 0;
+            disagreements += Doctor.DoctorValidator.isValidLicenseNumber(value) != license.matcher(value).matches() ? 1 : 0;
+            disagreements += Patient.PatientValidator.isValidPatientId(value) != !value.trim().isEmpty() ? 1 : 0;
+            disagreements += Doctor.DoctorValidator.isValidSpecialization(value) != !value.trim().isEmpty() ? 1 : 0;
+        }
+        softAssert.assertEquals(disagreements, 0, "Hand-written checks should accept exactly what the old patterns accepted");
+        softAssert.assertFalse(Patient.PatientValidator.isValidPhoneNumber("12345\u06637890"), "Only ASCII digits should count");
+        softAssert.assertFalse(Patient.PatientValidator.isValidPatientId(" \t\u0000 "), "Control characters should count as blank");
+        softAssert.assertTrue(Patient.PatientValidator.isValidPatientId("\u00a0"), "Trimming should not strip non-breaking spaces");
+        softAssert.assertAll();
+    }
+    
+    @Test(groups = "rules", priority = 2)
+    public void testPatientReport() {
+        SoftAssert softAssert = new SoftAssert();
+        List<Patient> patients = new ArrayList<>();
+        patients.add(patient("PAT-1", "john@example.com", "5551234567", LocalDate.of(1980, 1, 1)));
+        patients.add(patient("PAT-2", "not-an-email", "555-123", LocalDate.of(2030, 1, 1)));
+        patients.add(patient(" ", null, null, null));
+        patients.add(patient("PAT-4", null, null, TODAY));
+        
+        ValidationReport report = engine.validatePatients(patients);
+        softAssert.assertFalse(report.isValid(), "Report should be invalid");
+        softAssert.assertEquals(report.getCheckedCount(), 4, "Every patient should be checked");
+        softAssert.assertEquals(report.getInvalidCount(), 2, "Two patients should be invalid");
+        softAssert.assertEquals(report.getViolationCount(), 4, "Every failed rule should be counted");
+        softAssert.assertEquals(report.getViolationCount(Field.EMAIL), 1, "One email should fail");
+        softAssert.assertEquals(report.getViolationCount(Field.DATE_OF_BIRTH), 1, "One date of birth should fail");
+        softAssert.assertEquals(report.getViolationCount(Field.LICENSE_NUMBER), 0, "Fields outside the rules should count 0");
+        
+        List<Violation> violations = report.getViolations();
+        softAssert.assertEquals(violations.size(), 4, "All violations should be kept below the limit");
+        softAssert.assertEquals(violations.get(0).getIndex(), 1, "Violations should be in input order");
+        softAssert.assertEquals(violations.get(0).getId(), "PAT-2", "Violation should carry the patient id");
+        softAssert.assertEquals(violations.get(0).toString(), "#1 PAT-2: email must contain '@' and '.' (was 'not-an-email')",
+                "Violation should describe the rule and value");
+        softAssert.assertEquals(violations.get(2).getValue(), LocalDate.of(2030, 1, 1), "Violation should keep the typed value");
+        softAssert.assertEquals(violations.get(3).toString(), "#2: patientId must not be blank (was ' ')",
+                "A blank id should not be printed");
+        softAssert.assertEquals(report.toString(), "4 violations in 2 of 4 checked", "Report should summarize");
+        softAssert.assertAll();
+    }
+    
+    @Test(groups = "rules", priority = 3)
+    public void testDoctorAndPrescriptionReports() {
+        SoftAssert softAssert = new SoftAssert();
+        Doctor valid = new Doctor("DOC-1", "AB123456");
+        valid.setSpecialization("Cardiology");
+        Doctor invalid = new Doctor(null, "ab123456");
+        invalid.setSpecialization("  ");
+        ValidationReport doctors = engine.validateDoctors(List.of(valid, invalid));
+        softAssert.assertEquals(doctors.getInvalidCount(), 1, "One doctor should be invalid");
+        softAssert.assertEquals(doctors.getViolationCount(), 3, "Id, license and specialization should fail");
+        softAssert.assertEquals(doctors.getViolations().get(0).getMessage(), "doctorId is required", "Missing id should be required");
+        
+        Prescription current = prescription("RX-1", TODAY.plusDays(1), true);
+        Prescription expiring = prescription("RX-2", TODAY, true);
+        Prescription empty = prescription("2", null, false);
+        ValidationReport prescriptions = engine.validatePrescriptions(List.of(current, expiring, empty));
+        softAssert.assertEquals(prescriptions.getInvalidCount(), 2, "Two prescriptions should be invalid");
+        softAssert.assertEquals(prescriptions.getViolationCount(Field.EXPIRY_DATE), 2, "Expiry on today or missing should fail");
+        softAssert.assertEquals(prescriptions.getViolationCount(Field.MEDICATIONS), 1, "Missing medications should fail");
+        softAssert.assertEquals(prescriptions.getViolationCount(Field.PRESCRIPTION_ID), 1, "An id without RX- should fail");
+        softAssert.assertEquals(prescriptions.getViolations().get(0).getMessage(), "expiryDate must be after today",
+                "Expiry message should state the rule");
+        softAssert.assertAll();
+    }
+    
+    @Test(groups = "rules", priority = 4)
+    public void testColumnValidationAndErrorLimit() {
+        SoftAssert softAssert = new SoftAssert();
+        String[] phones = {"5551234567", null, "abc", "1", "2", "3", "4", "5", "123456789012345"};
+        ValidationReport report = engine.validateColumn(Field.PHONE_NUMBER, phones);
+        softAssert.assertEquals(report.getCheckedCount(), 9, "Every value should be checked");
+        softAssert.assertEquals(report.getViolationCount(), 6, "Every invalid value should be counted");
+        softAssert.assertEquals(report.getViolations().size(), 5, "Kept violations should stop at the error limit");
+        softAssert.assertNull(report.getViolations().get(0).getId(), "Column violations should have no id");
+        softAssert.assertEquals(report.getViolations().get(0).getIndex(), 2, "Optional nulls should pass");
+        
+        ValidationReport ids = engine.validateColumn(Field.PATIENT_ID, new String[] {"PAT-1", null});
+        softAssert.assertEquals(ids.getViolations().get(0).getMessage(), "patientId is required", "Required nulls should fail");
+        softAssert.assertTrue(engine.validateColumn(Field.LICENSE_NUMBER, new String[0]).isValid(), "An empty column should be valid");
+        softAssert.assertAll();
+        
+        assertThrows(IllegalArgumentException.class, () -> engine.validateColumn(Field.EXPIRY_DATE, new String[] {"2030-01-01"}));
+        assertThrows(IllegalArgumentException.class, () -> new ValidationEngine(TODAY, -1));
+    }
+    
+    @Test(groups = "batch", priority = 5)
+    public void testBatchValidationDoesNotAllocatePerRow() {
+        SoftAssert softAssert = new SoftAssert();
+        int count = 200_000;
+        String[] phones = new String[count];
+        String[] licenses = new String[count];
+        List<Patient> patients = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            phones[i] = String.format("555%07d", i);
+            licenses[i] = String.format("AB%06d", i % 1_000_000);
+            patients.add(patient("PAT-" + i, "p" + i + "@example.com", phones[i], LocalDate.of(1950, 1, 1).plusDays(i % 20_000)));
+        }
+        
+        long regexNanos = Long.MAX_VALUE;
+        long engineNanos = Long.MAX_VALUE;
+        int matched = 0;
+        for (int round = 0; round < 5; round++) {
+            long start = System.nanoTime();
+            for (int i = 0; i < count; i++) {
+                matched += phones[i].matches("\\d{10,15}") && licenses[i].matches("[A-Z]{2}\\d{6}") ? 1 : 0;
+            }
+            regexNanos = Math.min(regexNanos, System.nanoTime() - start);
+            start = System.nanoTime();
+            matched += engine.validateColumn(Field.PHONE_NUMBER, phones).getViolationCount();
+            matched += engine.validateColumn(Field.LICENSE_NUMBER, licenses).getViolationCount();
+            engineNanos = Math.min(engineNanos, System.nanoTime() - start);
+        }
+        System.out.println("ValidationEngineTest - " + count + " phones and licenses: String.matches " + regexNanos / 1_000_000
+                + " ms, validation engine " + engineNanos / 1_000_000 + " ms, matched " + matched);
+        
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        engine.validatePatients(patients);
+        long before = threads.getCurrentThreadAllocatedBytes();
+        ValidationReport report = engine.validatePatients(patients);
+        long allocated = threads.getCurrentThreadAllocatedBytes() - before;
+        System.out.println("ValidationEngineTest - allocated " + allocated + " bytes validating " + count + " patients");
+        softAssert.assertTrue(report.isValid(), "Generated patients should be valid: " + report.getViolations());
+        softAssert.assertTrue(allocated < count, "Validating valid patients should not allocate per patient: " + allocated + " bytes");
+        softAssert.assertAll();
+    }
+    
+    private static Patient patient(String id, String email, String phoneNumber, LocalDate dateOfBirth) {
+        Patient patient = new Patient(id, "First", "Last", dateOfBirth);
+        patient.setEmail(email);
+        patient.setPhoneNumber(phoneNumber);
+        return patient;
+    }
+    
+    private static Prescription prescription(String id, LocalDate expiryDate, boolean withMedication) {
+        Prescription prescription = new Prescription();
+        prescription.setPrescriptionId(id);
+        prescription.setExpiryDate(expiryDate);
+        if (withMedication) {
+            prescription.addMedication(new Prescription.Medication());
+        }
+        return prescription;
+    }
+}
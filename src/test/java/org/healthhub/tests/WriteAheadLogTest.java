@@ -0,0 +1,213 @@
+package org.healthhub.tests;
+
+import org.healthhub.storage.FsyncPolicy;
+import org.healthhub.storage.SnapshotFile;
+import org.healthhub.storage.WriteAheadLog;
+import org.testng.annotations.*;
+import org.testng.asserts.SoftAssert;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+import static org.testng.Assert.*;
+
+public class WriteAheadLogTest {
+
+    private static int suiteCounter = 0;
+    private static int testCounter = 0;
+    private static int classCounter = 0;
+    private static int methodCounter = 0;
+    
+    private Path directory;
+    
+    @BeforeSuite
+    public void beforeSuite() {
+        suiteCounter++;
+        System.out.println("WriteAheadLogTest - BeforeSuite executed. Suite counter: " + suiteCounter);
+    }
+    
+    @AfterSuite
+    public void afterSuite() {
+        System.out.println("WriteAheadLogTest - AfterSuite executed. Suite counter: " + suiteCounter);
+    }
+    
+    @BeforeTest
+    public void beforeTest() {
+        testCounter++;
+        System.out.println("WriteAheadLogTest - BeforeTest executed. Test counter: " + testCounter);
+    }
+    
+    @AfterTest
+    public void afterTest() {
+        System.out.println("WriteAheadLogTest - AfterTest executed. Test counter: " + testCounter);
+    }
+    
+    @BeforeClass
+    public void beforeClass() {
+        classCounter++;
+        System.out.println("WriteAheadLogTest - BeforeClass executed. Class counter: " + classCounter);
+    }
+    
+    @AfterClass
+    public void afterClass() {
+        System.out.println("WriteAheadLogTest - AfterClass executed. Class counter: " + classCounter);
+    }
+    
+    @BeforeGroups(groups = {"log", "snapshot"})
+    public void beforeGroups() {
+        System.out.println("WriteAheadLogTest - BeforeGroups executed for log and snapshot groups");
+    }
+    
+    @AfterGroups(groups = {"log", "snapshot"})
+    public void afterGroups() {
+        System.out.println("WriteAheadLogTest - AfterGroups executed for log and snapshot groups");
+    }
+    
+    @BeforeMethod
+    public void beforeMethod() throws IOException {
+        methodCounter++;
+        directory = Files.createTempDirectory("healthhub-wal");
+        System.out.println("WriteAheadLogTest - BeforeMethod executed. Method counter: " + methodCounter);
+    }
+    
+    @AfterMethod
+    public void afterMethod() throws IOException {
+        try (Stream<Path> files = Files.walk(directory)) {
+            for (Path file : files.sorted(Comparator.reverseOrder()).toList()) {
+                Files.deleteIfExists(file);
+            }
+        }
+        directory = null;
+        System.out.println("WriteAheadLogTest - AfterMethod executed");
+    }
+    
+    @Test(groups = "log", priority = 1)
+    public void testConcurrentAppendsShareGroupCommits() throws Exception {
+        SoftAssert softAssert = new SoftAssert();
+        int threads = 8;
+        int perThread = 2_000;
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        long start = System.nanoTime();
+        try (WriteAheadLog log = WriteAheadLog.open(directory, FsyncPolicy.onEveryCommit())) {
+            List<CompletableFuture<Long>> appends = new ArrayList<>();
+            for (int t = 0; t < threads; t++) {
+                int thread = t;
+                appends.add(CompletableFuture.supplyAsync(() -> {
+                    long last = 0;
+                    for (int i = 0; i < perThread; i++) {
+                        last = log.appendAndWait(("entry-" + thread + "-" + i).getBytes(StandardCharsets.UTF_8));
+                    }
+                    return last;
+                }, executor));
+            }
+            CompletableFuture.allOf(appends.toArray(new CompletableFuture[0])).join();
+        } finally {
+            executor.shutdown();
+            executor.awaitTermination(10, TimeUnit.SECONDS);
+        }
+        long elapsedMillis = (System.nanoTime() - start) / 1_000_000;
+        System.out.println("WriteAheadLogTest - " + threads * perThread + " durable appends from " + threads + " threads took " + elapsedMillis + " ms");
+        
+        List<String> replayed = new ArrayList<>();
+        try (WriteAheadLog log = WriteAheadLog.open(directory, FsyncPolicy.onEveryCommit())) {
+            log.replay(0, payload -> replayed.add(StandardCharsets.UTF_8.decode(payload).toString()));
+        }
+        softAssert.assertEquals(replayed.size(), threads * perThread, "Every acknowledged append should be replayed");
+        for (int t = 0; t < threads; t++) {
+            String prefix = "entry-" + t + "-";
+            List<String> ordered = replayed.stream().filter(entry -> entry.startsWith(prefix)).toList();
+            softAssert.assertEquals(ordered.get(perThread - 1), prefix + (perThread - 1), "Each thread's appends should replay in order");
+        }
+        softAssert.assertAll();
+    }
+    
+    @Test(groups = "log", priority = 2)
+    public void testTornTailIsTruncatedOnOpen() throws IOException {
+        SoftAssert softAssert = new SoftAssert();
+        long end;
+        try (WriteAheadLog log = WriteAheadLog.open(directory, FsyncPolicy.atMostEvery(Duration.ofMillis(5)))) {
+            for (int i = 0; i < 10; i++) {
+                log.append(new byte[] {(byte) i, 1, 2, 3});
+            }
+            end = log.appendAndWait(new byte[] {10, 1, 2, 3});
+        }
+        Path segment;
+        try (Stream<Path> files = Files.list(directory)) {
+            segment = files.filter(file -> file.getFileName().toString().endsWith(".log")).findFirst().orElseThrow();
+        }
+        Files.write(segment, new byte[] {0, 0, 0, 40, 1, 2, 3}, StandardOpenOption.APPEND);
+        
+        List<Byte> replayed = new ArrayList<>();
+        try (WriteAheadLog log = WriteAheadLog.open(directory, FsyncPolicy.onEveryCommit())) {
+            softAssert.assertEquals(log.getEndLsn(), end, "Torn frame should be cut off");
+            long next = log.appendAndWait(new byte[] {11, 1, 2, 3});
+            softAssert.assertEquals(next, end + 12, "New frames should follow the last complete frame");
+            log.replay(0, payload -> replayed.add(payload.get()));
+        }
+        softAssert.assertEquals(replayed.size(), 12, "Replay should see the complete frames only");
+        softAssert.assertEquals((byte) replayed.get(11), (byte) 11, "Replay should include frames written after recovery");
+        softAssert.assertAll();
+    }
+    
+    @Test(groups = "log", priority = 3)
+    public void testReplayStartsAfterRolledSegments() throws IOException {
+        SoftAssert softAssert = new SoftAssert();
+        try (WriteAheadLog log = WriteAheadLog.open(directory, FsyncPolicy.onEveryCommit())) {
+            log.appendAndWait(new byte[] {1});
+            log.appendAndWait(new byte[] {2});
+            long rolled = log.roll();
+            log.appendAndWait(new byte[] {3});
+            log.deleteSegmentsBefore(rolled);
+            
+            List<Byte> replayed = new ArrayList<>();
+            log.replay(rolled, payload -> replayed.add(payload.get()));
+            softAssert.assertEquals(replayed, List.of((byte) 3), "Only frames after the roll should be replayed");
+            try (Stream<Path> files = Files.list(directory)) {
+                softAssert.assertEquals(files.count(), 1L, "The rolled-over segment should be deleted");
+            }
+        }
+        softAssert.assertAll();
+    }
+    
+    @Test(groups = "snapshot", priority = 4)
+    public void testSnapshotRoundTripAcrossWindows() throws IOException {
+        SoftAssert softAssert = new SoftAssert();
+        byte[] large = new byte[3 * 1024 * 1024];
+        large[large.length - 1] = 42;
+        try (SnapshotFile.Writer writer = SnapshotFile.create(directory, 77)) {
+            for (int i = 0; i < 8; i++) {
+                writer.write(large);
+                writer.write(new byte[] {(byte) i});
+            }
+            writer.commit();
+        }
+        try (SnapshotFile.Writer abandoned = SnapshotFile.create(directory, 99)) {
+            abandoned.write(new byte[] {1});
+        }
+        
+        SnapshotFile snapshot = SnapshotFile.latest(directory).orElseThrow();
+        List<Integer> sizes = new ArrayList<>();
+        List<Byte> lastBytes = new ArrayList<>();
+        long count = snapshot.read(entry -> {
+            sizes.add(entry.remaining());
+            lastBytes.add(entry.get(entry.limit() - 1));
+        });
+        softAssert.assertEquals(snapshot.getLsn(), 77L, "Uncommitted snapshots should be ignored");
+        softAssert.assertEquals(count, 16L, "Every entry should be read back");
+        softAssert.assertEquals((int) sizes.get(14), large.length, "Entries should survive window boundaries");
+        softAssert.assertEquals((byte) lastBytes.get(14), (byte) 42, "Entry contents should survive window boundaries");
+        softAssert.assertEquals((byte) lastBytes.get(15), (byte) 7, "Small entries should keep their order");
+        softAssert.assertAll();
+    }
+}